@@ -77,6 +77,60 @@ import javax.imageio.ImageReadParam;
  *    The default value, -1, means to use the resolution level at encoding.
  *    </td>
  * </tr>
+ * <tr>
+ *    <td>numDecodingThreads</td>
+ *    <td>Specifies the number of threads used to entropy decode the
+ *    code-blocks of each subband.  The code-blocks of a subband are
+ *    independent of one another and are decoded concurrently when this is
+ *    greater than 1.  The decoded image does not depend on this value.
+ *    The default value, 0, means to decode all code-blocks in the calling
+ *    thread.  This parameter is ignored by the native decoder.
+ *    </td>
+ * </tr>
+ * <tr>
+ *    <td>lineBasedTransform</td>
+ *    <td>Specifies whether the inverse wavelet transform reconstructs each
+ *    tile a strip of lines at a time, as the lines are delivered, rather
+ *    than reconstructing whole tiles in memory.  The memory used then grows
+ *    with the tile width only, which allows large untiled images to be
+ *    decoded.  The decoded image is the same either way.  The default is
+ *    <code>false</code>.  This parameter is ignored by the native decoder.
+ *    </td>
+ * </tr>
+ * <tr>
+ *    <td>tileCache</td>
+ *    <td>Specifies a {@link J2KTileCache} in which the image returned by
+ *    <code>readAsRenderedImage()</code> keeps its decoded tiles, so that
+ *    tiles requested again, for example when panning, are not decoded
+ *    again.  The cache may be shared by several images.  The default,
+ *    <code>null</code>, means that only the last decoded tile is kept.
+ *    This parameter is ignored by the native decoder.
+ *    </td>
+ * </tr>
+ * <tr>
+ *    <td>qualityLayers</td>
+ *    <td>Specifies the number of quality layers to decode.  The packets of
+ *    the later layers are not decoded and, when the layers are the outermost
+ *    progression of a tile, are not read at all.  If the given number is
+ *    greater than the number of layers in the codestream all the layers are
+ *    decoded.  The default value, -1, means to decode all the layers.
+ *    This parameter is ignored by the native decoder.
+ *    </td>
+ * </tr>
+ * <tr>
+ *    <td>progressiveDecoding</td>
+ *    <td>Specifies whether <code>read()</code> delivers successively refined
+ *    versions of the image to the registered
+ *    <code>IIOReadUpdateListener</code>s.  The image is then decoded in
+ *    several passes, the first with a single quality layer and each next
+ *    one with twice as many layers as the previous one, up to the number
+ *    given by <code>qualityLayers</code>.  Each pass is reported by
+ *    <code>passStarted()</code> and <code>passComplete()</code> and
+ *    overwrites the whole destination.  The passes are only made if update
+ *    listeners are registered.  The default is <code>false</code>.
+ *    This parameter is ignored by the native decoder.
+ *    </td>
+ * </tr>
  * </table>
  */
 public class J2KImageReadParam extends ImageReadParam {
@@ -98,6 +152,30 @@ public class J2KImageReadParam extends ImageReadParam {
      */
     private int resolution = -1;
 
+    /** Specifies the number of threads used to entropy decode the
+     *  code-blocks of a subband.  If 0 or 1 all code-blocks are decoded
+     *  in the calling thread.
+     */
+    private int numDecodingThreads = 0;
+
+    /** Specifies whether the inverse wavelet transform reconstructs the
+     *  tiles a strip of lines at a time rather than as a whole.
+     */
+    private boolean lineBasedTransform = false;
+
+    /** Specifies the cache of the tiles decoded by the images returned by
+     *  <code>readAsRenderedImage()</code>, or <code>null</code> if none.
+     */
+    private J2KTileCache tileCache = null;
+
+    /** Specifies the number of quality layers to decode, -1 for all. */
+    private int qualityLayers = -1;
+
+    /** Specifies whether <code>read()</code> delivers successively refined
+     *  images to the update listeners.
+     */
+    private boolean progressiveDecoding = false;
+
     /** Constructs a default instance of <code>J2KImageReadParam</code>. */
     public J2KImageReadParam() {
         super();
@@ -144,4 +222,122 @@ public class J2KImageReadParam extends ImageReadParam {
     public int getResolution() {
         return resolution;
     }
+
+    /**
+     * Sets <code>numDecodingThreads</code>.
+     *
+     * @param numDecodingThreads the number of threads used to entropy
+     * decode code-blocks, 0 to decode them in the calling thread.
+     * @throws IllegalArgumentException if <code>numDecodingThreads</code>
+     * is negative.
+     * @see #getNumDecodingThreads()
+     */
+    public void setNumDecodingThreads(int numDecodingThreads) {
+        if(numDecodingThreads < 0) {
+            throw new IllegalArgumentException
+                ("numDecodingThreads < 0");
+        }
+        this.numDecodingThreads = numDecodingThreads;
+    }
+
+    /**
+     * Gets <code>numDecodingThreads</code>.
+     *
+     * @return the number of threads used to entropy decode code-blocks.
+     * @see #setNumDecodingThreads(int)
+     */
+    public int getNumDecodingThreads() {
+        return numDecodingThreads;
+    }
+
+    /**
+     * Sets <code>lineBasedTransform</code>.
+     *
+     * @param lineBasedTransform whether to use the line-based inverse
+     * wavelet transform.
+     * @see #getLineBasedTransform()
+     */
+    public void setLineBasedTransform(boolean lineBasedTransform) {
+        this.lineBasedTransform = lineBasedTransform;
+    }
+
+    /**
+     * Gets <code>lineBasedTransform</code>.
+     *
+     * @return whether the line-based inverse wavelet transform is used.
+     * @see #setLineBasedTransform(boolean)
+     */
+    public boolean getLineBasedTransform() {
+        return lineBasedTransform;
+    }
+
+    /**
+     * Sets <code>tileCache</code>.
+     *
+     * @param tileCache the cache of decoded tiles, or <code>null</code>
+     * to keep only the last decoded tile.
+     * @see #getTileCache()
+     */
+    public void setTileCache(J2KTileCache tileCache) {
+        this.tileCache = tileCache;
+    }
+
+    /**
+     * Gets <code>tileCache</code>.
+     *
+     * @return the cache of decoded tiles, or <code>null</code>.
+     * @see #setTileCache(J2KTileCache)
+     */
+    public J2KTileCache getTileCache() {
+        return tileCache;
+    }
+
+    /**
+     * Sets <code>qualityLayers</code>.
+     *
+     * @param qualityLayers the number of quality layers to decode, or -1
+     * to decode all the layers.
+     * @throws IllegalArgumentException if <code>qualityLayers</code>
+     * is 0 or less than -1.
+     * @see #getQualityLayers()
+     */
+    public void setQualityLayers(int qualityLayers) {
+        if(qualityLayers == 0 || qualityLayers < -1) {
+            throw new IllegalArgumentException
+                ("qualityLayers is neither positive nor -1");
+        }
+        this.qualityLayers = qualityLayers;
+    }
+
+    /**
+     * Gets <code>qualityLayers</code>.
+     *
+     * @return the number of quality layers to decode, or -1 for all.
+     * @see #setQualityLayers(int)
+     */
+    public int getQualityLayers() {
+        return qualityLayers;
+    }
+
+    /**
+     * Sets <code>progressiveDecoding</code>.
+     *
+     * @param progressiveDecoding whether <code>read()</code> delivers
+     * successively refined images to the update listeners.
+     * @see #getProgressiveDecoding()
+     */
+    public void setProgressiveDecoding(boolean progressiveDecoding) {
+        this.progressiveDecoding = progressiveDecoding;
+    }
+
+    /**
+     * Gets <code>progressiveDecoding</code>.
+     *
+     * @return whether <code>read()</code> delivers successively refined
+     * images to the update listeners.
+     * @see #setProgressiveDecoding(boolean)
+     */
+    public boolean getProgressiveDecoding() {
+        return progressiveDecoding;
+    }
 }
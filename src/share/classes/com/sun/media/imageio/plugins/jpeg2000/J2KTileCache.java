@@ -0,0 +1,290 @@
+/*
+ * $RCSfile: J2KTileCache.java,v $
+ *
+ * 
+ * Copyright (c) 2005 Sun Microsystems, Inc. All  Rights Reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 
+ * 
+ * - Redistribution of source code must retain the above copyright 
+ *   notice, this  list of conditions and the following disclaimer.
+ * 
+ * - Redistribution in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in 
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ * 
+ * Neither the name of Sun Microsystems, Inc. or the names of 
+ * contributors may be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * This software is provided "AS IS," without a warranty of any 
+ * kind. ALL EXPRESS OR IMPLIED CONDITIONS, REPRESENTATIONS AND 
+ * WARRANTIES, INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE OR NON-INFRINGEMENT, ARE HEREBY
+ * EXCLUDED. SUN MIDROSYSTEMS, INC. ("SUN") AND ITS LICENSORS SHALL 
+ * NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY LICENSEE AS A RESULT OF 
+ * USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE OR ITS
+ * DERIVATIVES. IN NO EVENT WILL SUN OR ITS LICENSORS BE LIABLE FOR 
+ * ANY LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT, INDIRECT, SPECIAL,
+ * CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES, HOWEVER CAUSED AND
+ * REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT OF THE USE OF OR
+ * INABILITY TO USE THIS SOFTWARE, EVEN IF SUN HAS BEEN ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGES. 
+ * 
+ * You acknowledge that this software is not designed or intended for 
+ * use in the design, construction, operation or maintenance of any 
+ * nuclear facility. 
+ *
+ * $Revision: 1.1 $
+ * $Date: 2006-09-29 19:25:32 $
+ * $State: Exp $
+ */
+package com.sun.media.imageio.plugins.jpeg2000;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of the tiles decoded by the JPEG 2000 plug-in, bounded in
+ * memory.  When a cache is set on a {@link J2KImageReadParam} the images
+ * returned by <code>ImageReader.readAsRenderedImage()</code> keep their
+ * decoded tiles in it, so that a tile requested again is returned without
+ * being decoded again.  When adding a tile would exceed the memory
+ * capacity, the least recently used tiles are discarded.
+ *
+ * <p>The tiles are keyed by the image which owns them and by their tile
+ * indices.  A cache may be shared by several images, for example the images
+ * read at different resolution levels for zooming, which then share its
+ * memory capacity.  The methods mirror those of the JAI
+ * <code>TileCache</code> interface so that this class is easily adapted to
+ * it.
+ *
+ * <p>The numbers of successful and unsuccessful lookups are counted to allow
+ * the capacity to be tuned.  All the methods of this class are
+ * synchronized, so that a cache may be used by several threads.
+ */
+public class J2KTileCache {
+
+    /** The maximum number of bytes of tile data kept. */
+    private long memoryCapacity;
+
+    /** The number of bytes of tile data currently kept. */
+    private long memoryUsed = 0;
+
+    /** The number of lookups which found a tile. */
+    private long hitCount = 0;
+
+    /** The number of lookups which did not find a tile. */
+    private long missCount = 0;
+
+    /** The tiles, in order of access from the least recently used. */
+    private LinkedHashMap tiles = new LinkedHashMap(16, 0.75F, true);
+
+    /**
+     * The key of a tile, made of its owner and indices.  The owner is only
+     * weakly referenced so that the cache does not keep images which are no
+     * longer used; their tiles are discarded as other tiles are added.
+     */
+    private static class TileKey {
+        private WeakReference owner;
+        private int ownerHash;
+        private int tileX;
+        private int tileY;
+
+        TileKey(Object owner, int tileX, int tileY) {
+            this.owner = new WeakReference(owner);
+            this.ownerHash = System.identityHashCode(owner);
+            this.tileX = tileX;
+            this.tileY = tileY;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof TileKey))
+                return false;
+            TileKey k = (TileKey)o;
+            Object owner = this.owner.get();
+            return owner != null && owner == k.owner.get() &&
+                tileX == k.tileX && tileY == k.tileY;
+        }
+
+        public int hashCode() {
+            return ownerHash + 31 * (tileX + 31 * tileY);
+        }
+    }
+
+    /**
+     * Constructs a <code>J2KTileCache</code> with the given memory
+     * capacity.
+     *
+     * @param memoryCapacity the maximum number of bytes of tile data kept.
+     * @throws IllegalArgumentException if <code>memoryCapacity</code> is
+     * negative.
+     */
+    public J2KTileCache(long memoryCapacity) {
+        setMemoryCapacity(memoryCapacity);
+    }
+
+    /**
+     * Sets the memory capacity, discarding the least recently used tiles
+     * if the tiles kept exceed it.
+     *
+     * @param memoryCapacity the maximum number of bytes of tile data kept.
+     * @throws IllegalArgumentException if <code>memoryCapacity</code> is
+     * negative.
+     * @see #getMemoryCapacity()
+     */
+    public synchronized void setMemoryCapacity(long memoryCapacity) {
+        if(memoryCapacity < 0) {
+            throw new IllegalArgumentException("memoryCapacity < 0");
+        }
+        this.memoryCapacity = memoryCapacity;
+        trim(memoryCapacity);
+    }
+
+    /**
+     * Gets the memory capacity.
+     *
+     * @return the maximum number of bytes of tile data kept.
+     * @see #setMemoryCapacity(long)
+     */
+    public synchronized long getMemoryCapacity() {
+        return memoryCapacity;
+    }
+
+    /**
+     * Gets the number of bytes of tile data currently kept.
+     *
+     * @return the number of bytes of tile data kept.
+     */
+    public synchronized long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    /**
+     * Gets the number of lookups which found the requested tile.
+     *
+     * @return the number of cache hits.
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Gets the number of lookups which did not find the requested tile.
+     *
+     * @return the number of cache misses.
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Adds a tile to the cache, replacing any tile with the same owner and
+     * indices.  The least recently used tiles are discarded as needed to
+     * keep within the memory capacity.  A tile larger than the capacity is
+     * not added.
+     *
+     * @param owner the image which owns the tile.
+     * @param tileX the horizontal index of the tile.
+     * @param tileY the vertical index of the tile.
+     * @param tile the tile.
+     */
+    public synchronized void add(Object owner, int tileX, int tileY,
+                                 Raster tile) {
+        TileKey key = new TileKey(owner, tileX, tileY);
+        remove(key);
+
+        long size = getSize(tile);
+        if (size > memoryCapacity)
+            return;
+        trim(memoryCapacity - size);
+        tiles.put(key, tile);
+        memoryUsed += size;
+    }
+
+    /**
+     * Returns the tile with the given owner and indices, counting the
+     * lookup as a hit or a miss.
+     *
+     * @param owner the image which owns the tile.
+     * @param tileX the horizontal index of the tile.
+     * @param tileY the vertical index of the tile.
+     * @return the tile, or <code>null</code> if it is not in the cache.
+     */
+    public synchronized Raster getTile(Object owner, int tileX, int tileY) {
+        Raster tile = (Raster)tiles.get(new TileKey(owner, tileX, tileY));
+        if (tile != null)
+            hitCount++;
+        else
+            missCount++;
+        return tile;
+    }
+
+    /**
+     * Removes the tile with the given owner and indices, if any.
+     *
+     * @param owner the image which owns the tile.
+     * @param tileX the horizontal index of the tile.
+     * @param tileY the vertical index of the tile.
+     */
+    public synchronized void remove(Object owner, int tileX, int tileY) {
+        remove(new TileKey(owner, tileX, tileY));
+    }
+
+    /**
+     * Removes all the tiles of the given owner.
+     *
+     * @param owner the image whose tiles are removed.
+     */
+    public synchronized void removeTiles(Object owner) {
+        Iterator iter = tiles.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry e = (Map.Entry)iter.next();
+            if (((TileKey)e.getKey()).owner.get() == owner) {
+                memoryUsed -= getSize((Raster)e.getValue());
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all the tiles.  The hit and miss counts are not reset.
+     */
+    public synchronized void flush() {
+        tiles.clear();
+        memoryUsed = 0;
+    }
+
+    /** Removes the tile with the given key, if any. */
+    private void remove(TileKey key) {
+        Raster tile = (Raster)tiles.remove(key);
+        if (tile != null)
+            memoryUsed -= getSize(tile);
+    }
+
+    /**
+     * Discards the least recently used tiles until the memory used does not
+     * exceed the given number of bytes.
+     */
+    private void trim(long limit) {
+        Iterator iter = tiles.values().iterator();
+        while (memoryUsed > limit && iter.hasNext()) {
+            memoryUsed -= getSize((Raster)iter.next());
+            iter.remove();
+        }
+    }
+
+    /** Returns the number of bytes of the data of a tile. */
+    private static long getSize(Raster tile) {
+        DataBuffer db = tile.getDataBuffer();
+        return (long)db.getSize() * db.getNumBanks() *
+            DataBuffer.getDataTypeSize(db.getDataType()) / 8;
+    }
+}
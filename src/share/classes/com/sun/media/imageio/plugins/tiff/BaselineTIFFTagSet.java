@@ -748,6 +748,14 @@ public class BaselineTIFFTagSet extends TIFFTagSet {
      * @see #TAG_PREDICTOR
      */
     public static final int PREDICTOR_HORIZONTAL_DIFFERENCING = 2;
+
+    /**
+     * A value to be used with the "Predictor" tag indicating the
+     * floating point predictor of Adobe Photoshop TIFF Technical Note 3.
+     *
+     * @see #TAG_PREDICTOR
+     */
+    public static final int PREDICTOR_FLOATING_POINT = 3;
     
     /**
      * Constant specifying the "WhitePoint" tag.
@@ -1649,6 +1657,8 @@ public class BaselineTIFFTagSet extends TIFFTagSet {
                          "None");
             addValueName(PREDICTOR_HORIZONTAL_DIFFERENCING,
                          "Horizontal Differencing");
+            addValueName(PREDICTOR_FLOATING_POINT,
+                         "Floating Point");
         }
     }
 
@@ -1787,7 +1797,8 @@ public class BaselineTIFFTagSet extends TIFFTagSet {
             super("StripByteCounts",
                   TAG_STRIP_BYTE_COUNTS,
                   (1 << TIFF_SHORT) |
-                  (1 << TIFF_LONG));
+                  (1 << TIFF_LONG) |
+                  (1 << TIFF_LONG8));
         }
     }
 
@@ -1799,7 +1810,8 @@ public class BaselineTIFFTagSet extends TIFFTagSet {
             super("StripOffsets",
                   TAG_STRIP_OFFSETS,
                   (1 << TIFF_SHORT) |
-                  (1 << TIFF_LONG));
+                  (1 << TIFF_LONG) |
+                  (1 << TIFF_LONG8));
         }
     }
 
@@ -1902,7 +1914,8 @@ public class BaselineTIFFTagSet extends TIFFTagSet {
             super("TileByteCounts",
                   TAG_TILE_BYTE_COUNTS,
                   (1 << TIFF_SHORT) |
-                  (1 << TIFF_LONG));
+                  (1 << TIFF_LONG) |
+                  (1 << TIFF_LONG8));
         }
     }
 
@@ -1913,7 +1926,8 @@ public class BaselineTIFFTagSet extends TIFFTagSet {
         public TileOffsets() {
             super("TileOffsets",
                   TAG_TILE_OFFSETS,
-                  1 << TIFF_LONG);
+                  (1 << TIFF_LONG) |
+                  (1 << TIFF_LONG8));
         }
     }
 
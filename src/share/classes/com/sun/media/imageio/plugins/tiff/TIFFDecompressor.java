@@ -67,6 +67,7 @@ import java.awt.image.WritableRaster;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.ByteOrder;
+import java.util.Arrays;
 import javax.imageio.IIOException;
 import javax.imageio.ImageReader;
 import javax.imageio.ImageTypeSpecifier;
@@ -76,6 +77,7 @@ import javax.imageio.stream.MemoryCacheImageInputStream;
 import com.sun.media.imageioimpl.common.BogusColorSpace;
 import com.sun.media.imageioimpl.common.ImageUtil;
 import com.sun.media.imageioimpl.common.SimpleCMYKColorSpace;
+import com.sun.media.imageioimpl.plugins.tiff.TIFFImageReader;
 
 /**
  * A class defining a pluggable TIFF decompressor.
@@ -1862,6 +1864,16 @@ public abstract class TIFFDecompressor {
         this.colorConverter = colorConverter;
     }
 
+    // Returns a scratch array whose first 'length' elements are zero,
+    // taken from the pool of the reader if it is a TIFFImageReader.
+    private byte[] getClearedScratchBuffer(int length) {
+        byte[] b = TIFFImageReader.getScratchBuffer(reader, length);
+        if (reader instanceof TIFFImageReader) {
+            Arrays.fill(b, 0, length, (byte)0);
+        }
+        return b;
+    }
+
     /**
      * Returns an <code>ImageTypeSpecifier</code> describing an image
      * whose underlying data array has the same format as the raw
@@ -2020,32 +2032,36 @@ public abstract class TIFFDecompressor {
         int bytesPerRow = (srcWidth*bitsPerPixel + 7)/8;
         int shortsPerRow = bytesPerRow/2;
 
-        byte[] b = new byte[bytesPerRow*srcHeight];
-        decodeRaw(b, 0, bitsPerPixel, bytesPerRow);
-
-        int bOffset = 0;
-        if(stream.getByteOrder() == ByteOrder.BIG_ENDIAN) {
-            for (int j = 0; j < srcHeight; j++) {
-                for (int i = 0; i < shortsPerRow; i++) {
-                    short hiVal = b[bOffset++];
-                    short loVal = b[bOffset++];
-                    short sval = (short)((hiVal << 8) | (loVal & 0xff));
-                    s[dstOffset + i] = sval;
-                }
+        byte[] b = getClearedScratchBuffer(bytesPerRow*srcHeight);
+        try {
+            decodeRaw(b, 0, bitsPerPixel, bytesPerRow);
+
+            int bOffset = 0;
+            if(stream.getByteOrder() == ByteOrder.BIG_ENDIAN) {
+                for (int j = 0; j < srcHeight; j++) {
+                    for (int i = 0; i < shortsPerRow; i++) {
+                        short hiVal = b[bOffset++];
+                        short loVal = b[bOffset++];
+                        short sval = (short)((hiVal << 8) | (loVal & 0xff));
+                        s[dstOffset + i] = sval;
+                    }
 
-                dstOffset += scanlineStride;
-            }
-        } else { // ByteOrder.LITLE_ENDIAN
-            for (int j = 0; j < srcHeight; j++) {
-                for (int i = 0; i < shortsPerRow; i++) {
-                    short loVal = b[bOffset++];
-                    short hiVal = b[bOffset++];
-                    short sval = (short)((hiVal << 8) | (loVal & 0xff));
-                    s[dstOffset + i] = sval;
+                    dstOffset += scanlineStride;
                 }
+            } else { // ByteOrder.LITLE_ENDIAN
+                for (int j = 0; j < srcHeight; j++) {
+                    for (int i = 0; i < shortsPerRow; i++) {
+                        short loVal = b[bOffset++];
+                        short hiVal = b[bOffset++];
+                        short sval = (short)((hiVal << 8) | (loVal & 0xff));
+                        s[dstOffset + i] = sval;
+                    }
 
-                dstOffset += scanlineStride;
+                    dstOffset += scanlineStride;
+                }
             }
+        } finally {
+            TIFFImageReader.releaseScratchBuffer(reader, b);
         }
     }
 
@@ -2078,36 +2094,40 @@ public abstract class TIFFDecompressor {
         int intsPerRow = srcWidth*numBands;
         int bytesPerRow = intsPerRow*4;
 
-        byte[] b = new byte[bytesPerRow*srcHeight];
-        decodeRaw(b, 0, bitsPerPixel, bytesPerRow);
-
-        int bOffset = 0;
-        if(stream.getByteOrder() == ByteOrder.BIG_ENDIAN) {
-            for (int j = 0; j < srcHeight; j++) {
-                for (int k = 0; k < intsPerRow; k++) {
-                    int v0 = b[bOffset++] & 0xff;
-                    int v1 = b[bOffset++] & 0xff; 
-                    int v2 = b[bOffset++] & 0xff;
-                    int v3 = b[bOffset++] & 0xff;
-                    int ival = (v0 << 24) | (v1 << 16) | (v2 << 8) | v3;
-                    i[dstOffset + k] = ival;
-                }
+        byte[] b = getClearedScratchBuffer(bytesPerRow*srcHeight);
+        try {
+            decodeRaw(b, 0, bitsPerPixel, bytesPerRow);
+
+            int bOffset = 0;
+            if(stream.getByteOrder() == ByteOrder.BIG_ENDIAN) {
+                for (int j = 0; j < srcHeight; j++) {
+                    for (int k = 0; k < intsPerRow; k++) {
+                        int v0 = b[bOffset++] & 0xff;
+                        int v1 = b[bOffset++] & 0xff; 
+                        int v2 = b[bOffset++] & 0xff;
+                        int v3 = b[bOffset++] & 0xff;
+                        int ival = (v0 << 24) | (v1 << 16) | (v2 << 8) | v3;
+                        i[dstOffset + k] = ival;
+                    }
 
-                dstOffset += scanlineStride;
-            }
-        } else { // ByteOrder.LITLE_ENDIAN
-            for (int j = 0; j < srcHeight; j++) {
-                for (int k = 0; k < intsPerRow; k++) {
-                    int v3 = b[bOffset++] & 0xff;
-                    int v2 = b[bOffset++] & 0xff; 
-                    int v1 = b[bOffset++] & 0xff;
-                    int v0 = b[bOffset++] & 0xff;
-                    int ival = (v0 << 24) | (v1 << 16) | (v2 << 8) | v3;
-                    i[dstOffset + k] = ival;
+                    dstOffset += scanlineStride;
                 }
+            } else { // ByteOrder.LITLE_ENDIAN
+                for (int j = 0; j < srcHeight; j++) {
+                    for (int k = 0; k < intsPerRow; k++) {
+                        int v3 = b[bOffset++] & 0xff;
+                        int v2 = b[bOffset++] & 0xff; 
+                        int v1 = b[bOffset++] & 0xff;
+                        int v0 = b[bOffset++] & 0xff;
+                        int ival = (v0 << 24) | (v1 << 16) | (v2 << 8) | v3;
+                        i[dstOffset + k] = ival;
+                    }
 
-                dstOffset += scanlineStride;
+                    dstOffset += scanlineStride;
+                }
             }
+        } finally {
+            TIFFImageReader.releaseScratchBuffer(reader, b);
         }
     }
 
@@ -2140,38 +2160,42 @@ public abstract class TIFFDecompressor {
         int floatsPerRow = srcWidth*numBands;
         int bytesPerRow = floatsPerRow*4;
 
-        byte[] b = new byte[bytesPerRow*srcHeight];
-        decodeRaw(b, 0, bitsPerPixel, bytesPerRow);
-
-        int bOffset = 0;
-        if(stream.getByteOrder() == ByteOrder.BIG_ENDIAN) {
-            for (int j = 0; j < srcHeight; j++) {
-                for (int i = 0; i < floatsPerRow; i++) {
-                    int v0 = b[bOffset++] & 0xff;
-                    int v1 = b[bOffset++] & 0xff; 
-                    int v2 = b[bOffset++] & 0xff;
-                    int v3 = b[bOffset++] & 0xff;
-                    int ival = (v0 << 24) | (v1 << 16) | (v2 << 8) | v3;
-                    float fval = Float.intBitsToFloat(ival);
-                    f[dstOffset + i] = fval;
-                }
+        byte[] b = getClearedScratchBuffer(bytesPerRow*srcHeight);
+        try {
+            decodeRaw(b, 0, bitsPerPixel, bytesPerRow);
 
-                dstOffset += scanlineStride;
-            }
-        } else { // ByteOrder.LITLE_ENDIAN
-            for (int j = 0; j < srcHeight; j++) {
-                for (int i = 0; i < floatsPerRow; i++) {
-                    int v3 = b[bOffset++] & 0xff;
-                    int v2 = b[bOffset++] & 0xff; 
-                    int v1 = b[bOffset++] & 0xff;
-                    int v0 = b[bOffset++] & 0xff;
-                    int ival = (v0 << 24) | (v1 << 16) | (v2 << 8) | v3;
-                    float fval = Float.intBitsToFloat(ival);
-                    f[dstOffset + i] = fval;
+            int bOffset = 0;
+            if(stream.getByteOrder() == ByteOrder.BIG_ENDIAN) {
+                for (int j = 0; j < srcHeight; j++) {
+                    for (int i = 0; i < floatsPerRow; i++) {
+                        int v0 = b[bOffset++] & 0xff;
+                        int v1 = b[bOffset++] & 0xff; 
+                        int v2 = b[bOffset++] & 0xff;
+                        int v3 = b[bOffset++] & 0xff;
+                        int ival = (v0 << 24) | (v1 << 16) | (v2 << 8) | v3;
+                        float fval = Float.intBitsToFloat(ival);
+                        f[dstOffset + i] = fval;
+                    }
+
+                    dstOffset += scanlineStride;
                 }
+            } else { // ByteOrder.LITLE_ENDIAN
+                for (int j = 0; j < srcHeight; j++) {
+                    for (int i = 0; i < floatsPerRow; i++) {
+                        int v3 = b[bOffset++] & 0xff;
+                        int v2 = b[bOffset++] & 0xff; 
+                        int v1 = b[bOffset++] & 0xff;
+                        int v0 = b[bOffset++] & 0xff;
+                        int ival = (v0 << 24) | (v1 << 16) | (v2 << 8) | v3;
+                        float fval = Float.intBitsToFloat(ival);
+                        f[dstOffset + i] = fval;
+                    }
 
-                dstOffset += scanlineStride;
+                    dstOffset += scanlineStride;
+                }
             }
+        } finally {
+            TIFFImageReader.releaseScratchBuffer(reader, b);
         }
     }
 
@@ -2603,11 +2627,17 @@ public abstract class TIFFDecompressor {
                             // Decode into bytes and reformat into shorts.
                             int bpp = getBitsPerPixel(sm);
                             int bytesPerRow = (bpp*srcWidth + 7)/8;
-                            byte[] buf = new byte[bytesPerRow*srcHeight];
-                            decodeRaw(buf, 0, bpp, bytesPerRow);
-                            reformatData(buf, bytesPerRow, srcHeight,
-                                         shortData, null,
-                                         dstOffset, scanlineStride);
+                            byte[] buf =
+                                getClearedScratchBuffer(bytesPerRow*srcHeight);
+                            try {
+                                decodeRaw(buf, 0, bpp, bytesPerRow);
+                                reformatData(buf, bytesPerRow, srcHeight,
+                                             shortData, null,
+                                             dstOffset, scanlineStride);
+                            } finally {
+                                TIFFImageReader.
+                                    releaseScratchBuffer(reader, buf);
+                            }
                         }
                     } else if (intData != null) {
                         if(areSampleSizesEqual(sm) &&
@@ -2625,11 +2655,17 @@ public abstract class TIFFDecompressor {
                             // Decode into bytes and reformat into ints.
                             int bpp = getBitsPerPixel(sm);
                             int bytesPerRow = (bpp*srcWidth + 7)/8;
-                            byte[] buf = new byte[bytesPerRow*srcHeight];
-                            decodeRaw(buf, 0, bpp, bytesPerRow);
-                            reformatData(buf, bytesPerRow, srcHeight,
-                                         null, intData,
-                                         dstOffset, scanlineStride);
+                            byte[] buf =
+                                getClearedScratchBuffer(bytesPerRow*srcHeight);
+                            try {
+                                decodeRaw(buf, 0, bpp, bytesPerRow);
+                                reformatData(buf, bytesPerRow, srcHeight,
+                                             null, intData,
+                                             dstOffset, scanlineStride);
+                            } finally {
+                                TIFFImageReader.
+                                    releaseScratchBuffer(reader, buf);
+                            }
                         }
                     }
                 }
@@ -2641,11 +2677,15 @@ public abstract class TIFFDecompressor {
                 // into the Raster.
                 int bpp = getBitsPerPixel(sm);
                 int bytesPerRow = (bpp*srcWidth + 7)/8;
-                byte[] buf = new byte[bytesPerRow*srcHeight];
-                decodeRaw(buf, 0, bpp, bytesPerRow);
-                reformatDiscontiguousData(buf, bytesPerRow,
-                                          srcWidth, srcHeight,
-                                          ras);
+                byte[] buf = getClearedScratchBuffer(bytesPerRow*srcHeight);
+                try {
+                    decodeRaw(buf, 0, bpp, bytesPerRow);
+                    reformatDiscontiguousData(buf, bytesPerRow,
+                                              srcWidth, srcHeight,
+                                              ras);
+                } finally {
+                    TIFFImageReader.releaseScratchBuffer(reader, buf);
+                }
             }
         }
 
@@ -2862,6 +2902,12 @@ public abstract class TIFFDecompressor {
                                                           dstMinX, dstMinY,
                                                           destinationBands);
 
+        // Copy between the data arrays for the common layouts.
+        if (copyComponentData(srcChild, dstChild) ||
+            copyBilevelData(srcChild, dstChild)) {
+            return;
+        }
+
         if (subsampleX == 1 && subsampleY == 1 && !adjustBitDepths) {
             srcChild = srcChild.createChild(activeSrcMinX,
                                             activeSrcMinY,
@@ -2912,4 +2958,313 @@ public abstract class TIFFDecompressor {
             }
         }
     }
+
+    /**
+     * Returns the number of destination columns to be written from the
+     * active source region.
+     */
+    private int getNumCopiedColumns() {
+        return Math.min(dstWidth,
+                        (activeSrcWidth + subsampleX - 1)/subsampleX);
+    }
+
+    /**
+     * Returns the number of destination rows to be written from the
+     * active source region.
+     */
+    private int getNumCopiedRows() {
+        return Math.min(dstHeight,
+                        (activeSrcHeight + subsampleY - 1)/subsampleY);
+    }
+
+    /**
+     * Copies the active source region of the raw image into the
+     * destination by indexing the data arrays directly if both use a
+     * <code>ComponentSampleModel</code> with the same data type, as do
+     * interleaved gray, RGB and RGBA images of 8 or 16 bits.
+     * Subsampling, band selection and bit depth adjustment are applied
+     * in the same pass.  Returns <code>false</code> without copying
+     * anything if the layouts are not supported.
+     */
+    private boolean copyComponentData(Raster src, WritableRaster dst) {
+        SampleModel srcSM = src.getSampleModel();
+        SampleModel dstSM = dst.getSampleModel();
+        if (!(srcSM instanceof ComponentSampleModel) ||
+            !(dstSM instanceof ComponentSampleModel)) {
+            return false;
+        }
+
+        int dataType = srcSM.getDataType();
+        int numBands = srcSM.getNumBands();
+        if (dataType != dstSM.getDataType() ||
+            numBands != dstSM.getNumBands()) {
+            return false;
+        }
+
+        // Bit depths are adjusted only for unsigned integral samples.
+        if (adjustBitDepths &&
+            dataType != DataBuffer.TYPE_BYTE &&
+            dataType != DataBuffer.TYPE_USHORT) {
+            return false;
+        }
+
+        Object[] srcData = new Object[numBands];
+        Object[] dstData = new Object[numBands];
+        int[] srcOffsets = new int[numBands];
+        int[] dstOffsets = new int[numBands];
+        for (int b = 0; b < numBands; b++) {
+            srcData[b] = getDataArray(src, b);
+            dstData[b] = getDataArray(dst, b);
+            if (srcData[b] == null || dstData[b] == null) {
+                return false;
+            }
+            srcOffsets[b] = getDataOffset(src, activeSrcMinX, activeSrcMinY, b);
+            dstOffsets[b] = getDataOffset(dst, dstMinX, dstMinY, b);
+        }
+
+        ComponentSampleModel srcCSM = (ComponentSampleModel)srcSM;
+        ComponentSampleModel dstCSM = (ComponentSampleModel)dstSM;
+        int srcPixelStride = srcCSM.getPixelStride()*subsampleX;
+        int dstPixelStride = dstCSM.getPixelStride();
+        int srcLineStride = srcCSM.getScanlineStride()*subsampleY;
+        int dstLineStride = dstCSM.getScanlineStride();
+        int numColumns = getNumCopiedColumns();
+        int numRows = getNumCopiedRows();
+
+        // Whole pixels may be copied as a single run per row if all
+        // bands are selected in the same order from identical layouts.
+        boolean isRunCopy =
+            !adjustBitDepths &&
+            srcPixelStride == numBands && dstPixelStride == numBands;
+        for (int b = 0; b < numBands && isRunCopy; b++) {
+            isRunCopy = srcData[b] == srcData[0] &&
+                dstData[b] == dstData[0] &&
+                srcOffsets[b] - srcOffsets[0] == b &&
+                dstOffsets[b] - dstOffsets[0] == b;
+        }
+
+        if (isRunCopy) {
+            int runLength = numColumns*numBands;
+            int srcOffset = srcOffsets[0];
+            int dstOffset = dstOffsets[0];
+            for (int j = 0; j < numRows; j++) {
+                System.arraycopy(srcData[0], srcOffset,
+                                 dstData[0], dstOffset, runLength);
+                srcOffset += srcLineStride;
+                dstOffset += dstLineStride;
+            }
+            return true;
+        }
+
+        for (int b = 0; b < numBands; b++) {
+            int[] table = adjustBitDepths ? bitDepthScale[b] : null;
+            int srcOffset = srcOffsets[b];
+            int dstOffset = dstOffsets[b];
+            for (int j = 0; j < numRows; j++) {
+                copySamples(srcData[b], srcOffset, srcPixelStride,
+                            dstData[b], dstOffset, dstPixelStride,
+                            numColumns, table);
+                srcOffset += srcLineStride;
+                dstOffset += dstLineStride;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the data array holding the given band of a raster which
+     * uses a <code>ComponentSampleModel</code>, or <code>null</code> if
+     * the type of its <code>DataBuffer</code> is not supported.
+     */
+    private static Object getDataArray(Raster ras, int band) {
+        ComponentSampleModel csm = (ComponentSampleModel)ras.getSampleModel();
+        int bank = csm.getBankIndices()[band];
+        DataBuffer db = ras.getDataBuffer();
+        if (db instanceof DataBufferByte) {
+            return ((DataBufferByte)db).getData(bank);
+        } else if (db instanceof DataBufferUShort) {
+            return ((DataBufferUShort)db).getData(bank);
+        } else if (db instanceof DataBufferShort) {
+            return ((DataBufferShort)db).getData(bank);
+        } else if (db instanceof DataBufferInt) {
+            return ((DataBufferInt)db).getData(bank);
+        } else if (db instanceof DataBufferFloat) {
+            return ((DataBufferFloat)db).getData(bank);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the index in its data array of the given sample of a
+     * raster which uses a <code>ComponentSampleModel</code>.
+     */
+    private static int getDataOffset(Raster ras, int x, int y, int band) {
+        ComponentSampleModel csm = (ComponentSampleModel)ras.getSampleModel();
+        int bank = csm.getBankIndices()[band];
+        return csm.getOffset(x - ras.getSampleModelTranslateX(),
+                             y - ras.getSampleModelTranslateY(),
+                             band) +
+            ras.getDataBuffer().getOffsets()[bank];
+    }
+
+    /**
+     * Copies <code>numSamples</code> samples between two data arrays of
+     * the same type with the given strides, mapping unsigned values
+     * through <code>table</code> if it is non-<code>null</code>.
+     */
+    private static void copySamples(Object src, int srcOffset, int srcStride,
+                                    Object dst, int dstOffset, int dstStride,
+                                    int numSamples, int[] table) {
+        if (srcStride == 1 && dstStride == 1 && table == null) {
+            System.arraycopy(src, srcOffset, dst, dstOffset, numSamples);
+        } else if (src instanceof byte[]) {
+            byte[] s = (byte[])src;
+            byte[] d = (byte[])dst;
+            if (table == null) {
+                for (int i = 0; i < numSamples; i++) {
+                    d[dstOffset] = s[srcOffset];
+                    srcOffset += srcStride;
+                    dstOffset += dstStride;
+                }
+            } else {
+                for (int i = 0; i < numSamples; i++) {
+                    d[dstOffset] = (byte)table[s[srcOffset] & 0xff];
+                    srcOffset += srcStride;
+                    dstOffset += dstStride;
+                }
+            }
+        } else if (src instanceof short[]) {
+            short[] s = (short[])src;
+            short[] d = (short[])dst;
+            if (table == null) {
+                for (int i = 0; i < numSamples; i++) {
+                    d[dstOffset] = s[srcOffset];
+                    srcOffset += srcStride;
+                    dstOffset += dstStride;
+                }
+            } else {
+                for (int i = 0; i < numSamples; i++) {
+                    d[dstOffset] = (short)table[s[srcOffset] & 0xffff];
+                    srcOffset += srcStride;
+                    dstOffset += dstStride;
+                }
+            }
+        } else if (src instanceof int[]) {
+            int[] s = (int[])src;
+            int[] d = (int[])dst;
+            for (int i = 0; i < numSamples; i++) {
+                d[dstOffset] = s[srcOffset];
+                srcOffset += srcStride;
+                dstOffset += dstStride;
+            }
+        } else {
+            float[] s = (float[])src;
+            float[] d = (float[])dst;
+            for (int i = 0; i < numSamples; i++) {
+                d[dstOffset] = s[srcOffset];
+                srcOffset += srcStride;
+                dstOffset += dstStride;
+            }
+        }
+    }
+
+    /**
+     * Copies the active source region of a bilevel raw image into a
+     * bilevel destination bit by bit, applying any subsampling.
+     * Returns <code>false</code> without copying anything unless both
+     * rasters store one bit per pixel in a byte array.
+     */
+    private boolean copyBilevelData(Raster src, WritableRaster dst) {
+        if (adjustBitDepths ||
+            !(src.getSampleModel() instanceof MultiPixelPackedSampleModel) ||
+            !(dst.getSampleModel() instanceof MultiPixelPackedSampleModel) ||
+            !(src.getDataBuffer() instanceof DataBufferByte) ||
+            !(dst.getDataBuffer() instanceof DataBufferByte)) {
+            return false;
+        }
+
+        MultiPixelPackedSampleModel srcSM =
+            (MultiPixelPackedSampleModel)src.getSampleModel();
+        MultiPixelPackedSampleModel dstSM =
+            (MultiPixelPackedSampleModel)dst.getSampleModel();
+        if (srcSM.getPixelBitStride() != 1 ||
+            dstSM.getPixelBitStride() != 1) {
+            return false;
+        }
+
+        byte[] srcData = ((DataBufferByte)src.getDataBuffer()).getData();
+        byte[] dstData = ((DataBufferByte)dst.getDataBuffer()).getData();
+        int srcLineBits = srcSM.getScanlineStride()*8*subsampleY;
+        int dstLineBits = dstSM.getScanlineStride()*8;
+        int srcRowBit = getBitOffset(src, activeSrcMinX, activeSrcMinY);
+        int dstRowBit = getBitOffset(dst, dstMinX, dstMinY);
+        int numColumns = getNumCopiedColumns();
+        int numRows = getNumCopiedRows();
+
+        for (int j = 0; j < numRows; j++) {
+            copyBits(srcData, srcRowBit, subsampleX,
+                     dstData, dstRowBit, numColumns);
+            srcRowBit += srcLineBits;
+            dstRowBit += dstLineBits;
+        }
+
+        return true;
+    }
+
+    /**
+     * Copies <code>numBits</code> bits into consecutive bit positions
+     * of <code>dst</code> from every <code>srcStride</code>th bit of
+     * <code>src</code>.  Bits are numbered from the most significant
+     * bit of each byte.  Unless subsampling, whole bytes are assembled
+     * once the destination position is byte aligned.
+     */
+    private static void copyBits(byte[] src, int srcBit, int srcStride,
+                                 byte[] dst, int dstBit, int numBits) {
+        while (numBits > 0) {
+            if (srcStride == 1 && (dstBit & 7) == 0 && numBits >= 8) {
+                int dstIndex = dstBit >> 3;
+                int numBytes = numBits >> 3;
+                int shift = srcBit & 7;
+                int srcIndex = srcBit >> 3;
+                if (shift == 0) {
+                    System.arraycopy(src, srcIndex, dst, dstIndex, numBytes);
+                } else {
+                    for (int i = 0; i < numBytes; i++, srcIndex++) {
+                        dst[dstIndex + i] =
+                            (byte)((src[srcIndex] << shift) |
+                                   ((src[srcIndex + 1] & 0xff) >>
+                                    (8 - shift)));
+                    }
+                }
+                srcBit += numBytes*8;
+                dstBit += numBytes*8;
+                numBits -= numBytes*8;
+                continue;
+            }
+
+            int mask = 0x80 >> (dstBit & 7);
+            if ((src[srcBit >> 3] & (0x80 >> (srcBit & 7))) != 0) {
+                dst[dstBit >> 3] |= mask;
+            } else {
+                dst[dstBit >> 3] &= ~mask;
+            }
+            srcBit += srcStride;
+            dstBit++;
+            numBits--;
+        }
+    }
+
+    /**
+     * Returns the position in bits within its byte array of the given
+     * pixel of a raster with one bit per pixel.
+     */
+    private static int getBitOffset(Raster ras, int x, int y) {
+        MultiPixelPackedSampleModel sm =
+            (MultiPixelPackedSampleModel)ras.getSampleModel();
+        int sx = x - ras.getSampleModelTranslateX();
+        int sy = y - ras.getSampleModelTranslateY();
+        return (sm.getOffset(sx, sy) + ras.getDataBuffer().getOffset())*8 +
+            sm.getBitOffset(sx);
+    }
 }
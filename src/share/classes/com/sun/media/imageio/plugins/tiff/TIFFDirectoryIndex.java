@@ -0,0 +1,416 @@
+/*
+ * $RCSfile: TIFFDirectoryIndex.java,v $
+ *
+ * 
+ * Copyright (c) 2005 Sun Microsystems, Inc. All  Rights Reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 
+ * 
+ * - Redistribution of source code must retain the above copyright 
+ *   notice, this  list of conditions and the following disclaimer.
+ * 
+ * - Redistribution in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in 
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ * 
+ * Neither the name of Sun Microsystems, Inc. or the names of 
+ * contributors may be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * This software is provided "AS IS," without a warranty of any 
+ * kind. ALL EXPRESS OR IMPLIED CONDITIONS, REPRESENTATIONS AND 
+ * WARRANTIES, INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE OR NON-INFRINGEMENT, ARE HEREBY
+ * EXCLUDED. SUN MIDROSYSTEMS, INC. ("SUN") AND ITS LICENSORS SHALL 
+ * NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY LICENSEE AS A RESULT OF 
+ * USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE OR ITS
+ * DERIVATIVES. IN NO EVENT WILL SUN OR ITS LICENSORS BE LIABLE FOR 
+ * ANY LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT, INDIRECT, SPECIAL,
+ * CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES, HOWEVER CAUSED AND
+ * REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT OF THE USE OF OR
+ * INABILITY TO USE THIS SOFTWARE, EVEN IF SUN HAS BEEN ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGES. 
+ * 
+ * You acknowledge that this software is not designed or intended for 
+ * use in the design, construction, operation or maintenance of any 
+ * nuclear facility. 
+ *
+ * $Revision: 1.1 $
+ * $Date: 2026-10-18 00:00:00 $
+ * $State: Exp $
+ */
+package com.sun.media.imageio.plugins.tiff;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteOrder;
+import java.util.HashSet;
+import java.util.Set;
+import javax.imageio.IIOException;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * An index of the stream positions of the Image File Directories (IFDs)
+ * of a TIFF stream.  The TIFF reader normally locates the IFD of an image
+ * by following the chain of IFDs from the header, reading each one in
+ * turn; when an index is supplied to the reader by means of
+ * <code>TIFFImageReader.setDirectoryIndex()</code> the reader instead
+ * seeks directly to the IFD of the requested image.
+ *
+ * <p> An index may be created by scanning a stream, optionally on a
+ * background thread, may be obtained from a reader which has already
+ * located the IFDs by means of
+ * <code>TIFFImageReader.getDirectoryIndex()</code>, or may be constructed
+ * from positions known to the application.  An index may be saved, for
+ * example to a file alongside the TIFF file, by means of the
+ * <code>writeTo</code> method and restored by means of the
+ * <code>readFrom</code> method.  As is the case for the reader, the
+ * positions are those within the stream in which the TIFF header was
+ * found at the position at which the index was created.</p>
+ *
+ * <p> Instances may be shared by any number of readers.  While an index
+ * is being built on a background thread the positions already found may
+ * be used; the remainder are located as usual.</p>
+ */
+public class TIFFDirectoryIndex {
+
+    // Identifies the serialized form of an index.
+    private static final int MAGIC = 0x54494458; // "TIDX"
+
+    private static final int VERSION = 1;
+
+    // Stream positions of the IFDs found so far.
+    private long[] offsets;
+
+    // The number of valid entries in 'offsets'.
+    private int numDirectories = 0;
+
+    // Whether all IFDs in the chain have been found.
+    private boolean isComplete = false;
+
+    // Exception which terminated background building, or null.
+    private IOException exception = null;
+
+    private TIFFDirectoryIndex(int capacity) {
+        offsets = new long[Math.max(capacity, 16)];
+    }
+
+    /**
+     * Constructs a complete index from the positions of the IFDs of all
+     * images in the stream.
+     *
+     * @param ifdOffsets the stream positions of the IFDs in image order.
+     *
+     * @throws IllegalArgumentException if <code>ifdOffsets</code> is
+     * <code>null</code> or contains a value which is not positive.
+     */
+    public TIFFDirectoryIndex(long[] ifdOffsets) {
+        if (ifdOffsets == null) {
+            throw new IllegalArgumentException("ifdOffsets == null!");
+        }
+        for (int i = 0; i < ifdOffsets.length; i++) {
+            if (ifdOffsets[i] <= 0) {
+                throw new IllegalArgumentException("ifdOffsets[" + i +
+                                                   "] <= 0!");
+            }
+        }
+        this.offsets = (long[])ifdOffsets.clone();
+        this.numDirectories = ifdOffsets.length;
+        this.isComplete = true;
+    }
+
+    /**
+     * Creates an index of the IFDs of a TIFF stream.  The stream must be
+     * positioned at the TIFF header; its position is restored on return.
+     * If <code>inBackground</code> is <code>true</code> the stream is
+     * scanned by a daemon thread and this method returns immediately.  In
+     * this case the stream must not otherwise be used until
+     * <code>isComplete()</code> returns <code>true</code> or
+     * <code>waitForCompletion()</code> returns.
+     *
+     * @param stream the stream to be scanned.
+     * @param inBackground whether to scan the stream on a new thread.
+     *
+     * @return the index, which may be incomplete if
+     * <code>inBackground</code> is <code>true</code>.
+     *
+     * @throws IllegalArgumentException if <code>stream</code> is
+     * <code>null</code>.
+     * @throws IOException if <code>inBackground</code> is
+     * <code>false</code> and an error occurs reading the stream.
+     */
+    public static TIFFDirectoryIndex createIndex(final ImageInputStream stream,
+                                                 boolean inBackground)
+        throws IOException {
+        if (stream == null) {
+            throw new IllegalArgumentException("stream == null!");
+        }
+
+        final TIFFDirectoryIndex index = new TIFFDirectoryIndex(16);
+        if (!inBackground) {
+            index.scan(stream);
+            index.complete();
+            return index;
+        }
+
+        Thread t = new Thread("TIFFDirectoryIndex") {
+                public void run() {
+                    try {
+                        index.scan(stream);
+                        index.complete();
+                    } catch (IOException e) {
+                        index.fail(e);
+                    }
+                }
+            };
+        t.setDaemon(true);
+        t.start();
+
+        return index;
+    }
+
+    // Follows the IFD chain from the header at the current position,
+    // recording the position of each IFD. The stream position is
+    // restored before returning.
+    private void scan(ImageInputStream stream) throws IOException {
+        ByteOrder oldByteOrder = stream.getByteOrder();
+        stream.mark();
+        try {
+            int byteOrder = stream.readUnsignedShort();
+            if (byteOrder == 0x4d4d) {
+                stream.setByteOrder(ByteOrder.BIG_ENDIAN);
+            } else if (byteOrder == 0x4949) {
+                stream.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+            } else {
+                throw new IIOException("Illegal byte order");
+            }
+
+            int magic = stream.readUnsignedShort();
+            boolean isBigTIFF = magic == 43;
+            if (isBigTIFF) {
+                stream.skipBytes(4); // Offset size and reserved field
+            } else if (magic != 42) {
+                throw new IIOException("Illegal magic number");
+            }
+
+            // Guard against IFD chains which loop.
+            Set visited = new HashSet();
+
+            long offset = isBigTIFF ?
+                stream.readLong() : stream.readUnsignedInt();
+            while (offset > 0 && visited.add(new Long(offset))) {
+                add(offset);
+
+                stream.seek(offset);
+                try {
+                    if (isBigTIFF) {
+                        long count = stream.readLong();
+                        stream.seek(stream.getStreamPosition() + 20*count);
+                        offset = stream.readLong();
+                    } else {
+                        int count = stream.readUnsignedShort();
+                        stream.skipBytes(12*count);
+                        offset = stream.readUnsignedInt();
+                    }
+                } catch (EOFException e) {
+                    // A truncated final IFD ends the chain.
+                    offset = 0;
+                }
+            }
+        } finally {
+            stream.reset();
+            stream.setByteOrder(oldByteOrder);
+        }
+    }
+
+    private synchronized void add(long offset) {
+        if (numDirectories == offsets.length) {
+            long[] newOffsets = new long[2*offsets.length];
+            System.arraycopy(offsets, 0, newOffsets, 0, numDirectories);
+            offsets = newOffsets;
+        }
+        offsets[numDirectories++] = offset;
+    }
+
+    private synchronized void complete() {
+        isComplete = true;
+        notifyAll();
+    }
+
+    private synchronized void fail(IOException e) {
+        exception = e;
+        notifyAll();
+    }
+
+    /**
+     * Returns the number of IFDs whose positions are known.  If the index
+     * is complete this is the number of images in the stream.
+     *
+     * @return the number of IFDs in the index.
+     */
+    public synchronized int getNumDirectories() {
+        return numDirectories;
+    }
+
+    /**
+     * Returns the stream position of the IFD of an image.
+     *
+     * @param imageIndex the index of the image.
+     *
+     * @return the position of the IFD.
+     *
+     * @throws IndexOutOfBoundsException if <code>imageIndex</code> is
+     * negative or not less than <code>getNumDirectories()</code>.
+     */
+    public synchronized long getDirectoryOffset(int imageIndex) {
+        if (imageIndex < 0 || imageIndex >= numDirectories) {
+            throw new IndexOutOfBoundsException("imageIndex out of bounds!");
+        }
+        return offsets[imageIndex];
+    }
+
+    /**
+     * Returns whether the positions of all IFDs in the stream are known.
+     *
+     * @return whether the index is complete.
+     */
+    public synchronized boolean isComplete() {
+        return isComplete;
+    }
+
+    /**
+     * Waits until an index being built on a background thread is
+     * complete.  Returns immediately if the index is complete.
+     *
+     * @throws IOException if building the index failed.
+     * @throws InterruptedException if the calling thread is interrupted.
+     */
+    public synchronized void waitForCompletion()
+        throws IOException, InterruptedException {
+        while (!isComplete && exception == null) {
+            wait();
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    /**
+     * Writes the index in a compact binary form.  Each position is stored
+     * as a variable length difference from the previous one.  The output
+     * stream is neither flushed nor closed.
+     *
+     * @param out the stream to which the index is written.
+     *
+     * @throws IllegalArgumentException if <code>out</code> is
+     * <code>null</code>.
+     * @throws IOException if an error occurs writing the stream.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        if (out == null) {
+            throw new IllegalArgumentException("out == null!");
+        }
+
+        long[] values;
+        boolean complete;
+        synchronized (this) {
+            values = new long[numDirectories];
+            System.arraycopy(offsets, 0, values, 0, numDirectories);
+            complete = isComplete;
+        }
+
+        DataOutputStream dos = new DataOutputStream(out);
+        dos.writeInt(MAGIC);
+        dos.writeByte(VERSION);
+        dos.writeBoolean(complete);
+        writeVarLong(dos, values.length);
+        long previous = 0L;
+        for (int i = 0; i < values.length; i++) {
+            long delta = values[i] - previous;
+            // Zig-zag encode so that small negative differences are short.
+            writeVarLong(dos, (delta << 1) ^ (delta >> 63));
+            previous = values[i];
+        }
+        dos.flush();
+    }
+
+    /**
+     * Reads an index written by <code>writeTo</code>.  The input stream
+     * is not closed.
+     *
+     * @param in the stream from which the index is read.
+     *
+     * @return the index.
+     *
+     * @throws IllegalArgumentException if <code>in</code> is
+     * <code>null</code>.
+     * @throws IOException if an error occurs reading the stream or the
+     * data are not an index.
+     */
+    public static TIFFDirectoryIndex readFrom(InputStream in)
+        throws IOException {
+        if (in == null) {
+            throw new IllegalArgumentException("in == null!");
+        }
+
+        DataInputStream dis = new DataInputStream(in);
+        if (dis.readInt() != MAGIC) {
+            throw new IIOException("Not a TIFF directory index!");
+        }
+        int version = dis.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IIOException("Unsupported index version " + version);
+        }
+        boolean complete = dis.readBoolean();
+        long count = readVarLong(dis);
+        if (count < 0 || count > Integer.MAX_VALUE) {
+            throw new IIOException("Bad index count " + count);
+        }
+
+        TIFFDirectoryIndex index =
+            new TIFFDirectoryIndex((int)Math.min(count, 1024));
+        long previous = 0L;
+        for (long i = 0; i < count; i++) {
+            long zigzag = readVarLong(dis);
+            long offset = previous + ((zigzag >>> 1) ^ -(zigzag & 1));
+            if (offset <= 0) {
+                throw new IIOException("Bad IFD offset in index");
+            }
+            index.add(offset);
+            previous = offset;
+        }
+        if (complete) {
+            index.complete();
+        }
+
+        return index;
+    }
+
+    private static void writeVarLong(DataOutputStream out, long value)
+        throws IOException {
+        while ((value & ~0x7fL) != 0) {
+            out.writeByte((int)((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int)value);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long)(b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IIOException("Bad variable length value in index");
+    }
+}
@@ -61,7 +61,8 @@ import com.sun.media.imageioimpl.plugins.tiff.TIFFFieldNode;
  * <p> A field in a TIFF Image File Directory (IFD) is defined as a
  * tag number accompanied by a sequence of values of identical data type.
  * TIFF 6.0 defines 12 data types; a 13th type <code>IFD</code> is
- * defined in TIFF Tech Note 1 of TIFF Specification Supplement 1. These
+ * defined in TIFF Tech Note 1 of TIFF Specification Supplement 1 and
+ * three 64 bit types are defined by the BigTIFF extension. These
  * TIFF data types are referred to by Java constants and mapped internally
  * onto Java language data types and type names as follows:
  *
@@ -279,6 +280,51 @@ import com.sun.media.imageioimpl.plugins.tiff.TIFFFieldNode;
  * </td>
  * </tr>
  *
+ * <tr>
+ * <td>
+ * <tt>LONG8</tt>
+ * </td>
+ * <td>
+ * {@link TIFFTag#TIFF_LONG8}
+ * </td>
+ * <td>
+ * <code>long</code>
+ * </td>
+ * <td>
+ * <code>"Long8"</code>
+ * </td>
+ * </tr>
+ *
+ * <tr>
+ * <td>
+ * <tt>SLONG8</tt>
+ * </td>
+ * <td>
+ * {@link TIFFTag#TIFF_SLONG8}
+ * </td>
+ * <td>
+ * <code>long</code>
+ * </td>
+ * <td>
+ * <code>"SLong8"</code>
+ * </td>
+ * </tr>
+ *
+ * <tr>
+ * <td>
+ * <tt>IFD8</tt>
+ * </td>
+ * <td>
+ * {@link TIFFTag#TIFF_IFD8}
+ * </td>
+ * <td>
+ * <code>long</code>
+ * </td>
+ * <td>
+ * <code>"IFD8"</code>
+ * </td>
+ * </tr>
+ *
  * </table>
  *
  * @see TIFFDirectory
@@ -290,14 +336,16 @@ public class TIFFField implements Comparable {
         null,
         "Byte", "Ascii", "Short", "Long", "Rational",
         "SByte", "Undefined", "SShort", "SLong", "SRational",
-        "Float", "Double", "IFDPointer"
+        "Float", "Double", "IFDPointer", null, null,
+        "Long8", "SLong8", "IFD8"
     };
 
     private static final boolean[] isIntegral = {
         false,
         true, false, true, true, false,
         true, true, true, true, false,
-        false, false, false
+        false, false, false, false, false,
+        true, true, false
     };
 
     /** The tag. */
@@ -383,6 +431,9 @@ public class TIFFField implements Comparable {
                     break;
                 case TIFFTag.TIFF_LONG:
                 case TIFFTag.TIFF_IFD_POINTER:
+                case TIFFTag.TIFF_LONG8:
+                case TIFFTag.TIFF_SLONG8:
+                case TIFFTag.TIFF_IFD8:
                     ((long[])data)[idx] =
                         (long)Long.parseLong(value);
                     break;
@@ -493,10 +544,18 @@ public class TIFFField implements Comparable {
                 data = odata[0];
             }
         } else {
-            int t = TIFFTag.MAX_DATATYPE;
+            // Prefer the classic TIFF types to the BigTIFF ones.
+            int t = TIFFTag.TIFF_IFD_POINTER;
             while(t >= TIFFTag.MIN_DATATYPE && !tag.isDataTypeOK(t)) {
                 t--;
             }
+            for(int t8 = TIFFTag.MAX_DATATYPE;
+                t < TIFFTag.MIN_DATATYPE && t8 >= TIFFTag.TIFF_LONG8;
+                t8--) {
+                if(tag.isDataTypeOK(t8)) {
+                    t = t8;
+                }
+            }
             type = t;
         }
 
@@ -548,7 +607,7 @@ public class TIFFField implements Comparable {
     public TIFFField(TIFFTag tag, int type, int count, Object data) {
         if(tag == null) {
             throw new IllegalArgumentException("tag == null!");
-        } else if(type < TIFFTag.MIN_DATATYPE || type > TIFFTag.MAX_DATATYPE) {
+        } else if(!TIFFTag.isValidDataType(type)) {
             throw new IllegalArgumentException("Unknown data type "+type);
         } else if(count < 0) {
             throw new IllegalArgumentException("count < 0!");
@@ -651,7 +710,8 @@ public class TIFFField implements Comparable {
      */
     public static String getTypeName(int dataType) {
         if (dataType < TIFFTag.MIN_DATATYPE ||
-            dataType > TIFFTag.MAX_DATATYPE) {
+            dataType > TIFFTag.MAX_DATATYPE ||
+            typeNames[dataType] == null) {
             throw new IllegalArgumentException("Unknown data type "+dataType);
         }
 
@@ -701,6 +761,9 @@ public class TIFFField implements Comparable {
             return new char[count];
         case TIFFTag.TIFF_LONG:
         case TIFFTag.TIFF_IFD_POINTER:
+        case TIFFTag.TIFF_LONG8:
+        case TIFFTag.TIFF_SLONG8:
+        case TIFFTag.TIFF_IFD8:
             return new long[count];
         case TIFFTag.TIFF_RATIONAL:
             return new long[count][2];
@@ -836,12 +899,15 @@ public class TIFFField implements Comparable {
     }
 
     /**
-     * Returns <code>TIFFTag.TIFF_LONG</code> or
-     * <code>TIFF_IFD_POINTER</code> data as an array of
-     * <code>long</code>s (signed 64-bit integers).
+     * Returns <code>TIFFTag.TIFF_LONG</code>,
+     * <code>TIFF_IFD_POINTER</code>, <code>TIFF_LONG8</code>,
+     * <code>TIFF_SLONG8</code>, or <code>TIFF_IFD8</code> data as an
+     * array of <code>long</code>s (signed 64-bit integers).
      *
      * @throws ClassCastException if the field is not of type
-     * <code>TIFF_LONG</code> or <code>TIFF_IFD_POINTER</code>.
+     * <code>TIFF_LONG</code>, <code>TIFF_IFD_POINTER</code>,
+     * <code>TIFF_LONG8</code>, <code>TIFF_SLONG8</code>, or
+     * <code>TIFF_IFD8</code>.
      */
     public long[] getAsLongs() {
         return (long[])data;
@@ -903,9 +969,10 @@ public class TIFFField implements Comparable {
      * it were a <code>TIFF_BYTE</code>.
      *
      * <p> Data in <code>TIFF_SLONG</code>, <code>TIFF_LONG</code>,
-     * <code>TIFF_FLOAT</code>, <code>TIFF_DOUBLE</code> or
-     * <code>TIFF_IFD_POINTER</code> format are simply cast to
-     * <code>int</code> and may suffer from truncation.
+     * <code>TIFF_FLOAT</code>, <code>TIFF_DOUBLE</code>,
+     * <code>TIFF_IFD_POINTER</code>, <code>TIFF_LONG8</code>,
+     * <code>TIFF_SLONG8</code>, or <code>TIFF_IFD8</code> format are
+     * simply cast to <code>int</code> and may suffer from truncation.
      *
      * <p> Data in <code>TIFF_SRATIONAL</code> or
      * <code>TIFF_RATIONAL</code> format are evaluated by dividing the
@@ -930,6 +997,8 @@ public class TIFFField implements Comparable {
         case TIFFTag.TIFF_SLONG:
             return ((int[])data)[index];
         case TIFFTag.TIFF_LONG: case TIFFTag.TIFF_IFD_POINTER:
+        case TIFFTag.TIFF_LONG8: case TIFFTag.TIFF_SLONG8:
+        case TIFFTag.TIFF_IFD8:
             return (int)((long[])data)[index];
         case TIFFTag.TIFF_FLOAT:
             return (int)((float[])data)[index];
@@ -975,6 +1044,8 @@ public class TIFFField implements Comparable {
         case TIFFTag.TIFF_SLONG:
             return ((int[])data)[index];
         case TIFFTag.TIFF_LONG: case TIFFTag.TIFF_IFD_POINTER:
+        case TIFFTag.TIFF_LONG8: case TIFFTag.TIFF_SLONG8:
+        case TIFFTag.TIFF_IFD8:
             return ((long[])data)[index];
         case TIFFTag.TIFF_SRATIONAL:
             int[] ivalue = getAsSRational(index);
@@ -1000,9 +1071,10 @@ public class TIFFField implements Comparable {
      * [-128, 127].
      *
      * <p> Data in <code>TIFF_SLONG</code>, <code>TIFF_LONG</code>,
-     * <code>TIFF_DOUBLE</code>, or <code>TIFF_IFD_POINTER</code> format are
-     * simply cast to <code>float</code> and may suffer from
-     * truncation.
+     * <code>TIFF_DOUBLE</code>, <code>TIFF_IFD_POINTER</code>,
+     * <code>TIFF_LONG8</code>, <code>TIFF_SLONG8</code>, or
+     * <code>TIFF_IFD8</code> format are simply cast to <code>float</code>
+     * and may suffer from truncation.
      *
      * <p> Data in <code>TIFF_SRATIONAL</code> or
      * <code>TIFF_RATIONAL</code> format are evaluated by dividing the
@@ -1026,6 +1098,8 @@ public class TIFFField implements Comparable {
         case TIFFTag.TIFF_SLONG:
             return ((int[])data)[index];
         case TIFFTag.TIFF_LONG: case TIFFTag.TIFF_IFD_POINTER:
+        case TIFFTag.TIFF_LONG8: case TIFFTag.TIFF_SLONG8:
+        case TIFFTag.TIFF_IFD8:
             return ((long[])data)[index];
         case TIFFTag.TIFF_FLOAT:
             return ((float[])data)[index];
@@ -1075,6 +1149,8 @@ public class TIFFField implements Comparable {
         case TIFFTag.TIFF_SLONG:
             return ((int[])data)[index];
         case TIFFTag.TIFF_LONG: case TIFFTag.TIFF_IFD_POINTER:
+        case TIFFTag.TIFF_LONG8: case TIFFTag.TIFF_SLONG8:
+        case TIFFTag.TIFF_IFD8:
             return ((long[])data)[index];
         case TIFFTag.TIFF_FLOAT:
             return ((float[])data)[index];
@@ -1153,6 +1229,8 @@ public class TIFFField implements Comparable {
         case TIFFTag.TIFF_SLONG:
             return Integer.toString(((int[])data)[index]);
         case TIFFTag.TIFF_LONG: case TIFFTag.TIFF_IFD_POINTER:
+        case TIFFTag.TIFF_LONG8: case TIFFTag.TIFF_SLONG8:
+        case TIFFTag.TIFF_IFD8:
             return Long.toString(((long[])data)[index]);
         case TIFFTag.TIFF_FLOAT:
             return Float.toString(((float[])data)[index]);
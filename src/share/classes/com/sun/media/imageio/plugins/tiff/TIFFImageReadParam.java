@@ -77,6 +77,16 @@ import javax.imageio.ImageReadParam;
  * to the <code>ImageReadParam</code> being used.  The reader's
  * <code>read</code> method may be called with the
  * <code>ImageReadParam</code> set.
+ *
+ * <p> Strips and tiles are normally decoded one at a time on the thread
+ * which invokes the reader.  Decoding of multiple strips or tiles may be
+ * spread across several threads by means of the
+ * <code>setNumDecodingThreads</code> method.  When strips or tiles are
+ * decoded on a single thread their compressed data may instead be read
+ * ahead of the decoder on a background thread by means of the
+ * <code>setPrefetchBufferSize</code> method, and the data of several
+ * strips or tiles may be obtained with a single read by means of the
+ * <code>setMaxCoalescedReadSize</code> method.
  */
 public class TIFFImageReadParam extends ImageReadParam {
 
@@ -86,6 +96,14 @@ public class TIFFImageReadParam extends ImageReadParam {
 
     TIFFColorConverter colorConverter = null;
 
+    int numDecodingThreads = 1;
+
+    int prefetchBufferSize = 0;
+
+    int maxCoalescedReadSize = 0;
+
+    int maxCoalescingGap = 0;
+
     /**
      * Constructs a <code>TIFFImageReadParam</code>.  Tags defined by
      * the <code>TIFFTagSet</code>s <code>BaselineTIFFTagSet</code>,
@@ -205,4 +223,169 @@ public class TIFFImageReadParam extends ImageReadParam {
     public TIFFColorConverter getColorConverter() {
         return this.colorConverter;
     }
+
+    /**
+     * Sets the number of threads to be used to decode the strips or
+     * tiles of an image.  If the value is greater than 1, the reader
+     * <code>read</code> method will read the compressed data of each
+     * strip or tile from the stream and distribute the decompression
+     * across the given number of worker threads, each with its own
+     * decompressor.  Each strip or tile is written into a disjoint region
+     * of the destination so no further synchronization is required.
+     * Progress and update notifications are still delivered on the
+     * thread which invoked the reader, and an abort request stops the
+     * read once the strips or tiles already being decoded have completed.
+     *
+     * <p> Parallel decoding is used only when the reader chooses its own
+     * decompressor, i.e., if no <code>TIFFDecompressor</code> has been
+     * set, and the destination does not pack several pixels into each
+     * data element; otherwise the image is decoded sequentially.  The
+     * default value is 1.
+     *
+     * @param numDecodingThreads the number of decoding threads.
+     *
+     * @throws IllegalArgumentException if <code>numDecodingThreads</code>
+     * is less than 1.
+     *
+     * @see #getNumDecodingThreads
+     */
+    public void setNumDecodingThreads(int numDecodingThreads) {
+        if (numDecodingThreads < 1) {
+            throw new IllegalArgumentException("numDecodingThreads < 1!");
+        }
+        this.numDecodingThreads = numDecodingThreads;
+    }
+
+    /**
+     * Returns the number of threads to be used to decode the strips or
+     * tiles of an image.
+     *
+     * @return the number of decoding threads.
+     *
+     * @see #setNumDecodingThreads(int)
+     */
+    public int getNumDecodingThreads() {
+        return this.numDecodingThreads;
+    }
+
+    /**
+     * Sets the maximum number of bytes of compressed strip or tile data
+     * which the reader may read ahead of decoding.  If the value is
+     * positive and the strips or tiles of an image are decoded on a
+     * single thread, the reader <code>read</code> method determines
+     * the positions of all strips or tiles intersecting the source
+     * region and reads their data on a background thread while the
+     * preceding ones are being decoded.  Strips or tiles which are
+     * contiguous in the stream are read together.  This is of benefit
+     * principally when reading from a stream with high latency such as
+     * a file on a network file system.  Unless a maximum coalesced read
+     * size has been set, strips or tiles are combined into reads of at
+     * most <code>prefetchBufferSize</code> bytes.  The default value is
+     * 0, which disables read-ahead.
+     *
+     * @param prefetchBufferSize the maximum number of bytes read ahead,
+     * or 0 to disable read-ahead.
+     *
+     * @throws IllegalArgumentException if <code>prefetchBufferSize</code>
+     * is negative.
+     *
+     * @see #getPrefetchBufferSize
+     */
+    public void setPrefetchBufferSize(int prefetchBufferSize) {
+        if (prefetchBufferSize < 0) {
+            throw new IllegalArgumentException("prefetchBufferSize < 0!");
+        }
+        this.prefetchBufferSize = prefetchBufferSize;
+    }
+
+    /**
+     * Returns the maximum number of bytes of compressed strip or tile
+     * data which the reader may read ahead of decoding.
+     *
+     * @return the read-ahead limit, or 0 if read-ahead is disabled.
+     *
+     * @see #setPrefetchBufferSize(int)
+     */
+    public int getPrefetchBufferSize() {
+        return this.prefetchBufferSize;
+    }
+
+    /**
+     * Sets the maximum number of bytes of a single read which combines
+     * the compressed data of several strips or tiles.  If the value is
+     * positive and the strips or tiles of an image are decoded on a
+     * single thread, the reader <code>read</code> method sorts the
+     * strips or tiles intersecting the source region by position and
+     * reads each group of strips or tiles which are adjacent in the
+     * stream, or separated by no more than the maximum coalescing gap,
+     * with one seek and read instead of one per strip or tile.  The data
+     * of each read are held in memory until all of its strips or tiles
+     * have been decoded.  This reduces the number of requests made of
+     * devices or file systems for which each request is costly.  The
+     * default value is 0, which disables coalescing unless read-ahead
+     * has been enabled.
+     *
+     * @param maxCoalescedReadSize the maximum size in bytes of a
+     * combined read, or 0 to disable coalescing.
+     *
+     * @throws IllegalArgumentException if
+     * <code>maxCoalescedReadSize</code> is negative.
+     *
+     * @see #getMaxCoalescedReadSize
+     * @see #setMaxCoalescingGap(int)
+     * @see #setPrefetchBufferSize(int)
+     */
+    public void setMaxCoalescedReadSize(int maxCoalescedReadSize) {
+        if (maxCoalescedReadSize < 0) {
+            throw new IllegalArgumentException("maxCoalescedReadSize < 0!");
+        }
+        this.maxCoalescedReadSize = maxCoalescedReadSize;
+    }
+
+    /**
+     * Returns the maximum number of bytes of a single read which
+     * combines the compressed data of several strips or tiles.
+     *
+     * @return the maximum size of a combined read, or 0 if coalescing
+     * is disabled.
+     *
+     * @see #setMaxCoalescedReadSize(int)
+     */
+    public int getMaxCoalescedReadSize() {
+        return this.maxCoalescedReadSize;
+    }
+
+    /**
+     * Sets the maximum number of bytes separating two strips or tiles
+     * whose data may be obtained with a single read.  The bytes between
+     * them are read and discarded.  The default value is 0, i.e., only
+     * strips or tiles which are adjacent in the stream are combined.
+     *
+     * @param maxCoalescingGap the maximum number of unused bytes read
+     * between two strips or tiles.
+     *
+     * @throws IllegalArgumentException if <code>maxCoalescingGap</code>
+     * is negative.
+     *
+     * @see #getMaxCoalescingGap
+     * @see #setMaxCoalescedReadSize(int)
+     */
+    public void setMaxCoalescingGap(int maxCoalescingGap) {
+        if (maxCoalescingGap < 0) {
+            throw new IllegalArgumentException("maxCoalescingGap < 0!");
+        }
+        this.maxCoalescingGap = maxCoalescingGap;
+    }
+
+    /**
+     * Returns the maximum number of bytes separating two strips or tiles
+     * whose data may be obtained with a single read.
+     *
+     * @return the maximum coalescing gap.
+     *
+     * @see #setMaxCoalescingGap(int)
+     */
+    public int getMaxCoalescingGap() {
+        return this.maxCoalescingGap;
+    }
 }
@@ -160,6 +160,17 @@ import com.sun.media.imageioimpl.plugins.tiff.TIFFImageWriter;
  * compression is being used and strips are being written, the number of
  * rows per strip is rounded to a multiple of 8 times the maximum MCU over
  * both dimensions.</p>
+ *
+ * <p> A classic TIFF stream is limited to 4 GB by its 32 bit offsets.
+ * When a new stream is begun the writer emits a BigTIFF stream, which
+ * uses 64 bit offsets, if the <code>setForceToBigTIFF</code> method has
+ * been invoked with a value of <code>true</code> or if the uncompressed
+ * size of the image would exceed the classic limit.</p>
+ *
+ * <p> Strips and tiles are normally compressed one at a time on the
+ * thread which invokes the writer.  Compression of multiple strips or
+ * tiles may be spread across several threads by means of the
+ * <code>setNumEncodingThreads</code> method.</p>
  */
 public class TIFFImageWriteParam extends ImageWriteParam {
 
@@ -168,6 +179,10 @@ public class TIFFImageWriteParam extends ImageWriteParam {
     TIFFColorConverter colorConverter = null;
     int photometricInterpretation;
 
+    boolean forceToBigTIFF = false;
+
+    int numEncodingThreads = 1;
+
     private boolean appendedCompressionType = false;
 
     /**
@@ -374,4 +389,81 @@ public class TIFFImageWriteParam extends ImageWriteParam {
     public void unsetColorConverter() {
         this.colorConverter = null;
     }
+
+    /**
+     * Sets whether a BigTIFF stream is to be written regardless of the
+     * size of the image.  This setting applies only when the writer
+     * begins a new stream, i.e., writes the header; images appended to
+     * an existing stream are written in the form given by its header.
+     * If <code>false</code>, which is the default, the writer will
+     * switch to BigTIFF only if the uncompressed image data and its
+     * IFD would not fit within the 4 GB limit of a classic TIFF stream.
+     *
+     * @param forceToBigTIFF whether to always write a BigTIFF stream.
+     *
+     * @see #getForceToBigTIFF
+     */
+    public void setForceToBigTIFF(boolean forceToBigTIFF) {
+        this.forceToBigTIFF = forceToBigTIFF;
+    }
+
+    /**
+     * Returns whether a BigTIFF stream is to be written regardless of
+     * the size of the image.
+     *
+     * @return whether to always write a BigTIFF stream.
+     *
+     * @see #setForceToBigTIFF(boolean)
+     */
+    public boolean getForceToBigTIFF() {
+        return forceToBigTIFF;
+    }
+
+    /**
+     * Sets the number of threads to be used to encode the strips or
+     * tiles of an image.  If the value is greater than 1, the pixels of
+     * each strip or tile are fetched from the source image and compressed
+     * into memory by one of the given number of worker threads, each with
+     * its own compressor, while the thread which invoked the writer
+     * appends the compressed data to the stream in order and fills in
+     * the <i>StripOffsets</i> or <i>TileOffsets</i> and
+     * <i>StripByteCounts</i> or <i>TileByteCounts</i> fields.  At most
+     * twice as many strips or tiles as there are threads are held in
+     * memory at any one time.  Progress notifications are delivered on
+     * the invoking thread and an abort request stops the write once
+     * the strips or tiles already being encoded have completed.
+     *
+     * <p> Parallel encoding is used only when the writer chooses its own
+     * compressor, i.e., if no <code>TIFFCompressor</code> has been set,
+     * and the compression type is one of "LZW", "ZLib", "Deflate",
+     * "PackBits", or no compression; otherwise the image is encoded
+     * sequentially.  The source image must allow its data to be
+     * obtained concurrently from several threads.  The default value
+     * is 1.
+     *
+     * @param numEncodingThreads the number of encoding threads.
+     *
+     * @throws IllegalArgumentException if <code>numEncodingThreads</code>
+     * is less than 1.
+     *
+     * @see #getNumEncodingThreads
+     */
+    public void setNumEncodingThreads(int numEncodingThreads) {
+        if (numEncodingThreads < 1) {
+            throw new IllegalArgumentException("numEncodingThreads < 1!");
+        }
+        this.numEncodingThreads = numEncodingThreads;
+    }
+
+    /**
+     * Returns the number of threads to be used to encode the strips or
+     * tiles of an image.
+     *
+     * @return the number of encoding threads.
+     *
+     * @see #setNumEncodingThreads(int)
+     */
+    public int getNumEncodingThreads() {
+        return numEncodingThreads;
+    }
 }
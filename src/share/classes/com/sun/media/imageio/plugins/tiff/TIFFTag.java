@@ -110,6 +110,24 @@ public class TIFFTag {
      */
     public static final int TIFF_IFD_POINTER = 13;
 
+    /**
+     * Flag for 64 bit unsigned integers defined by the BigTIFF
+     * extension of the TIFF format.
+     */
+    public static final int TIFF_LONG8       = 16;
+
+    /**
+     * Flag for 64 bit signed integers defined by the BigTIFF
+     * extension of the TIFF format.
+     */
+    public static final int TIFF_SLONG8      = 17;
+
+    /**
+     * Flag for 64 bit IFD pointers defined by the BigTIFF
+     * extension of the TIFF format.
+     */
+    public static final int TIFF_IFD8        = 18;
+
     /**
      * The numerically smallest constant representing a TIFF data type.
      */
@@ -117,8 +135,9 @@ public class TIFFTag {
 
     /**
      * The numerically largest constant representing a TIFF data type.
+     * The values 14 and 15 do not represent a data type.
      */
-    public static final int MAX_DATATYPE = TIFF_IFD_POINTER;
+    public static final int MAX_DATATYPE = TIFF_IFD8;
 
     private static final int[] sizeOfType = {
         0, //  0 = n/a
@@ -135,6 +154,11 @@ public class TIFFTag {
         4, // 11 = float
         8, // 12 = double 
         4, // 13 = IFD_POINTER
+        0, // 14 = n/a
+        0, // 15 = n/a
+        8, // 16 = long8
+        8, // 17 = slong8
+        8, // 18 = IFD8
     };
 
     // Other tags
@@ -258,17 +282,23 @@ public class TIFFTag {
      * @return the number of bytes used to store the given data type.
      *
      * @throws IllegalArgumentException if <code>datatype</code> is
-     * less than <code>MIN_DATATYPE</code> or greater than
-     * <code>MAX_DATATYPE</code>.
+     * not one of the <code>TIFF_*</code> data type constants.
      */
     public static int getSizeOfType(int dataType) {
-        if (dataType < MIN_DATATYPE ||dataType > MAX_DATATYPE) {
+        if (!isValidDataType(dataType)) {
             throw new IllegalArgumentException("dataType out of range!");
         }
             
         return sizeOfType[dataType];
     }
 
+    // Returns whether dataType is one of the TIFF_* data type constants,
+    // i.e., is in range and is not one of the unassigned values 14 and 15.
+    static boolean isValidDataType(int dataType) {
+        return dataType >= MIN_DATATYPE && dataType <= MAX_DATATYPE &&
+            sizeOfType[dataType] != 0;
+    }
+
     /**
      * Returns the name of the tag, as it will appear in image metadata.
      *
@@ -315,11 +345,10 @@ public class TIFFTag {
      * data type may be used with this tag.
      *
      * @throws IllegalArgumentException if <code>datatype</code> is
-     * less than <code>MIN_DATATYPE</code> or greater than
-     * <code>MAX_DATATYPE</code>.
+     * not one of the <code>TIFF_*</code> data type constants.
      */
     public boolean isDataTypeOK(int dataType) {
-        if (dataType < MIN_DATATYPE || dataType > MAX_DATATYPE) {
+        if (!isValidDataType(dataType)) {
             throw new IllegalArgumentException("datatype not in range!");
         }
         return (dataTypes & (1 << dataType)) != 0;
@@ -338,8 +367,9 @@ public class TIFFTag {
      * Returns <code>true</code> if this tag is used to point to an IFD
      * structure containing additional tags.  This condition will be
      * satisfied if and only if either
-     * <code>getTagSet()&nbsp;!=&nbsp;null</code> or
-     * <code>isDataTypeOK(TIFF_IFD_POINTER)&nbsp;==&nbsp;true</code>.
+     * <code>getTagSet()&nbsp;!=&nbsp;null</code>,
+     * <code>isDataTypeOK(TIFF_IFD_POINTER)&nbsp;==&nbsp;true</code>, or
+     * <code>isDataTypeOK(TIFF_IFD8)&nbsp;==&nbsp;true</code>.
      *
      * <p>Many TIFF extensions use this mechanism in order to limit the
      * number of new tags that may appear in the root IFD.</p>
@@ -347,7 +377,8 @@ public class TIFFTag {
      * @return <code>true</code> if this tag points to an IFD.
      */
     public boolean isIFDPointer() {
-        return tagSet != null || ((dataTypes & (1 << TIFF_IFD_POINTER)) != 0);
+        return tagSet != null ||
+            ((dataTypes & ((1 << TIFF_IFD_POINTER) | (1 << TIFF_IFD8))) != 0);
     }
 
     /**
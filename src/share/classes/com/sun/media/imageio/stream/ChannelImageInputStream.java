@@ -0,0 +1,289 @@
+/*
+ * $RCSfile: ChannelImageInputStream.java,v $
+ *
+ * 
+ * Copyright (c) 2005 Sun Microsystems, Inc. All  Rights Reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 
+ * 
+ * - Redistribution of source code must retain the above copyright 
+ *   notice, this  list of conditions and the following disclaimer.
+ * 
+ * - Redistribution in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in 
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ * 
+ * Neither the name of Sun Microsystems, Inc. or the names of 
+ * contributors may be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * This software is provided "AS IS," without a warranty of any 
+ * kind. ALL EXPRESS OR IMPLIED CONDITIONS, REPRESENTATIONS AND 
+ * WARRANTIES, INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE OR NON-INFRINGEMENT, ARE HEREBY
+ * EXCLUDED. SUN MIDROSYSTEMS, INC. ("SUN") AND ITS LICENSORS SHALL 
+ * NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY LICENSEE AS A RESULT OF 
+ * USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE OR ITS
+ * DERIVATIVES. IN NO EVENT WILL SUN OR ITS LICENSORS BE LIABLE FOR 
+ * ANY LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT, INDIRECT, SPECIAL,
+ * CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES, HOWEVER CAUSED AND
+ * REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT OF THE USE OF OR
+ * INABILITY TO USE THIS SOFTWARE, EVEN IF SUN HAS BEEN ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGES. 
+ * 
+ * You acknowledge that this software is not designed or intended for 
+ * use in the design, construction, operation or maintenance of any 
+ * nuclear facility. 
+ *
+ * $Revision: 1.1 $
+ * $Date: 2026-10-18 00:00:00 $
+ * $State: Exp $
+ */
+package com.sun.media.imageio.stream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.util.ArrayList;
+import javax.imageio.stream.ImageInputStreamImpl;
+
+/**
+ * A class which implements <code>ImageInputStream</code> using a
+ * <code>ReadableByteChannel</code> which is not a <code>FileChannel</code>
+ * as the data source, for example a channel reading from a socket or a
+ * pipe.  As such a channel may be read only sequentially, the data read
+ * from it are retained in memory in fixed-size blocks so that the stream
+ * may be repositioned.  Data are read from the channel directly into
+ * these blocks, and blocks lying entirely before the flushed position
+ * are discarded so that a reader which flushes the stream as it
+ * proceeds requires a bounded amount of memory.
+ *
+ * <p>A maximum amount of retained data may also be specified.  If more
+ * data than this have been read from the channel beyond the flushed
+ * position, the flushed position is advanced automatically, but never
+ * beyond the current stream position.  Such a stream may be used to read
+ * formats which are read sequentially with limited look-back without
+ * any cooperation from the reader; seeking to a position before the
+ * flushed position results in an <code>IndexOutOfBoundsException</code>
+ * as usual.</p>
+ *
+ * <p>The channel must be in blocking mode.  Closing the stream does not
+ * close the channel.</p>
+ *
+ * <p>The methods of this class are <b>not</b> synchronized.</p>
+ *
+ * @see javax.imageio.stream.ImageInputStream
+ * @see java.nio.channels.ReadableByteChannel
+ */
+public class ChannelImageInputStream extends ImageInputStreamImpl {
+
+    /** The size of each block of retained data. */
+    private static final int BLOCK_SIZE = 8192;
+
+    /** The <code>ReadableByteChannel</code> data source. */
+    private ReadableByteChannel channel;
+
+    /** The blocks of retained data, the first starting at cacheStart. */
+    private ArrayList blocks = new ArrayList();
+
+    /** The stream position of the first retained block. */
+    private long cacheStart = 0L;
+
+    /** The number of bytes read from the channel. */
+    private long cacheLength = 0L;
+
+    /** Whether the end of the channel has been reached. */
+    private boolean foundEOF = false;
+
+    /** The maximum number of bytes retained, or 0 if unlimited. */
+    private long maxCacheSize = 0L;
+
+    /**
+     * Constructs a <code>ChannelImageInputStream</code> from a
+     * <code>ReadableByteChannel</code>.  The stream retains all data
+     * read from the channel which lie at or after the flushed position.
+     *
+     * @param channel the source <code>ReadableByteChannel</code>.
+     *
+     * @throws IllegalArgumentException if <code>channel</code> is
+     *         <code>null</code>, is not open, or is not in blocking mode.
+     */
+    public ChannelImageInputStream(ReadableByteChannel channel) {
+        this(channel, 0L);
+    }
+
+    /**
+     * Constructs a <code>ChannelImageInputStream</code> from a
+     * <code>ReadableByteChannel</code> which retains at most approximately
+     * <code>maxCacheSize</code> bytes of the data read from the channel.
+     * A value of 0 means that the amount of data retained is limited only
+     * by the flushed position.
+     *
+     * @param channel the source <code>ReadableByteChannel</code>.
+     * @param maxCacheSize the maximum number of bytes to retain, or 0.
+     *
+     * @throws IllegalArgumentException if <code>channel</code> is
+     *         <code>null</code>, is not open, or is not in blocking mode,
+     *         or if <code>maxCacheSize</code> is negative.
+     */
+    public ChannelImageInputStream(ReadableByteChannel channel,
+                                   long maxCacheSize) {
+        // Check the parameters.
+        if(channel == null) {
+            throw new IllegalArgumentException("channel == null");
+        } else if(!channel.isOpen()) {
+            throw new IllegalArgumentException("channel.isOpen() == false");
+        } else if(channel instanceof SelectableChannel &&
+                  !((SelectableChannel)channel).isBlocking()) {
+            throw new IllegalArgumentException
+                ("channel.isBlocking() == false");
+        } else if(maxCacheSize < 0) {
+            throw new IllegalArgumentException("maxCacheSize < 0");
+        }
+
+        this.channel = channel;
+        this.maxCacheSize = maxCacheSize;
+    }
+
+    /**
+     * Reads from the channel until at least <code>pos</code> bytes have
+     * been read or the end of the channel is reached.  Returns the number
+     * of bytes read from the channel.
+     */
+    private long readUntil(long pos) throws IOException {
+        while(cacheLength < pos && !foundEOF) {
+            // Get the block to be filled.
+            int offset = (int)(cacheLength % BLOCK_SIZE);
+            byte[] block;
+            if(offset == 0) {
+                block = new byte[BLOCK_SIZE];
+                blocks.add(block);
+            } else {
+                block = (byte[])blocks.get(blocks.size() - 1);
+            }
+
+            // Read directly into the block.
+            ByteBuffer dst =
+                ByteBuffer.wrap(block, offset, BLOCK_SIZE - offset);
+            int n = channel.read(dst);
+            if(n < 0) {
+                foundEOF = true;
+                if(offset == 0) {
+                    blocks.remove(blocks.size() - 1);
+                }
+            } else {
+                cacheLength += n;
+            }
+        }
+
+        // Limit the amount of retained data.
+        if(maxCacheSize > 0 && cacheLength - flushedPos > maxCacheSize) {
+            long pos0 = Math.min(streamPos, cacheLength - maxCacheSize);
+            if(pos0 > flushedPos) {
+                flushBefore(pos0);
+            }
+        }
+
+        return cacheLength;
+    }
+
+    public int read() throws IOException {
+        checkClosed();
+        bitOffset = 0;
+
+        if(streamPos >= readUntil(streamPos + 1)) {
+            return -1;
+        }
+
+        long index = streamPos - cacheStart;
+        byte[] block = (byte[])blocks.get((int)(index/BLOCK_SIZE));
+        streamPos++;
+        return block[(int)(index % BLOCK_SIZE)] & 0xff;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+        if(off < 0 || len < 0 || off + len > b.length) {
+            // NullPointerException will be thrown before this if b is null.
+            throw new IndexOutOfBoundsException
+                ("off < 0 || len < 0 || off + len > b.length");
+        } else if(len == 0) {
+            return 0;
+        }
+
+        checkClosed();
+        bitOffset = 0;
+
+        long available = readUntil(streamPos + len) - streamPos;
+        if(available <= 0) {
+            return -1;
+        }
+        len = (int)Math.min(len, available);
+
+        // Copy from as many blocks as necessary.
+        long index = streamPos - cacheStart;
+        int numRead = 0;
+        while(numRead < len) {
+            byte[] block = (byte[])blocks.get((int)(index/BLOCK_SIZE));
+            int blockOffset = (int)(index % BLOCK_SIZE);
+            int n = Math.min(len - numRead, BLOCK_SIZE - blockOffset);
+            System.arraycopy(block, blockOffset, b, off + numRead, n);
+            numRead += n;
+            index += n;
+        }
+
+        streamPos += len;
+        return len;
+    }
+
+    /**
+     * Invokes the superclass method and discards any blocks of data
+     * which lie entirely before the flushed position.
+     */
+    public void flushBefore(long pos) throws IOException {
+        super.flushBefore(pos);
+
+        while(!blocks.isEmpty() && cacheStart + BLOCK_SIZE <= flushedPos &&
+              cacheStart + BLOCK_SIZE <= cacheLength) {
+            blocks.remove(0);
+            cacheStart += BLOCK_SIZE;
+        }
+    }
+
+    /**
+     * Returns <code>true</code> since this stream retains data in memory.
+     */
+    public boolean isCached() {
+        return true;
+    }
+
+    /**
+     * Returns <code>false</code> since this stream does not use a
+     * cache file.
+     */
+    public boolean isCachedFile() {
+        return false;
+    }
+
+    /**
+     * Returns <code>true</code> since this stream retains data in memory.
+     */
+    public boolean isCachedMemory() {
+        return true;
+    }
+
+    /**
+     * Invokes the superclass method and discards the retained data.
+     * The source <code>ReadableByteChannel</code> is not closed.
+     *
+     * @exception IOException if an error occurs.
+     */
+    public void close() throws IOException {
+        super.close();
+        blocks = null;
+        channel = null;
+    }
+}
@@ -71,6 +71,17 @@ import javax.imageio.stream.ImageInputStreamImpl;
  * Overridden methods are not commented individually unless some noteworthy
  * aspect of the implementation must be described.</p>
  *
+ * <p>By default a single mapping is made of as much of the channel as
+ * possible, up to <code>Integer.MAX_VALUE</code> bytes, and a new such
+ * mapping is made whenever data outside it are read.  For very large
+ * files which are accessed at random this may exhaust the virtual address
+ * space of the process.  A stream created with a window size instead maps
+ * the channel in windows of at most that size aligned to multiples of
+ * it, and keeps a small number of the most recently used windows so that
+ * reads which alternate between a few regions of the channel do not cause
+ * any remapping.  Windows which are discarded are unmapped when they are
+ * reclaimed by the garbage collector.</p>
+ *
  * <p>The methods of this class are <b>not</b> synchronized.</p>
  *
  * @see javax.imageio.stream.ImageInputStream
@@ -91,6 +102,21 @@ public class FileChannelImageInputStream extends ImageInputStreamImpl {
     /** The stream position least upper bound of the mapping. */
     private long mappedUpperBound;
 
+    /**
+     * The size of each window, or 0 if the channel is mapped in a
+     * single region of maximal size.
+     */
+    private int windowSize = 0;
+
+    /** The live windows ordered from most to least recently used. */
+    private MappedByteBuffer[] windows;
+
+    /** The stream positions of the live windows. */
+    private long[] windowPositions;
+
+    /** The number of live windows. */
+    private int numWindows = 0;
+
     /**
      * Constructs a <code>FileChannelImageInputStream</code> from a
      * <code>FileChannel</code>.  The initial position of the stream
@@ -109,28 +135,18 @@ public class FileChannelImageInputStream extends ImageInputStreamImpl {
     public FileChannelImageInputStream(FileChannel channel)
         throws IOException {
 
-        // Check the parameter.
-        if(channel == null) {
-            throw new IllegalArgumentException("channel == null");
-        } else if(!channel.isOpen()) {
-            throw new IllegalArgumentException("channel.isOpen() == false");
-        }
-
-        // Save the channel reference.
-        this.channel = channel;
+        // Check the parameter and set the initial positions.
+        initialize(channel);
 
         // Get the channel position.
 	long channelPosition = channel.position();
 
-        // Set stream and flushed positions to initial channel position.
-        this.streamPos = this.flushedPos = channelPosition;
-
         // Determine the size of the mapping.
         long fullSize = channel.size() - channelPosition;
         long mappedSize = Math.min(fullSize, Integer.MAX_VALUE);
 
         // Set the mapped position and upper bound.
-        this.mappedPos = 0;
+        this.mappedPos = channelPosition;
         this.mappedUpperBound = mappedPos + mappedSize;
 
         // Map the file.
@@ -139,16 +155,89 @@ public class FileChannelImageInputStream extends ImageInputStreamImpl {
                                         mappedSize);
     }
 
+    /**
+     * Constructs a <code>FileChannelImageInputStream</code> from a
+     * <code>FileChannel</code> which maps the channel in windows of
+     * at most <code>windowSize</code> bytes, at most
+     * <code>maxWindows</code> of which are retained.  The initial position
+     * of the stream is taken to be the position of the
+     * <code>FileChannel</code> parameter when this constructor is invoked.
+     * No mapping is made until data are read.
+     *
+     * <p>Reads which cross the boundary between two windows are satisfied
+     * from both windows, so the window size limits only the size of
+     * each mapping and not the size of the reads which may be performed.</p>
+     *
+     * @param channel the source <code>FileChannel</code>.
+     * @param windowSize the maximum number of bytes in each mapping.
+     * @param maxWindows the maximum number of mappings retained.
+     *
+     * @throws IllegalArgumentException if <code>channel</code> is
+     *         <code>null</code> or is not open, or if
+     *         <code>windowSize</code> or <code>maxWindows</code> is
+     *         not positive.
+     * @throws IOException if a method invoked on <code>channel</code>
+     *         throws an <code>IOException</code>.
+     */
+    public FileChannelImageInputStream(FileChannel channel,
+                                       int windowSize,
+                                       int maxWindows)
+        throws IOException {
+
+        // Check the window parameters.
+        if(windowSize <= 0) {
+            throw new IllegalArgumentException("windowSize <= 0");
+        } else if(maxWindows <= 0) {
+            throw new IllegalArgumentException("maxWindows <= 0");
+        }
+
+        // Check the parameter and set the initial positions.
+        initialize(channel);
+
+        // Allocate the window cache. No region is mapped initially.
+        this.windowSize = windowSize;
+        this.windows = new MappedByteBuffer[maxWindows];
+        this.windowPositions = new long[maxWindows];
+        this.mappedPos = this.mappedUpperBound = streamPos;
+    }
+
+    /**
+     * Checks the <code>FileChannel</code> and initializes the stream and
+     * flushed positions to the channel position.
+     */
+    private void initialize(FileChannel channel) throws IOException {
+        // Check the parameter.
+        if(channel == null) {
+            throw new IllegalArgumentException("channel == null");
+        } else if(!channel.isOpen()) {
+            throw new IllegalArgumentException("channel.isOpen() == false");
+        }
+
+        // Save the channel reference.
+        this.channel = channel;
+
+        // Set stream and flushed positions to initial channel position.
+        this.streamPos = this.flushedPos = channel.position();
+    }
+
     /**
      * Returns a <code>MappedByteBuffer</code> which memory maps
      * at least from the channel position corresponding to the
      * current stream position to <code>len</code> bytes beyond.
      * A new buffer is created only if necessary.
      *
+     * <p>If the stream maps the channel in windows the returned buffer
+     * is the window containing the current stream position, which may
+     * end fewer than <code>len</code> bytes beyond it.</p>
+     *
      * @param len The number of bytes required beyond the current stream
      * position.
      */
     private MappedByteBuffer getMappedBuffer(int len) throws IOException {
+        if(windowSize > 0) {
+            return getWindow();
+        }
+
         // If request is outside mapped region, map a new region.
         if(streamPos < mappedPos || streamPos + len >= mappedUpperBound) {
 
@@ -174,6 +263,65 @@ public class FileChannelImageInputStream extends ImageInputStreamImpl {
         return mappedBuffer;
     }
 
+    /**
+     * Returns the window containing the current stream position with
+     * its position set to that of the stream.  The window is mapped if
+     * it is not among the live windows, replacing the least recently
+     * used window if the maximum number are live.  At the end of the
+     * channel a window with no bytes remaining is returned.
+     */
+    private MappedByteBuffer getWindow() throws IOException {
+        if(streamPos < mappedPos || streamPos >= mappedUpperBound) {
+            long windowPos = streamPos - streamPos % windowSize;
+
+            // Look for the window among the live windows.
+            int index = -1;
+            for(int i = 0; i < numWindows; i++) {
+                if(windowPositions[i] == windowPos) {
+                    index = i;
+                    break;
+                }
+            }
+
+            MappedByteBuffer window;
+            if(index >= 0 &&
+               streamPos < windowPos + windows[index].capacity()) {
+                window = windows[index];
+            } else {
+                // Map the window. A window which was truncated by the
+                // end of the channel is remapped in case the channel
+                // has grown.
+                long size = Math.min(channel.size() - windowPos, windowSize);
+                window = channel.map(FileChannel.MapMode.READ_ONLY,
+                                     windowPos, Math.max(size, 0));
+                window.order(super.getByteOrder());
+
+                if(index < 0) {
+                    if(numWindows < windows.length) {
+                        index = numWindows++;
+                    } else {
+                        index = numWindows - 1;
+                    }
+                }
+            }
+
+            // Move the window to the front.
+            System.arraycopy(windows, 0, windows, 1, index);
+            System.arraycopy(windowPositions, 0, windowPositions, 1, index);
+            windows[0] = window;
+            windowPositions[0] = windowPos;
+
+            mappedBuffer = window;
+            mappedPos = windowPos;
+            mappedUpperBound = windowPos + window.capacity();
+        }
+
+        mappedBuffer.position((int)Math.min(streamPos - mappedPos,
+                                            mappedBuffer.limit()));
+
+        return mappedBuffer;
+    }
+
     // --- Implementation of superclass abstract methods. ---
 
     public int read() throws IOException {
@@ -222,6 +370,22 @@ public class FileChannelImageInputStream extends ImageInputStreamImpl {
         if(numBytesRemaining < 1) {
             // Return EOF.
             return -1;
+        } else if(len > numBytesRemaining && windowSize > 0) {
+            // Read from successive windows as the superclass methods
+            // such as readInt() expect a single read to succeed.
+            int numRead = 0;
+            do {
+                int n = Math.min(len - numRead, numBytesRemaining);
+                byteBuffer.get(b, off + numRead, n);
+                streamPos += n;
+                numRead += n;
+                if(numRead == len) {
+                    break;
+                }
+                byteBuffer = getMappedBuffer(len - numRead);
+            } while((numBytesRemaining = byteBuffer.remaining()) > 0);
+
+            return numRead;
         } else if(len > numBytesRemaining) {
             // Clamp 'len' to number of bytes in Buffer. Apparently some
             // readers (JPEG) request data beyond the end of the file.
@@ -249,6 +413,9 @@ public class FileChannelImageInputStream extends ImageInputStreamImpl {
     public void close() throws IOException {
         super.close();
         channel = null;
+        mappedBuffer = null;
+        windows = null;
+        numWindows = 0;
     }
 
     public void readFully(char[] c, int off, int len) throws IOException {
@@ -268,6 +435,11 @@ public class FileChannelImageInputStream extends ImageInputStreamImpl {
 
         // Ensure enough bytes remain.
         if(byteBuffer.remaining() < byteLen) {
+            if(windowSize > 0) {
+                // The data span windows: read them piecewise.
+                super.readFully(c, off, len);
+                return;
+            }
             throw new EOFException();
         }
 
@@ -298,6 +470,11 @@ public class FileChannelImageInputStream extends ImageInputStreamImpl {
 
         // Ensure enough bytes remain.
         if(byteBuffer.remaining() < byteLen) {
+            if(windowSize > 0) {
+                // The data span windows: read them piecewise.
+                super.readFully(s, off, len);
+                return;
+            }
             throw new EOFException();
         }
 
@@ -328,6 +505,11 @@ public class FileChannelImageInputStream extends ImageInputStreamImpl {
 
         // Ensure enough bytes remain.
         if(byteBuffer.remaining() < byteLen) {
+            if(windowSize > 0) {
+                // The data span windows: read them piecewise.
+                super.readFully(i, off, len);
+                return;
+            }
             throw new EOFException();
         }
 
@@ -358,6 +540,11 @@ public class FileChannelImageInputStream extends ImageInputStreamImpl {
 
         // Ensure enough bytes remain.
         if(byteBuffer.remaining() < byteLen) {
+            if(windowSize > 0) {
+                // The data span windows: read them piecewise.
+                super.readFully(l, off, len);
+                return;
+            }
             throw new EOFException();
         }
 
@@ -388,6 +575,11 @@ public class FileChannelImageInputStream extends ImageInputStreamImpl {
 
         // Ensure enough bytes remain.
         if(byteBuffer.remaining() < byteLen) {
+            if(windowSize > 0) {
+                // The data span windows: read them piecewise.
+                super.readFully(f, off, len);
+                return;
+            }
             throw new EOFException();
         }
 
@@ -418,6 +610,11 @@ public class FileChannelImageInputStream extends ImageInputStreamImpl {
 
         // Ensure enough bytes remain.
         if(byteBuffer.remaining() < byteLen) {
+            if(windowSize > 0) {
+                // The data span windows: read them piecewise.
+                super.readFully(d, off, len);
+                return;
+            }
             throw new EOFException();
         }
 
@@ -455,13 +652,20 @@ public class FileChannelImageInputStream extends ImageInputStreamImpl {
 
     /**
      * Invokes the superclass method and sets the position within the
-     * memory mapped buffer.  A new region is mapped if necessary.  The
+     * memory mapped buffer.  A new region is mapped if necessary unless
+     * the stream maps the channel in windows, in which case the window
+     * is located when data are next read.  The
      * position of the source <code>FileChannel</code> is not changed, i.e.,
      * {@link java.nio.channels.FileChannel#position(long)} is not invoked.
      */
     public void seek(long pos) throws IOException {
         super.seek(pos);
 
+        if(windowSize > 0) {
+            // The window is located when data are next read.
+            return;
+        }
+
         if(pos >= mappedPos && pos < mappedUpperBound) {
             // Seeking to location within mapped buffer: set buffer position.
             mappedBuffer.position((int)(pos - mappedPos));
@@ -475,6 +679,11 @@ public class FileChannelImageInputStream extends ImageInputStreamImpl {
 
     public void setByteOrder(ByteOrder networkByteOrder) {
         super.setByteOrder(networkByteOrder);
-        mappedBuffer.order(networkByteOrder);
+        if(mappedBuffer != null) {
+            mappedBuffer.order(networkByteOrder);
+        }
+        for(int i = 0; i < numWindows; i++) {
+            windows[i].order(networkByteOrder);
+        }
     }
 }
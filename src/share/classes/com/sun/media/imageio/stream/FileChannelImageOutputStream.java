@@ -76,12 +76,12 @@ import javax.imageio.stream.ImageOutputStreamImpl;
  */
 public class FileChannelImageOutputStream extends ImageOutputStreamImpl {
 
-    /** The size of the write buffer. */
-    // XXX Should this be a different value? Smaller?
-    // Should there be an instance variable with public
-    // accessor/mutator methods?
+    /** The default size of the write buffer. */
     private static final int DEFAULT_WRITE_BUFFER_SIZE = 1048576;
 
+    /** The minimum size of the write buffer. */
+    private static final int MIN_WRITE_BUFFER_SIZE = 8;
+
     /** The <code>FileChannel</code> data destination. */
     private FileChannel channel;
 
@@ -91,6 +91,31 @@ public class FileChannelImageOutputStream extends ImageOutputStreamImpl {
     /** An <code>ImageInputStream</code> used for reading. */
     private ImageInputStream readStream = null;
 
+    /**
+     * Whether the position of the channel is that at which the next
+     * byte put in the write buffer will be written.  Reads do not move
+     * the channel so they clear this flag.
+     */
+    private boolean isChannelPositionValid = true;
+
+    /** The stream positions of the deferred writes. */
+    private long[] deferredPositions = null;
+
+    /** The offsets of the deferred writes in <code>deferredData</code>. */
+    private int[] deferredOffsets = null;
+
+    /** The lengths of the deferred writes. */
+    private int[] deferredLengths = null;
+
+    /** The data of all deferred writes, stored contiguously. */
+    private byte[] deferredData = null;
+
+    /** The number of deferred writes. */
+    private int numDeferred = 0;
+
+    /** The number of bytes used in <code>deferredData</code>. */
+    private int deferredDataLength = 0;
+
     /**
      * Test method.
      *
@@ -176,7 +201,7 @@ public class FileChannelImageOutputStream extends ImageOutputStreamImpl {
      * stream is taken to be the position of the <code>FileChannel</code>
      * parameter when this constructor is invoked.  The stream and flushed
      * positions are therefore both initialized to
-     * <code>channel.position()</code>.
+     * <code>channel.position()</code>.  A write buffer of 1 MB is used.
      *
      * @param channel the destination <code>FileChannel</code>.
      *
@@ -187,12 +212,39 @@ public class FileChannelImageOutputStream extends ImageOutputStreamImpl {
      */
     public FileChannelImageOutputStream(FileChannel channel)
 	throws IOException {
+        this(channel, DEFAULT_WRITE_BUFFER_SIZE);
+    }
 
-        // Check the parameter.
+    /**
+     * Constructs a <code>FileChannelImageOutputStream</code> from a
+     * <code>FileChannel</code> using a write buffer of the specified
+     * size.  Data are accumulated in the buffer and written to the
+     * channel when it fills, when the stream is repositioned or read,
+     * and when the stream is closed.  A small buffer reduces the memory
+     * held by the stream whereas a large one reduces the number of
+     * channel writes.  The stream and flushed positions are both
+     * initialized to <code>channel.position()</code>.
+     *
+     * @param channel the destination <code>FileChannel</code>.
+     * @param writeBufferSize the size in bytes of the write buffer.
+     *
+     * @throws IllegalArgumentException if <code>channel</code> is
+     *         <code>null</code> or is not open, or if
+     *         <code>writeBufferSize</code> is less than 8.
+     * @throws IOException if a method invoked on <code>channel</code>
+     *         throws an <code>IOException</code>.
+     */
+    public FileChannelImageOutputStream(FileChannel channel,
+                                        int writeBufferSize)
+	throws IOException {
+
+        // Check the parameters.
         if(channel == null) {
             throw new IllegalArgumentException("channel == null");
         } else if(!channel.isOpen()) {
             throw new IllegalArgumentException("channel.isOpen() == false");
+        } else if(writeBufferSize < MIN_WRITE_BUFFER_SIZE) {
+            throw new IllegalArgumentException("writeBufferSize < 8");
         }
 
         // Save the channel reference.
@@ -202,12 +254,21 @@ public class FileChannelImageOutputStream extends ImageOutputStreamImpl {
         this.streamPos = this.flushedPos = channel.position();
 
         // Allocate the write buffer.
-	byteBuffer = ByteBuffer.allocateDirect(DEFAULT_WRITE_BUFFER_SIZE);
+	byteBuffer = ByteBuffer.allocateDirect(writeBufferSize);
 
         // Create the read stream (initially zero-sized).
         readStream = new FileChannelImageInputStream(channel);
     }
 
+    /**
+     * Returns the size in bytes of the write buffer.
+     *
+     * @return the capacity of the write buffer.
+     */
+    public int getWriteBufferSize() {
+        return byteBuffer.capacity();
+    }
+
     /**
      * Returns an <code>ImageInputStream</code> for reading.  The
      * returned stream has byte order, stream and flushed positions,
@@ -226,6 +287,31 @@ public class FileChannelImageOutputStream extends ImageOutputStreamImpl {
         return readStream;
     }
 
+    /**
+     * Prepares for data to be put in the write buffer: writes any
+     * pending bits and, if the stream has been read since the last
+     * write, moves the channel to the stream position.
+     */
+    private void prepareWrite() throws IOException {
+        // Flush any bits in the current byte.
+        flushBits();
+
+        if(!isChannelPositionValid) {
+            channel.position(streamPos);
+            isChannelPositionValid = true;
+        }
+    }
+
+    /**
+     * Ensures that the write buffer has room for at least
+     * <code>numBytes</code> bytes.
+     */
+    private void ensureRemaining(int numBytes) throws IOException {
+        if(byteBuffer.remaining() < numBytes) {
+            flushBuffer();
+        }
+    }
+
     /**
      * Write to the <code>FileChannel</code> any remaining bytes in
      * the byte output buffer.
@@ -239,7 +325,9 @@ public class FileChannelImageOutputStream extends ImageOutputStreamImpl {
             byteBuffer.position(0);
 
             // Write all bytes between zero and the previous position.
-            channel.write(byteBuffer);
+            do {
+                channel.write(byteBuffer);
+            } while(byteBuffer.hasRemaining());
 
             // Prepare for subsequent put() calls if any.
             byteBuffer.clear();
@@ -253,10 +341,14 @@ public class FileChannelImageOutputStream extends ImageOutputStreamImpl {
         bitOffset = 0;
 
         ImageInputStream inputStream = getImageInputStream();
+        isChannelPositionValid = false;
 
-        streamPos++;
+        int b = inputStream.read();
+        if(b != -1) {
+            streamPos++;
+        }
 
-	return inputStream.read();
+	return b;
     }
 
     public int read(byte[] b, int off, int len) throws IOException {
@@ -272,16 +364,22 @@ public class FileChannelImageOutputStream extends ImageOutputStreamImpl {
         bitOffset = 0;
 
         ImageInputStream inputStream = getImageInputStream();
+        isChannelPositionValid = false;
 
 	int numBytesRead = inputStream.read(b, off, len);
 
-	streamPos += numBytesRead;
+        if(numBytesRead > 0) {
+            streamPos += numBytesRead;
+        }
 
 	return numBytesRead;
     }
 
     public void write(int b) throws IOException {
-        write(new byte[] {(byte)(b&0xff)}, 0, 1);
+        prepareWrite();
+        ensureRemaining(1);
+        byteBuffer.put((byte)b);
+        streamPos++;
     }
 
     public void write(byte[] b, int off, int len) throws IOException {
@@ -295,8 +393,8 @@ public class FileChannelImageOutputStream extends ImageOutputStreamImpl {
             return;
         }
 
-        // Flush any bits in the current byte.
-        flushBits();
+        // Flush any bits and position the channel.
+        prepareWrite();
 
         // Zero the number of bytes to put.
         int numPut = 0;
@@ -332,34 +430,72 @@ public class FileChannelImageOutputStream extends ImageOutputStreamImpl {
 
     public void readFully(char[] c, int off, int len) throws IOException {
         getImageInputStream().readFully(c, off, len);
+        isChannelPositionValid = false;
+        bitOffset = 0;
         streamPos += 2*len;
     }
 
     public void readFully(short[] s, int off, int len) throws IOException {
         getImageInputStream().readFully(s, off, len);
+        isChannelPositionValid = false;
+        bitOffset = 0;
         streamPos += 2*len;
     }
 
     public void readFully(int[] i, int off, int len) throws IOException {
         getImageInputStream().readFully(i, off, len);
+        isChannelPositionValid = false;
+        bitOffset = 0;
         streamPos += 4*len;
     }
 
     public void readFully(long[] l, int off, int len) throws IOException {
         getImageInputStream().readFully(l, off, len);
+        isChannelPositionValid = false;
+        bitOffset = 0;
         streamPos += 8*len;
     }
 
     public void readFully(float[] f, int off, int len) throws IOException {
         getImageInputStream().readFully(f, off, len);
+        isChannelPositionValid = false;
+        bitOffset = 0;
         streamPos += 4*len;
     }
 
     public void readFully(double[] d, int off, int len) throws IOException {
         getImageInputStream().readFully(d, off, len);
+        isChannelPositionValid = false;
+        bitOffset = 0;
         streamPos += 8*len;
     }
 
+    // --- Single value write methods ---
+
+    // The superclass writeChar() and writeFloat() and writeDouble()
+    // methods are implemented in terms of these methods.
+
+    public void writeShort(int v) throws IOException {
+        prepareWrite();
+        ensureRemaining(2);
+        byteBuffer.putShort((short)v);
+        streamPos += 2;
+    }
+
+    public void writeInt(int v) throws IOException {
+        prepareWrite();
+        ensureRemaining(4);
+        byteBuffer.putInt(v);
+        streamPos += 4;
+    }
+
+    public void writeLong(long v) throws IOException {
+        prepareWrite();
+        ensureRemaining(8);
+        byteBuffer.putLong(v);
+        streamPos += 8;
+    }
+
     // --- Bulk write methods ---
 
     public void writeChars(char[] c, int off, int len) throws IOException {
@@ -373,8 +509,8 @@ public class FileChannelImageOutputStream extends ImageOutputStreamImpl {
             return;
         }
 
-        // Flush any bits in the current byte.
-        flushBits();
+        // Flush any bits and position the channel.
+        prepareWrite();
 
         // Zero the number of chars put.
         int numPut = 0;
@@ -389,10 +525,12 @@ public class FileChannelImageOutputStream extends ImageOutputStreamImpl {
                                     viewBuffer.remaining());
 
             // If no chars to put, the buffer has to be full as len
-            // is always greater than numPut so flush it and return
-            // to start of loop.
+            // is always greater than numPut so flush it, recreate
+            // the view of the emptied buffer and return to start
+            // of loop.
             if(numToPut == 0) {
                 flushBuffer();
+                viewBuffer = byteBuffer.asCharBuffer();
                 continue;
             }
 
@@ -421,8 +559,8 @@ public class FileChannelImageOutputStream extends ImageOutputStreamImpl {
             return;
         }
 
-        // Flush any bits in the current byte.
-        flushBits();
+        // Flush any bits and position the channel.
+        prepareWrite();
 
         // Zero the number of shorts put.
         int numPut = 0;
@@ -437,10 +575,12 @@ public class FileChannelImageOutputStream extends ImageOutputStreamImpl {
                                     viewBuffer.remaining());
 
             // If no shorts to put, the buffer has to be full as len
-            // is always greater than numPut so flush it and return
-            // to start of loop.
+            // is always greater than numPut so flush it, recreate
+            // the view of the emptied buffer and return to start
+            // of loop.
             if(numToPut == 0) {
                 flushBuffer();
+                viewBuffer = byteBuffer.asShortBuffer();
                 continue;
             }
 
@@ -469,8 +609,8 @@ public class FileChannelImageOutputStream extends ImageOutputStreamImpl {
             return;
         }
 
-        // Flush any bits in the current byte.
-        flushBits();
+        // Flush any bits and position the channel.
+        prepareWrite();
 
         // Zero the number of ints put.
         int numPut = 0;
@@ -485,10 +625,12 @@ public class FileChannelImageOutputStream extends ImageOutputStreamImpl {
                                     viewBuffer.remaining());
 
             // If no ints to put, the buffer has to be full as len
-            // is always greater than numPut so flush it and return
-            // to start of loop.
+            // is always greater than numPut so flush it, recreate
+            // the view of the emptied buffer and return to start
+            // of loop.
             if(numToPut == 0) {
                 flushBuffer();
+                viewBuffer = byteBuffer.asIntBuffer();
                 continue;
             }
 
@@ -517,8 +659,8 @@ public class FileChannelImageOutputStream extends ImageOutputStreamImpl {
             return;
         }
 
-        // Flush any bits in the current byte.
-        flushBits();
+        // Flush any bits and position the channel.
+        prepareWrite();
 
         // Zero the number of longs put.
         int numPut = 0;
@@ -533,10 +675,12 @@ public class FileChannelImageOutputStream extends ImageOutputStreamImpl {
                                     viewBuffer.remaining());
 
             // If no longs to put, the buffer has to be full as len
-            // is always greater than numPut so flush it and return
-            // to start of loop.
+            // is always greater than numPut so flush it, recreate
+            // the view of the emptied buffer and return to start
+            // of loop.
             if(numToPut == 0) {
                 flushBuffer();
+                viewBuffer = byteBuffer.asLongBuffer();
                 continue;
             }
 
@@ -565,8 +709,8 @@ public class FileChannelImageOutputStream extends ImageOutputStreamImpl {
             return;
         }
 
-        // Flush any bits in the current byte.
-        flushBits();
+        // Flush any bits and position the channel.
+        prepareWrite();
 
         // Zero the number of floats put.
         int numPut = 0;
@@ -581,10 +725,12 @@ public class FileChannelImageOutputStream extends ImageOutputStreamImpl {
                                     viewBuffer.remaining());
 
             // If no floats to put, the buffer has to be full as len
-            // is always greater than numPut so flush it and return
-            // to start of loop.
+            // is always greater than numPut so flush it, recreate
+            // the view of the emptied buffer and return to start
+            // of loop.
             if(numToPut == 0) {
                 flushBuffer();
+                viewBuffer = byteBuffer.asFloatBuffer();
                 continue;
             }
 
@@ -613,8 +759,8 @@ public class FileChannelImageOutputStream extends ImageOutputStreamImpl {
             return;
         }
 
-        // Flush any bits in the current byte.
-        flushBits();
+        // Flush any bits and position the channel.
+        prepareWrite();
 
         // Zero the number of doubles put.
         int numPut = 0;
@@ -629,10 +775,12 @@ public class FileChannelImageOutputStream extends ImageOutputStreamImpl {
                                     viewBuffer.remaining());
 
             // If no doubles to put, the buffer has to be full as len
-            // is always greater than numPut so flush it and return
-            // to start of loop.
+            // is always greater than numPut so flush it, recreate
+            // the view of the emptied buffer and return to start
+            // of loop.
             if(numToPut == 0) {
                 flushBuffer();
+                viewBuffer = byteBuffer.asDoubleBuffer();
                 continue;
             }
 
@@ -650,10 +798,305 @@ public class FileChannelImageOutputStream extends ImageOutputStreamImpl {
         streamPos += 8*len;
     }
 
+    // --- Deferred writes ---
+
+    /**
+     * Registers bytes to be written at a given position of the stream
+     * when the deferred writes are applied, i.e., when
+     * {@link #applyDeferredWrites()} or {@link #close()} is invoked.
+     * This allows values such as offsets and byte counts which are
+     * known only after the data they describe have been written to be
+     * filled in without seeking back into the stream, which would
+     * cause the write buffer to be flushed each time.  The stream
+     * position is not changed and the data are copied.
+     *
+     * <p> Until the deferred writes have been applied, reading a region
+     * of the stream which they cover returns the data previously written
+     * there.  The regions of distinct deferred writes should not
+     * overlap.</p>
+     *
+     * @param pos the stream position at which to write the data.
+     * @param b the data.
+     * @param off the offset of the first byte in <code>b</code>.
+     * @param len the number of bytes to write.
+     *
+     * @throws IndexOutOfBoundsException if <code>pos</code> is less
+     *         than the flushed position, or if <code>off</code> or
+     *         <code>len</code> is negative or <code>off + len</code>
+     *         is greater than <code>b.length</code>.
+     * @throws IOException if the stream has been closed.
+     */
+    public void deferWrite(long pos, byte[] b, int off, int len)
+        throws IOException {
+        // Check parameters.
+        if(off < 0 || len < 0 || off + len > b.length) {
+            // NullPointerException will be thrown before this if b is null.
+            throw new IndexOutOfBoundsException
+                ("off < 0 || len < 0 || off + len > b.length");
+        }
+        checkDeferredPosition(pos);
+
+        int offset = addDeferredWrite(pos, len);
+        System.arraycopy(b, off, deferredData, offset, len);
+    }
+
+    /**
+     * Registers a short to be written at a given position of the stream
+     * when the deferred writes are applied.  The short is written in
+     * the byte order in effect when this method is invoked.
+     *
+     * @param pos the stream position at which to write the value.
+     * @param v an <code>int</code> whose lower 16 bits are to be written.
+     *
+     * @throws IndexOutOfBoundsException if <code>pos</code> is less
+     *         than the flushed position.
+     * @throws IOException if the stream has been closed.
+     *
+     * @see #deferWrite(long, byte[], int, int)
+     */
+    public void deferWriteShort(long pos, int v) throws IOException {
+        checkDeferredPosition(pos);
+        putDeferredValue(addDeferredWrite(pos, 2), v, 2);
+    }
+
+    /**
+     * Registers an int to be written at a given position of the stream
+     * when the deferred writes are applied.  The int is written in
+     * the byte order in effect when this method is invoked.
+     *
+     * @param pos the stream position at which to write the value.
+     * @param v the <code>int</code> to be written.
+     *
+     * @throws IndexOutOfBoundsException if <code>pos</code> is less
+     *         than the flushed position.
+     * @throws IOException if the stream has been closed.
+     *
+     * @see #deferWrite(long, byte[], int, int)
+     */
+    public void deferWriteInt(long pos, int v) throws IOException {
+        checkDeferredPosition(pos);
+        putDeferredValue(addDeferredWrite(pos, 4), v, 4);
+    }
+
+    /**
+     * Registers a long to be written at a given position of the stream
+     * when the deferred writes are applied.  The long is written in
+     * the byte order in effect when this method is invoked.
+     *
+     * @param pos the stream position at which to write the value.
+     * @param v the <code>long</code> to be written.
+     *
+     * @throws IndexOutOfBoundsException if <code>pos</code> is less
+     *         than the flushed position.
+     * @throws IOException if the stream has been closed.
+     *
+     * @see #deferWrite(long, byte[], int, int)
+     */
+    public void deferWriteLong(long pos, long v) throws IOException {
+        checkDeferredPosition(pos);
+        putDeferredValue(addDeferredWrite(pos, 8), v, 8);
+    }
+
+    /**
+     * Returns the number of deferred writes which have not yet been
+     * applied.
+     *
+     * @return the number of pending deferred writes.
+     */
+    public int getNumDeferredWrites() {
+        return numDeferred;
+    }
+
+    /**
+     * Writes the data of all pending deferred writes to the channel.
+     * The writes are applied in order of increasing stream position and
+     * adjacent writes are combined so that the channel is written once
+     * per contiguous region.  Neither the stream position nor the
+     * channel position is changed.
+     *
+     * @throws IOException if the stream has been closed or an error
+     *         occurs writing to the channel.
+     */
+    public void applyDeferredWrites() throws IOException {
+        checkClosed();
+        if(numDeferred == 0) {
+            return;
+        }
+
+        // Write any unwritten bytes so they are not written over the
+        // deferred data later.
+        flushBuffer();
+
+        // Sort the writes by position retaining registration order
+        // among writes at the same position.
+        int[] order = new int[numDeferred];
+        for(int i = 0; i < numDeferred; i++) {
+            order[i] = i;
+        }
+        sortByPosition(order, new int[numDeferred], 0, numDeferred);
+
+        // Combine contiguous writes in the (empty) write buffer.
+        long runStart = deferredPositions[order[0]];
+        long runEnd = runStart;
+        for(int i = 0; i < numDeferred; i++) {
+            int k = order[i];
+            long pos = deferredPositions[k];
+            int len = deferredLengths[k];
+            if(pos != runEnd || len > byteBuffer.remaining()) {
+                writeRun(runStart);
+                runStart = runEnd = pos;
+            }
+            if(len > byteBuffer.remaining()) {
+                // Larger than the buffer: write it on its own.
+                writeFully(ByteBuffer.wrap(deferredData,
+                                           deferredOffsets[k], len), pos);
+                runStart = runEnd = pos + len;
+            } else {
+                byteBuffer.put(deferredData, deferredOffsets[k], len);
+                runEnd += len;
+            }
+        }
+        writeRun(runStart);
+
+        numDeferred = 0;
+        deferredDataLength = 0;
+    }
+
+    /**
+     * Verifies that the stream is open and that data may be written
+     * at <code>pos</code>.
+     */
+    private void checkDeferredPosition(long pos) throws IOException {
+        checkClosed();
+        if(pos < flushedPos) {
+            throw new IndexOutOfBoundsException("pos < flushedPos!");
+        }
+    }
+
+    /**
+     * Records a deferred write of <code>len</code> bytes at
+     * <code>pos</code> and returns the offset in <code>deferredData</code>
+     * at which its data are to be stored.
+     */
+    private int addDeferredWrite(long pos, int len) {
+        if(deferredPositions == null) {
+            deferredPositions = new long[64];
+            deferredOffsets = new int[64];
+            deferredLengths = new int[64];
+            deferredData = new byte[256];
+        } else if(numDeferred == deferredPositions.length) {
+            int newLength = 2*numDeferred;
+
+            long[] positions = new long[newLength];
+            System.arraycopy(deferredPositions, 0, positions, 0, numDeferred);
+            deferredPositions = positions;
+
+            int[] offsets = new int[newLength];
+            System.arraycopy(deferredOffsets, 0, offsets, 0, numDeferred);
+            deferredOffsets = offsets;
+
+            int[] lengths = new int[newLength];
+            System.arraycopy(deferredLengths, 0, lengths, 0, numDeferred);
+            deferredLengths = lengths;
+        }
+
+        if(deferredDataLength + len > deferredData.length) {
+            byte[] data = new byte[Math.max(2*deferredData.length,
+                                            deferredDataLength + len)];
+            System.arraycopy(deferredData, 0, data, 0, deferredDataLength);
+            deferredData = data;
+        }
+
+        int offset = deferredDataLength;
+        deferredPositions[numDeferred] = pos;
+        deferredOffsets[numDeferred] = offset;
+        deferredLengths[numDeferred] = len;
+        numDeferred++;
+        deferredDataLength += len;
+
+        return offset;
+    }
+
+    /**
+     * Stores the low order <code>numBytes</code> bytes of <code>v</code>
+     * in <code>deferredData</code> in the current byte order.
+     */
+    private void putDeferredValue(int offset, long v, int numBytes) {
+        if(byteOrder == ByteOrder.BIG_ENDIAN) {
+            for(int i = numBytes - 1; i >= 0; i--) {
+                deferredData[offset + i] = (byte)v;
+                v >>>= 8;
+            }
+        } else {
+            for(int i = 0; i < numBytes; i++) {
+                deferredData[offset + i] = (byte)v;
+                v >>>= 8;
+            }
+        }
+    }
+
+    /**
+     * Sorts <code>order[start, end)</code> by the positions of the
+     * deferred writes.  This is a merge sort so that writes at the same
+     * position keep the order in which they were registered.
+     */
+    private void sortByPosition(int[] order, int[] tmp, int start, int end) {
+        if(end - start < 2) {
+            return;
+        }
+        int mid = (start + end) >>> 1;
+        sortByPosition(order, tmp, start, mid);
+        sortByPosition(order, tmp, mid, end);
+        if(deferredPositions[order[mid - 1]] <=
+           deferredPositions[order[mid]]) {
+            // Already in order, as is usual.
+            return;
+        }
+
+        int i = start, j = mid, k = start;
+        while(i < mid && j < end) {
+            if(deferredPositions[order[j]] < deferredPositions[order[i]]) {
+                tmp[k++] = order[j++];
+            } else {
+                tmp[k++] = order[i++];
+            }
+        }
+        while(i < mid) {
+            tmp[k++] = order[i++];
+        }
+        while(j < end) {
+            tmp[k++] = order[j++];
+        }
+        System.arraycopy(tmp, start, order, start, end - start);
+    }
+
+    /**
+     * Writes the contents of the write buffer to the channel at
+     * <code>pos</code> and clears the buffer.
+     */
+    private void writeRun(long pos) throws IOException {
+        if(byteBuffer.position() != 0) {
+            byteBuffer.flip();
+            writeFully(byteBuffer, pos);
+            byteBuffer.clear();
+        }
+    }
+
+    /**
+     * Writes the remaining bytes of <code>buf</code> to the channel
+     * starting at <code>pos</code> without moving the channel.
+     */
+    private void writeFully(ByteBuffer buf, long pos) throws IOException {
+        while(buf.hasRemaining()) {
+            pos += channel.write(buf, pos);
+        }
+    }
+
     // --- Other methods ---
 
     /**
-     * Invokes the superclass method, writes any unwritten data, and
+     * Invokes the superclass method, writes any unwritten data and
+     * pending deferred writes, and
      * sets the internal reference to the source <code>FileChannel</code>
      * to <code>null</code>.  The source <code>FileChannel</code> is not
      * closed.
@@ -666,6 +1109,9 @@ public class FileChannelImageOutputStream extends ImageOutputStreamImpl {
         // Flush any unwritten data in the buffer.
         flushBuffer();
 
+        // Write the deferred data.
+        applyDeferredWrites();
+
         // Close the read channel and clear the reference to it.
         readStream.close();
         readStream = null;
@@ -676,12 +1122,19 @@ public class FileChannelImageOutputStream extends ImageOutputStreamImpl {
         // Clear reference to the internal ByteBuffer.
         byteBuffer = null;
 
+        // Release the deferred write arrays.
+        deferredPositions = null;
+        deferredOffsets = null;
+        deferredLengths = null;
+        deferredData = null;
+
         // Chain to the superclass.
         super.close();
     }
 
     /**
-     * Returns the number of bytes currently in the <code>FileChannel</code>.
+     * Returns the number of bytes currently in the <code>FileChannel</code>
+     * including any data not yet written from the write buffer.
      * If an <code>IOException</code> is encountered when querying the
      * channel's size, -1L will be returned.
      *
@@ -695,6 +1148,11 @@ public class FileChannelImageOutputStream extends ImageOutputStreamImpl {
         // Set length to current size with respect to initial position.
         try {
             length = channel.size();
+
+            // Buffered data always end at the stream position.
+            if(byteBuffer.position() != 0 && streamPos > length) {
+                length = streamPos;
+            }
         } catch(IOException e) {
             // Default to unknown length.
         }
@@ -705,15 +1163,24 @@ public class FileChannelImageOutputStream extends ImageOutputStreamImpl {
     /**
      * Invokes the superclass method, writes any unwritten data,
      * and sets the channel position to the supplied parameter.
+     * Buffered data are retained if the position does not change.
      */
     public void seek(long pos) throws IOException {
+        boolean isPositionUnchanged =
+            pos == streamPos && isChannelPositionValid;
+
         super.seek(pos);
 
+        if(isPositionUnchanged) {
+            return;
+        }
+
         // Flush any unwritten data in the buffer.
         flushBuffer();
 
         // Set the FileChannel position for WritableByteChannel.write().
 	channel.position(pos);
+        isChannelPositionValid = true;
     }
 
     public void setByteOrder(ByteOrder networkByteOrder) {
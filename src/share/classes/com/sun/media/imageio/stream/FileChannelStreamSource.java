@@ -0,0 +1,275 @@
+/*
+ * $RCSfile: FileChannelStreamSource.java,v $
+ *
+ * 
+ * Copyright (c) 2005 Sun Microsystems, Inc. All  Rights Reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 
+ * 
+ * - Redistribution of source code must retain the above copyright 
+ *   notice, this  list of conditions and the following disclaimer.
+ * 
+ * - Redistribution in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in 
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ * 
+ * Neither the name of Sun Microsystems, Inc. or the names of 
+ * contributors may be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * This software is provided "AS IS," without a warranty of any 
+ * kind. ALL EXPRESS OR IMPLIED CONDITIONS, REPRESENTATIONS AND 
+ * WARRANTIES, INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE OR NON-INFRINGEMENT, ARE HEREBY
+ * EXCLUDED. SUN MIDROSYSTEMS, INC. ("SUN") AND ITS LICENSORS SHALL 
+ * NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY LICENSEE AS A RESULT OF 
+ * USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE OR ITS
+ * DERIVATIVES. IN NO EVENT WILL SUN OR ITS LICENSORS BE LIABLE FOR 
+ * ANY LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT, INDIRECT, SPECIAL,
+ * CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES, HOWEVER CAUSED AND
+ * REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT OF THE USE OF OR
+ * INABILITY TO USE THIS SOFTWARE, EVEN IF SUN HAS BEEN ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGES. 
+ * 
+ * You acknowledge that this software is not designed or intended for 
+ * use in the design, construction, operation or maintenance of any 
+ * nuclear facility. 
+ *
+ * $Revision: 1.1 $
+ * $Date: 2026-10-18 00:00:00 $
+ * $State: Exp $
+ */
+package com.sun.media.imageio.stream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageInputStreamImpl;
+
+/**
+ * A source of <code>ImageInputStream</code>s which read from a single
+ * shared <code>FileChannel</code>.  Each stream obtained from
+ * <code>createInputStream()</code> has its own position, byte order and
+ * buffer and reads the channel only by means of the positional method
+ * {@link FileChannel#read(ByteBuffer,long)}, which neither uses nor changes
+ * the position of the channel.  Different streams may therefore be used
+ * concurrently by different threads without any locking, for example to
+ * read the tiles of one image file in parallel.  Each individual stream
+ * is, like other streams, <b>not</b> synchronized.
+ *
+ * <p>The stream positions are the positions in the channel, i.e., each
+ * stream is initially positioned at the start of the channel regardless
+ * of the position of the channel.  The contents of the channel are
+ * assumed to be stable while the streams are in use.  Closing a stream
+ * does not close the channel; closing the channel makes all its streams
+ * unusable.  Note that if a thread is interrupted while reading from an
+ * interruptible channel the channel is closed.</p>
+ *
+ * @see javax.imageio.stream.ImageInputStream
+ * @see java.nio.channels.FileChannel
+ */
+public class FileChannelStreamSource {
+
+    /** The size of the buffer of each stream. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The shared <code>FileChannel</code>. */
+    private FileChannel channel;
+
+    /**
+     * Constructs a <code>FileChannelStreamSource</code> which reads
+     * from the supplied <code>FileChannel</code>.
+     *
+     * @param channel the source <code>FileChannel</code>.
+     *
+     * @throws IllegalArgumentException if <code>channel</code> is
+     *         <code>null</code> or is not open.
+     */
+    public FileChannelStreamSource(FileChannel channel) {
+        if(channel == null) {
+            throw new IllegalArgumentException("channel == null");
+        } else if(!channel.isOpen()) {
+            throw new IllegalArgumentException("channel.isOpen() == false");
+        }
+
+        this.channel = channel;
+    }
+
+    /**
+     * Returns the shared <code>FileChannel</code>.
+     *
+     * @return the source <code>FileChannel</code>.
+     */
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Returns a new <code>ImageInputStream</code> positioned at the start
+     * of the channel which may be used independently of any other stream
+     * obtained from this source.
+     *
+     * @return an <code>ImageInputStream</code> reading from the channel.
+     */
+    public ImageInputStream createInputStream() {
+        return new ChannelStream(this);
+    }
+
+    /**
+     * Returns the source of an <code>ImageInputStream</code> obtained from
+     * <code>createInputStream()</code>, or <code>null</code> if the
+     * stream was not obtained from a <code>FileChannelStreamSource</code>.
+     * This allows code which is given one such stream, for example an
+     * <code>ImageReader</code>, to create further streams for use by other
+     * threads.
+     *
+     * @param stream an <code>ImageInputStream</code>.
+     *
+     * @return the source of <code>stream</code> or <code>null</code>.
+     */
+    public static FileChannelStreamSource getSource(ImageInputStream stream) {
+        return stream instanceof ChannelStream ?
+            ((ChannelStream)stream).source : null;
+    }
+
+    /**
+     * Reads up to <code>len</code> bytes from the channel starting at
+     * position <code>pos</code>, returning the number of bytes read or
+     * -1 if <code>pos</code> is at or beyond the end of the channel.
+     * Fewer bytes are read only if the end of the channel is reached.
+     */
+    int read(long pos, byte[] b, int off, int len) throws IOException {
+        ByteBuffer dst = ByteBuffer.wrap(b, off, len);
+        int numRead = 0;
+        while(numRead < len) {
+            int n = channel.read(dst, pos + numRead);
+            if(n < 0) {
+                break;
+            }
+            numRead += n;
+        }
+        return numRead == 0 && len > 0 ? -1 : numRead;
+    }
+
+    /**
+     * An <code>ImageInputStream</code> with its own position which reads
+     * from the channel of a <code>FileChannelStreamSource</code>.
+     */
+    private static class ChannelStream extends ImageInputStreamImpl {
+
+        /** The source of the stream. */
+        FileChannelStreamSource source;
+
+        /** Buffered data, allocated on first use. */
+        private byte[] buffer;
+
+        /** The stream position of the first byte of the buffer. */
+        private long bufferPos = 0L;
+
+        /** The number of valid bytes in the buffer. */
+        private int bufferLength = 0;
+
+        ChannelStream(FileChannelStreamSource source) {
+            this.source = source;
+        }
+
+        /**
+         * Fills the buffer from the current stream position, returning
+         * <code>false</code> at the end of the channel.
+         */
+        private boolean fillBuffer() throws IOException {
+            if(buffer == null) {
+                buffer = new byte[BUFFER_SIZE];
+            }
+            bufferPos = streamPos;
+            bufferLength = Math.max(source.read(streamPos, buffer,
+                                                0, BUFFER_SIZE), 0);
+            return bufferLength > 0;
+        }
+
+        public int read() throws IOException {
+            checkClosed();
+            bitOffset = 0;
+
+            if(streamPos < bufferPos ||
+               streamPos >= bufferPos + bufferLength) {
+                if(!fillBuffer()) {
+                    return -1;
+                }
+            }
+
+            return buffer[(int)(streamPos++ - bufferPos)] & 0xff;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(off < 0 || len < 0 || off + len > b.length) {
+                // NullPointerException will be thrown before this if b
+                // is null.
+                throw new IndexOutOfBoundsException
+                    ("off < 0 || len < 0 || off + len > b.length");
+            } else if(len == 0) {
+                return 0;
+            }
+
+            checkClosed();
+            bitOffset = 0;
+
+            // Copy any buffered data.
+            int numRead = 0;
+            if(streamPos >= bufferPos &&
+               streamPos < bufferPos + bufferLength) {
+                numRead = (int)Math.min(len,
+                                        bufferPos + bufferLength - streamPos);
+                System.arraycopy(buffer, (int)(streamPos - bufferPos),
+                                 b, off, numRead);
+                streamPos += numRead;
+                if(numRead == len) {
+                    return len;
+                }
+            }
+
+            // Read large requests directly and small ones via the buffer.
+            int remaining = len - numRead;
+            if(remaining >= BUFFER_SIZE) {
+                int n = source.read(streamPos, b, off + numRead, remaining);
+                if(n > 0) {
+                    streamPos += n;
+                    numRead += n;
+                }
+            } else if(fillBuffer()) {
+                int n = Math.min(remaining, bufferLength);
+                System.arraycopy(buffer, 0, b, off + numRead, n);
+                streamPos += n;
+                numRead += n;
+            }
+
+            return numRead == 0 ? -1 : numRead;
+        }
+
+        /**
+         * Returns the number of bytes currently in the
+         * <code>FileChannel</code>, or -1L if it cannot be determined.
+         */
+        public long length() {
+            try {
+                return source.channel.size();
+            } catch(IOException e) {
+                return -1L;
+            }
+        }
+
+        /**
+         * Invokes the superclass method and releases the buffer.  The
+         * shared <code>FileChannel</code> is not closed.
+         */
+        public void close() throws IOException {
+            super.close();
+            buffer = null;
+            bufferLength = 0;
+        }
+    }
+}
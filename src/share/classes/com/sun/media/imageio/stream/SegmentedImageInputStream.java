@@ -51,7 +51,10 @@ import javax.imageio.stream.ImageInputStreamImpl;
 /**
  * An implementation of the <code>StreamSegmentMapper</code> interface
  * that requires an explicit list of the starting locations and
- * lengths of the source segments.
+ * lengths of the source segments.  The segment containing a position
+ * is found by a binary search of the positions at which the segments
+ * start, after first checking the most recently used segment and its
+ * successor so that sequential access takes constant time.
  */
 class StreamSegmentMapperImpl implements StreamSegmentMapper {
 
@@ -59,54 +62,93 @@ class StreamSegmentMapperImpl implements StreamSegmentMapper {
 
     private int[] segmentLengths;
 
+    // The position in the mapped stream of the start of each segment,
+    // followed by the total length of the segments.
+    private long[] segmentStarts;
+
+    // The index of the most recently used segment.
+    private int lastIndex = 0;
+
     public StreamSegmentMapperImpl(long[] segmentPositions,
                                    int[] segmentLengths) {
         this.segmentPositions = (long[])segmentPositions.clone();
         this.segmentLengths = (int[])segmentLengths.clone();
+
+        int numSegments = this.segmentLengths.length;
+        this.segmentStarts = new long[numSegments + 1];
+        for (int i = 0; i < numSegments; i++) {
+            segmentStarts[i + 1] = segmentStarts[i] + this.segmentLengths[i];
+        }
     }
 
-    public StreamSegment getStreamSegment(long position, int length) {
+    /**
+     * Returns the index of the segment containing the given position
+     * or -1 if the position is not within any segment.
+     */
+    private int getSegmentIndex(long position) {
         int numSegments = segmentLengths.length;
-        for (int i = 0; i < numSegments; i++) {
-            int len = segmentLengths[i];
-            if (position < len) {
-                return new StreamSegment(segmentPositions[i] + position,
-                                         Math.min(len - (int)position,
-                                                  length));
+        if (position < 0 || position >= segmentStarts[numSegments]) {
+            return -1;
+        }
+
+        // Check the last segment used and the one following it.
+        int index = lastIndex;
+        if (position >= segmentStarts[index]) {
+            if (position < segmentStarts[index + 1]) {
+                return index;
+            } else if (index + 2 <= numSegments &&
+                       position < segmentStarts[index + 2]) {
+                lastIndex = ++index;
+                return index;
+            }
+        }
+
+        // Find the first segment which ends after the position.
+        int lo = 0;
+        int hi = numSegments - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (segmentStarts[mid + 1] > position) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
             }
-            position -= len;
         }
 
-        return null;
+        lastIndex = lo;
+        return lo;
+    }
+
+    public StreamSegment getStreamSegment(long position, int length) {
+        int index = getSegmentIndex(position);
+        if (index < 0) {
+            return null;
+        }
+
+        position -= segmentStarts[index];
+        return new StreamSegment(segmentPositions[index] + position,
+                                 Math.min(segmentLengths[index] -
+                                          (int)position,
+                                          length));
     }
 
     public void getStreamSegment(long position, int length,
                                  StreamSegment seg) {
-        int numSegments = segmentLengths.length;
-        for (int i = 0; i < numSegments; i++) {
-            int len = segmentLengths[i];
-            if (position < len) {
-                seg.setStartPos(segmentPositions[i] + position);
-                seg.setSegmentLength(Math.min(len - (int)position, length));
-                return;
-            }
-            position -= len;
+        int index = getSegmentIndex(position);
+        if (index < 0) {
+            seg.setStartPos(-1);
+            seg.setSegmentLength(-1);
+            return;
         }
 
-        seg.setStartPos(-1);
-        seg.setSegmentLength(-1);
-        return;
+        position -= segmentStarts[index];
+        seg.setStartPos(segmentPositions[index] + position);
+        seg.setSegmentLength(Math.min(segmentLengths[index] - (int)position,
+                                      length));
     }
 
     long length() {
-        int numSegments = segmentLengths.length;
-        long len = 0L;
-
-        for(int i = 0; i < numSegments; i++) {
-            len += segmentLengths[i];
-        }
-
-        return len;
+        return segmentStarts[segmentLengths.length];
     }
 }
 
@@ -132,6 +174,10 @@ class SectorStreamSegmentMapper implements StreamSegmentMapper {
     }
 
     public StreamSegment getStreamSegment(long position, int length) {
+        if (position < 0 || position >= totalLength) {
+            return null;
+        }
+
         int index = (int) (position/segmentLength);
 
         // Compute segment length
@@ -151,6 +197,12 @@ class SectorStreamSegmentMapper implements StreamSegmentMapper {
 
     public void getStreamSegment(long position, int length,
                                  StreamSegment seg) {
+        if (position < 0 || position >= totalLength) {
+            seg.setStartPos(-1);
+            seg.setSegmentLength(-1);
+            return;
+        }
+
         int index = (int) (position/segmentLength);
 
         // Compute segment length
@@ -202,6 +254,13 @@ class SectorStreamSegmentMapper implements StreamSegmentMapper {
  * provided dynamically.  This mapping might be computed by reading
  * from a directory in piecemeal fashion in order to avoid consuming
  * memory resources.
+ *
+ * <p> Data are read from the source stream in blocks which may span
+ * several segments and are buffered, so that reading a small number of
+ * bytes at a time does not require a seek of the source stream for each
+ * read.  A request for a large number of bytes is satisfied directly
+ * from as many segments as necessary.  The contents of the source stream
+ * are assumed not to change while this stream is in use.
  */
 public class SegmentedImageInputStream extends ImageInputStreamImpl {
 
@@ -273,6 +332,69 @@ public class SegmentedImageInputStream extends ImageInputStreamImpl {
     }
 
     private StreamSegment streamSegment = new StreamSegment();
+
+    // The size of the read-ahead buffer.
+    private static final int BUFFER_SIZE = 4096;
+
+    // Data read ahead from the source stream, allocated on first use.
+    private byte[] buffer = null;
+
+    // The position in this stream of the first byte of the buffer.
+    private long bufferPos = 0L;
+
+    // The number of valid bytes in the buffer.
+    private int bufferLength = 0;
+
+    /**
+     * Reads up to <code>len</code> bytes starting at position
+     * <code>pos</code> of this stream from as many segments of the source
+     * stream as are required, returning the number of bytes read, which
+     * is less than <code>len</code> only if the end of the segments or of
+     * the source stream is reached.
+     */
+    private int readSegments(long pos, byte[] b, int off, int len)
+        throws IOException {
+        int numRead = 0;
+        while (numRead < len) {
+            mapper.getStreamSegment(pos + numRead, len - numRead,
+                                    streamSegment);
+            int streamSegmentLength = streamSegment.getSegmentLength();
+            if (streamSegmentLength <= 0) {
+                break;
+            }
+            stream.seek(streamSegment.getStartPos());
+
+            int nbytes = 0;
+            while (nbytes < streamSegmentLength) {
+                int n = stream.read(b, off + numRead + nbytes,
+                                    streamSegmentLength - nbytes);
+                if (n <= 0) {
+                    break;
+                }
+                nbytes += n;
+            }
+            numRead += nbytes;
+            if (nbytes < streamSegmentLength) {
+                // The source stream ended prematurely.
+                break;
+            }
+        }
+
+        return numRead;
+    }
+
+    /**
+     * Fills the buffer starting at the current stream position,
+     * returning <code>false</code> if no data remain.
+     */
+    private boolean fillBuffer() throws IOException {
+        if (buffer == null) {
+            buffer = new byte[BUFFER_SIZE];
+        }
+        bufferPos = streamPos;
+        bufferLength = readSegments(streamPos, buffer, 0, BUFFER_SIZE);
+        return bufferLength > 0;
+    }
     
     /**
      * Reads the next byte of data from the input stream. The value byte is
@@ -287,18 +409,15 @@ public class SegmentedImageInputStream extends ImageInputStreamImpl {
      * @exception  IOException  if an I/O error occurs.
      */
     public int read() throws IOException {
-        mapper.getStreamSegment(streamPos, 1, streamSegment);
-        int streamSegmentLength = streamSegment.getSegmentLength();
-        if(streamSegmentLength < 0) {
-            return -1;
+        bitOffset = 0;
+
+        if (streamPos < bufferPos || streamPos >= bufferPos + bufferLength) {
+            if (!fillBuffer()) {
+                return -1;
+            }
         }
-        stream.seek(streamSegment.getStartPos());
 
-        // XXX What happens if streamSegmentLength == 0? Should this
-        // method also return -1 as above for streamSegmentLength < 0?
-        int val = stream.read();
-        ++streamPos;
-        return val;
+        return buffer[(int)(streamPos++ - bufferPos)] & 0xff;
     }
 
     /**
@@ -360,16 +479,34 @@ public class SegmentedImageInputStream extends ImageInputStreamImpl {
             return 0;
         }
 
-        mapper.getStreamSegment(streamPos, len, streamSegment);
-        int streamSegmentLength = streamSegment.getSegmentLength();
-        if(streamSegmentLength < 0) {
-            return -1;
+        bitOffset = 0;
+
+        // Copy any buffered data.
+        int numRead = 0;
+        if (streamPos >= bufferPos && streamPos < bufferPos + bufferLength) {
+            numRead = (int)Math.min(len, bufferPos + bufferLength - streamPos);
+            System.arraycopy(buffer, (int)(streamPos - bufferPos),
+                             b, off, numRead);
+            streamPos += numRead;
+            if (numRead == len) {
+                return len;
+            }
+        }
+
+        // Read large requests directly and small ones via the buffer.
+        int remaining = len - numRead;
+        if (remaining >= BUFFER_SIZE) {
+            int nbytes = readSegments(streamPos, b, off + numRead, remaining);
+            streamPos += nbytes;
+            numRead += nbytes;
+        } else if (fillBuffer()) {
+            int nbytes = Math.min(remaining, bufferLength);
+            System.arraycopy(buffer, 0, b, off + numRead, nbytes);
+            streamPos += nbytes;
+            numRead += nbytes;
         }
-        stream.seek(streamSegment.getStartPos());
 
-        int nbytes = stream.read(b, off, streamSegmentLength);
-        streamPos += nbytes;
-        return nbytes;
+        return numRead == 0 ? -1 : numRead;
     }
 
     public long length() {
@@ -0,0 +1,204 @@
+/*
+ * $RCSfile: ByteArrayImageInputStream.java,v $
+ *
+ * 
+ * Copyright (c) 2005 Sun Microsystems, Inc. All  Rights Reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 
+ * 
+ * - Redistribution of source code must retain the above copyright 
+ *   notice, this  list of conditions and the following disclaimer.
+ * 
+ * - Redistribution in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in 
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ * 
+ * Neither the name of Sun Microsystems, Inc. or the names of 
+ * contributors may be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * This software is provided "AS IS," without a warranty of any 
+ * kind. ALL EXPRESS OR IMPLIED CONDITIONS, REPRESENTATIONS AND 
+ * WARRANTIES, INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE OR NON-INFRINGEMENT, ARE HEREBY
+ * EXCLUDED. SUN MIDROSYSTEMS, INC. ("SUN") AND ITS LICENSORS SHALL 
+ * NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY LICENSEE AS A RESULT OF 
+ * USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE OR ITS
+ * DERIVATIVES. IN NO EVENT WILL SUN OR ITS LICENSORS BE LIABLE FOR 
+ * ANY LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT, INDIRECT, SPECIAL,
+ * CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES, HOWEVER CAUSED AND
+ * REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT OF THE USE OF OR
+ * INABILITY TO USE THIS SOFTWARE, EVEN IF SUN HAS BEEN ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGES. 
+ * 
+ * You acknowledge that this software is not designed or intended for 
+ * use in the design, construction, operation or maintenance of any 
+ * nuclear facility. 
+ *
+ * $Revision: 1.1 $
+ * $Date: 2026-10-18 00:00:00 $
+ * $State: Exp $
+ */
+package com.sun.media.imageioimpl.common;
+
+import java.io.IOException;
+import javax.imageio.stream.ImageInputStreamImpl;
+
+/**
+ * An <code>ImageInputStream</code> which reads from a region of a
+ * <code>byte</code> array without any intermediate caching.
+ *
+ * <p> The first byte of the region may be assigned an arbitrary stream
+ * position, the <i>origin</i>, so that the stream can stand in for a
+ * window of some larger stream: seeking to position <code>p</code>
+ * accesses array element <code>off + (p - origin)</code>.  Positions
+ * outside of the window behave as end of stream.  This allows, for
+ * example, a plug-in to read a strip or tile into memory and hand it to
+ * a decoder which seeks using offsets relative to the original stream.
+ *
+ * <p> Each instance maintains its own position so several instances may
+ * share the same array, and be used by different threads, as long as the
+ * array contents are not modified.
+ */
+public class ByteArrayImageInputStream extends ImageInputStreamImpl {
+
+    private byte[] data;
+    private int dataOffset;
+    private int dataLength;
+    private long origin;
+
+    /**
+     * Constructs a <code>ByteArrayImageInputStream</code> which reads
+     * the entire array with an origin of zero.
+     *
+     * @param data the source data.
+     *
+     * @throws IllegalArgumentException if <code>data</code> is
+     * <code>null</code>.
+     */
+    public ByteArrayImageInputStream(byte[] data) {
+        this(data, 0, data == null ? 0 : data.length, 0L);
+    }
+
+    /**
+     * Constructs a <code>ByteArrayImageInputStream</code> which reads
+     * <code>length</code> bytes of <code>data</code> starting at
+     * <code>offset</code>, the first of which is located at stream
+     * position <code>origin</code>.
+     *
+     * @param data the source data.
+     * @param offset the index in <code>data</code> of the first byte.
+     * @param length the number of bytes available.
+     * @param origin the stream position of <code>data[offset]</code>.
+     *
+     * @throws IllegalArgumentException if <code>data</code> is
+     * <code>null</code>, if <code>origin</code> is negative, or if
+     * <code>offset</code> and <code>length</code> do not specify a
+     * region of <code>data</code>.
+     */
+    public ByteArrayImageInputStream(byte[] data, int offset, int length,
+                                     long origin) {
+        if(data == null) {
+            throw new IllegalArgumentException("data == null!");
+        }
+        if(offset < 0 || length < 0 || offset + length > data.length) {
+            throw new IllegalArgumentException
+                ("offset and length do not specify a region of data!");
+        }
+        if(origin < 0) {
+            throw new IllegalArgumentException("origin < 0!");
+        }
+        setData(data, offset, length, origin);
+    }
+
+    /**
+     * Replaces the data backing this stream and seeks to the new
+     * origin.  This allows an instance to be recycled for successive
+     * strips or tiles without allocating a new stream.
+     *
+     * @param data the source data.
+     * @param offset the index in <code>data</code> of the first byte.
+     * @param length the number of bytes available.
+     * @param origin the stream position of <code>data[offset]</code>.
+     */
+    public void setData(byte[] data, int offset, int length, long origin) {
+        this.data = data;
+        this.dataOffset = offset;
+        this.dataLength = length;
+        this.origin = origin;
+        this.streamPos = origin;
+        this.flushedPos = 0L;
+        this.bitOffset = 0;
+    }
+
+    /**
+     * Returns the stream position of the first byte of the window.
+     */
+    public long getOrigin() {
+        return origin;
+    }
+
+    public int read() throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        long index = streamPos - origin;
+        if(index < 0 || index >= dataLength) {
+            return -1;
+        }
+        streamPos++;
+        return data[dataOffset + (int)index] & 0xff;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkClosed();
+        if (b == null) {
+            throw new NullPointerException();
+        }
+        if ((off < 0) || (len < 0) || (off + len > b.length)) {
+            throw new IndexOutOfBoundsException();
+        }
+        bitOffset = 0;
+        if (len == 0) {
+            return 0;
+        }
+
+        long index = streamPos - origin;
+        if(index < 0 || index >= dataLength) {
+            return -1;
+        }
+        int nbytes = (int)Math.min((long)len, dataLength - index);
+        System.arraycopy(data, dataOffset + (int)index, b, off, nbytes);
+        streamPos += nbytes;
+        return nbytes;
+    }
+
+    /**
+     * Returns the stream position just beyond the last byte of the
+     * window.
+     */
+    public long length() {
+        return origin + dataLength;
+    }
+
+    /**
+     * Returns <code>true</code> as all data are held in memory.
+     */
+    public boolean isCached() {
+        return true;
+    }
+
+    /**
+     * Returns <code>true</code> as all data are held in memory.
+     */
+    public boolean isCachedMemory() {
+        return true;
+    }
+
+    public void close() throws IOException {
+        super.close();
+        data = null;
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * $RCSfile: ByteArrayImageOutputStream.java,v $
+ *
+ * 
+ * Copyright (c) 2005 Sun Microsystems, Inc. All  Rights Reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 
+ * 
+ * - Redistribution of source code must retain the above copyright 
+ *   notice, this  list of conditions and the following disclaimer.
+ * 
+ * - Redistribution in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in 
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ * 
+ * Neither the name of Sun Microsystems, Inc. or the names of 
+ * contributors may be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * This software is provided "AS IS," without a warranty of any 
+ * kind. ALL EXPRESS OR IMPLIED CONDITIONS, REPRESENTATIONS AND 
+ * WARRANTIES, INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE OR NON-INFRINGEMENT, ARE HEREBY
+ * EXCLUDED. SUN MIDROSYSTEMS, INC. ("SUN") AND ITS LICENSORS SHALL 
+ * NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY LICENSEE AS A RESULT OF 
+ * USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE OR ITS
+ * DERIVATIVES. IN NO EVENT WILL SUN OR ITS LICENSORS BE LIABLE FOR 
+ * ANY LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT, INDIRECT, SPECIAL,
+ * CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES, HOWEVER CAUSED AND
+ * REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT OF THE USE OF OR
+ * INABILITY TO USE THIS SOFTWARE, EVEN IF SUN HAS BEEN ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGES. 
+ * 
+ * You acknowledge that this software is not designed or intended for 
+ * use in the design, construction, operation or maintenance of any 
+ * nuclear facility. 
+ *
+ * $Revision: 1.1 $
+ * $Date: 2026-10-18 00:00:00 $
+ * $State: Exp $
+ */
+package com.sun.media.imageioimpl.common;
+
+import java.io.IOException;
+import java.util.Arrays;
+import javax.imageio.stream.ImageOutputStreamImpl;
+
+/**
+ * An <code>ImageOutputStream</code> which writes to a growable
+ * <code>byte</code> array held in memory.
+ *
+ * <p> Unlike a <code>MemoryCacheImageOutputStream</code> wrapping a
+ * <code>ByteArrayOutputStream</code>, the data written are available
+ * directly from the backing array without further copying, and the
+ * array is retained by <code>clear</code> so that an instance may be
+ * recycled, e.g., for successive strips or tiles, without allocation
+ * once it has grown to the size of the largest.
+ *
+ * <p> Instances are not synchronized.
+ */
+public class ByteArrayImageOutputStream extends ImageOutputStreamImpl {
+
+    private byte[] data;
+    private int length = 0;
+
+    /**
+     * Constructs a <code>ByteArrayImageOutputStream</code> with the
+     * given initial capacity.
+     *
+     * @param initialCapacity the initial length of the backing array.
+     *
+     * @throws IllegalArgumentException if <code>initialCapacity</code>
+     * is negative.
+     */
+    public ByteArrayImageOutputStream(int initialCapacity) {
+        if(initialCapacity < 0) {
+            throw new IllegalArgumentException("initialCapacity < 0!");
+        }
+        data = new byte[initialCapacity];
+    }
+
+    /**
+     * Returns the backing array.  The data written occupy elements
+     * <code>0</code> through <code>length()&nbsp;-&nbsp;1</code>.  The
+     * array may be replaced by a larger one by subsequent writes.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * Discards all data written and seeks to position zero.  The
+     * backing array is retained.
+     */
+    public void clear() {
+        length = 0;
+        streamPos = 0L;
+        flushedPos = 0L;
+        bitOffset = 0;
+    }
+
+    // Grows the array to hold 'len' bytes at the current position and
+    // zeros any gap left by seeking beyond the end of the data, which
+    // might otherwise expose bytes written before the last clear().
+    private void prepareWrite(int len) throws IOException {
+        long capacity = streamPos + len;
+        if(capacity > Integer.MAX_VALUE) {
+            throw new IOException("Stream too long!");
+        }
+        if(capacity > data.length) {
+            int newLength =
+                (int)Math.min(Math.max(2L*data.length, capacity),
+                              (long)Integer.MAX_VALUE);
+            byte[] newData = new byte[newLength];
+            System.arraycopy(data, 0, newData, 0, length);
+            data = newData;
+        }
+        if(streamPos > length) {
+            Arrays.fill(data, length, (int)streamPos, (byte)0);
+        }
+    }
+
+    public void write(int b) throws IOException {
+        checkClosed();
+        flushBits();
+        prepareWrite(1);
+        data[(int)streamPos++] = (byte)b;
+        if(streamPos > length) {
+            length = (int)streamPos;
+        }
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        checkClosed();
+        if (b == null) {
+            throw new NullPointerException();
+        }
+        if ((off < 0) || (len < 0) || (off + len > b.length)) {
+            throw new IndexOutOfBoundsException();
+        }
+        flushBits();
+        if (len == 0) {
+            return;
+        }
+        prepareWrite(len);
+        System.arraycopy(b, off, data, (int)streamPos, len);
+        streamPos += len;
+        if(streamPos > length) {
+            length = (int)streamPos;
+        }
+    }
+
+    public int read() throws IOException {
+        checkClosed();
+        bitOffset = 0;
+        if(streamPos >= length) {
+            return -1;
+        }
+        return data[(int)streamPos++] & 0xff;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkClosed();
+        if (b == null) {
+            throw new NullPointerException();
+        }
+        if ((off < 0) || (len < 0) || (off + len > b.length)) {
+            throw new IndexOutOfBoundsException();
+        }
+        bitOffset = 0;
+        if (len == 0) {
+            return 0;
+        }
+        if(streamPos >= length) {
+            return -1;
+        }
+        int nbytes = (int)Math.min((long)len, length - streamPos);
+        System.arraycopy(data, (int)streamPos, b, off, nbytes);
+        streamPos += nbytes;
+        return nbytes;
+    }
+
+    /**
+     * Returns the number of bytes written, i.e., one more than the
+     * largest position written.
+     */
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Returns <code>true</code> as all data are held in memory.
+     */
+    public boolean isCached() {
+        return true;
+    }
+
+    /**
+     * Returns <code>true</code> as all data are held in memory.
+     */
+    public boolean isCachedMemory() {
+        return true;
+    }
+
+    public void close() throws IOException {
+        super.close();
+        data = null;
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * $RCSfile: ByteArrayPool.java,v $
+ *
+ * 
+ * Copyright (c) 2005 Sun Microsystems, Inc. All  Rights Reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 
+ * 
+ * - Redistribution of source code must retain the above copyright 
+ *   notice, this  list of conditions and the following disclaimer.
+ * 
+ * - Redistribution in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in 
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ * 
+ * Neither the name of Sun Microsystems, Inc. or the names of 
+ * contributors may be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * This software is provided "AS IS," without a warranty of any 
+ * kind. ALL EXPRESS OR IMPLIED CONDITIONS, REPRESENTATIONS AND 
+ * WARRANTIES, INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE OR NON-INFRINGEMENT, ARE HEREBY
+ * EXCLUDED. SUN MIDROSYSTEMS, INC. ("SUN") AND ITS LICENSORS SHALL 
+ * NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY LICENSEE AS A RESULT OF 
+ * USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE OR ITS
+ * DERIVATIVES. IN NO EVENT WILL SUN OR ITS LICENSORS BE LIABLE FOR 
+ * ANY LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT, INDIRECT, SPECIAL,
+ * CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES, HOWEVER CAUSED AND
+ * REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT OF THE USE OF OR
+ * INABILITY TO USE THIS SOFTWARE, EVEN IF SUN HAS BEEN ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGES. 
+ * 
+ * You acknowledge that this software is not designed or intended for 
+ * use in the design, construction, operation or maintenance of any 
+ * nuclear facility. 
+ *
+ * $Revision: 1.1 $
+ * $Date: 2026-10-18 00:00:00 $
+ * $State: Exp $
+ */
+package com.sun.media.imageioimpl.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A pool of reusable scratch <code>byte</code> arrays.
+ *
+ * <p> Arrays obtained from the pool are at least as long as requested
+ * but may be longer and their contents are undefined.  An array which
+ * is no longer needed should be handed back by means of
+ * <code>release</code>.  The pool only grows: an array is allocated
+ * only when no pooled array is large enough, and its size is never
+ * less than the minimum size hint, so that once the largest request
+ * has been seen no further allocation occurs.
+ *
+ * <p> The number of bytes allocated is recorded so that the effect of
+ * pooling can be observed.  All methods are synchronized so a pool may
+ * be shared by several threads.
+ */
+public class ByteArrayPool {
+
+    private List free = new ArrayList();
+    private int maxPooled;
+    private int minimumSize = 0;
+    private long bytesAllocated = 0L;
+
+    /**
+     * Constructs a <code>ByteArrayPool</code> retaining at most the
+     * given number of released arrays.
+     *
+     * @param maxPooled the maximum number of arrays retained.
+     *
+     * @throws IllegalArgumentException if <code>maxPooled</code> is
+     * negative.
+     */
+    public ByteArrayPool(int maxPooled) {
+        if (maxPooled < 0) {
+            throw new IllegalArgumentException("maxPooled < 0!");
+        }
+        this.maxPooled = maxPooled;
+    }
+
+    /**
+     * Raises the minimum length of newly allocated arrays.  Requests
+     * to lower the minimum are ignored.
+     *
+     * @param size the minimum length of newly allocated arrays.
+     */
+    public synchronized void setMinimumSize(int size) {
+        if (size > minimumSize) {
+            minimumSize = size;
+        }
+    }
+
+    /**
+     * Returns an array of at least <code>length</code> bytes.
+     *
+     * @param length the minimum length of the array.
+     *
+     * @throws IllegalArgumentException if <code>length</code> is
+     * negative.
+     */
+    public synchronized byte[] get(int length) {
+        if (length < 0) {
+            throw new IllegalArgumentException("length < 0!");
+        }
+
+        // Use the smallest pooled array which is large enough.
+        int index = -1;
+        int numFree = free.size();
+        for (int i = 0; i < numFree; i++) {
+            byte[] b = (byte[])free.get(i);
+            if (b.length >= length &&
+                (index < 0 || b.length < ((byte[])free.get(index)).length)) {
+                index = i;
+            }
+        }
+        if (index >= 0) {
+            return (byte[])free.remove(index);
+        }
+
+        // Nothing fits: drop the smallest pooled array, if any, as it is
+        // unlikely to be of further use, and allocate.
+        if (numFree > 0) {
+            int smallest = 0;
+            for (int i = 1; i < numFree; i++) {
+                if (((byte[])free.get(i)).length <
+                    ((byte[])free.get(smallest)).length) {
+                    smallest = i;
+                }
+            }
+            free.remove(smallest);
+        }
+
+        int size = Math.max(length, minimumSize);
+        bytesAllocated += size;
+        return new byte[size];
+    }
+
+    /**
+     * Returns an array to the pool.  The caller must not use the array
+     * afterwards.
+     *
+     * @param b an array obtained from <code>get</code>, or
+     * <code>null</code>, which is ignored.
+     */
+    public synchronized void release(byte[] b) {
+        if (b != null && free.size() < maxPooled) {
+            free.add(b);
+        }
+    }
+
+    /**
+     * Returns the number of bytes allocated by the pool since it was
+     * created or since the last call to
+     * <code>resetBytesAllocated</code>.
+     */
+    public synchronized long getBytesAllocated() {
+        return bytesAllocated;
+    }
+
+    /**
+     * Resets to zero the count of bytes allocated.
+     */
+    public synchronized void resetBytesAllocated() {
+        bytesAllocated = 0L;
+    }
+
+    /**
+     * Discards all pooled arrays.
+     */
+    public synchronized void clear() {
+        free.clear();
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * $RCSfile: StreamPrefetcher.java,v $
+ *
+ * 
+ * Copyright (c) 2005 Sun Microsystems, Inc. All  Rights Reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 
+ * 
+ * - Redistribution of source code must retain the above copyright 
+ *   notice, this  list of conditions and the following disclaimer.
+ * 
+ * - Redistribution in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in 
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ * 
+ * Neither the name of Sun Microsystems, Inc. or the names of 
+ * contributors may be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * This software is provided "AS IS," without a warranty of any 
+ * kind. ALL EXPRESS OR IMPLIED CONDITIONS, REPRESENTATIONS AND 
+ * WARRANTIES, INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE OR NON-INFRINGEMENT, ARE HEREBY
+ * EXCLUDED. SUN MIDROSYSTEMS, INC. ("SUN") AND ITS LICENSORS SHALL 
+ * NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY LICENSEE AS A RESULT OF 
+ * USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE OR ITS
+ * DERIVATIVES. IN NO EVENT WILL SUN OR ITS LICENSORS BE LIABLE FOR 
+ * ANY LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT, INDIRECT, SPECIAL,
+ * CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES, HOWEVER CAUSED AND
+ * REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT OF THE USE OF OR
+ * INABILITY TO USE THIS SOFTWARE, EVEN IF SUN HAS BEEN ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGES. 
+ * 
+ * You acknowledge that this software is not designed or intended for 
+ * use in the design, construction, operation or maintenance of any 
+ * nuclear facility. 
+ *
+ * $Revision: 1.1 $
+ * $Date: 2026-10-18 00:00:00 $
+ * $State: Exp $
+ */
+package com.sun.media.imageioimpl.common;
+
+import java.io.IOException;
+import javax.imageio.IIOException;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Reads a planned sequence of byte ranges of an
+ * <code>ImageInputStream</code>, optionally on a background thread so
+ * that the data of the next strips or tiles are being read while the
+ * current one is decoded.
+ *
+ * <p> The ranges are supplied when the prefetcher is constructed, in the
+ * order in which they will be consumed, and are obtained one at a time
+ * by <code>next</code>.  They are read as directed by a
+ * {@link StreamReadPlan}, so that several ranges may be obtained with a
+ * single seek and read, and the data of a read are retained until all
+ * of its ranges have been consumed.
+ *
+ * <p> If the prefetcher is started the reads are performed in order on
+ * a background thread and <code>next</code> blocks until the data of
+ * the range are available.  The number of bytes which have been read
+ * but not yet consumed is bounded; the background thread waits once the
+ * bound is reached unless the consumer is waiting for the next read.
+ * The bound may therefore be exceeded if a read is larger than it or if
+ * the ranges are consumed in an order very different from that in which
+ * they are located in the stream.  If the prefetcher is not started each
+ * read is performed by <code>next</code> on the calling thread when its
+ * data are first needed.
+ *
+ * <p> Between <code>start</code> and <code>close</code> the stream is
+ * read by the background thread and must not be used by any other
+ * thread.  <code>close</code> waits for the thread to finish and
+ * restores the position which the stream had before the first read.
+ */
+public class StreamPrefetcher {
+
+    private ImageInputStream stream;
+    private StreamReadPlan plan;
+    private int maxBufferedBytes;
+
+    // The data of reads some of whose ranges have not been consumed,
+    // and the number of such ranges.
+    private byte[][] readData;
+    private int[] numUnconsumed;
+
+    private int numReadsDone = 0;
+    private int numConsumed = 0;
+    private int bufferedBytes = 0;
+    private boolean isConsumerWaiting = false;
+    private Throwable error = null;
+    private boolean isClosed = false;
+
+    private Thread thread = null;
+    private long initialPosition;
+    private boolean isPositionSaved = false;
+
+    /**
+     * Constructs a <code>StreamPrefetcher</code> which reads the given
+     * ranges of <code>stream</code>, combining ranges which are
+     * contiguous in the stream as long as the result does not exceed
+     * <code>maxBufferedBytes</code>.  Range <code>i</code> comprises
+     * <code>lengths[i]</code> bytes starting at stream position
+     * <code>offsets[i]</code>.  The arrays are not copied.
+     *
+     * @param stream the stream from which to read.
+     * @param offsets the stream positions of the ranges.
+     * @param lengths the lengths of the ranges.
+     * @param numRanges the number of ranges.
+     * @param maxBufferedBytes the maximum number of bytes read ahead
+     * of the consumer.
+     *
+     * @throws IllegalArgumentException if <code>stream</code>,
+     * <code>offsets</code> or <code>lengths</code> is <code>null</code>,
+     * if either array is shorter than <code>numRanges</code>, or if
+     * <code>numRanges</code> is negative or <code>maxBufferedBytes</code>
+     * is not positive.
+     */
+    public StreamPrefetcher(ImageInputStream stream,
+                            long[] offsets, int[] lengths, int numRanges,
+                            int maxBufferedBytes) {
+        this(stream,
+             new StreamReadPlan(offsets, lengths, numRanges,
+                                0, Math.max(maxBufferedBytes, 1)),
+             maxBufferedBytes);
+    }
+
+    /**
+     * Constructs a <code>StreamPrefetcher</code> which reads the ranges
+     * of <code>stream</code> as directed by <code>plan</code>.
+     *
+     * @param stream the stream from which to read.
+     * @param plan the ranges to read and how to read them.
+     * @param maxBufferedBytes the maximum number of bytes read ahead
+     * of the consumer by the background thread.
+     *
+     * @throws IllegalArgumentException if <code>stream</code> or
+     * <code>plan</code> is <code>null</code> or
+     * <code>maxBufferedBytes</code> is not positive.
+     */
+    public StreamPrefetcher(ImageInputStream stream, StreamReadPlan plan,
+                            int maxBufferedBytes) {
+        if (stream == null) {
+            throw new IllegalArgumentException("stream == null!");
+        }
+        if (plan == null) {
+            throw new IllegalArgumentException("plan == null!");
+        }
+        if (maxBufferedBytes <= 0) {
+            throw new IllegalArgumentException("maxBufferedBytes <= 0!");
+        }
+
+        this.stream = stream;
+        this.plan = plan;
+        this.maxBufferedBytes = maxBufferedBytes;
+
+        int numReads = plan.getNumReads();
+        this.readData = new byte[numReads][];
+        this.numUnconsumed = new int[numReads];
+        for (int r = 0; r < numReads; r++) {
+            numUnconsumed[r] = plan.getNumRangesInRead(r);
+        }
+    }
+
+    /**
+     * Returns the number of ranges.
+     */
+    public int getNumRanges() {
+        return plan.getNumRanges();
+    }
+
+    /**
+     * Starts reading the ranges on a background thread.
+     *
+     * @throws IllegalStateException if the prefetcher has already been
+     * started, closed, or used.
+     * @throws IOException if the stream position cannot be determined.
+     */
+    public synchronized void start() throws IOException {
+        if (thread != null || isClosed || numReadsDone > 0) {
+            throw new IllegalStateException("Prefetcher already started!");
+        }
+        initialPosition = stream.getStreamPosition();
+        isPositionSaved = true;
+
+        thread = new Thread("StreamPrefetcher") {
+                public void run() {
+                    readAll();
+                }
+            };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Makes the data of the next range available through
+     * <code>view</code>, reading them or waiting until they have been
+     * read.  The origin of <code>view</code> is set to the offset of the
+     * range so that the data may be read at their usual stream
+     * positions.  The array backing <code>view</code> may be shared with
+     * other ranges and must not be modified.
+     *
+     * @param view the stream through which the data are to be read.
+     *
+     * @throws IllegalStateException if all ranges have been consumed or
+     * the prefetcher has been closed.
+     * @throws IOException if an error occurred reading the range or the
+     * calling thread is interrupted.
+     */
+    public synchronized void next(ByteArrayImageInputStream view)
+        throws IOException {
+        if (isClosed) {
+            throw new IllegalStateException("Prefetcher closed!");
+        }
+        if (numConsumed == plan.getNumRanges()) {
+            throw new IllegalStateException("No more ranges!");
+        }
+
+        int i = numConsumed;
+        int r = plan.getReadIndex(i);
+
+        if (thread == null) {
+            // Reads are numbered in order of first use so only the
+            // next read can be required.
+            if (r == numReadsDone) {
+                if (!isPositionSaved) {
+                    initialPosition = stream.getStreamPosition();
+                    isPositionSaved = true;
+                }
+                readData[r] = readFully(r);
+                numReadsDone++;
+            }
+        } else {
+            try {
+                while (r >= numReadsDone && error == null) {
+                    isConsumerWaiting = true;
+                    notifyAll();
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IIOException("Interrupted while reading!", e);
+            } finally {
+                isConsumerWaiting = false;
+            }
+
+            if (r >= numReadsDone) {
+                if (error instanceof IOException) {
+                    throw (IOException)error;
+                } else if (error instanceof RuntimeException) {
+                    throw (RuntimeException)error;
+                } else if (error instanceof Error) {
+                    throw (Error)error;
+                }
+                throw new IIOException("Error reading stream!", error);
+            }
+        }
+
+        numConsumed++;
+        view.setData(readData[r], plan.getOffsetInRead(i),
+                     plan.getRangeLength(i), plan.getRangeOffset(i));
+
+        // Release the read once all of its ranges have been consumed.
+        if (--numUnconsumed[r] == 0) {
+            readData[r] = null;
+            if (thread != null) {
+                bufferedBytes -= plan.getReadLength(r);
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Stops the background thread, waits for it to finish the read in
+     * progress if any, and restores the position which the stream had
+     * before the first read.
+     * Ranges not yet consumed are discarded.  This method has no effect
+     * if the prefetcher has already been closed.
+     *
+     * @throws IOException if the stream position cannot be restored.
+     */
+    public void close() throws IOException {
+        Thread t;
+        synchronized (this) {
+            if (isClosed) {
+                return;
+            }
+            isClosed = true;
+            notifyAll();
+            t = thread;
+        }
+
+        if (t != null) {
+            boolean isInterrupted = false;
+            while (t.isAlive()) {
+                try {
+                    t.join();
+                } catch (InterruptedException e) {
+                    isInterrupted = true;
+                }
+            }
+            if (isInterrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (isPositionSaved) {
+            stream.seek(initialPosition);
+        }
+
+        synchronized (this) {
+            for (int r = 0; r < readData.length; r++) {
+                readData[r] = null;
+            }
+        }
+    }
+
+    // Performs read r.
+    private byte[] readFully(int r) throws IOException {
+        byte[] b = new byte[plan.getReadLength(r)];
+        stream.seek(plan.getReadOffset(r));
+        stream.readFully(b);
+        return b;
+    }
+
+    // Body of the background thread.
+    private void readAll() {
+        int numReads = plan.getNumReads();
+        try {
+            for (int r = 0; r < numReads; r++) {
+                int length = plan.getReadLength(r);
+
+                // Wait for the consumer to make room or to need the data.
+                synchronized (this) {
+                    while (!isClosed && !isConsumerWaiting &&
+                           bufferedBytes > 0 &&
+                           bufferedBytes + length > maxBufferedBytes) {
+                        wait();
+                    }
+                    if (isClosed) {
+                        return;
+                    }
+                }
+
+                byte[] b = readFully(r);
+
+                synchronized (this) {
+                    readData[r] = b;
+                    bufferedBytes += length;
+                    numReadsDone = r + 1;
+                    notifyAll();
+                }
+            }
+        } catch (Throwable t) {
+            // Reported to the consumer once it needs read r.
+            synchronized (this) {
+                error = t;
+                notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ * $RCSfile: StreamReadPlan.java,v $
+ *
+ * 
+ * Copyright (c) 2005 Sun Microsystems, Inc. All  Rights Reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 
+ * 
+ * - Redistribution of source code must retain the above copyright 
+ *   notice, this  list of conditions and the following disclaimer.
+ * 
+ * - Redistribution in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in 
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ * 
+ * Neither the name of Sun Microsystems, Inc. or the names of 
+ * contributors may be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * This software is provided "AS IS," without a warranty of any 
+ * kind. ALL EXPRESS OR IMPLIED CONDITIONS, REPRESENTATIONS AND 
+ * WARRANTIES, INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE OR NON-INFRINGEMENT, ARE HEREBY
+ * EXCLUDED. SUN MIDROSYSTEMS, INC. ("SUN") AND ITS LICENSORS SHALL 
+ * NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY LICENSEE AS A RESULT OF 
+ * USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE OR ITS
+ * DERIVATIVES. IN NO EVENT WILL SUN OR ITS LICENSORS BE LIABLE FOR 
+ * ANY LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT, INDIRECT, SPECIAL,
+ * CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES, HOWEVER CAUSED AND
+ * REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT OF THE USE OF OR
+ * INABILITY TO USE THIS SOFTWARE, EVEN IF SUN HAS BEEN ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGES. 
+ * 
+ * You acknowledge that this software is not designed or intended for 
+ * use in the design, construction, operation or maintenance of any 
+ * nuclear facility. 
+ *
+ * $Revision: 1.1 $
+ * $Date: 2026-10-18 00:00:00 $
+ * $State: Exp $
+ */
+package com.sun.media.imageioimpl.common;
+
+/**
+ * A plan for reading a set of byte ranges of a stream with few large
+ * reads rather than one read per range.
+ *
+ * <p> The ranges, typically the compressed data of the strips or tiles
+ * intersecting a region, are given in the order in which they will be
+ * consumed.  They are sorted by position and each is merged into the
+ * preceding read if the number of bytes between them does not exceed
+ * a maximum gap and the combined read does not exceed a maximum
+ * length.  The bytes of a gap are read and discarded, so a small gap
+ * is worthwhile whenever a seek or request is more costly than reading
+ * that many bytes.  Overlapping and duplicate ranges share a read.
+ *
+ * <p> The reads are numbered in the order in which their data are
+ * first needed, i.e., the first read contains range 0 and read
+ * <code>r + 1</code> contains the first range not in reads
+ * <code>0</code> to <code>r</code>.  Each range is located within its
+ * read by <code>getReadIndex</code> and <code>getOffsetInRead</code>.
+ */
+public class StreamReadPlan {
+
+    private long[] offsets;
+    private int[] lengths;
+    private int numRanges;
+
+    private long[] readOffsets;
+    private int[] readLengths;
+    private int[] readRangeCounts;
+    private int numReads;
+
+    private int[] rangeReads;
+    private int[] rangeReadOffsets;
+
+    /**
+     * Constructs a <code>StreamReadPlan</code> for the given ranges.
+     * Range <code>i</code> comprises <code>lengths[i]</code> bytes
+     * starting at stream position <code>offsets[i]</code>.  The arrays
+     * are not copied.
+     *
+     * @param offsets the stream positions of the ranges.
+     * @param lengths the lengths of the ranges.
+     * @param numRanges the number of ranges.
+     * @param maxGap the maximum number of unused bytes between two
+     * ranges which are read together.
+     * @param maxReadLength the maximum length of a read which combines
+     * several ranges.  A longer range is read on its own.
+     *
+     * @throws IllegalArgumentException if <code>offsets</code> or
+     * <code>lengths</code> is <code>null</code> or shorter than
+     * <code>numRanges</code>, if any offset or length is negative, or if
+     * <code>numRanges</code> or <code>maxGap</code> is negative or
+     * <code>maxReadLength</code> is not positive.
+     */
+    public StreamReadPlan(long[] offsets, int[] lengths, int numRanges,
+                          int maxGap, int maxReadLength) {
+        if (offsets == null || lengths == null) {
+            throw new IllegalArgumentException
+                ("offsets == null || lengths == null!");
+        }
+        if (numRanges < 0 ||
+            offsets.length < numRanges || lengths.length < numRanges) {
+            throw new IllegalArgumentException("Invalid numRanges!");
+        }
+        if (maxGap < 0) {
+            throw new IllegalArgumentException("maxGap < 0!");
+        }
+        if (maxReadLength <= 0) {
+            throw new IllegalArgumentException("maxReadLength <= 0!");
+        }
+        for (int i = 0; i < numRanges; i++) {
+            if (offsets[i] < 0 || lengths[i] < 0) {
+                throw new IllegalArgumentException
+                    ("Negative offset or length!");
+            }
+        }
+
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.numRanges = numRanges;
+
+        plan(maxGap, maxReadLength);
+    }
+
+    private void plan(int maxGap, int maxReadLength) {
+        rangeReads = new int[numRanges];
+        rangeReadOffsets = new int[numRanges];
+
+        // Sort the ranges by position.
+        int[] order = new int[numRanges];
+        for (int i = 0; i < numRanges; i++) {
+            order[i] = i;
+        }
+        sortByOffset(order, new int[numRanges], 0, numRanges);
+
+        // Merge the sorted ranges into reads numbered in stream order.
+        long[] starts = new long[numRanges];
+        long[] ends = new long[numRanges];
+        int count = 0;
+        for (int k = 0; k < numRanges; k++) {
+            int i = order[k];
+            long start = offsets[i];
+            long end = start + lengths[i];
+            if (count > 0 &&
+                start - ends[count - 1] <= maxGap &&
+                Math.max(end, ends[count - 1]) - starts[count - 1] <=
+                maxReadLength) {
+                if (end > ends[count - 1]) {
+                    ends[count - 1] = end;
+                }
+            } else {
+                starts[count] = start;
+                ends[count] = end;
+                count++;
+            }
+            rangeReads[i] = count - 1;
+            rangeReadOffsets[i] = (int)(start - starts[count - 1]);
+        }
+
+        // Renumber the reads in the order in which they are first needed.
+        int[] number = new int[count];
+        for (int r = 0; r < count; r++) {
+            number[r] = -1;
+        }
+        readOffsets = new long[count];
+        readLengths = new int[count];
+        readRangeCounts = new int[count];
+        numReads = 0;
+        for (int i = 0; i < numRanges; i++) {
+            int r = rangeReads[i];
+            if (number[r] < 0) {
+                number[r] = numReads++;
+                readOffsets[number[r]] = starts[r];
+                readLengths[number[r]] = (int)(ends[r] - starts[r]);
+            }
+            rangeReads[i] = number[r];
+            readRangeCounts[number[r]]++;
+        }
+    }
+
+    // Stable merge sort of order[start, end) by range offset.
+    private void sortByOffset(int[] order, int[] tmp, int start, int end) {
+        if (end - start < 2) {
+            return;
+        }
+        int mid = (start + end) >>> 1;
+        sortByOffset(order, tmp, start, mid);
+        sortByOffset(order, tmp, mid, end);
+        if (offsets[order[mid - 1]] <= offsets[order[mid]]) {
+            return;
+        }
+
+        int i = start, j = mid, k = start;
+        while (i < mid && j < end) {
+            if (offsets[order[j]] < offsets[order[i]]) {
+                tmp[k++] = order[j++];
+            } else {
+                tmp[k++] = order[i++];
+            }
+        }
+        while (i < mid) {
+            tmp[k++] = order[i++];
+        }
+        while (j < end) {
+            tmp[k++] = order[j++];
+        }
+        System.arraycopy(tmp, start, order, start, end - start);
+    }
+
+    /**
+     * Returns the number of ranges.
+     */
+    public int getNumRanges() {
+        return numRanges;
+    }
+
+    /**
+     * Returns the stream position of range <code>i</code>.
+     */
+    public long getRangeOffset(int i) {
+        checkRange(i);
+        return offsets[i];
+    }
+
+    /**
+     * Returns the length of range <code>i</code>.
+     */
+    public int getRangeLength(int i) {
+        checkRange(i);
+        return lengths[i];
+    }
+
+    /**
+     * Returns the index of the read which contains range <code>i</code>.
+     */
+    public int getReadIndex(int i) {
+        checkRange(i);
+        return rangeReads[i];
+    }
+
+    /**
+     * Returns the position of range <code>i</code> relative to the
+     * start of the read which contains it.
+     */
+    public int getOffsetInRead(int i) {
+        checkRange(i);
+        return rangeReadOffsets[i];
+    }
+
+    /**
+     * Returns the number of reads.
+     */
+    public int getNumReads() {
+        return numReads;
+    }
+
+    /**
+     * Returns the stream position of read <code>r</code>.
+     */
+    public long getReadOffset(int r) {
+        checkRead(r);
+        return readOffsets[r];
+    }
+
+    /**
+     * Returns the length of read <code>r</code>.
+     */
+    public int getReadLength(int r) {
+        checkRead(r);
+        return readLengths[r];
+    }
+
+    /**
+     * Returns the number of ranges contained in read <code>r</code>.
+     */
+    public int getNumRangesInRead(int r) {
+        checkRead(r);
+        return readRangeCounts[r];
+    }
+
+    private void checkRange(int i) {
+        if (i < 0 || i >= numRanges) {
+            throw new IndexOutOfBoundsException("Invalid range index!");
+        }
+    }
+
+    private void checkRead(int r) {
+        if (r < 0 || r >= numReads) {
+            throw new IndexOutOfBoundsException("Invalid read index!");
+        }
+    }
+}
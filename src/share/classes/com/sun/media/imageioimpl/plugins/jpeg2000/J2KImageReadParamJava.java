@@ -142,6 +142,11 @@ public class J2KImageReadParamJava extends J2KImageReadParam {
         }
         setDecodingRate(j2kParam.getDecodingRate());
         setResolution(j2kParam.getResolution());
+        setNumDecodingThreads(j2kParam.getNumDecodingThreads());
+        setLineBasedTransform(j2kParam.getLineBasedTransform());
+        setTileCache(j2kParam.getTileCache());
+        setQualityLayers(j2kParam.getQualityLayers());
+        setProgressiveDecoding(j2kParam.getProgressiveDecoding());
     }
 
     /** Sets <code>noROIDescaling</code> */
@@ -110,6 +110,12 @@ public class J2KImageReader extends ImageReader implements MsgLogger {
      */
     private boolean logJJ2000Msg = false;
 
+    /** The index of the current pass of a progressive read. */
+    private int passIndex = 0;
+
+    /** The number of passes of the current read. */
+    private int numPasses = 1;
+
     public void dispose() {
     	super.dispose();
     	this.readState = null;
@@ -295,7 +301,7 @@ public class J2KImageReader extends ImageReader implements MsgLogger {
      *  <code>ImageReader</code> hierarchy.
      */
     public void processImageProgressWrapper(float percentageDone) {
-        processImageProgress(percentageDone);
+        processImageProgress((100.0F*passIndex + percentageDone)/numPasses);
     }
 
     /** Constructs <code>J2KImageReader</code> from the provided
@@ -441,6 +447,13 @@ public class J2KImageReader extends ImageReader implements MsgLogger {
 
         param = new J2KImageReadParamJava(param);
 
+        J2KImageReadParamJava j2kParam = (J2KImageReadParamJava)param;
+        boolean progressive =
+            j2kParam.getProgressiveDecoding() && updateListeners != null;
+        int maxLayers = j2kParam.getQualityLayers();
+        if (progressive)
+            j2kParam.setQualityLayers(1);
+
         if (!ignoreMetadata) {
             imageMetadata = new J2KMetadata();
             iis.seek(streamPosition0);
@@ -455,7 +468,11 @@ public class J2KImageReader extends ImageReader implements MsgLogger {
                                          this);
         }
 
-        BufferedImage bi = readState.readBufferedImage();
+        BufferedImage bi;
+        if (progressive)
+            bi = readProgressive(j2kParam, maxLayers);
+        else
+            bi = readState.readBufferedImage();
         if (abortRequested())
             processReadAborted();
         else
@@ -463,6 +480,54 @@ public class J2KImageReader extends ImageReader implements MsgLogger {
         return bi;
     }
 
+    /** Decodes the image in passes, the first with a single quality layer
+     *  and each next one with twice as many layers as the previous one, up
+     *  to <code>maxLayers</code> or all the layers if it is -1.  Each pass
+     *  decodes the whole image into the same destination.
+     */
+    private BufferedImage readProgressive(J2KImageReadParamJava param,
+                                          int maxLayers)
+        throws IOException {
+        int numLayers = readState.getNumQualityLayers();
+        if (maxLayers == -1 || maxLayers > numLayers)
+            maxLayers = numLayers;
+
+        numPasses = 1;
+        for (int l = 1; l < maxLayers; l <<= 1)
+            numPasses++;
+
+        BufferedImage bi = param.getDestination();
+        if (bi == null) {
+            bi = readState.createDestination();
+            param.setDestination(bi);
+        }
+        Point offset = param.getDestinationOffset();
+
+        try {
+            int layers = 1;
+            for (passIndex = 0; passIndex < numPasses; passIndex++) {
+                if (passIndex > 0) {
+                    layers = Math.min(layers << 1, maxLayers);
+                    param.setQualityLayers(layers);
+                    iis.seek(streamPosition0);
+                    readState = new J2KReadState(iis, param, this);
+                }
+
+                processPassStarted(bi, passIndex, 0, numPasses - 1,
+                                   offset.x, offset.y, 1, 1,
+                                   readState.getDestinationBands());
+                readState.readBufferedImage();
+                if (abortRequested())
+                    break;
+                processPassComplete(bi);
+            }
+        } finally {
+            passIndex = 0;
+            numPasses = 1;
+        }
+        return bi;
+    }
+
     public RenderedImage readAsRenderedImage(int imageIndex,
                                              ImageReadParam param)
                                              throws IOException {
@@ -80,6 +80,7 @@ import java.util.Iterator;
 
 import jj2000.j2k.quantization.dequantizer.*;
 import jj2000.j2k.wavelet.synthesis.*;
+import jj2000.j2k.wavelet.WaveletTransform;
 import jj2000.j2k.image.invcomptransf.*;
 import jj2000.j2k.fileformat.reader.*;
 import jj2000.j2k.codestream.reader.*;
@@ -92,6 +93,7 @@ import jj2000.j2k.roi.*;
 import jj2000.j2k.io.*;
 import jj2000.j2k.*;
 
+import com.sun.media.imageio.plugins.jpeg2000.J2KTileCache;
 import com.sun.media.imageioimpl.common.ImageUtil;
 
 public class J2KReadState {
@@ -221,6 +223,16 @@ public class J2KReadState {
         return hd;
     }
 
+    /** Returns the cache of decoded tiles set in the read parameter. */
+    public J2KTileCache getTileCache() {
+        return j2krparam.getTileCache();
+    }
+
+    /** Returns the largest number of quality layers among the tiles. */
+    public int getNumQualityLayers() {
+        return decSpec.nls.getMax();
+    }
+
     public Raster getTile(int tileX, int tileY,
                           WritableRaster raster) throws IOException {
         Point nT = ictransf.getNumTiles(null);
@@ -353,32 +365,45 @@ public class J2KReadState {
         return destinationRegion;
     }
 
+    public int[] getDestinationBands() {
+        return destinationBands;
+    }
+
+    /** Creates the image into which <code>readBufferedImage()</code>
+     *  decodes when the read parameter has no destination.
+     */
+    public BufferedImage createDestination() {
+        colorModel = getColorModel();
+        sampleModel = getSampleModel();
+
+        // If the destination type is specified, use the color model of it.
+        ImageTypeSpecifier type = j2krparam.getDestinationType();
+        if (type != null)
+            colorModel = type.getColorModel();
+
+        Point offset = j2krparam.getDestinationOffset();
+        WritableRaster raster = Raster.createWritableRaster(
+            sampleModel.createCompatibleSampleModel(offset.x +
+                                                    destinationRegion.width,
+                                                    offset.y +
+                                                    destinationRegion.height),
+            new Point(0, 0));
+        return new BufferedImage(colorModel, raster,
+                                 colorModel.isAlphaPremultiplied(),
+                                 new Hashtable());
+    }
+
     public BufferedImage readBufferedImage() throws IOException {
         colorModel = getColorModel();
         sampleModel = getSampleModel();
-        WritableRaster raster = null;
         BufferedImage image = j2krparam.getDestination();
+        if (image == null)
+            image = createDestination();
+        WritableRaster raster = image.getWritableTile(0, 0);
 
         int x = destinationRegion.x;
         int y = destinationRegion.y;
         destinationRegion.setLocation(j2krparam.getDestinationOffset());
-        if (image == null) {
-            // If the destination type is specified, use the color model of it.
-            ImageTypeSpecifier type = j2krparam.getDestinationType();
-            if (type != null)
-                colorModel = type.getColorModel();
-
-            raster = Raster.createWritableRaster(
-                sampleModel.createCompatibleSampleModel(destinationRegion.x +
-                                                        destinationRegion.width,
-                                                        destinationRegion.y +
-                                                        destinationRegion.height),
-                new Point(0, 0));
-            image = new BufferedImage(colorModel, raster,
-                                      colorModel.isAlphaPremultiplied(),
-                                      new Hashtable());
-        } else
-            raster = image.getWritableTile(0, 0);
 
         destImage = image;
         readSubsampledRaster(raster);
@@ -612,8 +637,11 @@ public class J2KReadState {
 
             // **** Inverse wavelet transform ***
             try {
-                // full page inverse wavelet transform
-                invWT = InverseWT.createInstance(deq,decSpec);
+                // full page or line-based inverse wavelet transform
+                invWT = InverseWT.createInstance(deq,decSpec,
+                            j2krparam.getLineBasedTransform() ?
+                            WaveletTransform.WT_IMPL_LINE :
+                            WaveletTransform.WT_IMPL_FULL);
             } catch (IllegalArgumentException e) {
                 throw new RuntimeException(I18N.getString("J2KReadState8") + " " +
                               ((e.getMessage() != null) ?
@@ -709,6 +737,20 @@ public class J2KReadState {
         }
     }
 
+    /**
+     * Restricts the decoding of the current tile to the given region of the
+     * tile-components, so that the code-blocks on which it does not depend
+     * are neither read nor entropy decoded.
+     */
+    private void setRegion(int x, int y, int w, int h) {
+        InvWTRegion region =
+            new InvWTRegion(x, y, w, h,
+                            decSpec.dls.getMin() - breader.getImgRes());
+        invWT.setRegion(region);
+        if (entdec instanceof StdEntropyDecoder)
+            ((StdEntropyDecoder)entdec).setRegion(region);
+    }
+
     private Raster readSubsampledRaster(WritableRaster raster) throws IOException {
         if (raster == null)
             raster = Raster.createWritableRaster(
@@ -766,6 +808,8 @@ public class J2KReadState {
                 int cTileWidth = (ictransf.getTileWidth() + sx - 1)/sx;
                 int sy = hd.getCompSubsY(0);
                 int cTileHeight = (ictransf.getTileHeight() + sy - 1)/sy;
+                int fullWidth = cTileWidth;
+                int fullHeight = cTileHeight;
 
                 // Offsets within the tile.
                 int tx = 0;
@@ -801,6 +845,13 @@ public class J2KReadState {
                     cTileHeight += sourceEY - startY - cTileHeight + 1;
                 }
 
+                // Only decode the code-blocks needed for the region of the
+                // tile which is read
+                if (tx > 0 || ty > 0 ||
+                    cTileWidth < fullWidth || cTileHeight < fullHeight) {
+                    setRegion(tx, ty, cTileWidth, cTileHeight);
+                }
+
                 // The start X in the destination
                 int x1 = (startX + scaleX - 1 - sourceOrigin.x) / scaleX;
                 int x2 = (startX + scaleX -1 + cTileWidth - sourceOrigin.x) /
@@ -52,6 +52,7 @@ import java.io.*;
 import javax.imageio.stream.ImageInputStream;
 import jj2000.j2k.codestream.reader.*;
 
+import com.sun.media.imageio.plugins.jpeg2000.J2KTileCache;
 import com.sun.media.imageioimpl.common.SimpleRenderedImage;
 
 public class J2KRenderedImage extends SimpleRenderedImage {
@@ -60,6 +61,11 @@ public class J2KRenderedImage extends SimpleRenderedImage {
 
     private J2KReadState readState;
 
+    /** The cache of the decoded tiles, or null if only the current tile is
+     *  kept.
+     */
+    private J2KTileCache tileCache;
+
     public J2KRenderedImage(ImageInputStream iis,
                             J2KImageReadParamJava param,
                             J2KMetadata metadata,
@@ -93,9 +99,21 @@ public class J2KRenderedImage extends SimpleRenderedImage {
 
         sampleModel = readState.getSampleModel();
         colorModel = readState.getColorModel();
+
+        tileCache = readState.getTileCache();
+    }
+
+    public Raster getTile(int tileX, int tileY) {
+        // Cached tiles are returned without waiting for a tile being decoded
+        if (tileCache != null) {
+            Raster tile = tileCache.getTile(this, tileX, tileY);
+            if (tile != null)
+                return tile;
+        }
+        return decodeTile(tileX, tileY);
     }
 
-    public synchronized Raster getTile(int tileX, int tileY) {
+    private synchronized Raster decodeTile(int tileX, int tileY) {
         if (currentTile != null &&
             currentTileGrid.x == tileX &&
             currentTileGrid.y == tileY)
@@ -124,6 +142,9 @@ public class J2KRenderedImage extends SimpleRenderedImage {
             currentTileGrid.y = tileY;
         }
 
+        if (tileCache != null)
+            tileCache.add(this, tileX, tileY, currentTile);
+
         return currentTile;
     }
 }
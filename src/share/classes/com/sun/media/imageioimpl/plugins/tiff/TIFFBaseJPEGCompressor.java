@@ -416,12 +416,18 @@ public abstract class TIFFBaseJPEGCompressor extends TIFFCompressor {
             //
             // Workaround for bug in core Java Image I/O JPEG
             // ImageWriter which cannot handle non-zero offsets.
+            // Only the samples of each row are copied as the data
+            // might be those of a larger image.
             //
-            int bytesPerSegment = scanlineStride*height;
-            byte[] btmp = new byte[bytesPerSegment];
-            System.arraycopy(b, off, btmp, 0, bytesPerSegment);
-            dbb = new DataBufferByte(btmp, bytesPerSegment);
+            int bytesPerRow = bitsPerSample.length*width;
+            byte[] btmp = new byte[bytesPerRow*height];
+            for(int row = 0; row < height; row++) {
+                System.arraycopy(b, off, btmp, row*bytesPerRow, bytesPerRow);
+                off += scanlineStride;
+            }
+            dbb = new DataBufferByte(btmp, btmp.length);
             off = 0;
+            scanlineStride = bytesPerRow;
         }
 
         // Set up the ColorSpace.
@@ -45,6 +45,8 @@
 package com.sun.media.imageioimpl.plugins.tiff;
 
 import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.Arrays;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 import javax.imageio.IIOException;
@@ -55,21 +57,23 @@ public class TIFFDeflateDecompressor extends TIFFDecompressor {
 
     private static final boolean DEBUG = false;
 
-    Inflater inflater = null;
+    // The Inflater, created when first needed.  It holds native storage
+    // until it is ended or finalized.
+    private Inflater inflater = null;
+
     int predictor;
 
     public TIFFDeflateDecompressor(int predictor) throws IIOException {
-        inflater = new Inflater();
-
         if (predictor != BaselineTIFFTagSet.PREDICTOR_NONE && 
             predictor != 
-            BaselineTIFFTagSet.PREDICTOR_HORIZONTAL_DIFFERENCING) {
+            BaselineTIFFTagSet.PREDICTOR_HORIZONTAL_DIFFERENCING &&
+            predictor != BaselineTIFFTagSet.PREDICTOR_FLOATING_POINT) {
             throw new IIOException("Illegal value for Predictor in " +
                                    "TIFF file");
         }
 
         if(DEBUG) {
-            System.out.println("Using horizontal differencing predictor");
+            System.out.println("Using predictor " + predictor);
         }
 
         this.predictor = predictor;
@@ -80,74 +84,101 @@ public class TIFFDeflateDecompressor extends TIFFDecompressor {
                                        int bitsPerPixel,
                                        int scanlineStride) throws IOException {
 
-        // Check bitsPerSample.
-        if (predictor == 
-            BaselineTIFFTagSet.PREDICTOR_HORIZONTAL_DIFFERENCING) {
-            int len = bitsPerSample.length;
-            for(int i = 0; i < len; i++) {
-                if(bitsPerSample[i] != 8) {
-                    throw new IIOException
-                        (bitsPerSample[i] + "-bit samples "+
-                         "are not supported for Horizontal "+
-                         "differencing Predictor");
-                }
-            }
-        }
+        // Check bitsPerSample and sampleFormat.
+        TIFFPredictor.checkSupported(predictor, bitsPerSample,
+                                     sampleFormat[0]);
 
         // Seek to current tile data offset.
         stream.seek(offset);
 
-        // Read the deflated data.
-        byte[] srcData = new byte[byteCount];
-        stream.readFully(srcData);
-
         int bytesPerRow = (srcWidth*bitsPerPixel + 7)/8;
+        int numBytes = bytesPerRow*srcHeight;
         byte[] buf;
         int bufOffset;
         if(bytesPerRow == scanlineStride) {
             buf = b;
             bufOffset = dstOffset;
         } else {
-            buf = new byte[bytesPerRow*srcHeight];
+            buf = TIFFImageReader.getScratchBuffer(reader, numBytes);
             bufOffset = 0;
         }
 
-        // Set the input to the Inflater.
-        inflater.setInput(srcData);
-
-        // Inflate the data.
         try {
-            inflater.inflate(buf, bufOffset, bytesPerRow*srcHeight);
-        } catch(DataFormatException dfe) {
-            throw new IIOException(I18N.getString("TIFFDeflateDecompressor0"),
-                                   dfe);
-        }
+            if (inflater == null) {
+                inflater = new Inflater();
+            }
+
+            // Read the deflated data.
+            byte[] srcData =
+                TIFFImageReader.getScratchBuffer(reader, byteCount);
+            try {
+                stream.readFully(srcData, 0, byteCount);
+
+                // Set the input to the Inflater.
+                inflater.setInput(srcData, 0, byteCount);
 
-        // Reset the Inflater.
-        inflater.reset();
-
-	if (predictor ==
-            BaselineTIFFTagSet.PREDICTOR_HORIZONTAL_DIFFERENCING) {
-	    
-	    for (int j = 0; j < srcHeight; j++) {
-		int count = bufOffset + samplesPerPixel * (j * srcWidth + 1);
-		for (int i=samplesPerPixel; i<srcWidth*samplesPerPixel; i++) {
-		    buf[count] += buf[count - samplesPerPixel];
-		    count++;
-		}
-	    }
-	}
-
-        if(bytesPerRow != scanlineStride) {
-            if(DEBUG) {
-                System.out.println("bytesPerRow != scanlineStride");
+                // Inflate the data.
+                int numInflated = inflater.inflate(buf, bufOffset, numBytes);
+                if(buf != b && numInflated < numBytes) {
+                    // Short data: clear what a new array would have held.
+                    Arrays.fill(buf, numInflated, numBytes, (byte)0);
+                }
+            } catch(DataFormatException dfe) {
+                throw new IIOException
+                    (I18N.getString("TIFFDeflateDecompressor0"), dfe);
+            } finally {
+                // Reset the Inflater.
+                inflater.reset();
+                TIFFImageReader.releaseScratchBuffer(reader, srcData);
             }
-            int off = 0;
-            for (int y = 0; y < srcHeight; y++) {
-                System.arraycopy(buf, off, b, dstOffset, bytesPerRow);
-                off += bytesPerRow;
-                dstOffset += scanlineStride;
+
+            if (predictor != BaselineTIFFTagSet.PREDICTOR_NONE) {
+                int bytesPerSample = bitsPerSample[0]/8;
+                byte[] tmp =
+                    predictor == BaselineTIFFTagSet.PREDICTOR_FLOATING_POINT ?
+                    TIFFImageReader.getScratchBuffer(reader, bytesPerRow) :
+                    null;
+                try {
+                    TIFFPredictor.decodeRows(predictor, buf, bufOffset,
+                                             srcHeight, bytesPerRow,
+                                             bitsPerPixel/bitsPerSample[0],
+                                             bytesPerSample,
+                                             stream.getByteOrder() ==
+                                             ByteOrder.BIG_ENDIAN,
+                                             tmp);
+                } finally {
+                    if(tmp != null) {
+                        TIFFImageReader.releaseScratchBuffer(reader, tmp);
+                    }
+                }
             }
+
+            if(bytesPerRow != scanlineStride) {
+                if(DEBUG) {
+                    System.out.println("bytesPerRow != scanlineStride");
+                }
+                int off = 0;
+                for (int y = 0; y < srcHeight; y++) {
+                    System.arraycopy(buf, off, b, dstOffset, bytesPerRow);
+                    off += bytesPerRow;
+                    dstOffset += scanlineStride;
+                }
+            }
+        } finally {
+            if(buf != b) {
+                TIFFImageReader.releaseScratchBuffer(reader, buf);
+            }
+        }
+    }
+
+    /**
+     * Frees the native storage of the <code>Inflater</code> of this
+     * decompressor.  A new one is created if it is used again.
+     */
+    synchronized void endInflater() {
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
         }
     }
 }
@@ -47,6 +47,7 @@ package com.sun.media.imageioimpl.plugins.tiff;
 import com.sun.media.imageio.plugins.tiff.BaselineTIFFTagSet;
 import com.sun.media.imageio.plugins.tiff.TIFFCompressor;
 import java.io.IOException;
+import java.nio.ByteOrder;
 import java.util.zip.Deflater;
 import javax.imageio.ImageWriteParam;
 
@@ -58,6 +59,9 @@ public class TIFFDeflater extends TIFFCompressor {
     Deflater deflater;
     int predictor;
 
+    // Buffer for the differenced bytes of a row, reused between calls.
+    private byte[] rowBuf = null;
+
     public TIFFDeflater(String compressionType,
                         int compressionTagValue,
                         ImageWriteParam param, 
@@ -84,7 +88,14 @@ public class TIFFDeflater extends TIFFCompressor {
                       int[] bitsPerSample,
                       int scanlineStride) throws IOException {
 
-        int inputSize = height*scanlineStride;
+        int samplesPerPixel = bitsPerSample.length;
+        int bitsPerPixel = 0;
+        for (int i = 0; i < samplesPerPixel; i++) {
+            bitsPerPixel += bitsPerSample[i];
+        }
+        int bytesPerRow = (bitsPerPixel*width + 7)/8;
+
+        int inputSize = height*bytesPerRow;
         int blocks = (inputSize + 32767)/32768;
 
         // Worst case for Zlib deflate is input size + 5 bytes per 32k
@@ -92,25 +103,33 @@ public class TIFFDeflater extends TIFFCompressor {
         byte[] compData = new byte[inputSize + 5*blocks + 6];
 
         int numCompressedBytes = 0;
-        if(predictor == BaselineTIFFTagSet.PREDICTOR_HORIZONTAL_DIFFERENCING) {
-            int samplesPerPixel = bitsPerSample.length;
-            int bitsPerPixel = 0;
-            for (int i = 0; i < samplesPerPixel; i++) {
-                bitsPerPixel += bitsPerSample[i];
+        boolean usePredictor =
+            predictor == BaselineTIFFTagSet.PREDICTOR_HORIZONTAL_DIFFERENCING ||
+            predictor == BaselineTIFFTagSet.PREDICTOR_FLOATING_POINT;
+        if(usePredictor || bytesPerRow != scanlineStride) {
+            int bytesPerSample = bitsPerSample[0]/8;
+            boolean isBigEndian =
+                stream.getByteOrder() == ByteOrder.BIG_ENDIAN;
+            if(usePredictor &&
+               (rowBuf == null || rowBuf.length < bytesPerRow)) {
+                rowBuf = new byte[bytesPerRow];
             }
-            int bytesPerRow = (bitsPerPixel*width + 7)/8;
-            byte[] rowBuf = new byte[bytesPerRow];
 
             int maxRow = height - 1;
             for(int i = 0; i < height; i++) {
-                // Cannot modify b[] in place as it might be a data
-                // array from the image being written so make a copy.
-                System.arraycopy(b, off, rowBuf, 0, bytesPerRow);
-                for(int j = bytesPerRow - 1; j >= samplesPerPixel; j--) {
-                    rowBuf[j] -= rowBuf[j - samplesPerPixel];
+                if(usePredictor) {
+                    // Cannot modify b[] in place as it might be a data
+                    // array from the image being written so difference
+                    // into a separate buffer.
+                    TIFFPredictor.encodeRow(predictor, b, off, rowBuf,
+                                            width*samplesPerPixel,
+                                            samplesPerPixel,
+                                            bytesPerSample, isBigEndian);
+                    deflater.setInput(rowBuf, 0, bytesPerRow);
+                } else {
+                    // Skip any data beyond the end of each row.
+                    deflater.setInput(b, off, bytesPerRow);
                 }
-
-                deflater.setInput(rowBuf);
                 if(i == maxRow) {
                     deflater.finish();
                 }
@@ -126,7 +145,7 @@ public class TIFFDeflater extends TIFFCompressor {
                 off += scanlineStride;
             }
         } else {
-            deflater.setInput(b, off, height*scanlineStride);
+            deflater.setInput(b, off, inputSize);
             deflater.finish();
 
             numCompressedBytes = deflater.deflate(compData);
@@ -54,6 +54,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.Vector;
+import javax.imageio.IIOException;
 import javax.imageio.stream.ImageInputStream;
 import javax.imageio.stream.ImageOutputStream;
 import com.sun.media.imageio.plugins.tiff.BaselineTIFFTagSet;
@@ -68,6 +69,109 @@ public class TIFFIFD extends TIFFDirectory {
     private long stripOrTileOffsetsPosition = -1;
     private long lastPosition = -1;
 
+    // The TIFF data types of the values at the positions above.
+    private int stripOrTileByteCountsType = TIFFTag.TIFF_LONG;
+    private int stripOrTileOffsetsType = TIFFTag.TIFF_LONG;
+
+    // Strip and tile offset and byte count fields with more values than
+    // this are not read by initialize() if deferral is requested.
+    private static final int MIN_DEFERRED_COUNT = 1024;
+
+    // The number of values of a deferred field read at a time.
+    private static final int PAGE_SIZE = 1024;
+
+    // The stream from which deferred field values are read.
+    private ImageInputStream stream = null;
+
+    // Deferred fields keyed by Integer tag number, or null.
+    private Map deferredFields = null;
+
+    /**
+     * A field whose values remain in the stream until needed. Single
+     * values are read a page at a time; the entire field is read only
+     * when the <code>TIFFField</code> itself is requested.
+     */
+    private static class DeferredField {
+        TIFFTag tag;
+        int type;
+        int count;
+        long position;
+
+        long[] page = null;
+        int pageStart = -1;
+
+        DeferredField(TIFFTag tag, int type, int count, long position) {
+            this.tag = tag;
+            this.type = type;
+            this.count = count;
+            this.position = position;
+        }
+
+        long getAsLong(ImageInputStream stream, int index)
+            throws IOException {
+            if (index < 0 || index >= count) {
+                throw new ArrayIndexOutOfBoundsException(index);
+            }
+
+            if (page == null ||
+                index < pageStart || index >= pageStart + page.length) {
+                int start = index - index % PAGE_SIZE;
+                int length = Math.min(PAGE_SIZE, count - start);
+                stream.mark();
+                try {
+                    stream.seek(position +
+                                (long)start*TIFFTag.getSizeOfType(type));
+                    page = readValues(stream, length);
+                    pageStart = start;
+                } finally {
+                    stream.reset();
+                }
+            }
+
+            return page[index - pageStart];
+        }
+
+        TIFFField resolve(ImageInputStream stream) throws IOException {
+            Object data;
+            stream.mark();
+            try {
+                stream.seek(position);
+                if (type == TIFFTag.TIFF_SHORT) {
+                    char[] cvalues = new char[count];
+                    stream.readFully(cvalues, 0, count);
+                    data = cvalues;
+                } else {
+                    data = readValues(stream, count);
+                }
+            } finally {
+                stream.reset();
+            }
+
+            return new TIFFField(tag, type, count, data);
+        }
+
+        private long[] readValues(ImageInputStream stream, int length)
+            throws IOException {
+            long[] values = new long[length];
+            if (type == TIFFTag.TIFF_LONG8) {
+                stream.readFully(values, 0, length);
+            } else if (type == TIFFTag.TIFF_SHORT) {
+                char[] cvalues = new char[length];
+                stream.readFully(cvalues, 0, length);
+                for (int i = 0; i < length; i++) {
+                    values[i] = cvalues[i];
+                }
+            } else {
+                int[] ivalues = new int[length];
+                stream.readFully(ivalues, 0, length);
+                for (int i = 0; i < length; i++) {
+                    values[i] = ivalues[i] & 0xffffffffL;
+                }
+            }
+            return values;
+        }
+    }
+
     public static TIFFTag getTag(int tagNumber, List tagSets) {
         Iterator iter = tagSets.iterator();
         while (iter.hasNext()) {
@@ -94,13 +198,16 @@ public class TIFFIFD extends TIFFDirectory {
         return null;
     }
 
+    // The type may differ from that of the field only if both are
+    // stored as long[] data.
     private static void writeTIFFFieldToStream(TIFFField field,
+                                               int type,
                                                ImageOutputStream stream)
         throws IOException {
         int count = field.getCount();
         Object data = field.getData();
 
-        switch (field.getType()) {
+        switch (type) {
         case TIFFTag.TIFF_ASCII:
             for (int i = 0; i < count; i++) {
                 String s = ((String[])data)[i];
@@ -133,6 +240,13 @@ public class TIFFIFD extends TIFFDirectory {
         case TIFFTag.TIFF_IFD_POINTER:
             stream.writeInt(0); // will need to be backpatched
             break;
+        case TIFFTag.TIFF_LONG8:
+        case TIFFTag.TIFF_SLONG8:
+            stream.writeLongs((long[])data, 0, ((long[])data).length);
+            break;
+        case TIFFTag.TIFF_IFD8:
+            stream.writeLong(0); // will need to be backpatched
+            break;
         case TIFFTag.TIFF_FLOAT:
             stream.writeFloats((float[])data, 0, ((float[])data).length);
             break;
@@ -187,16 +301,49 @@ public class TIFFIFD extends TIFFDirectory {
     // a tag cannot be found in an allowed TagSet.
     public void initialize(ImageInputStream stream,
                            boolean ignoreUnknownFields) throws IOException {
+        initialize(stream, ignoreUnknownFields, false);
+    }
+
+    // As above but if deferLargeFields is true, large strip and tile
+    // offset and byte count fields are left in the stream and read on
+    // demand. The stream must then remain open and seekable for as
+    // long as the fields may be accessed.
+    public void initialize(ImageInputStream stream,
+                           boolean ignoreUnknownFields,
+                           boolean deferLargeFields) throws IOException {
+        initialize(stream, ignoreUnknownFields, deferLargeFields, false);
+    }
+
+    // As above but if isBigTIFF is true the IFD is read using the
+    // BigTIFF layout, i.e., with 8 byte entry counts, value counts
+    // and offsets.
+    public void initialize(ImageInputStream stream,
+                           boolean ignoreUnknownFields,
+                           boolean deferLargeFields,
+                           boolean isBigTIFF) throws IOException {
         removeTIFFFields();
 
+        this.stream = deferLargeFields ? stream : null;
+        long streamLength = deferLargeFields ? stream.length() : -1L;
+
         List tagSetList = getTagSetList();
 
-        int numEntries = stream.readUnsignedShort();
-        for (int i = 0; i < numEntries; i++) {
+        // The size of the value or offset portion of each entry.
+        int valueSize = isBigTIFF ? 8 : 4;
+
+        long numEntries = isBigTIFF ?
+            stream.readLong() : stream.readUnsignedShort();
+        for (long i = 0; i < numEntries; i++) {
             // Read tag number, value type, and value count.
             int tag = stream.readUnsignedShort();
             int type = stream.readUnsignedShort();
-            int count = (int)stream.readUnsignedInt();
+            long lcount = isBigTIFF ?
+                stream.readLong() : stream.readUnsignedInt();
+            if (lcount < 0 || lcount > Integer.MAX_VALUE) {
+                throw new IIOException("Count of field "+tag+
+                                       " out of range!");
+            }
+            int count = (int)lcount;
 
             // Get the associated TIFFTag.
             TIFFTag tiffTag = getTag(tag, tagSetList);
@@ -205,7 +352,7 @@ public class TIFFIFD extends TIFFDirectory {
             if(ignoreUnknownFields && tiffTag == null) {
                 // Skip the value/offset so as to leave the stream
                 // position at the start of the next IFD entry.
-                stream.skipBytes(4);
+                stream.skipBytes(valueSize);
 
                 // XXX Warning message ...
 
@@ -213,11 +360,12 @@ public class TIFFIFD extends TIFFDirectory {
                 continue;
             }
             
-            long nextTagOffset = stream.getStreamPosition() + 4;
+            long nextTagOffset = stream.getStreamPosition() + valueSize;
             
             int sizeOfType = TIFFTag.getSizeOfType(type);
-            if (count*sizeOfType > 4) {
-                long value = stream.readUnsignedInt();
+            if ((long)count*sizeOfType > valueSize) {
+                long value = isBigTIFF ?
+                    stream.readLong() : stream.readUnsignedInt();
                 stream.seek(value);
             }
             
@@ -226,11 +374,30 @@ public class TIFFIFD extends TIFFDirectory {
                 tag == BaselineTIFFTagSet.TAG_JPEG_INTERCHANGE_FORMAT_LENGTH) {
                 this.stripOrTileByteCountsPosition =
                     stream.getStreamPosition();
+                this.stripOrTileByteCountsType = type;
             } else if (tag == BaselineTIFFTagSet.TAG_STRIP_OFFSETS ||
                        tag == BaselineTIFFTagSet.TAG_TILE_OFFSETS ||
                        tag == BaselineTIFFTagSet.TAG_JPEG_INTERCHANGE_FORMAT) {
                 this.stripOrTileOffsetsPosition =
                     stream.getStreamPosition();
+                this.stripOrTileOffsetsType = type;
+            }
+
+            // Fields known to extend past the end of the stream are read
+            // in now so that the error is reported as usual.
+            if (deferLargeFields &&
+                isDeferrable(tag, tiffTag, type, count) &&
+                (streamLength < 0 ||
+                 stream.getStreamPosition() +
+                 (long)count*sizeOfType <= streamLength)) {
+                if (deferredFields == null) {
+                    deferredFields = new TreeMap();
+                }
+                deferredFields.put(new Integer(tag),
+                                   new DeferredField(tiffTag, type, count,
+                                                     stream.getStreamPosition()));
+                stream.seek(nextTagOffset);
+                continue;
             }
 
             Object obj = null;
@@ -354,6 +521,14 @@ public class TIFFIFD extends TIFFDirectory {
                     }
                     obj = dvalues;
                     break;
+
+                case TIFFTag.TIFF_LONG8:
+                case TIFFTag.TIFF_SLONG8:
+                case TIFFTag.TIFF_IFD8:
+                    long[] l8values = new long[count];
+                    stream.readFully(l8values, 0, count);
+                    obj = l8values;
+                    break;
                 
                 default:
                     // XXX Warning
@@ -370,6 +545,18 @@ public class TIFFIFD extends TIFFDirectory {
                 }
             }
             
+            // BigTIFF writers may store any offset or IFD pointer as a
+            // 64 bit value; accept these for tags defined as 32 bit.
+            if (tiffTag != null &&
+                (type == TIFFTag.TIFF_LONG8 || type == TIFFTag.TIFF_IFD8) &&
+                !tiffTag.isDataTypeOK(type)) {
+                if (tiffTag.isDataTypeOK(TIFFTag.TIFF_IFD_POINTER)) {
+                    type = TIFFTag.TIFF_IFD_POINTER;
+                } else if (tiffTag.isDataTypeOK(TIFFTag.TIFF_LONG)) {
+                    type = TIFFTag.TIFF_LONG;
+                }
+            }
+
             if (tiffTag == null) {
                 // XXX Warning: unknown tag
             } else if (!tiffTag.isDataTypeOK(type)) {
@@ -383,7 +570,8 @@ public class TIFFIFD extends TIFFDirectory {
                 TIFFIFD subIFD = new TIFFIFD(tagSets);
 
                 // XXX Use same ignore policy for sub-IFD fields?
-                subIFD.initialize(stream, ignoreUnknownFields);
+                subIFD.initialize(stream, ignoreUnknownFields, false,
+                                  isBigTIFF);
                 obj = subIFD;
                 stream.reset();
             }
@@ -405,13 +593,154 @@ public class TIFFIFD extends TIFFDirectory {
         this.lastPosition = stream.getStreamPosition();
     }
 
+    private static boolean isDeferrable(int tag, TIFFTag tiffTag,
+                                        int type, int count) {
+        return (tag == BaselineTIFFTagSet.TAG_STRIP_OFFSETS ||
+                tag == BaselineTIFFTagSet.TAG_STRIP_BYTE_COUNTS ||
+                tag == BaselineTIFFTagSet.TAG_TILE_OFFSETS ||
+                tag == BaselineTIFFTagSet.TAG_TILE_BYTE_COUNTS) &&
+            (type == TIFFTag.TIFF_SHORT || type == TIFFTag.TIFF_LONG ||
+             type == TIFFTag.TIFF_LONG8) &&
+            count > MIN_DEFERRED_COUNT &&
+            tiffTag != null && tiffTag.isDataTypeOK(type);
+    }
+
+    // Reads in a deferred field and adds it to the directory.
+    private TIFFField resolveDeferredField(Integer tagNumber) {
+        DeferredField d = (DeferredField)deferredFields.remove(tagNumber);
+        try {
+            TIFFField f = d.resolve(stream);
+            super.addTIFFField(f);
+            return f;
+        } catch (IOException e) {
+            IllegalStateException ise = new IllegalStateException
+                ("Unable to read field "+tagNumber+"!");
+            ise.initCause(e);
+            throw ise;
+        }
+    }
+
+    private void resolveDeferredFields() {
+        if (deferredFields != null) {
+            Object[] tagNumbers = deferredFields.keySet().toArray();
+            for (int i = 0; i < tagNumbers.length; i++) {
+                resolveDeferredField((Integer)tagNumbers[i]);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the values of the field with the given tag number
+     * have yet to be read from the stream.
+     */
+    public boolean isTIFFFieldDeferred(int tagNumber) {
+        return deferredFields != null &&
+            deferredFields.containsKey(new Integer(tagNumber));
+    }
+
+    /**
+     * Returns the number of values of the field with the given tag
+     * number, or 0 if the field is not present, without reading the
+     * values of a deferred field.
+     */
+    public int getTIFFFieldCount(int tagNumber) {
+        if (isTIFFFieldDeferred(tagNumber)) {
+            return ((DeferredField)deferredFields.get
+                    (new Integer(tagNumber))).count;
+        }
+        TIFFField f = super.getTIFFField(tagNumber);
+        return f == null ? 0 : f.getCount();
+    }
+
+    /**
+     * Returns a value of an integral field as a <code>long</code>.
+     * The values of a deferred field are read from the stream a page
+     * at a time as required rather than all at once.
+     *
+     * @throws IllegalArgumentException if no field with the given tag
+     * number is present.
+     * @throws ArrayIndexOutOfBoundsException if <code>index</code> is
+     * out of range.
+     */
+    public long getTIFFFieldAsLong(int tagNumber, int index)
+        throws IOException {
+        if (isTIFFFieldDeferred(tagNumber)) {
+            DeferredField d =
+                (DeferredField)deferredFields.get(new Integer(tagNumber));
+            return d.getAsLong(stream, index);
+        }
+
+        TIFFField f = super.getTIFFField(tagNumber);
+        if (f == null) {
+            throw new IllegalArgumentException("No field "+tagNumber+"!");
+        }
+        return f.getAsLong(index);
+    }
+
+    public int getNumTIFFFields() {
+        return super.getNumTIFFFields() +
+            (deferredFields == null ? 0 : deferredFields.size());
+    }
+
+    public boolean containsTIFFField(int tagNumber) {
+        return isTIFFFieldDeferred(tagNumber) ||
+            super.containsTIFFField(tagNumber);
+    }
+
+    public void addTIFFField(TIFFField f) {
+        if (f != null && deferredFields != null) {
+            deferredFields.remove(new Integer(f.getTagNumber()));
+        }
+        super.addTIFFField(f);
+    }
+
+    public TIFFField getTIFFField(int tagNumber) {
+        if (isTIFFFieldDeferred(tagNumber)) {
+            return resolveDeferredField(new Integer(tagNumber));
+        }
+        return super.getTIFFField(tagNumber);
+    }
+
+    public void removeTIFFField(int tagNumber) {
+        if (deferredFields != null) {
+            deferredFields.remove(new Integer(tagNumber));
+        }
+        super.removeTIFFField(tagNumber);
+    }
+
+    public TIFFField[] getTIFFFields() {
+        resolveDeferredFields();
+        return super.getTIFFFields();
+    }
+
+    public void removeTIFFFields() {
+        deferredFields = null;
+        super.removeTIFFFields();
+    }
+
     public void writeToStream(ImageOutputStream stream)
         throws IOException {
+        writeToStream(stream, false);
+    }
 
-        int numFields = getNumTIFFFields();
-        stream.writeShort(numFields);
+    // As above but if isBigTIFF is true the IFD is written using the
+    // BigTIFF layout, i.e., with 8 byte entry counts, value counts
+    // and offsets.
+    public void writeToStream(ImageOutputStream stream, boolean isBigTIFF)
+        throws IOException {
+
+        // The size of the value or offset portion of each entry.
+        int valueSize = isBigTIFF ? 8 : 4;
 
-        long nextSpace = stream.getStreamPosition() + 12*numFields + 4;
+        int numFields = getNumTIFFFields();
+        long nextSpace;
+        if (isBigTIFF) {
+            stream.writeLong(numFields);
+            nextSpace = stream.getStreamPosition() + 20*numFields + 8;
+        } else {
+            stream.writeShort(numFields);
+            nextSpace = stream.getStreamPosition() + 12*numFields + 4;
+        }
 
         Iterator iter = iterator();
         while (iter.hasNext()) {
@@ -426,6 +755,18 @@ public class TIFFIFD extends TIFFDirectory {
             if (type == 0) {
                 type = TIFFTag.TIFF_UNDEFINED;
             }
+
+            // A BigTIFF IFD is pointed to by an 8 byte offset and the
+            // 64 bit types may not appear in a classic TIFF stream.
+            if (isBigTIFF) {
+                if (tag.isIFDPointer()) {
+                    type = TIFFTag.TIFF_IFD8;
+                }
+            } else if (type == TIFFTag.TIFF_LONG8) {
+                type = TIFFTag.TIFF_LONG;
+            } else if (type == TIFFTag.TIFF_IFD8) {
+                type = TIFFTag.TIFF_IFD_POINTER;
+            }
             int size = count*TIFFTag.getSizeOfType(type);
 
             if (type == TIFFTag.TIFF_ASCII) {
@@ -440,34 +781,48 @@ public class TIFFIFD extends TIFFDirectory {
             int tagNumber = f.getTagNumber();
             stream.writeShort(tagNumber);
             stream.writeShort(type);
-            stream.writeInt(count);
-
-            // Write a dummy value to fill space
-            stream.writeInt(0);
+            if (isBigTIFF) {
+                stream.writeLong(count);
+                // Write a dummy value to fill space
+                stream.writeLong(0);
+            } else {
+                stream.writeInt(count);
+                // Write a dummy value to fill space
+                stream.writeInt(0);
+            }
             stream.mark(); // Mark beginning of next field
-            stream.skipBytes(-4);
+            stream.skipBytes(-valueSize);
 
             long pos;
 
-            if (size > 4 || tag.isIFDPointer()) {
+            if (size > valueSize || tag.isIFDPointer()) {
                 // Ensure IFD or value is written on a word boundary
                 nextSpace = (nextSpace + 3) & ~0x3;
 
-                stream.writeInt((int)nextSpace);
+                if (isBigTIFF) {
+                    stream.writeLong(nextSpace);
+                } else {
+                    if (nextSpace > 0xffffffffL) {
+                        throw new IIOException
+                            ("Offset of field "+f.getTagNumber()+
+                             " exceeds the 4 GB limit of TIFF; use BigTIFF!");
+                    }
+                    stream.writeInt((int)nextSpace);
+                }
                 stream.seek(nextSpace);
                 pos = nextSpace;
 
                 if (tag.isIFDPointer()) {
                     TIFFIFD subIFD = (TIFFIFD)f.getData();
-                    subIFD.writeToStream(stream);
+                    subIFD.writeToStream(stream, isBigTIFF);
                     nextSpace = subIFD.lastPosition;
                 } else {
-                    writeTIFFFieldToStream(f, stream);
+                    writeTIFFFieldToStream(f, type, stream);
                     nextSpace = stream.getStreamPosition();
                 }
             } else {
                 pos = stream.getStreamPosition();
-                writeTIFFFieldToStream(f, stream);
+                writeTIFFFieldToStream(f, type, stream);
             }
 
             // If we are writing the data for the
@@ -480,6 +835,7 @@ public class TIFFIFD extends TIFFDirectory {
                 tagNumber == BaselineTIFFTagSet.TAG_TILE_BYTE_COUNTS ||
                 tagNumber == BaselineTIFFTagSet.TAG_JPEG_INTERCHANGE_FORMAT_LENGTH) {
                 this.stripOrTileByteCountsPosition = pos;
+                this.stripOrTileByteCountsType = type;
             } else if (tagNumber ==
                        BaselineTIFFTagSet.TAG_STRIP_OFFSETS ||
                        tagNumber ==
@@ -487,6 +843,7 @@ public class TIFFIFD extends TIFFDirectory {
                        tagNumber ==
                        BaselineTIFFTagSet.TAG_JPEG_INTERCHANGE_FORMAT) {
                 this.stripOrTileOffsetsPosition = pos;
+                this.stripOrTileOffsetsType = type;
             }
 
             stream.reset(); // Go to marked position of next field
@@ -503,6 +860,24 @@ public class TIFFIFD extends TIFFDirectory {
         return stripOrTileOffsetsPosition;
     }
 
+    /**
+     * Returns the data type in which the values at the position
+     * returned by <code>getStripOrTileByteCountsPosition()</code> are
+     * stored.
+     */
+    public int getStripOrTileByteCountsType() {
+        return stripOrTileByteCountsType;
+    }
+
+    /**
+     * Returns the data type in which the values at the position
+     * returned by <code>getStripOrTileOffsetsPosition()</code> are
+     * stored.
+     */
+    public int getStripOrTileOffsetsType() {
+        return stripOrTileOffsetsType;
+    }
+
     public long getLastPosition() {
         return lastPosition;
     }
@@ -568,6 +943,9 @@ public class TIFFIFD extends TIFFDirectory {
                         break;
                     case TIFFTag.TIFF_LONG:
                     case TIFFTag.TIFF_IFD_POINTER:
+                    case TIFFTag.TIFF_LONG8:
+                    case TIFFTag.TIFF_SLONG8:
+                    case TIFFTag.TIFF_IFD8:
                         fieldData = ((long[])fieldData).clone();
                         break;
                     case TIFFTag.TIFF_RATIONAL:
@@ -610,6 +988,8 @@ public class TIFFIFD extends TIFFDirectory {
         shallowClone.setPositions(stripOrTileOffsetsPosition,
                                   stripOrTileByteCountsPosition,
                                   lastPosition);
+        shallowClone.stripOrTileOffsetsType = stripOrTileOffsetsType;
+        shallowClone.stripOrTileByteCountsType = stripOrTileByteCountsType;
 
         return shallowClone;
     }
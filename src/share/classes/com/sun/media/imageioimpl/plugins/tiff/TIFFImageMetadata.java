@@ -110,6 +110,22 @@ public class TIFFImageMetadata extends IIOMetadata {
         rootIFD.initialize(stream, ignoreUnknownFields);
     }
 
+    public void initializeFromStream(ImageInputStream stream,
+                                     boolean ignoreUnknownFields,
+                                     boolean deferLargeFields)
+        throws IOException {
+        rootIFD.initialize(stream, ignoreUnknownFields, deferLargeFields);
+    }
+
+    public void initializeFromStream(ImageInputStream stream,
+                                     boolean ignoreUnknownFields,
+                                     boolean deferLargeFields,
+                                     boolean isBigTIFF)
+        throws IOException {
+        rootIFD.initialize(stream, ignoreUnknownFields, deferLargeFields,
+                           isBigTIFF);
+    }
+
     public void addShortOrLongField(int tagNumber, int value) {
         TIFFField field = new TIFFField(rootIFD.getTag(tagNumber), value);
         rootIFD.addTIFFField(field);
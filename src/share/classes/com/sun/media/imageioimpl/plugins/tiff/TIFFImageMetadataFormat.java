@@ -114,6 +114,8 @@ public class TIFFImageMetadataFormat extends TIFFMetadataFormat {
             "TIFFSShort",
             "TIFFLong",
             "TIFFSLong",
+            "TIFFLong8",
+            "TIFFSLong8",
             "TIFFRational",
             "TIFFSRational",
             "TIFFFloat",
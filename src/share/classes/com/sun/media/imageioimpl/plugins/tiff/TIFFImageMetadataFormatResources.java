@@ -91,6 +91,18 @@ public class TIFFImageMetadataFormatResources extends ListResourceBundle {
         { "TIFFSLong/value", "The value" },
         { "TIFFSLong/description", "A description, if available" },
 
+        { "TIFFLong8s", "A sequence of TIFFLong8 nodes" },
+        { "TIFFLong8",
+          "An integral value between 0 and 9223372036854775807" },
+        { "TIFFLong8/value", "The value" },
+        { "TIFFLong8/description", "A description, if available" },
+
+        { "TIFFSLong8s", "A sequence of TIFFSLong8 nodes" },
+        { "TIFFSLong8",
+          "An integral value between -9223372036854775808 and 9223372036854775807" },
+        { "TIFFSLong8/value", "The value" },
+        { "TIFFSLong8/description", "A description, if available" },
+
         { "TIFFRationals", "A sequence of TIFFRational nodes" },
         { "TIFFRational",
           "A rational value consisting of an unsigned numerator and denominator" },
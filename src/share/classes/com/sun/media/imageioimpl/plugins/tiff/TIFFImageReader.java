@@ -69,6 +69,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import javax.imageio.IIOException;
 import javax.imageio.ImageIO;
@@ -83,11 +84,17 @@ import org.w3c.dom.Node;
 import com.sun.media.imageio.plugins.tiff.BaselineTIFFTagSet;
 import com.sun.media.imageio.plugins.tiff.TIFFColorConverter;
 import com.sun.media.imageio.plugins.tiff.TIFFDecompressor;
+import com.sun.media.imageio.plugins.tiff.TIFFDirectoryIndex;
 import com.sun.media.imageio.plugins.tiff.TIFFField;
 import com.sun.media.imageio.plugins.tiff.TIFFImageReadParam;
 import com.sun.media.imageio.plugins.tiff.TIFFTag;
+import com.sun.media.imageio.stream.FileChannelStreamSource;
+import com.sun.media.imageioimpl.common.ByteArrayImageInputStream;
+import com.sun.media.imageioimpl.common.ByteArrayPool;
 import com.sun.media.imageioimpl.common.ImageUtil;
 import com.sun.media.imageioimpl.common.PackageUtil;
+import com.sun.media.imageioimpl.common.StreamPrefetcher;
+import com.sun.media.imageioimpl.common.StreamReadPlan;
 
 public class TIFFImageReader extends ImageReader {
 
@@ -99,6 +106,9 @@ public class TIFFImageReader extends ImageReader {
     // True if the file header has been read.
     boolean gotHeader = false;
 
+    // True if the header identifies the stream as BigTIFF.
+    boolean isBigTIFF = false;
+
     ImageReadParam imageReadParam = getDefaultReadParam();
 
     // Stream metadata, or null.
@@ -118,6 +128,9 @@ public class TIFFImageReader extends ImageReader {
     // The number of images in the stream, if known, otherwise -1.
     int numImages = -1;
 
+    // Positions of IFDs supplied by the application, or null.
+    TIFFDirectoryIndex directoryIndex = null;
+
     // The ImageTypeSpecifiers of the images in the stream.
     // Contains a map of Integers to Lists.
     HashMap imageTypeMap = new HashMap();
@@ -211,13 +224,23 @@ public class TIFFImageReader extends ImageReader {
             }
             
             int magic = stream.readUnsignedShort();
-            if (magic != 42) {
+            if (magic == 43) {
+                // BigTIFF: the offset size must be 8 and the following
+                // reserved field 0.
+                int offsetSize = stream.readUnsignedShort();
+                int reserved = stream.readUnsignedShort();
+                if (offsetSize != 8 || reserved != 0) {
+                    throw new IIOException("Bad BigTIFF header!");
+                }
+                isBigTIFF = true;
+            } else if (magic != 42) {
                 processWarningOccurred(
                                      "Bad magic number in header, continuing");
             }
             
             // Seek to start of first IFD
-            long offset = stream.readUnsignedInt();
+            long offset = isBigTIFF ?
+                stream.readLong() : stream.readUnsignedInt();
             imageStartPosition.add(new Long(offset));
             stream.seek(offset);
         } catch (IOException e) {
@@ -229,6 +252,7 @@ public class TIFFImageReader extends ImageReader {
 
     private int locateImage(int imageIndex) throws IIOException {
         readHeader();
+        mergeDirectoryIndex();
 
         try {
             // Find closest known index
@@ -240,10 +264,16 @@ public class TIFFImageReader extends ImageReader {
 
             // Skip IFDs until at desired index or last image found
             while (index < imageIndex) {
-                int count = stream.readUnsignedShort();
-                stream.skipBytes(12*count);
-
-                long offset = stream.readUnsignedInt();
+                long offset;
+                if (isBigTIFF) {
+                    long count = stream.readLong();
+                    stream.seek(stream.getStreamPosition() + 20*count);
+                    offset = stream.readLong();
+                } else {
+                    int count = stream.readUnsignedShort();
+                    stream.skipBytes(12*count);
+                    offset = stream.readUnsignedInt();
+                }
                 if (offset == 0) {
                     return index;
                 }
@@ -263,6 +293,73 @@ public class TIFFImageReader extends ImageReader {
         return imageIndex;
     }
 
+    // Appends any IFD positions from the directory index beyond those
+    // already known. The index is discarded if it does not match the
+    // stream.
+    private void mergeDirectoryIndex() {
+        if (directoryIndex == null) {
+            return;
+        }
+
+        int count = directoryIndex.getNumDirectories();
+        if (count > 0 &&
+            directoryIndex.getDirectoryOffset(0) !=
+            ((Long)imageStartPosition.get(0)).longValue()) {
+            processWarningOccurred
+                ("Directory index does not match stream, ignoring it.");
+            directoryIndex = null;
+            return;
+        }
+
+        for (int i = imageStartPosition.size(); i < count; i++) {
+            imageStartPosition.add
+                (new Long(directoryIndex.getDirectoryOffset(i)));
+        }
+    }
+
+    /**
+     * Sets an index of the positions of the IFDs in the input stream
+     * which will be used to locate images without reading the IFDs
+     * which precede them.  The index is cleared when the input is
+     * changed and so must be set after <code>setInput</code>.  An index
+     * which is still being built may be supplied, in which case the
+     * positions it contains at the time an image is located are used.
+     * An index whose first position does not match that given by the
+     * stream header is ignored.
+     *
+     * @param directoryIndex the index, or <code>null</code> to locate
+     * images by reading the chain of IFDs.
+     *
+     * @throws IllegalStateException if the input has not been set.
+     */
+    public void setDirectoryIndex(TIFFDirectoryIndex directoryIndex) {
+        if (stream == null) {
+            throw new IllegalStateException("Input not set!");
+        }
+        this.directoryIndex = directoryIndex;
+    }
+
+    /**
+     * Returns an index of the positions of the IFDs of all images in the
+     * input stream, locating the IFDs if they are not already known.  The
+     * index may be saved and later supplied to a reader of the same
+     * stream by means of <code>setDirectoryIndex</code>.
+     *
+     * @return a complete <code>TIFFDirectoryIndex</code>.
+     *
+     * @throws IllegalStateException if the input has not been set or
+     * has been set with <code>seekForwardOnly</code> <code>true</code>.
+     * @throws IOException if an error occurs reading the stream.
+     */
+    public TIFFDirectoryIndex getDirectoryIndex() throws IOException {
+        int count = getNumImages(true);
+        long[] offsets = new long[count];
+        for (int i = 0; i < count; i++) {
+            offsets[i] = ((Long)imageStartPosition.get(i)).longValue();
+        }
+        return new TIFFDirectoryIndex(offsets);
+    }
+
     public int getNumImages(boolean allowSearch) throws IOException {
         if (stream == null) {
             throw new IllegalStateException("Input not set!");
@@ -307,9 +404,12 @@ public class TIFFImageReader extends ImageReader {
             throw new IndexOutOfBoundsException("imageIndex out of bounds!");
         }
 
-        readMetadata();
-
-        initializeFromMetadata();
+        // The values derived from the metadata remain valid for as
+        // long as the metadata of the current image are retained.
+        if (imageMetadata == null) {
+            readMetadata();
+            initializeFromMetadata();
+        }
     }
 
     // Stream must be positioned at start of IFD for 'currIndex'
@@ -332,8 +432,17 @@ public class TIFFImageReader extends ImageReader {
                 tagSets.add(BaselineTIFFTagSet.getInstance());
             }
 
-            this.imageMetadata = new TIFFImageMetadata(tagSets);
-            imageMetadata.initializeFromStream(stream, ignoreMetadata);
+            // Large strip and tile offset and byte count fields are left
+            // in the stream until needed as the stream is retained for
+            // as long as the metadata are.
+            // The metadata are retained only if read successfully.
+            TIFFImageMetadata metadata = new TIFFImageMetadata(tagSets);
+            metadata.initializeFromStream(stream, ignoreMetadata, true,
+                                          isBigTIFF);
+            this.imageMetadata = metadata;
+
+            // Size new scratch arrays to hold the largest strip or tile.
+            bufferPool.setMinimumSize(getMaxTileOrStripByteCount());
         } catch (IIOException iioe) {
             throw iioe;
         } catch (IOException ioe) {
@@ -395,20 +504,19 @@ public class TIFFImageReader extends ImageReader {
                     planarConfigurationValue =
                         BaselineTIFFTagSet.PLANAR_CONFIGURATION_CHUNKY;
                 } else {
-                    TIFFField offsetField =
-                        imageMetadata.getTIFFField(BaselineTIFFTagSet.TAG_TILE_OFFSETS);
-                    if (offsetField == null) {
+                    // Use the value counts so that deferred offsets
+                    // need not be read in.
+                    TIFFIFD ifd = imageMetadata.getRootIFD();
+                    if (!ifd.containsTIFFField(BaselineTIFFTagSet.TAG_TILE_OFFSETS)) {
                         // Tiles
-                        offsetField =
-                            imageMetadata.getTIFFField(BaselineTIFFTagSet.TAG_STRIP_OFFSETS);
+                        int offsetCount =
+                            ifd.getTIFFFieldCount(BaselineTIFFTagSet.TAG_STRIP_OFFSETS);
                         int tw = getTileOrStripWidth();
                         int th = getTileOrStripHeight();
                         int tAcross = (getWidth() + tw - 1)/tw;
                         int tDown = (getHeight() + th - 1)/th;
                         int tilesPerImage = tAcross*tDown;
-                        long[] offsetArray = offsetField.getAsLongs();
-                        if(offsetArray != null &&
-                           offsetArray.length == tilesPerImage) {
+                        if(offsetCount == tilesPerImage) {
                             // Length of offsets array is
                             // TilesPerImage for Chunky and
                             // SamplesPerPixel*TilesPerImage for Planar.
@@ -421,9 +529,9 @@ public class TIFFImageReader extends ImageReader {
                         int rowsPerStrip = getTileOrStripHeight();
                         int stripsPerImage =
                             (getHeight() + rowsPerStrip - 1)/rowsPerStrip;
-                        long[] offsetArray = offsetField.getAsLongs();
-                        if(offsetArray != null &&
-                           offsetArray.length == stripsPerImage) {
+                        int offsetCount =
+                            ifd.getTIFFFieldCount(BaselineTIFFTagSet.TAG_TILE_OFFSETS);
+                        if(offsetCount == stripsPerImage) {
                             // Length of offsets array is
                             // StripsPerImage for Chunky and
                             // SamplesPerPixel*StripsPerImage for Planar.
@@ -440,49 +548,45 @@ public class TIFFImageReader extends ImageReader {
         return BaselineTIFFTagSet.PLANAR_CONFIGURATION_CHUNKY;
     }
 
-    private long getTileOrStripOffset(int tileIndex) throws IIOException {
-        TIFFField f =
-            imageMetadata.getTIFFField(BaselineTIFFTagSet.TAG_TILE_OFFSETS);
-        if (f == null) {
-            f = imageMetadata.getTIFFField(BaselineTIFFTagSet.TAG_STRIP_OFFSETS);
+    private long getTileOrStripOffset(int tileIndex) throws IOException {
+        return imageMetadata.getRootIFD().
+            getTIFFFieldAsLong(getTileOrStripOffsetsTagNumber(), tileIndex);
+    }
+
+    // Returns the tag number of the field containing the strip or tile
+    // offsets.
+    private int getTileOrStripOffsetsTagNumber() throws IIOException {
+        TIFFIFD ifd = imageMetadata.getRootIFD();
+        int tagNumber = BaselineTIFFTagSet.TAG_TILE_OFFSETS;
+        if (!ifd.containsTIFFField(tagNumber)) {
+            tagNumber = BaselineTIFFTagSet.TAG_STRIP_OFFSETS;
         }
-        if (f == null) {
-            f = imageMetadata.getTIFFField(BaselineTIFFTagSet.TAG_JPEG_INTERCHANGE_FORMAT);
+        if (!ifd.containsTIFFField(tagNumber)) {
+            tagNumber = BaselineTIFFTagSet.TAG_JPEG_INTERCHANGE_FORMAT;
         }
 
-        if(f == null) {
+        if(!ifd.containsTIFFField(tagNumber)) {
             throw new IIOException
                 ("Missing required strip or tile offsets field.");
         }
 
-        return f.getAsLong(tileIndex);
+        return tagNumber;
     }
 
     private long getTileOrStripByteCount(int tileIndex) throws IOException {
-        TIFFField f =
-           imageMetadata.getTIFFField(BaselineTIFFTagSet.TAG_TILE_BYTE_COUNTS);
-        if (f == null) {
-            f =
-          imageMetadata.getTIFFField(BaselineTIFFTagSet.TAG_STRIP_BYTE_COUNTS);
-        }
-        if (f == null) {
-            f = imageMetadata.getTIFFField(BaselineTIFFTagSet.TAG_JPEG_INTERCHANGE_FORMAT_LENGTH);
-        }
+        int tagNumber = getTileOrStripByteCountsTagNumber();
 
         long tileOrStripByteCount;
-        if(f != null) {
-            tileOrStripByteCount = f.getAsLong(tileIndex);
+        if(tagNumber != -1) {
+            tileOrStripByteCount =
+                imageMetadata.getRootIFD().getTIFFFieldAsLong(tagNumber,
+                                                              tileIndex);
         } else {
             processWarningOccurred("TIFF directory contains neither StripByteCounts nor TileByteCounts field: attempting to calculate from strip or tile width and height.");
 
             // Initialize to number of bytes per strip or tile assuming
             // no compression.
-            int bitsPerPixel = bitsPerSample[0];
-            for(int i = 1; i < samplesPerPixel; i++) {
-                bitsPerPixel += bitsPerSample[i];
-            }
-            int bytesPerRow = (getTileOrStripWidth()*bitsPerPixel + 7)/8;
-            tileOrStripByteCount = bytesPerRow*getTileOrStripHeight();
+            tileOrStripByteCount = getUncompressedTileOrStripByteCount();
 
             // Clamp to end of stream if possible.
             long streamLength = stream.length();
@@ -498,6 +602,62 @@ public class TIFFImageReader extends ImageReader {
         return tileOrStripByteCount;
     }
 
+    // Returns the number of bytes per strip or tile assuming no
+    // compression.
+    private long getUncompressedTileOrStripByteCount() {
+        int bitsPerPixel = bitsPerSample[0];
+        for(int i = 1; i < samplesPerPixel; i++) {
+            bitsPerPixel += bitsPerSample[i];
+        }
+        int bytesPerRow = (getTileOrStripWidth()*bitsPerPixel + 7)/8;
+        return bytesPerRow*getTileOrStripHeight();
+    }
+
+    // Returns the tag number of the field containing the strip or tile
+    // byte counts, or -1 if there is none.
+    private int getTileOrStripByteCountsTagNumber() {
+        TIFFIFD ifd = imageMetadata.getRootIFD();
+        if (ifd.containsTIFFField(BaselineTIFFTagSet.TAG_TILE_BYTE_COUNTS)) {
+            return BaselineTIFFTagSet.TAG_TILE_BYTE_COUNTS;
+        } else if (ifd.containsTIFFField
+                   (BaselineTIFFTagSet.TAG_STRIP_BYTE_COUNTS)) {
+            return BaselineTIFFTagSet.TAG_STRIP_BYTE_COUNTS;
+        } else if (ifd.containsTIFFField
+                   (BaselineTIFFTagSet.TAG_JPEG_INTERCHANGE_FORMAT_LENGTH)) {
+            return BaselineTIFFTagSet.TAG_JPEG_INTERCHANGE_FORMAT_LENGTH;
+        }
+        return -1;
+    }
+
+    // Returns the largest strip or tile byte count which does not
+    // extend past the end of the stream, or 0 if none is known. Byte
+    // counts which have not been read in are not examined.
+    private int getMaxTileOrStripByteCount() throws IOException {
+        TIFFIFD ifd = imageMetadata.getRootIFD();
+        int tagNumber = BaselineTIFFTagSet.TAG_TILE_BYTE_COUNTS;
+        if (!ifd.containsTIFFField(tagNumber)) {
+            tagNumber = BaselineTIFFTagSet.TAG_STRIP_BYTE_COUNTS;
+        }
+        long streamLength = stream.length();
+        if (!ifd.containsTIFFField(tagNumber) ||
+            ifd.isTIFFFieldDeferred(tagNumber) ||
+            streamLength < 0) {
+            return 0;
+        }
+
+        TIFFField f = ifd.getTIFFField(tagNumber);
+        long max = 0;
+        int count = f.getCount();
+        for (int i = 0; i < count; i++) {
+            long byteCount = f.getAsLong(i);
+            if (byteCount > max && byteCount <= streamLength) {
+                max = byteCount;
+            }
+        }
+
+        return (int)Math.min(max, Integer.MAX_VALUE);
+    }
+
     private int getCompression() {
         TIFFField f =
             imageMetadata.getTIFFField(BaselineTIFFTagSet.TAG_COMPRESSION);
@@ -890,10 +1050,11 @@ public class TIFFImageReader extends ImageReader {
     public BufferedImage readTile(int imageIndex, int tileX, int tileY)
         throws IOException {
 
-        int w = getWidth(imageIndex);
-        int h = getHeight(imageIndex);
-        int tw = getTileWidth(imageIndex);
-        int th = getTileHeight(imageIndex);
+        seekToImage(imageIndex);
+        int w = getWidth();
+        int h = getHeight();
+        int tw = getTileOrStripWidth();
+        int th = getTileOrStripHeight();
 
         int x = tw*tileX;
         int y = th*tileY;
@@ -939,6 +1100,31 @@ public class TIFFImageReader extends ImageReader {
 
     private TIFFDecompressor decompressor;
 
+    /**
+     * The default decompressor and color converter chosen for an image,
+     * retained so that successive reads of the same image, e.g., by
+     * <code>readTile()</code> or a <code>TIFFRenderedImage</code>, need
+     * not recreate them.
+     */
+    private static class DecodeContext {
+        TIFFImageMetadata metadata;
+        int colorSpaceType;
+        TIFFDecompressor decompressor;
+        TIFFColorConverter colorConverter;
+    }
+
+    // The context of the last read which used the default decompressor.
+    private DecodeContext decodeContext = null;
+
+    // The maximum number of scratch arrays retained between strips or
+    // tiles; a decompressor uses at most three at a time, and a parallel
+    // read also holds the compressed data of the strips or tiles queued
+    // for decoding.
+    private static final int MAX_POOLED_BUFFERS = 16;
+
+    // Scratch arrays shared by the decompressors of this reader.
+    private ByteArrayPool bufferPool = new ByteArrayPool(MAX_POOLED_BUFFERS);
+
     // floor(num/den)
     private static int ifloor(int num, int den) {
         if (num < 0) {
@@ -974,14 +1160,29 @@ public class TIFFImageReader extends ImageReader {
         this.tileOrStripHeight = getTileOrStripHeight();
         this.planarConfiguration = getPlanarConfiguration();
 
-        this.sourceBands = param.getSourceBands();
+        this.sourceBands = getSourceBands(param);
+        this.destinationBands =
+            getDestinationBands(imageIndex, param, sourceBands);
+    }
+
+    // Returns the source bands of the current image selected by the
+    // given parameters.
+    private int[] getSourceBands(ImageReadParam param) {
+        int[] sourceBands = param.getSourceBands();
         if (sourceBands == null) {
             sourceBands = new int[numBands];
             for (int i = 0; i < numBands; i++) {
                 sourceBands[i] = i;
             }
         }
+        return sourceBands;
+    }
 
+    // Returns the destination bands selected by the given parameters
+    // after verifying them and the source bands against the image.
+    private int[] getDestinationBands(int imageIndex, ImageReadParam param,
+                                      int[] sourceBands)
+        throws IOException {
         // Initialize the destination image
         Iterator imageTypes = getImageTypes(imageIndex);
         ImageTypeSpecifier theImageType =
@@ -989,7 +1190,7 @@ public class TIFFImageReader extends ImageReader {
 
         int destNumBands = theImageType.getSampleModel().getNumBands();
 
-        this.destinationBands = param.getDestinationBands();
+        int[] destinationBands = param.getDestinationBands();
         if (destinationBands == null) {
             destinationBands = new int[destNumBands];
             for (int i = 0; i < destNumBands; i++) {
@@ -1014,6 +1215,8 @@ public class TIFFImageReader extends ImageReader {
                                              "Destination band out of range!");
             }
         }
+
+        return destinationBands;
     }
 
     public RenderedImage readAsRenderedImage(int imageIndex,
@@ -1024,11 +1227,43 @@ public class TIFFImageReader extends ImageReader {
                                      width, height);
     }
 
-    private void decodeTile(int ti, int tj, int band) throws IOException {
-        if(DEBUG) {
-            System.out.println("decodeTile("+ti+","+tj+","+band+")");
+    /**
+     * The regions of the source and destination affected by decoding a
+     * single strip or tile.
+     */
+    private static class TileRegion {
+        int srcMinX, srcMinY, srcWidth, srcHeight;
+        int dstMinX, dstMinY, dstWidth, dstHeight;
+        int activeSrcMinX, activeSrcMinY, activeSrcWidth, activeSrcHeight;
+
+        boolean isEmpty() {
+            return dstWidth <= 0 || dstHeight <= 0;
+        }
+
+        void setOn(TIFFDecompressor decompressor) {
+            decompressor.setSrcMinX(srcMinX);
+            decompressor.setSrcMinY(srcMinY);
+            decompressor.setSrcWidth(srcWidth);
+            decompressor.setSrcHeight(srcHeight);
+        
+            decompressor.setDstMinX(dstMinX);
+            decompressor.setDstMinY(dstMinY);
+            decompressor.setDstWidth(dstWidth);
+            decompressor.setDstHeight(dstHeight);
+        
+            decompressor.setActiveSrcMinX(activeSrcMinX);
+            decompressor.setActiveSrcMinY(activeSrcMinY);
+            decompressor.setActiveSrcWidth(activeSrcWidth);
+            decompressor.setActiveSrcHeight(activeSrcHeight);
         }
+    }
 
+    /**
+     * Computes the regions affected by strip or tile (ti, tj).  Returns
+     * <code>null</code> if the strip or tile does not intersect the
+     * image; the destination region of the result may be empty.
+     */
+    private TileRegion computeTileRegion(int ti, int tj, boolean isTiled) {
         // Compute the region covered by the strip or tile
         Rectangle tileRect = new Rectangle(ti*tileOrStripWidth,
                                            tj*tileOrStripHeight,
@@ -1037,34 +1272,36 @@ public class TIFFImageReader extends ImageReader {
 
         // Clip against the image bounds if the image is not tiled. If it
         // is tiled, the tile may legally extend beyond the image bounds.
-        if(!isImageTiled(currIndex)) {
+        if(!isTiled) {
             tileRect =
                 tileRect.intersection(new Rectangle(0, 0, width, height));
         }
 
         // Return if the intersection is empty.
         if(tileRect.width <= 0 || tileRect.height <= 0) {
-            return;
+            return null;
         }
+
+        TileRegion region = new TileRegion();
         
-        int srcMinX = tileRect.x;
-        int srcMinY = tileRect.y;
-        int srcWidth = tileRect.width;
-        int srcHeight = tileRect.height;
+        int srcMinX = region.srcMinX = tileRect.x;
+        int srcMinY = region.srcMinY = tileRect.y;
+        int srcWidth = region.srcWidth = tileRect.width;
+        int srcHeight = region.srcHeight = tileRect.height;
 
         // Determine dest region that can be derived from the
         // source region
         
-        dstMinX = iceil(srcMinX - sourceXOffset, srcXSubsampling);
+        int dstMinX = iceil(srcMinX - sourceXOffset, srcXSubsampling);
         int dstMaxX = ifloor(srcMinX + srcWidth - 1 - sourceXOffset,
                          srcXSubsampling);
         
-        dstMinY = iceil(srcMinY - sourceYOffset, srcYSubsampling);
+        int dstMinY = iceil(srcMinY - sourceYOffset, srcYSubsampling);
         int dstMaxY = ifloor(srcMinY + srcHeight - 1 - sourceYOffset,
                              srcYSubsampling);
         
-        dstWidth = dstMaxX - dstMinX + 1;
-        dstHeight = dstMaxY - dstMinY + 1;
+        int dstWidth = dstMaxX - dstMinX + 1;
+        int dstHeight = dstMaxY - dstMinY + 1;
         
         dstMinX += dstXOffset;
         dstMinY += dstYOffset;
@@ -1076,13 +1313,13 @@ public class TIFFImageReader extends ImageReader {
         dstRect =
             dstRect.intersection(theImage.getRaster().getBounds());
         
-        dstMinX = dstRect.x;
-        dstMinY = dstRect.y;
-        dstWidth = dstRect.width;
-        dstHeight = dstRect.height;
+        dstMinX = region.dstMinX = dstRect.x;
+        dstMinY = region.dstMinY = dstRect.y;
+        dstWidth = region.dstWidth = dstRect.width;
+        dstHeight = region.dstHeight = dstRect.height;
         
-        if (dstWidth <= 0 || dstHeight <= 0) {
-            return;
+        if (region.isEmpty()) {
+            return region;
         }
         
         // Backwards map dest region to source to determine
@@ -1101,46 +1338,106 @@ public class TIFFImageReader extends ImageReader {
             (dstMinY + dstHeight - 1 - dstYOffset)*srcYSubsampling +
             sourceYOffset;
         int activeSrcHeight = symax - activeSrcMinY + 1;
-        
-        decompressor.setSrcMinX(srcMinX);
-        decompressor.setSrcMinY(srcMinY);
-        decompressor.setSrcWidth(srcWidth);
-        decompressor.setSrcHeight(srcHeight);
-        
-        decompressor.setDstMinX(dstMinX);
-        decompressor.setDstMinY(dstMinY);
-        decompressor.setDstWidth(dstWidth);
-        decompressor.setDstHeight(dstHeight);
-        
-        decompressor.setActiveSrcMinX(activeSrcMinX);
-        decompressor.setActiveSrcMinY(activeSrcMinY);
-        decompressor.setActiveSrcWidth(activeSrcWidth);
-        decompressor.setActiveSrcHeight(activeSrcHeight);
 
+        region.activeSrcMinX = activeSrcMinX;
+        region.activeSrcMinY = activeSrcMinY;
+        region.activeSrcWidth = activeSrcWidth;
+        region.activeSrcHeight = activeSrcHeight;
+
+        return region;
+    }
+
+    // Returns the index into the offsets and byte counts arrays of
+    // strip or tile (ti, tj) in the given band.
+    private int getTileIndex(int ti, int tj, int band) {
         int tileIndex = tj*tilesAcross + ti;
 
         if (planarConfiguration ==
             BaselineTIFFTagSet.PLANAR_CONFIGURATION_PLANAR) {
             tileIndex += band*tilesAcross*tilesDown;
         }
-        
-        long offset = getTileOrStripOffset(tileIndex);
-        long byteCount = getTileOrStripByteCount(tileIndex);
-
-        //
-        // Attempt to handle truncated streams, i.e., where reading the
-        // compressed strip or tile would result in an EOFException. The
-        // number of bytes to read is clamped to the number available
-        // from the stream starting at the indicated position in the hope
-        // that the decompressor will handle it.
-        //
+
+        return tileIndex;
+    }
+
+    //
+    // Attempt to handle truncated streams, i.e., where reading the
+    // compressed strip or tile would result in an EOFException. The
+    // number of bytes to read is clamped to the number available
+    // from the stream starting at the indicated position in the hope
+    // that the decompressor will handle it. Returns -1 if no bytes
+    // are available at all.
+    //
+    private long clampByteCount(long offset, long byteCount)
+        throws IOException {
+        return clampByteCount(stream, offset, byteCount);
+    }
+
+    private long clampByteCount(ImageInputStream stream,
+                                long offset, long byteCount)
+        throws IOException {
         long streamLength = stream.length();
         if(streamLength > 0 && offset + byteCount > streamLength) {
-            processWarningOccurred("Attempting to process truncated stream.");
+            forwardWarningMessage("Attempting to process truncated stream.");
             if(Math.max(byteCount = streamLength - offset, 0) == 0) {
-                processWarningOccurred("No bytes in strip/tile: skipping.");
+                forwardWarningMessage("No bytes in strip/tile: skipping.");
+                return -1;
+            }
+        }
+        return byteCount;
+    }
+
+    private void decodeTile(int ti, int tj, int band, boolean isTiled)
+        throws IOException {
+        if(DEBUG) {
+            System.out.println("decodeTile("+ti+","+tj+","+band+")");
+        }
+
+        TileRegion region = computeTileRegion(ti, tj, isTiled);
+        if(region == null) {
+            return;
+        }
+
+        dstMinX = region.dstMinX;
+        dstMinY = region.dstMinY;
+        dstWidth = region.dstWidth;
+        dstHeight = region.dstHeight;
+        
+        if (region.isEmpty()) {
+            return;
+        }
+
+        region.setOn(decompressor);
+
+        int tileIndex = getTileIndex(ti, tj, band);
+
+        if (prefetcher != null) {
+            // Strips or tiles without data were omitted, and the byte
+            // counts clamped, when the read was planned.  The offsets
+            // were also located then, as the stream may not be used
+            // while the prefetcher is reading it.
+            if (numPrefetchedTiles == prefetchTileIndices.length ||
+                prefetchTileIndices[numPrefetchedTiles] != tileIndex) {
                 return;
             }
+            long offset = prefetchOffsets[numPrefetchedTiles];
+            int byteCount = prefetchByteCounts[numPrefetchedTiles++];
+            prefetcher.next(prefetchView);
+
+            decompressor.setStream(prefetchView);
+            decompressor.setOffset(offset);
+            decompressor.setByteCount(byteCount);
+
+            decompressor.beginDecoding();
+            decompressor.decode();
+            return;
+        }
+
+        long offset = getTileOrStripOffset(tileIndex);
+        long byteCount =
+            clampByteCount(offset, getTileOrStripByteCount(tileIndex));
+        if(byteCount < 0) {
+            return;
         }
 
         decompressor.setStream(stream);
@@ -1164,6 +1461,237 @@ public class TIFFImageReader extends ImageReader {
                            destinationBands);
     }
 
+    /**
+     * Creates the decompressor the reader uses by default for the
+     * current image given its compression type.
+     */
+    private TIFFDecompressor createDecompressor(int compression)
+        throws IIOException {
+        return createDecompressor(imageMetadata, compression,
+                                  photometricInterpretation,
+                                  theImage.getColorModel().getColorSpace().
+                                  getType());
+    }
+
+    /**
+     * Creates the default decompressor for an image with the given
+     * metadata, compression type and photometric interpretation which
+     * is decoded into a destination whose color space is of the given
+     * type.
+     */
+    private TIFFDecompressor createDecompressor(TIFFImageMetadata metadata,
+                                                int compression,
+                                                int photometricInterpretation,
+                                                int colorSpaceType)
+        throws IIOException {
+        TIFFDecompressor decompressor = null;
+
+        if (compression ==
+            BaselineTIFFTagSet.COMPRESSION_NONE) {
+            // Get the fillOrder field.
+            TIFFField fillOrderField =
+                metadata.getTIFFField(BaselineTIFFTagSet.TAG_FILL_ORDER);
+
+            // Set the decompressor based on the fill order.
+            if(fillOrderField != null && fillOrderField.getAsInt(0) == 2) {
+                decompressor = new TIFFLSBDecompressor();
+            } else {
+                decompressor = new TIFFNullDecompressor();
+            }
+        } else if (compression ==
+                   BaselineTIFFTagSet.COMPRESSION_CCITT_T_6) {
+
+            // Try to create the codecLib decompressor.
+            if(PackageUtil.isCodecLibAvailable()) {
+                try {
+                    decompressor =
+                        new TIFFCodecLibFaxDecompressor(compression);
+                    if(DEBUG) {
+                        System.out.println
+                            ("Using codecLib T.6 decompressor");
+                    }
+                } catch (RuntimeException re) {
+                    if(DEBUG) {
+                        System.out.println(re);
+                    }
+                }
+            }
+
+            // Fall back to the Java decompressor.
+            if (decompressor == null) {
+                if(DEBUG) {
+                    System.out.println("Using Java T.6 decompressor");
+                }
+                decompressor = new TIFFFaxDecompressor();
+            }
+        } else if (compression ==
+                   BaselineTIFFTagSet.COMPRESSION_CCITT_T_4) {
+
+            if(PackageUtil.isCodecLibAvailable()) {
+                // Try to create the codecLib decompressor.
+                try {
+                    decompressor =
+                        new TIFFCodecLibFaxDecompressor(compression);
+                    if(DEBUG) {
+                        System.out.println
+                            ("Using codecLib T.4 decompressor");
+                    }
+                } catch (RuntimeException re) {
+                    if(DEBUG) {
+                        System.out.println(re);
+                    }
+                }
+            }
+
+            // Fall back to the Java decompressor.
+            if (decompressor == null) {
+                if(DEBUG) {
+                    System.out.println("Using Java T.4 decompressor");
+                }
+                decompressor = new TIFFFaxDecompressor();
+            }
+        } else if (compression ==
+                   BaselineTIFFTagSet.COMPRESSION_CCITT_RLE) {
+            decompressor = new TIFFFaxDecompressor();
+        } else if (compression ==
+                   BaselineTIFFTagSet.COMPRESSION_PACKBITS) {
+            if(DEBUG) {
+                System.out.println("Using TIFFPackBitsDecompressor");
+            }
+            decompressor = new TIFFPackBitsDecompressor();
+        } else if (compression ==
+                   BaselineTIFFTagSet.COMPRESSION_LZW) {
+            if(DEBUG) {
+                System.out.println("Using TIFFLZWDecompressor");
+            }
+	    TIFFField predictorField =
+                metadata.getTIFFField(BaselineTIFFTagSet.TAG_PREDICTOR);
+	    int predictor = ((predictorField == null) ?
+                             BaselineTIFFTagSet.PREDICTOR_NONE :
+                             predictorField.getAsInt(0));
+            decompressor = new TIFFLZWDecompressor(predictor);
+        } else if (compression ==
+                   BaselineTIFFTagSet.COMPRESSION_JPEG) {
+            decompressor = new TIFFJPEGDecompressor();
+        } else if (compression ==
+                   BaselineTIFFTagSet.COMPRESSION_ZLIB ||
+                   compression ==
+                   BaselineTIFFTagSet.COMPRESSION_DEFLATE) {
+	    TIFFField predictorField =
+                metadata.getTIFFField(BaselineTIFFTagSet.TAG_PREDICTOR);
+	    int predictor = ((predictorField == null) ?
+                             BaselineTIFFTagSet.PREDICTOR_NONE :
+                             predictorField.getAsInt(0));
+            decompressor = new TIFFDeflateDecompressor(predictor);
+        } else if (compression ==
+                   BaselineTIFFTagSet.COMPRESSION_OLD_JPEG) {
+            TIFFField JPEGProcField =
+                metadata.getTIFFField(BaselineTIFFTagSet.TAG_JPEG_PROC);
+            if(JPEGProcField == null) {
+                processWarningOccurred
+                    ("JPEGProc field missing; assuming baseline sequential JPEG process.");
+            } else if(JPEGProcField.getAsInt(0) !=
+               BaselineTIFFTagSet.JPEG_PROC_BASELINE) {
+                throw new IIOException
+                    ("Old-style JPEG supported for baseline sequential JPEG process only!");
+            }
+            decompressor = new TIFFOldJPEGDecompressor();
+            //throw new IIOException("Old-style JPEG not supported!");
+        } else {
+            throw new IIOException
+                ("Unsupported compression type (tag number = "+
+                 compression+")!");
+        }
+
+        if (photometricInterpretation ==
+            BaselineTIFFTagSet.PHOTOMETRIC_INTERPRETATION_Y_CB_CR &&
+            compression != BaselineTIFFTagSet.COMPRESSION_JPEG &&
+            compression != BaselineTIFFTagSet.COMPRESSION_OLD_JPEG) {
+            boolean convertYCbCrToRGB = colorSpaceType == ColorSpace.TYPE_RGB;
+            TIFFDecompressor wrappedDecompressor =
+                decompressor instanceof TIFFNullDecompressor ?
+                null : decompressor;
+            decompressor =
+                new TIFFYCbCrDecompressor(wrappedDecompressor,
+                                          convertYCbCrToRGB);
+        }
+
+        return decompressor;
+    }
+
+    /**
+     * Returns the color converter to be used with the given decompressor
+     * for the current image and destination if the application supplies
+     * none, or <code>null</code> if no conversion is required.
+     */
+    private TIFFColorConverter createColorConverter(TIFFDecompressor
+                                                    decompressor) {
+        return createColorConverter(decompressor, imageMetadata, compression,
+                                    photometricInterpretation,
+                                    theImage.getColorModel().getColorSpace().
+                                    getType());
+    }
+
+    /**
+     * Returns the default color converter for an image with the given
+     * metadata, compression type and photometric interpretation which
+     * is decoded by the given decompressor into a destination whose
+     * color space is of the given type.
+     */
+    private TIFFColorConverter createColorConverter(TIFFDecompressor
+                                                    decompressor,
+                                                    TIFFImageMetadata
+                                                    metadata,
+                                                    int compression,
+                                                    int
+                                                    photometricInterpretation,
+                                                    int colorSpaceType) {
+        if (photometricInterpretation ==
+            BaselineTIFFTagSet.PHOTOMETRIC_INTERPRETATION_CIELAB &&
+            colorSpaceType == ColorSpace.TYPE_RGB) {
+            return new TIFFCIELabColorConverter();
+        } else if (photometricInterpretation ==
+                   BaselineTIFFTagSet.PHOTOMETRIC_INTERPRETATION_Y_CB_CR &&
+                   !(decompressor instanceof TIFFYCbCrDecompressor) &&
+                   compression != BaselineTIFFTagSet.COMPRESSION_JPEG &&
+                   compression != BaselineTIFFTagSet.COMPRESSION_OLD_JPEG) {
+            return new TIFFYCbCrColorConverter(metadata);
+        }
+        return null;
+    }
+
+    /**
+     * Sets on the supplied decompressor all values which do not vary
+     * between the strips or tiles of the current read.
+     */
+    private void configureDecompressor(TIFFDecompressor decompressor,
+                                       TIFFColorConverter colorConverter) {
+        decompressor.setReader(this);
+        decompressor.setMetadata(imageMetadata);
+        decompressor.setImage(theImage);
+
+        decompressor.setPhotometricInterpretation(photometricInterpretation);
+        decompressor.setCompression(compression);
+        decompressor.setSamplesPerPixel(samplesPerPixel);
+        decompressor.setBitsPerSample(bitsPerSample);
+        decompressor.setSampleFormat(sampleFormat);
+        decompressor.setExtraSamples(extraSamples);
+        decompressor.setColorMap(colorMap);
+
+        decompressor.setColorConverter(colorConverter);
+
+        decompressor.setSourceXOffset(sourceXOffset);
+        decompressor.setSourceYOffset(sourceYOffset);
+        decompressor.setSubsampleX(srcXSubsampling);
+        decompressor.setSubsampleY(srcYSubsampling);
+
+        decompressor.setDstXOffset(dstXOffset);
+        decompressor.setDstYOffset(dstYOffset);
+
+        decompressor.setSourceBands(sourceBands);
+        decompressor.setDestinationBands(destinationBands);
+    }
+
     public BufferedImage read(int imageIndex, ImageReadParam param)
         throws IOException {
         prepareRead(imageIndex, param);
@@ -1196,6 +1724,8 @@ public class TIFFImageReader extends ImageReader {
         processImageStarted(imageIndex);
         processImageProgress(0.0f);
 
+        bufferPool.resetBytesAllocated();
+
         tilesAcross = (width + tileOrStripWidth - 1)/tileOrStripWidth;
         tilesDown = (height + tileOrStripHeight - 1)/tileOrStripHeight;
 
@@ -1204,146 +1734,38 @@ public class TIFFImageReader extends ImageReader {
         // Attempt to get decompressor and color converted from the read param
         
         TIFFColorConverter colorConverter = null;
+        int numDecodingThreads = 1;
         if (imageReadParam instanceof TIFFImageReadParam) {
             TIFFImageReadParam tparam =
                 (TIFFImageReadParam)imageReadParam;
             this.decompressor = tparam.getTIFFDecompressor();
             colorConverter = tparam.getColorConverter();
+            numDecodingThreads = tparam.getNumDecodingThreads();
         }
 
-        // If we didn't find one, use a standard decompressor
+        // If we didn't find one, use a standard decompressor, reusing
+        // that of the previous read of this image if possible.
+        boolean isDecompressorSupplied = this.decompressor != null;
         if (this.decompressor == null) {
-            if (compression ==
-                BaselineTIFFTagSet.COMPRESSION_NONE) {
-                // Get the fillOrder field.
-                TIFFField fillOrderField =
-                    imageMetadata.getTIFFField(BaselineTIFFTagSet.TAG_FILL_ORDER);
-
-                // Set the decompressor based on the fill order.
-                if(fillOrderField != null && fillOrderField.getAsInt(0) == 2) {
-                    this.decompressor = new TIFFLSBDecompressor();
-                } else {
-                    this.decompressor = new TIFFNullDecompressor();
-                }
-            } else if (compression ==
-                       BaselineTIFFTagSet.COMPRESSION_CCITT_T_6) {
-
-                // Try to create the codecLib decompressor.
-                if(PackageUtil.isCodecLibAvailable()) {
-                    try {
-                        this.decompressor =
-                            new TIFFCodecLibFaxDecompressor(compression);
-                        if(DEBUG) {
-                            System.out.println
-                                ("Using codecLib T.6 decompressor");
-                        }
-                    } catch (RuntimeException re) {
-                        if(DEBUG) {
-                            System.out.println(re);
-                        }
-                    }
-                }
-
-                // Fall back to the Java decompressor.
-                if (this.decompressor == null) {
-                    if(DEBUG) {
-                        System.out.println("Using Java T.6 decompressor");
-                    }
-                    this.decompressor = new TIFFFaxDecompressor();
-                }
-            } else if (compression ==
-                       BaselineTIFFTagSet.COMPRESSION_CCITT_T_4) {
-
-                if(PackageUtil.isCodecLibAvailable()) {
-                    // Try to create the codecLib decompressor.
-                    try {
-                        this.decompressor =
-                            new TIFFCodecLibFaxDecompressor(compression);
-                        if(DEBUG) {
-                            System.out.println
-                                ("Using codecLib T.4 decompressor");
-                        }
-                    } catch (RuntimeException re) {
-                        if(DEBUG) {
-                            System.out.println(re);
-                        }
-                    }
-                }
-
-                // Fall back to the Java decompressor.
-                if (this.decompressor == null) {
-                    if(DEBUG) {
-                        System.out.println("Using Java T.4 decompressor");
-                    }
-                    this.decompressor = new TIFFFaxDecompressor();
-                }
-            } else if (compression ==
-                       BaselineTIFFTagSet.COMPRESSION_CCITT_RLE) {
-                this.decompressor = new TIFFFaxDecompressor();
-            } else if (compression ==
-                       BaselineTIFFTagSet.COMPRESSION_PACKBITS) {
-                if(DEBUG) {
-                    System.out.println("Using TIFFPackBitsDecompressor");
-                }
-                this.decompressor = new TIFFPackBitsDecompressor();
-            } else if (compression ==
-                       BaselineTIFFTagSet.COMPRESSION_LZW) {
-                if(DEBUG) {
-                    System.out.println("Using TIFFLZWDecompressor");
-                }
-		TIFFField predictorField =
-                    imageMetadata.getTIFFField(BaselineTIFFTagSet.TAG_PREDICTOR);
-		int predictor = ((predictorField == null) ?
-                                 BaselineTIFFTagSet.PREDICTOR_NONE :
-                                 predictorField.getAsInt(0));
-                this.decompressor = new TIFFLZWDecompressor(predictor);
-            } else if (compression ==
-                       BaselineTIFFTagSet.COMPRESSION_JPEG) {
-                this.decompressor = new TIFFJPEGDecompressor();
-            } else if (compression ==
-                       BaselineTIFFTagSet.COMPRESSION_ZLIB ||
-                       compression ==
-                       BaselineTIFFTagSet.COMPRESSION_DEFLATE) {
-		TIFFField predictorField =
-                    imageMetadata.getTIFFField(BaselineTIFFTagSet.TAG_PREDICTOR);
-		int predictor = ((predictorField == null) ?
-                                 BaselineTIFFTagSet.PREDICTOR_NONE :
-                                 predictorField.getAsInt(0));
-                this.decompressor = new TIFFDeflateDecompressor(predictor);
-            } else if (compression ==
-                       BaselineTIFFTagSet.COMPRESSION_OLD_JPEG) {
-                TIFFField JPEGProcField =
-                    imageMetadata.getTIFFField(BaselineTIFFTagSet.TAG_JPEG_PROC);
-                if(JPEGProcField == null) {
-                    processWarningOccurred
-                        ("JPEGProc field missing; assuming baseline sequential JPEG process.");
-                } else if(JPEGProcField.getAsInt(0) !=
-                   BaselineTIFFTagSet.JPEG_PROC_BASELINE) {
-                    throw new IIOException
-                        ("Old-style JPEG supported for baseline sequential JPEG process only!");
-                }
-                this.decompressor = new TIFFOldJPEGDecompressor();
-                //throw new IIOException("Old-style JPEG not supported!");
-            } else {
-                throw new IIOException
-                    ("Unsupported compression type (tag number = "+
-                     compression+")!");
+            int colorSpaceType =
+                theImage.getColorModel().getColorSpace().getType();
+            if (decodeContext == null ||
+                decodeContext.metadata != imageMetadata ||
+                decodeContext.colorSpaceType != colorSpaceType) {
+                DecodeContext context = new DecodeContext();
+                context.metadata = imageMetadata;
+                context.colorSpaceType = colorSpaceType;
+                context.decompressor = createDecompressor(compression);
+                context.colorConverter =
+                    createColorConverter(context.decompressor);
+                decodeContext = context;
             }
-
-            if (photometricInterpretation ==
-                BaselineTIFFTagSet.PHOTOMETRIC_INTERPRETATION_Y_CB_CR &&
-                compression != BaselineTIFFTagSet.COMPRESSION_JPEG &&
-                compression != BaselineTIFFTagSet.COMPRESSION_OLD_JPEG) {
-                boolean convertYCbCrToRGB =
-                    theImage.getColorModel().getColorSpace().getType() ==
-                    ColorSpace.TYPE_RGB;
-                TIFFDecompressor wrappedDecompressor =
-                    this.decompressor instanceof TIFFNullDecompressor ?
-                    null : this.decompressor;
-                this.decompressor =
-                    new TIFFYCbCrDecompressor(wrappedDecompressor,
-                                              convertYCbCrToRGB);
+            this.decompressor = decodeContext.decompressor;
+            if (colorConverter == null) {
+                colorConverter = decodeContext.colorConverter;
             }
+        } else if (colorConverter == null) {
+            colorConverter = createColorConverter(this.decompressor);
         }
 
         if(DEBUG) {
@@ -1351,75 +1773,107 @@ public class TIFFImageReader extends ImageReader {
                                decompressor.getClass().getName()+"\n");
         }
 
-        if (colorConverter == null) {
-            if (photometricInterpretation ==
-                BaselineTIFFTagSet.PHOTOMETRIC_INTERPRETATION_CIELAB &&
-                theImage.getColorModel().getColorSpace().getType() ==
-                ColorSpace.TYPE_RGB) {
-                colorConverter = new TIFFCIELabColorConverter();
-             } else if (photometricInterpretation ==
-                        BaselineTIFFTagSet.PHOTOMETRIC_INTERPRETATION_Y_CB_CR &&
-                        !(this.decompressor instanceof TIFFYCbCrDecompressor) &&
-                        compression != BaselineTIFFTagSet.COMPRESSION_JPEG &&
-                        compression != BaselineTIFFTagSet.COMPRESSION_OLD_JPEG) {
-                 colorConverter = new TIFFYCbCrColorConverter(imageMetadata);
-            }
+        configureDecompressor(decompressor, colorConverter);
+
+        // Compute bounds on the tile indices for this source region.
+        int minTileX =
+            TIFFImageWriter.XToTileX(srcRegion.x, 0, tileOrStripWidth);
+        int minTileY =
+            TIFFImageWriter.YToTileY(srcRegion.y, 0, tileOrStripHeight);
+        int maxTileX =
+            TIFFImageWriter.XToTileX(srcRegion.x + srcRegion.width - 1,
+                                     0, tileOrStripWidth);
+        int maxTileY =
+            TIFFImageWriter.YToTileY(srcRegion.y + srcRegion.height - 1,
+                                     0, tileOrStripHeight);
+
+        boolean isAbortRequested = false;
+        if (numDecodingThreads > 1 &&
+            (maxTileX - minTileX + 1)*(maxTileY - minTileY + 1) > 1 &&
+            canDecodeInParallel(isDecompressorSupplied)) {
+            isAbortRequested =
+                decodeTilesInParallel(numDecodingThreads, colorConverter,
+                                      minTileX, minTileY,
+                                      maxTileX, maxTileY);
+        } else {
+            isAbortRequested =
+                decodeTilesSequentially(!isDecompressorSupplied,
+                                        minTileX, minTileY,
+                                        maxTileX, maxTileY);
         }
-        
-        decompressor.setReader(this);
-        decompressor.setMetadata(imageMetadata);
-        decompressor.setImage(theImage);
 
-        decompressor.setPhotometricInterpretation(photometricInterpretation);
-        decompressor.setCompression(compression);
-        decompressor.setSamplesPerPixel(samplesPerPixel);
-        decompressor.setBitsPerSample(bitsPerSample);
-        decompressor.setSampleFormat(sampleFormat);
-        decompressor.setExtraSamples(extraSamples);
-        decompressor.setColorMap(colorMap);
-
-        decompressor.setColorConverter(colorConverter);
-
-        decompressor.setSourceXOffset(sourceXOffset);
-        decompressor.setSourceYOffset(sourceYOffset);
-        decompressor.setSubsampleX(srcXSubsampling);
-        decompressor.setSubsampleY(srcYSubsampling);
+        if (isAbortRequested) {
+            processReadAborted();
+        } else {
+            processImageComplete();
+        }
 
-        decompressor.setDstXOffset(dstXOffset);
-        decompressor.setDstYOffset(dstYOffset);
+        return theImage;
+    }
 
-        decompressor.setSourceBands(sourceBands);
-        decompressor.setDestinationBands(destinationBands);
+    /**
+     * Decodes the strips or tiles in the given range one at a time on
+     * the calling thread.  If <code>canPlanReads</code> is set the
+     * compressed data may be read ahead or read several strips or tiles
+     * at a time as requested by the read param.  Returns whether the
+     * read was aborted.
+     */
+    private boolean decodeTilesSequentially(boolean canPlanReads,
+                                            int minTileX, int minTileY,
+                                            int maxTileX, int maxTileY)
+        throws IOException {
+        boolean isTiled = isImageTiled(currIndex);
+        boolean isAbortRequested = false;
 
-        // Compute bounds on the tile indices for this source region.
-        int minTileX =
-            TIFFImageWriter.XToTileX(srcRegion.x, 0, tileOrStripWidth);
-        int minTileY =
-            TIFFImageWriter.YToTileY(srcRegion.y, 0, tileOrStripHeight);
-        int maxTileX =
-            TIFFImageWriter.XToTileX(srcRegion.x + srcRegion.width - 1,
-                                     0, tileOrStripWidth);
-        int maxTileY =
-            TIFFImageWriter.YToTileY(srcRegion.y + srcRegion.height - 1,
-                                     0, tileOrStripHeight);
+        // The stream must not be used during decoding as it may be
+        // being read in the background.
+        if (canPlanReads &&
+            imageReadParam instanceof TIFFImageReadParam &&
+            !(decompressor instanceof TIFFOldJPEGDecompressor)) {
+            startPrefetching((TIFFImageReadParam)imageReadParam, isTiled,
+                             minTileX, minTileY, maxTileX, maxTileY);
+        }
 
-        boolean isAbortRequested = false;
-        if (planarConfiguration ==
-            BaselineTIFFTagSet.PLANAR_CONFIGURATION_PLANAR) {
+        try {
+            if (planarConfiguration ==
+                BaselineTIFFTagSet.PLANAR_CONFIGURATION_PLANAR) {
             
-            decompressor.setPlanar(true);
+                decompressor.setPlanar(true);
             
-            int[] sb = new int[1];
-            int[] db = new int[1];
-            for (int tj = minTileY; tj <= maxTileY; tj++) {
-                for (int ti = minTileX; ti <= maxTileX; ti++) {
-                    for (int band = 0; band < numBands; band++) {
-                        sb[0] = sourceBands[band];
-                        decompressor.setSourceBands(sb);
-                        db[0] = destinationBands[band];
-                        decompressor.setDestinationBands(db);
-                        //XXX decompressor.beginDecoding();
+                int[] sb = new int[1];
+                int[] db = new int[1];
+                for (int tj = minTileY; tj <= maxTileY; tj++) {
+                    for (int ti = minTileX; ti <= maxTileX; ti++) {
+                        for (int band = 0; band < numBands; band++) {
+                            sb[0] = sourceBands[band];
+                            decompressor.setSourceBands(sb);
+                            db[0] = destinationBands[band];
+                            decompressor.setDestinationBands(db);
+                            //XXX decompressor.beginDecoding();
+
+                            // The method abortRequested() is synchronized
+                            // so check it only once per loop just before
+                            // doing any actual decoding.
+                            if(abortRequested()) {
+                                isAbortRequested = true;
+                                break;
+                            }
+
+                            decodeTile(ti, tj, band, isTiled);
+                        }
 
+                        if(isAbortRequested) break;
+
+                        reportProgress();
+                    }
+
+                    if(isAbortRequested) break;
+                }
+            } else {
+                //XXX decompressor.beginDecoding();
+
+                for (int tj = minTileY; tj <= maxTileY; tj++) {
+                    for (int ti = minTileX; ti <= maxTileX; ti++) {
                         // The method abortRequested() is synchronized
                         // so check it only once per loop just before
                         // doing any actual decoding.
@@ -1428,45 +1882,934 @@ public class TIFFImageReader extends ImageReader {
                             break;
                         }
 
-                        decodeTile(ti, tj, band);
+                        decodeTile(ti, tj, -1, isTiled);
+
+                        reportProgress();
                     }
 
                     if(isAbortRequested) break;
+                }
+            }
+        } finally {
+            stopPrefetching();
+        }
+
+        return isAbortRequested;
+    }
+
+    // Planned reading of compressed data for sequential decoding
+
+    // The prefetcher of the current read, or null if the data of each
+    // strip or tile are read by its decompressor.
+    private StreamPrefetcher prefetcher = null;
 
-                    reportProgress();
+    // The view through which prefetched data are decoded.
+    private ByteArrayImageInputStream prefetchView = null;
+
+    // The indices, offsets and clamped byte counts of the strips or tiles
+    // being prefetched, in the order of decoding.
+    private int[] prefetchTileIndices;
+    private long[] prefetchOffsets;
+    private int[] prefetchByteCounts;
+
+    // The number of strips or tiles already taken from the prefetcher.
+    private int numPrefetchedTiles;
+
+    /**
+     * Locates the data of the strips or tiles in the given range which
+     * will be decoded, in the order in which decodeTile() will be
+     * invoked, and plans their reading, starting to read them in the
+     * background if read-ahead is enabled.  Nothing is done if neither
+     * read-ahead nor coalescing is enabled or if there are fewer than two
+     * ranges to read.
+     */
+    private void startPrefetching(TIFFImageReadParam param, boolean isTiled,
+                                  int minTileX, int minTileY,
+                                  int maxTileX, int maxTileY)
+        throws IOException {
+        int prefetchBufferSize = param.getPrefetchBufferSize();
+        int maxReadSize = param.getMaxCoalescedReadSize();
+        if (prefetchBufferSize == 0 && maxReadSize == 0) {
+            return;
+        }
+        if (maxReadSize == 0) {
+            maxReadSize = prefetchBufferSize;
+        }
+
+        int numPlanes = planarConfiguration ==
+            BaselineTIFFTagSet.PLANAR_CONFIGURATION_PLANAR ? numBands : 1;
+
+        int maxRanges =
+            (maxTileX - minTileX + 1)*(maxTileY - minTileY + 1)*numPlanes;
+        long[] offsets = new long[maxRanges];
+        int[] byteCounts = new int[maxRanges];
+        int[] tileIndices = new int[maxRanges];
+        int numRanges = 0;
+
+        for (int tj = minTileY; tj <= maxTileY; tj++) {
+            for (int ti = minTileX; ti <= maxTileX; ti++) {
+                TileRegion region = computeTileRegion(ti, tj, isTiled);
+                if (region == null || region.isEmpty()) {
+                    continue;
                 }
 
-                if(isAbortRequested) break;
+                for (int band = 0; band < numPlanes; band++) {
+                    int tileIndex = getTileIndex(ti, tj, band);
+                    long offset = getTileOrStripOffset(tileIndex);
+                    long byteCount =
+                        clampByteCount(offset,
+                                       getTileOrStripByteCount(tileIndex));
+                    if (byteCount < 0) {
+                        continue;
+                    }
+
+                    offsets[numRanges] = offset;
+                    byteCounts[numRanges] = (int)byteCount;
+                    tileIndices[numRanges] = tileIndex;
+                    numRanges++;
+                }
+            }
+        }
+
+        if (numRanges < 2) {
+            return;
+        }
+
+        if (prefetchView == null) {
+            prefetchView = new ByteArrayImageInputStream(new byte[0]);
+        }
+        prefetchView.setByteOrder(stream.getByteOrder());
+
+        prefetchTileIndices = tileIndices;
+        prefetchOffsets = offsets;
+        prefetchByteCounts = byteCounts;
+        numPrefetchedTiles = 0;
+        StreamReadPlan plan =
+            new StreamReadPlan(offsets, byteCounts, numRanges,
+                               param.getMaxCoalescingGap(), maxReadSize);
+        prefetcher =
+            new StreamPrefetcher(stream, plan,
+                                 prefetchBufferSize > 0 ?
+                                 prefetchBufferSize : Integer.MAX_VALUE);
+        if (prefetchBufferSize > 0) {
+            prefetcher.start();
+        }
+    }
+
+    // Stops any prefetching and releases the remaining data.
+    private void stopPrefetching() throws IOException {
+        if (prefetcher != null) {
+            StreamPrefetcher p = prefetcher;
+            prefetcher = null;
+            prefetchTileIndices = null;
+            prefetchOffsets = null;
+            prefetchByteCounts = null;
+            prefetchView.setData(new byte[0], 0, 0, 0L);
+            p.close();
+        }
+    }
+
+    // Parallel decoding of strips and tiles
+
+    /**
+     * Warnings emitted by decompressors running on worker threads and
+     * not yet delivered to the listeners.
+     */
+    private List deferredWarnings = new ArrayList();
+
+    /**
+     * Set on threads decoding for a <code>ConcurrentTileDecoder</code>,
+     * whose warnings are deferred like those of the worker threads.
+     */
+    private ThreadLocal isDeferringWarnings = new ThreadLocal();
+
+    /**
+     * A strip or tile whose compressed data have been read from the
+     * stream and which is to be decoded by a worker thread.  For planar
+     * images there is one data array for each band.
+     */
+    private static class TileJob {
+        TileRegion region;
+        long[] offsets;
+        byte[][] data;
+        int[] lengths;
+        Throwable error;
+    }
+
+    /**
+     * The queue of strips or tiles shared by the reading thread and the
+     * worker threads.  A job is outstanding from the time it is put into
+     * the queue until the reading thread retrieves it after completion.
+     */
+    private static class TileJobQueue {
+        private LinkedList pending = new LinkedList();
+        private LinkedList completed = new LinkedList();
+        private int numOutstanding = 0;
+        private boolean isClosed = false;
+
+        synchronized void put(TileJob job) {
+            pending.addLast(job);
+            numOutstanding++;
+            notifyAll();
+        }
+
+        // Returns the next job to decode or null if the queue is closed.
+        synchronized TileJob take() throws InterruptedException {
+            while (pending.isEmpty() && !isClosed) {
+                wait();
+            }
+            return isClosed ? null : (TileJob)pending.removeFirst();
+        }
+
+        synchronized void complete(TileJob job) {
+            completed.addLast(job);
+            notifyAll();
+        }
+
+        // Returns a completed job or null if there is none. If 'block'
+        // is set, waits for a completion while any job is outstanding.
+        synchronized TileJob getCompleted(boolean block)
+            throws InterruptedException {
+            while (block && completed.isEmpty() && numOutstanding > 0) {
+                wait();
+            }
+            if (completed.isEmpty()) {
+                return null;
+            }
+            numOutstanding--;
+            return (TileJob)completed.removeFirst();
+        }
+
+        synchronized int getNumOutstanding() {
+            return numOutstanding;
+        }
+
+        // Discards all jobs which have not yet been started and returns
+        // them.
+        synchronized TileJob[] cancelPending() {
+            TileJob[] jobs =
+                (TileJob[])pending.toArray(new TileJob[pending.size()]);
+            numOutstanding -= pending.size();
+            pending.clear();
+            return jobs;
+        }
+
+        synchronized void close() {
+            isClosed = true;
+            notifyAll();
+        }
+    }
+
+    /**
+     * A worker thread which decodes strips or tiles using its own
+     * decompressor and its own view of the compressed data.
+     */
+    private class TileDecodingThread extends Thread {
+        private TileJobQueue queue;
+        private TIFFDecompressor decompressor;
+        private ByteArrayImageInputStream view;
+
+        TileDecodingThread(TileJobQueue queue,
+                           TIFFDecompressor decompressor,
+                           ByteOrder byteOrder) {
+            super("TIFFImageReader tile decoder");
+            setDaemon(true);
+            this.queue = queue;
+            this.decompressor = decompressor;
+            this.view = new ByteArrayImageInputStream(new byte[0]);
+            view.setByteOrder(byteOrder);
+        }
+
+        public void run() {
+            try {
+                TileJob job;
+                while ((job = queue.take()) != null) {
+                    try {
+                        decode(job);
+                    } catch (Throwable t) {
+                        job.error = t;
+                        releaseTileJob(job);
+                    }
+                    queue.complete(job);
+                }
+            } catch (InterruptedException e) {
+                // Exit.
+            }
+        }
+
+        private void decode(TileJob job) throws IOException {
+            boolean isPlanar = planarConfiguration ==
+                BaselineTIFFTagSet.PLANAR_CONFIGURATION_PLANAR;
+            int[] sb = new int[1];
+            int[] db = new int[1];
+            for (int band = 0; band < job.data.length; band++) {
+                if (job.data[band] == null) {
+                    continue;
+                }
+
+                if (isPlanar) {
+                    sb[0] = sourceBands[band];
+                    decompressor.setSourceBands(sb);
+                    db[0] = destinationBands[band];
+                    decompressor.setDestinationBands(db);
+                }
+
+                job.region.setOn(decompressor);
+
+                int length = job.lengths[band];
+                view.setData(job.data[band], 0, length, job.offsets[band]);
+
+                decompressor.setStream(view);
+                decompressor.setOffset(job.offsets[band]);
+                decompressor.setByteCount(length);
+
+                decompressor.beginDecoding();
+                decompressor.decode();
+
+                // Return the compressed data to the pool as soon as
+                // possible.
+                bufferPool.release(job.data[band]);
+                job.data[band] = null;
+            }
+        }
+    }
+
+    /**
+     * Whether the strips or tiles of the current read may be decoded
+     * concurrently. This requires that the reader be able to create
+     * a decompressor for each worker, that the decompressor read only
+     * the bytes of its own strip or tile, and that no element of the
+     * destination be shared by pixels of different strips or tiles.
+     */
+    private boolean canDecodeInParallel(boolean isDecompressorSupplied) {
+        return !isDecompressorSupplied &&
+            !(decompressor instanceof TIFFOldJPEGDecompressor) &&
+            !(theImage.getSampleModel() instanceof
+              MultiPixelPackedSampleModel);
+    }
+
+    /**
+     * Reads the compressed data of strip or tile (ti, tj) from the
+     * stream. Returns <code>null</code> if nothing is to be decoded.
+     */
+    private TileJob readTileJob(int ti, int tj, boolean isTiled)
+        throws IOException {
+        TileRegion region = computeTileRegion(ti, tj, isTiled);
+        if (region == null || region.isEmpty()) {
+            return null;
+        }
+
+        int numPlanes = planarConfiguration ==
+            BaselineTIFFTagSet.PLANAR_CONFIGURATION_PLANAR ? numBands : 1;
+
+        TileJob job = new TileJob();
+        job.region = region;
+        job.offsets = new long[numPlanes];
+        job.data = new byte[numPlanes][];
+        job.lengths = new int[numPlanes];
+
+        // The data are held in arrays from the pool, which may be longer
+        // than the data, until the job is decoded.
+        stream.mark();
+        try {
+            for (int band = 0; band < numPlanes; band++) {
+                int tileIndex = getTileIndex(ti, tj, band);
+                long offset = getTileOrStripOffset(tileIndex);
+                long byteCount =
+                    clampByteCount(offset,
+                                   getTileOrStripByteCount(tileIndex));
+                if (byteCount < 0) {
+                    continue;
+                }
+
+                job.offsets[band] = offset;
+                job.lengths[band] = (int)byteCount;
+                job.data[band] = bufferPool.get(job.lengths[band]);
+                stream.seek(offset);
+                stream.readFully(job.data[band], 0, job.lengths[band]);
+            }
+        } catch (IOException e) {
+            releaseTileJob(job);
+            throw e;
+        }
+        stream.reset();
+
+        return job;
+    }
+
+    /**
+     * Returns to the pool the compressed data of a strip or tile which
+     * have not yet been decoded.
+     */
+    private void releaseTileJob(TileJob job) {
+        for (int band = 0; band < job.data.length; band++) {
+            bufferPool.release(job.data[band]);
+            job.data[band] = null;
+        }
+    }
+
+    private void releaseTileJobs(TileJob[] jobs) {
+        for (int i = 0; i < jobs.length; i++) {
+            releaseTileJob(jobs[i]);
+        }
+    }
+
+    /**
+     * Delivers notifications for a completed strip or tile, rethrowing
+     * any error which occurred while decoding it.
+     */
+    private void finishTileJob(TileJob job, boolean notify)
+        throws IOException {
+        flushDeferredWarnings();
+
+        if (job.error != null) {
+            if (job.error instanceof IOException) {
+                throw (IOException)job.error;
+            } else if (job.error instanceof RuntimeException) {
+                throw (RuntimeException)job.error;
+            } else if (job.error instanceof Error) {
+                throw (Error)job.error;
+            }
+            throw new IIOException("Error decoding strip or tile!",
+                                   job.error);
+        }
+
+        if (notify) {
+            dstMinX = job.region.dstMinX;
+            dstMinY = job.region.dstMinY;
+            dstWidth = job.region.dstWidth;
+            dstHeight = job.region.dstHeight;
+            reportProgress();
+        }
+    }
+
+    private void flushDeferredWarnings() {
+        String[] warnings;
+        synchronized (deferredWarnings) {
+            if (deferredWarnings.isEmpty()) {
+                return;
+            }
+            warnings = (String[])deferredWarnings.toArray
+                (new String[deferredWarnings.size()]);
+            deferredWarnings.clear();
+        }
+        for (int i = 0; i < warnings.length; i++) {
+            processWarningOccurred(warnings[i]);
+        }
+    }
+
+    /**
+     * Decodes the strips or tiles in the given range using
+     * <code>numThreads</code> worker threads. The compressed data are
+     * read on the calling thread, which also delivers all listener
+     * notifications. Returns whether the read was aborted.
+     */
+    private boolean decodeTilesInParallel(int numThreads,
+                                          TIFFColorConverter colorConverter,
+                                          int minTileX, int minTileY,
+                                          int maxTileX, int maxTileY)
+        throws IOException {
+        boolean isTiled = isImageTiled(currIndex);
+        boolean isPlanar = planarConfiguration ==
+            BaselineTIFFTagSet.PLANAR_CONFIGURATION_PLANAR;
+
+        // Limit the compressed data held in memory at any one time.
+        int maxOutstanding = 2*numThreads;
+
+        TileJobQueue queue = new TileJobQueue();
+        TileDecodingThread[] workers = new TileDecodingThread[numThreads];
+        boolean isAbortRequested = false;
+        try {
+            for (int i = 0; i < numThreads; i++) {
+                TIFFDecompressor d;
+                if (i == 0) {
+                    d = this.decompressor;
+                } else {
+                    d = createDecompressor(getCompression());
+                    configureDecompressor(d, colorConverter);
+                }
+                d.setPlanar(isPlanar);
+                workers[i] =
+                    new TileDecodingThread(queue, d, stream.getByteOrder());
+                workers[i].start();
             }
-        } else {
-            //XXX decompressor.beginDecoding();
 
             for (int tj = minTileY; tj <= maxTileY; tj++) {
                 for (int ti = minTileX; ti <= maxTileX; ti++) {
-                    // The method abortRequested() is synchronized
-                    // so check it only once per loop just before
-                    // doing any actual decoding.
-                    if(abortRequested()) {
+                    // Report completed strips or tiles, waiting for one
+                    // if too many are outstanding.
+                    TileJob done;
+                    while ((done = queue.getCompleted
+                            (queue.getNumOutstanding() >= maxOutstanding))
+                           != null) {
+                        finishTileJob(done, true);
+                    }
+
+                    if (abortRequested()) {
                         isAbortRequested = true;
                         break;
                     }
 
-                    decodeTile(ti, tj, -1);
+                    TileJob job = readTileJob(ti, tj, isTiled);
+                    if (job != null) {
+                        queue.put(job);
+                    }
+                }
+
+                if (isAbortRequested) break;
+            }
+
+            // Strips or tiles not yet started are dropped on abort;
+            // those already being decoded are allowed to finish.
+            if (isAbortRequested) {
+                releaseTileJobs(queue.cancelPending());
+            }
+
+            TileJob done;
+            while ((done = queue.getCompleted(true)) != null) {
+                finishTileJob(done, !isAbortRequested);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IIOException("Interrupted while decoding!", e);
+        } finally {
+            releaseTileJobs(queue.cancelPending());
+            queue.close();
+            for (int i = 0; i < numThreads; i++) {
+                if (workers[i] == null) {
+                    continue;
+                }
+                boolean isInterrupted = false;
+                while (workers[i].isAlive()) {
+                    try {
+                        workers[i].join();
+                    } catch (InterruptedException e) {
+                        isInterrupted = true;
+                    }
+                }
+                if (isInterrupted) {
+                    Thread.currentThread().interrupt();
+                }
 
-                    reportProgress();
+                // Return the JPEG readers of the additional decompressors
+                // for use by later reads.
+                if (i > 0 &&
+                    workers[i].decompressor instanceof TIFFJPEGDecompressor &&
+                    !(workers[i].decompressor instanceof
+                      TIFFOldJPEGDecompressor)) {
+                    ((TIFFJPEGDecompressor)workers[i].decompressor).
+                        releaseJPEGReader();
                 }
 
-                if(isAbortRequested) break;
+                // Free the native storage of the Inflaters of the
+                // additional decompressors, which are discarded.
+                if (i > 0 &&
+                    workers[i].decompressor instanceof
+                    TIFFDeflateDecompressor) {
+                    ((TIFFDeflateDecompressor)workers[i].decompressor).
+                        endInflater();
+                }
             }
+            flushDeferredWarnings();
         }
 
-        if (isAbortRequested) {
-            processReadAborted();
-        } else {
-            processImageComplete();
+        return isAbortRequested;
+    }
+
+    // Concurrent decoding for TIFFRenderedImage
+
+    /**
+     * Decodes rectangles of a single image into new rasters without
+     * using the state of the reader, so that the tiles of a
+     * <code>TIFFRenderedImage</code> may be computed by several threads
+     * at once.  The positions and lengths of the strips or tiles are
+     * looked up in the image metadata while holding the lock on the
+     * reader as each strip or tile is decoded, so that only the parts
+     * of deferred offset and byte count fields which are needed are
+     * read from the stream.  Compressed data are read
+     * from the stream while holding the lock on the reader, or without
+     * locking through a separate stream if the input was obtained from a
+     * <code>FileChannelStreamSource</code>, and are decoded from memory
+     * by decompressors which are taken from a pool and configured once
+     * from the values captured with the positions.  No progress or
+     * update notifications are delivered, and warnings are delivered
+     * while holding the lock on the reader once a rectangle is decoded.
+     */
+    class ConcurrentTileDecoder {
+        private ImageInputStream decoderStream;
+        private FileChannelStreamSource source;
+        private ImageTypeSpecifier imageType;
+        private TIFFColorConverter colorConverter;
+
+        private TIFFImageMetadata metadata;
+        private int compression;
+        private int photometricInterpretation;
+        private int samplesPerPixel;
+        private int[] bitsPerSample;
+        private int[] sampleFormat;
+        private int[] extraSamples;
+        private char[] colorMap;
+        private int colorSpaceType;
+
+        private int imageWidth;
+        private int imageHeight;
+        private int tileWidth;
+        private int tileHeight;
+        private int numTilesAcross;
+        private boolean isTiled;
+        private boolean isPlanar;
+        private int numPlanes;
+        private int[] planeSourceBands;
+        private int[] planeDestinationBands;
+        private int tilesPerPlane;
+
+        private TIFFIFD ifd;
+        private int offsetsTagNumber;
+        private int byteCountsTagNumber;
+        private long uncompressedByteCount;
+
+        private LinkedList freeDecompressors = new LinkedList();
+
+        /**
+         * Returns whether the decoder may still be used, i.e., whether
+         * the input of the reader is unchanged.
+         */
+        boolean isValid() {
+            return stream == decoderStream;
+        }
+
+        /**
+         * Returns a decompressor configured for this image, creating one
+         * if none is free.
+         */
+        private TIFFDecompressor getDecompressor() throws IOException {
+            synchronized (freeDecompressors) {
+                if (!freeDecompressors.isEmpty()) {
+                    return (TIFFDecompressor)freeDecompressors.removeFirst();
+                }
+            }
+
+            // The destination and source offsets are set for each use.
+            TIFFDecompressor d =
+                createDecompressor(metadata, compression,
+                                   photometricInterpretation, colorSpaceType);
+            d.setReader(TIFFImageReader.this);
+            d.setMetadata(metadata);
+
+            d.setPhotometricInterpretation(photometricInterpretation);
+            d.setCompression(compression);
+            d.setSamplesPerPixel(samplesPerPixel);
+            d.setBitsPerSample(bitsPerSample);
+            d.setSampleFormat(sampleFormat);
+            d.setExtraSamples(extraSamples);
+            d.setColorMap(colorMap);
+
+            d.setColorConverter(colorConverter);
+
+            d.setSubsampleX(1);
+            d.setSubsampleY(1);
+            d.setDstXOffset(0);
+            d.setDstYOffset(0);
+
+            d.setSourceBands(planeSourceBands);
+            d.setDestinationBands(planeDestinationBands);
+            d.setPlanar(isPlanar);
+            return d;
+        }
+
+        private void releaseDecompressor(TIFFDecompressor d) {
+            d.setImage(null);
+            synchronized (freeDecompressors) {
+                freeDecompressors.addLast(d);
+            }
         }
 
-        return theImage;
+        /**
+         * Decodes the given rectangle of the image into a new raster
+         * whose origin is at the upper left corner of the rectangle.
+         */
+        WritableRaster decode(Rectangle rect) throws IOException {
+            rect = rect.intersection(new Rectangle(0, 0,
+                                                   imageWidth, imageHeight));
+            if (rect.isEmpty()) {
+                throw new IllegalArgumentException
+                    ("Rectangle does not intersect the image!");
+            }
+
+            BufferedImage dst =
+                imageType.createBufferedImage(rect.width, rect.height);
+
+            int minTileX = TIFFImageWriter.XToTileX(rect.x, 0, tileWidth);
+            int minTileY = TIFFImageWriter.YToTileY(rect.y, 0, tileHeight);
+            int maxTileX = TIFFImageWriter.XToTileX(rect.x + rect.width - 1,
+                                                    0, tileWidth);
+            int maxTileY = TIFFImageWriter.YToTileY(rect.y + rect.height - 1,
+                                                    0, tileHeight);
+
+            // Warnings are deferred as on the worker threads of read().
+            Object wasDeferringWarnings = isDeferringWarnings.get();
+            isDeferringWarnings.set(Boolean.TRUE);
+            TIFFDecompressor d = null;
+            try {
+                d = getDecompressor();
+                d.setImage(dst);
+                d.setSourceXOffset(rect.x);
+                d.setSourceYOffset(rect.y);
+
+                ImageInputStream in = source != null ?
+                    source.createInputStream() : null;
+                ByteArrayImageInputStream view =
+                    new ByteArrayImageInputStream(new byte[0]);
+                view.setByteOrder(decoderStream.getByteOrder());
+                long[] tileOffsets = new long[numPlanes];
+                byte[][] data = new byte[numPlanes][];
+                int[] lengths = new int[numPlanes];
+                int[] sb = new int[1];
+                int[] db = new int[1];
+
+                for (int tj = minTileY; tj <= maxTileY; tj++) {
+                    for (int ti = minTileX; ti <= maxTileX; ti++) {
+                        Rectangle tileRect =
+                            new Rectangle(ti*tileWidth, tj*tileHeight,
+                                          tileWidth, tileHeight);
+                        if (!isTiled) {
+                            tileRect = tileRect.intersection
+                                (new Rectangle(0, 0,
+                                               imageWidth, imageHeight));
+                        }
+                        Rectangle activeRect = tileRect.intersection(rect);
+
+                        d.setSrcMinX(tileRect.x);
+                        d.setSrcMinY(tileRect.y);
+                        d.setSrcWidth(tileRect.width);
+                        d.setSrcHeight(tileRect.height);
+
+                        d.setDstMinX(activeRect.x - rect.x);
+                        d.setDstMinY(activeRect.y - rect.y);
+                        d.setDstWidth(activeRect.width);
+                        d.setDstHeight(activeRect.height);
+
+                        d.setActiveSrcMinX(activeRect.x);
+                        d.setActiveSrcMinY(activeRect.y);
+                        d.setActiveSrcWidth(activeRect.width);
+                        d.setActiveSrcHeight(activeRect.height);
+
+                        int tileIndex = tj*numTilesAcross + ti;
+                        try {
+                            if (in != null) {
+                                synchronized (TIFFImageReader.this) {
+                                    locateTile(in, tileIndex,
+                                               tileOffsets, lengths);
+                                }
+                                readTileData(in, tileOffsets, data, lengths);
+                            } else {
+                                synchronized (TIFFImageReader.this) {
+                                    locateTile(decoderStream, tileIndex,
+                                               tileOffsets, lengths);
+                                    readTileData(decoderStream, tileOffsets,
+                                                 data, lengths);
+                                }
+                            }
+                            for (int p = 0; p < numPlanes; p++) {
+                                if (lengths[p] < 0) {
+                                    continue;
+                                }
+
+                                if (isPlanar) {
+                                    sb[0] = planeSourceBands[p];
+                                    d.setSourceBands(sb);
+                                    db[0] = planeDestinationBands[p];
+                                    d.setDestinationBands(db);
+                                }
+
+                                view.setData(data[p], 0, lengths[p],
+                                             tileOffsets[p]);
+                                d.setStream(view);
+                                d.setOffset(tileOffsets[p]);
+                                d.setByteCount(lengths[p]);
+
+                                d.beginDecoding();
+                                d.decode();
+                            }
+                        } finally {
+                            for (int p = 0; p < numPlanes; p++) {
+                                bufferPool.release(data[p]);
+                                data[p] = null;
+                            }
+                        }
+                    }
+                }
+            } finally {
+                if (d != null) {
+                    releaseDecompressor(d);
+                }
+                isDeferringWarnings.set(wasDeferringWarnings);
+                synchronized (TIFFImageReader.this) {
+                    flushDeferredWarnings();
+                }
+            }
+
+            return dst.getRaster();
+        }
+
+        // Looks up the position of a strip or tile in each plane and
+        // its length clamped to the end of the given stream. A length
+        // of -1 indicates that there are no data. The caller must hold
+        // the lock on the reader.
+        private void locateTile(ImageInputStream in, int tileIndex,
+                                long[] tileOffsets, int[] lengths)
+            throws IOException {
+            if (!isValid()) {
+                throw new IllegalStateException("Input has changed!");
+            }
+            for (int p = 0; p < numPlanes; p++) {
+                int index = tileIndex + p*tilesPerPlane;
+                long offset = ifd.getTIFFFieldAsLong(offsetsTagNumber, index);
+                long byteCount;
+                if (byteCountsTagNumber != -1) {
+                    byteCount =
+                        ifd.getTIFFFieldAsLong(byteCountsTagNumber, index);
+                } else {
+                    // Clamp the estimate to the end of the stream as
+                    // getTileOrStripByteCount() does.
+                    byteCount = uncompressedByteCount;
+                    long streamLength = in.length();
+                    if (streamLength != -1) {
+                        byteCount =
+                            Math.min(byteCount, streamLength - offset);
+                    }
+                }
+                byteCount = clampByteCount(in, offset, byteCount);
+                tileOffsets[p] = offset;
+                lengths[p] = byteCount < 0 ? -1 : (int)byteCount;
+            }
+        }
+
+        // Reads the compressed data of a strip or tile in each plane.
+        private void readTileData(ImageInputStream in, long[] tileOffsets,
+                                  byte[][] data, int[] lengths)
+            throws IOException {
+            for (int p = 0; p < numPlanes; p++) {
+                if (lengths[p] < 0) {
+                    continue;
+                }
+                data[p] = bufferPool.get(lengths[p]);
+                in.seek(tileOffsets[p]);
+                in.readFully(data[p], 0, lengths[p]);
+            }
+        }
+    }
+
+    /**
+     * Returns whether any progress or update listeners are registered.
+     */
+    boolean hasReadListeners() {
+        return progressListeners != null || updateListeners != null;
+    }
+
+    /**
+     * Creates a decoder which may be used to compute the tiles of a
+     * <code>TIFFRenderedImage</code> concurrently, or returns
+     * <code>null</code> if the image must be decoded by means of
+     * <code>read()</code>, which is the case if the parameters specify
+     * subsampling, a destination offset or a decompressor, or if the
+     * image is compressed using old-style JPEG.  The caller must hold
+     * the lock on this reader.
+     */
+    ConcurrentTileDecoder createConcurrentTileDecoder(int imageIndex,
+                                                      ImageReadParam param)
+        throws IOException {
+        if (param.getSourceXSubsampling() != 1 ||
+            param.getSourceYSubsampling() != 1 ||
+            param.getSubsamplingXOffset() != 0 ||
+            param.getSubsamplingYOffset() != 0 ||
+            param.getDestinationOffset().x != 0 ||
+            param.getDestinationOffset().y != 0) {
+            return null;
+        }
+
+        TIFFColorConverter colorConverter = null;
+        if (param instanceof TIFFImageReadParam) {
+            TIFFImageReadParam tparam = (TIFFImageReadParam)param;
+            if (tparam.getTIFFDecompressor() != null) {
+                return null;
+            }
+            colorConverter = tparam.getColorConverter();
+        }
+
+        // Only the current image of the reader is changed; the state
+        // of the read is kept by the decoder.
+        if (stream == null) {
+            throw new IllegalStateException("Input not set!");
+        }
+        seekToImage(imageIndex);
+        if (getCompression() == BaselineTIFFTagSet.COMPRESSION_OLD_JPEG) {
+            return null;
+        }
+        int[] sourceBands = getSourceBands(param);
+        int[] destinationBands =
+            getDestinationBands(imageIndex, param, sourceBands);
+
+        ConcurrentTileDecoder decoder = new ConcurrentTileDecoder();
+        decoder.decoderStream = stream;
+        decoder.source = FileChannelStreamSource.getSource(stream);
+        decoder.imageType =
+            ImageUtil.getDestinationType(param, getImageTypes(imageIndex));
+
+        decoder.metadata = imageMetadata;
+        decoder.compression = compression;
+        decoder.photometricInterpretation = photometricInterpretation;
+        decoder.samplesPerPixel = samplesPerPixel;
+        decoder.bitsPerSample = bitsPerSample;
+        decoder.sampleFormat = sampleFormat;
+        decoder.extraSamples = extraSamples;
+        decoder.colorMap = colorMap;
+        decoder.colorSpaceType =
+            decoder.imageType.getColorModel().getColorSpace().getType();
+
+        int tileWidth = getTileOrStripWidth();
+        int tileHeight = getTileOrStripHeight();
+        decoder.imageWidth = width;
+        decoder.imageHeight = height;
+        decoder.tileWidth = tileWidth;
+        decoder.tileHeight = tileHeight;
+        decoder.numTilesAcross = (width + tileWidth - 1)/tileWidth;
+        decoder.isTiled = isImageTiled(imageIndex);
+        decoder.isPlanar = getPlanarConfiguration() ==
+            BaselineTIFFTagSet.PLANAR_CONFIGURATION_PLANAR;
+        decoder.numPlanes = decoder.isPlanar ? numBands : 1;
+        decoder.planeSourceBands = (int[])sourceBands.clone();
+        decoder.planeDestinationBands = (int[])destinationBands.clone();
+
+        decoder.tilesPerPlane = decoder.numTilesAcross*
+            ((height + tileHeight - 1)/tileHeight);
+
+        // Capture the fields from which the positions and lengths of the
+        // strips or tiles are looked up as they are decoded.
+        decoder.ifd = imageMetadata.getRootIFD();
+        decoder.offsetsTagNumber = getTileOrStripOffsetsTagNumber();
+        decoder.byteCountsTagNumber = getTileOrStripByteCountsTagNumber();
+        if (decoder.byteCountsTagNumber == -1) {
+            processWarningOccurred("TIFF directory contains neither StripByteCounts nor TileByteCounts field: attempting to calculate from strip or tile width and height.");
+            decoder.uncompressedByteCount =
+                getUncompressedTileOrStripByteCount();
+        }
+
+        // Choose the default color converter as read() would.
+        if (colorConverter == null) {
+            TIFFDecompressor d =
+                createDecompressor(decoder.metadata, decoder.compression,
+                                   decoder.photometricInterpretation,
+                                   decoder.colorSpaceType);
+            colorConverter =
+                createColorConverter(d, decoder.metadata,
+                                     decoder.compression,
+                                     decoder.photometricInterpretation,
+                                     decoder.colorSpaceType);
+        }
+        decoder.colorConverter = colorConverter;
+
+        return decoder;
     }
 
     public void reset() {
@@ -1477,12 +2820,15 @@ public class TIFFImageReader extends ImageReader {
     protected void resetLocal() {
         stream = null;
         gotHeader = false;
+        isBigTIFF = false;
         imageReadParam = getDefaultReadParam();
         streamMetadata = null;
         currIndex = -1;
         imageMetadata = null;
+        decodeContext = null;
         imageStartPosition = new ArrayList();
         numImages = -1;
+        directoryIndex = null;
         imageTypeMap = new HashMap();
         width = -1;
         height = -1;
@@ -1491,6 +2837,54 @@ public class TIFFImageReader extends ImageReader {
         tileOrStripHeight = -1;
         planarConfiguration = BaselineTIFFTagSet.PLANAR_CONFIGURATION_CHUNKY;
         rowsDone = 0;
+        bufferPool = new ByteArrayPool(MAX_POOLED_BUFFERS);
+    }
+
+    /**
+     * Returns the number of bytes of scratch storage allocated by the
+     * decompressors, and for the compressed data of strips or tiles
+     * decoded in parallel, during the most recent call to
+     * <code>read</code>.
+     * Scratch arrays are pooled by the reader and reused for successive
+     * strips or tiles, so this is normally small compared to the size
+     * of the compressed data once the first image has been read.
+     *
+     * @return the number of bytes allocated.
+     */
+    public long getScratchBytesAllocated() {
+        return bufferPool.getBytesAllocated();
+    }
+
+    /**
+     * Returns a scratch array of at least <code>length</code> bytes for
+     * use by a decompressor of the given reader.  If the reader is a
+     * <code>TIFFImageReader</code> the array is taken from the pool which
+     * it shares among its decompressors, in which case its contents are
+     * undefined and it should be handed back by means of
+     * <code>releaseScratchBuffer</code> once it is no longer needed.
+     *
+     * @param reader the reader of the decompressor, or <code>null</code>.
+     * @param length the minimum length of the array.
+     *
+     * @return a <code>byte</code> array.
+     */
+    public static byte[] getScratchBuffer(ImageReader reader, int length) {
+        return reader instanceof TIFFImageReader ?
+            ((TIFFImageReader)reader).bufferPool.get(length) :
+            new byte[length];
+    }
+
+    /**
+     * Returns an array obtained from <code>getScratchBuffer</code> to
+     * the pool of the given reader, if any.
+     *
+     * @param reader the reader passed to <code>getScratchBuffer</code>.
+     * @param b the array to release.
+     */
+    public static void releaseScratchBuffer(ImageReader reader, byte[] b) {
+        if (reader instanceof TIFFImageReader) {
+            ((TIFFImageReader)reader).bufferPool.release(b);
+        }
     }
 
     /**
@@ -1498,7 +2892,15 @@ public class TIFFImageReader extends ImageReader {
      * emit warning messages.
      */
     void forwardWarningMessage(String warning) {
-        processWarningOccurred(warning);
+        if (Thread.currentThread() instanceof TileDecodingThread ||
+            isDeferringWarnings.get() != null) {
+            // Defer so that listeners are notified on the reading thread.
+            synchronized (deferredWarnings) {
+                deferredWarnings.add(warning);
+            }
+        } else {
+            processWarningOccurred(warning);
+        }
     }
     
     protected static BufferedImage getDestination(ImageReadParam param,
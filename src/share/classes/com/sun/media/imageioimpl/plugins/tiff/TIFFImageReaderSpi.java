@@ -106,10 +106,13 @@ public class TIFFImageReaderSpi extends ImageReaderSpi {
         stream.readFully(b);
         stream.reset();
 
+        // Accept both classic TIFF (42) and BigTIFF (43) headers.
         return ((b[0] == (byte)0x49 && b[1] == (byte)0x49 &&
-                 b[2] == (byte)0x2a && b[3] == (byte)0x00) ||
+                 (b[2] == (byte)0x2a || b[2] == (byte)0x2b) &&
+                 b[3] == (byte)0x00) ||
                 (b[0] == (byte)0x4d && b[1] == (byte)0x4d &&
-                 b[2] == (byte)0x00 && b[3] == (byte)0x2a));
+                 b[2] == (byte)0x00 &&
+                 (b[3] == (byte)0x2a || b[3] == (byte)0x2b)));
     }
 
     public ImageReader createReaderInstance(Object extension) {
@@ -64,6 +64,7 @@ import java.io.IOException;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedList;
 import java.util.List;
 import javax.imageio.IIOException;
 import javax.imageio.IIOImage;
@@ -76,6 +77,7 @@ import javax.imageio.metadata.IIOMetadataFormatImpl;
 import javax.imageio.spi.ImageWriterSpi;
 import javax.imageio.stream.ImageOutputStream;
 import org.w3c.dom.Node;
+import com.sun.media.imageio.stream.FileChannelImageOutputStream;
 import com.sun.media.imageio.plugins.tiff.BaselineTIFFTagSet;
 import com.sun.media.imageio.plugins.tiff.EXIFParentTIFFTagSet;
 import com.sun.media.imageio.plugins.tiff.EXIFTIFFTagSet;
@@ -85,6 +87,7 @@ import com.sun.media.imageio.plugins.tiff.TIFFField;
 import com.sun.media.imageio.plugins.tiff.TIFFImageWriteParam;
 import com.sun.media.imageio.plugins.tiff.TIFFTag;
 import com.sun.media.imageio.plugins.tiff.TIFFTagSet;
+import com.sun.media.imageioimpl.common.ByteArrayImageOutputStream;
 import com.sun.media.imageioimpl.common.ImageUtil;
 import com.sun.media.imageioimpl.common.PackageUtil;
 import com.sun.media.imageioimpl.common.SimpleRenderedImage;
@@ -231,6 +234,16 @@ public class TIFFImageWriter extends ImageWriter {
     // Next available space.
     long nextSpace = 0L;
 
+    // Whether the stream is BigTIFF, i.e., uses 64 bit offsets.
+    boolean isBigTIFF = false;
+
+    // The largest offset which may be stored in a classic TIFF stream.
+    private static final long MAX_CLASSIC_OFFSET = 0xffffffffL;
+
+    // Allowance for the IFD and field values of an image when estimating
+    // whether it will fit in a classic TIFF stream.
+    private static final long IFD_ALLOWANCE = 1024*1024;
+
     // Whether a sequence is being written.
     boolean isWritingSequence = false;
 
@@ -312,6 +325,14 @@ public class TIFFImageWriter extends ImageWriter {
                         b[2] == (byte)0x00 && b[3] == (byte)0x2a)) {
                         // TIFF header.
                         this.nextSpace = stream.length();
+                        this.isBigTIFF = false;
+                    } else if((b[0] == (byte)0x49 && b[1] == (byte)0x49 &&
+                               b[2] == (byte)0x2b && b[3] == (byte)0x00) ||
+                              (b[0] == (byte)0x4d && b[1] == (byte)0x4d &&
+                               b[2] == (byte)0x00 && b[3] == (byte)0x2b)) {
+                        // BigTIFF header.
+                        this.nextSpace = stream.length();
+                        this.isBigTIFF = true;
                     } else {
                         // Neither TIFF header nor EOF: overwrite.
                         this.nextSpace = headerPosition;
@@ -776,12 +797,18 @@ public class TIFFImageWriter extends ImageWriter {
 	if (predictorField != null) {
 	    this.predictor = predictorField.getAsInt(0);
 	    
-	    // We only support Horizontal Predictor for a bitDepth of 8
-	    if (sampleSize[0] != 8 || 
-		// Check the value of the tag for validity
-		(predictor != BaselineTIFFTagSet.PREDICTOR_NONE && 
-		 predictor != 
-		 BaselineTIFFTagSet.PREDICTOR_HORIZONTAL_DIFFERENCING)) {
+	    // Horizontal differencing is supported for 8-, 16- and 32-bit
+	    // samples and the floating point predictor for floating point
+	    // samples.
+	    TIFFField sampleFormatField =
+		rootIFD.getTIFFField(BaselineTIFFTagSet.TAG_SAMPLE_FORMAT);
+	    int predictorSampleFormat = sampleFormatField != null ?
+		sampleFormatField.getAsInt(0) :
+		(sm.getDataType() == DataBuffer.TYPE_FLOAT ?
+		 BaselineTIFFTagSet.SAMPLE_FORMAT_FLOATING_POINT :
+		 BaselineTIFFTagSet.SAMPLE_FORMAT_UNDEFINED);
+	    if (!TIFFPredictor.isSupported(predictor, sampleSize,
+					   predictorSampleFormat)) {
 		// XXX processWarningOccured ???
 		// Set to default
 		predictor = BaselineTIFFTagSet.PREDICTOR_NONE;		
@@ -1389,6 +1416,9 @@ public class TIFFImageWriter extends ImageWriter {
 
         this.tilesAcross = (width + tileWidth - 1)/tileWidth;
         this.tilesDown = (height + tileLength - 1)/tileLength;
+
+        // Offsets and byte counts in a BigTIFF stream are 64 bit.
+        int offsetType = isBigTIFF ? TIFFTag.TIFF_LONG8 : TIFFTag.TIFF_LONG;
  
         if (!useTiling) {
             this.isTiled = false;
@@ -1406,14 +1436,14 @@ public class TIFFImageWriter extends ImageWriter {
             TIFFField stripOffsetsField =
                 new TIFFField(
                          base.getTag(BaselineTIFFTagSet.TAG_STRIP_OFFSETS),
-                         TIFFTag.TIFF_LONG,
+                         offsetType,
                          tilesDown);
             rootIFD.addTIFFField(stripOffsetsField);
 
             TIFFField stripByteCountsField =
                 new TIFFField(
                          base.getTag(BaselineTIFFTagSet.TAG_STRIP_BYTE_COUNTS),
-                         TIFFTag.TIFF_LONG,
+                         offsetType,
                          tilesDown);
             rootIFD.addTIFFField(stripByteCountsField);
         } else {
@@ -1436,14 +1466,14 @@ public class TIFFImageWriter extends ImageWriter {
             TIFFField tileOffsetsField =
                 new TIFFField(
                          base.getTag(BaselineTIFFTagSet.TAG_TILE_OFFSETS),
-                         TIFFTag.TIFF_LONG,
+                         offsetType,
                          tilesDown*tilesAcross);
             rootIFD.addTIFFField(tileOffsetsField);
 
             TIFFField tileByteCountsField =
                 new TIFFField(
                          base.getTag(BaselineTIFFTagSet.TAG_TILE_BYTE_COUNTS),
-                         TIFFTag.TIFF_LONG,
+                         offsetType,
                          tilesDown*tilesAcross);
             rootIFD.addTIFFField(tileByteCountsField);
         }
@@ -1707,6 +1737,33 @@ public class TIFFImageWriter extends ImageWriter {
         } // if(isEXIF)
     }
 
+    /**
+     * Returns a <code>Raster</code> containing the given rectangle of
+     * the image, which must lie within the image bounds.  If the
+     * rectangle lies within a single tile of the image, e.g., if the
+     * image is a <code>BufferedImage</code> or its tile grid is
+     * compatible with that of the strips or tiles being written, the
+     * image tile itself is returned so that its data may be compressed
+     * without being copied.  The returned <code>Raster</code> may extend
+     * beyond the rectangle and its data must not be modified.
+     */
+    private Raster getSourceData(Rectangle rect) {
+        int tileGridXOffset = image.getTileGridXOffset();
+        int tileGridYOffset = image.getTileGridYOffset();
+        int imageTileWidth = image.getTileWidth();
+        int imageTileHeight = image.getTileHeight();
+        int tx = XToTileX(rect.x, tileGridXOffset, imageTileWidth);
+        int ty = YToTileY(rect.y, tileGridYOffset, imageTileHeight);
+        if(tx == XToTileX(rect.x + rect.width - 1,
+                          tileGridXOffset, imageTileWidth) &&
+           ty == YToTileY(rect.y + rect.height - 1,
+                          tileGridYOffset, imageTileHeight)) {
+            return image.getTile(tx, ty);
+        }
+
+        return image.getData(rect);
+    }
+
     /**
        @param tileRect The area to be written which might be outside the image.
      */
@@ -1750,8 +1807,9 @@ public class TIFFImageWriter extends ImageWriter {
 
             SampleModel sm = image.getSampleModel();
 
-            // Read only data from the active rectangle.
-            Raster raster = image.getData(activeRect);
+            // Obtain data from the active rectangle, directly from the
+            // image if possible.
+            Raster raster = getSourceData(activeRect);
 
             // If padding is required, create a larger Raster and fill
             // it from the active rectangle.
@@ -1759,33 +1817,48 @@ public class TIFFImageWriter extends ImageWriter {
                 WritableRaster wr =
                     raster.createCompatibleWritableRaster(minX, minY,
                                                           width, height);
-                wr.setRect(raster);
+                wr.setRect(raster.createChild(activeRect.x, activeRect.y,
+                                              activeRect.width,
+                                              activeRect.height,
+                                              activeRect.x, activeRect.y,
+                                              null));
                 raster = wr;
             }
 
             if(isBilevel) {
-                /* XXX
+                // If the rows of the rectangle begin on byte boundaries
+                // compress directly from the data buffer; inverted data
+                // must be copied as the image may not be modified.
                 MultiPixelPackedSampleModel mppsm =
                     (MultiPixelPackedSampleModel)raster.getSampleModel();
+                DataBuffer db = raster.getDataBuffer();
+                int dx = minX - raster.getSampleModelTranslateX();
+                int dy = minY - raster.getSampleModelTranslateY();
+                if(!isInverted &&
+                   db instanceof DataBufferByte &&
+                   mppsm.getBitOffset(dx) == 0 &&
+                   ((width & 0x7) == 0 || dx + width >= mppsm.getWidth())) {
+                    if(DEBUG) {
+                        System.out.println("Direct bilevel case");
+                    }
 
-                byte[] buf;
-                int off;
-                int lineStride;
-                if(mppsm.getDataBitOffset() == 0 &&
-                   raster.getDataBuffer() instanceof DataBufferByte) {
-                    buf = ((DataBufferByte)raster.getDataBuffer()).getData();
-                    off = mppsm.getOffset(tileRect.x -
-                                          raster.getSampleModelTranslateX(),
-                                          tileRect.y -
-                                          raster.getSampleModelTranslateY());
-                    lineStride = mppsm.getScanlineStride();
-                } else {
-                    buf = ImageUtil.getPackedBinaryData(raster,
-                                                        tileRect);
-                    off = 0;
-                    lineStride = (tileRect.width + 7)/8;
+                    return compressor.encode(((DataBufferByte)db).getData(),
+                                             db.getOffset() +
+                                             mppsm.getOffset(dx, dy),
+                                             width, height, sampleSize,
+                                             mppsm.getScanlineStride());
+                }
+
+                // Copy the rectangle so that no bits of neighboring
+                // pixels are packed into the last byte of each row.
+                if(!raster.getBounds().equals(tileRect)) {
+                    WritableRaster wr =
+                        raster.createCompatibleWritableRaster(minX, minY,
+                                                              width, height);
+                    wr.setRect(raster);
+                    raster = wr;
                 }
-                */
+
                 byte[] buf = ImageUtil.getPackedBinaryData(raster,
                                                            tileRect);
 
@@ -1819,10 +1892,10 @@ public class TIFFImageWriter extends ImageWriter {
                 ComponentSampleModel csm =
                     (ComponentSampleModel)raster.getSampleModel();
 
-                byte[] buf =
-                    ((DataBufferByte)raster.getDataBuffer()).getData();
+                DataBuffer db = raster.getDataBuffer();
+                byte[] buf = ((DataBufferByte)db).getData();
 
-                int off =
+                int off = db.getOffset() +
                     csm.getOffset(minX -
                                   raster.getSampleModelTranslateX(),
                                   minY -
@@ -1900,8 +1973,9 @@ public class TIFFImageWriter extends ImageWriter {
                     System.out.println(sm.getClass().getName());
                 }
 
-                // Read only data from the active rectangle.
-                Raster raster = image.getData(activeRect);
+                // Obtain data from the active rectangle, directly from
+                // the image if possible.
+                Raster raster = getSourceData(activeRect);
 
                 // If padding is required, create a larger Raster and fill
                 // it from the active rectangle.
@@ -1909,7 +1983,13 @@ public class TIFFImageWriter extends ImageWriter {
                     WritableRaster wr =
                         raster.createCompatibleWritableRaster(minX, minY,
                                                               width, height);
-                    wr.setRect(raster);
+                    wr.setRect(raster.createChild(activeRect.x,
+                                                  activeRect.y,
+                                                  activeRect.width,
+                                                  activeRect.height,
+                                                  activeRect.x,
+                                                  activeRect.y,
+                                                  null));
                     raster = wr;
                 }
 
@@ -1917,18 +1997,18 @@ public class TIFFImageWriter extends ImageWriter {
                 ComponentSampleModel csm =
                     (ComponentSampleModel)raster.getSampleModel();
                 int[] bankIndices = csm.getBankIndices();
-                byte[][] bankData =
-                    ((DataBufferByte)raster.getDataBuffer()).getBankData();
+                DataBufferByte db = (DataBufferByte)raster.getDataBuffer();
+                byte[][] bankData = db.getBankData();
                 int lineStride = csm.getScanlineStride();
                 int pixelStride = csm.getPixelStride();
 
                 // Copy the data into a contiguous pixel interleaved buffer.
                 for(int k = 0; k < numBands; k++) {
                     byte[] bandData = bankData[bankIndices[k]];
-                    int lineOffset =
-                        csm.getOffset(raster.getMinX() -
+                    int lineOffset = db.getOffsets()[bankIndices[k]] +
+                        csm.getOffset(minX -
                                       raster.getSampleModelTranslateX(),
-                                      raster.getMinY() -
+                                      minY -
                                       raster.getSampleModelTranslateY(), k);
                     int idx = k;
                     for(int j = 0; j < vpixels; j++) {
@@ -2431,11 +2511,117 @@ public class TIFFImageWriter extends ImageWriter {
 	    stream.writeShort(0x4949);
 	}
 	
-	stream.writeShort(42); // Magic number
-        stream.writeInt(0); // Offset of first IFD (0 == none)
+        if (isBigTIFF) {
+            stream.writeShort(43); // Magic number
+            stream.writeShort(8); // Size of offsets
+            stream.writeShort(0); // Reserved
+            stream.writeLong(0); // Offset of first IFD (0 == none)
+
+            nextSpace = stream.getStreamPosition();
+            headerPosition = nextSpace - 16;
+        } else {
+            stream.writeShort(42); // Magic number
+            stream.writeInt(0); // Offset of first IFD (0 == none)
 
-        nextSpace = stream.getStreamPosition();
-        headerPosition = nextSpace - 8;
+            nextSpace = stream.getStreamPosition();
+            headerPosition = nextSpace - 8;
+        }
+    }
+
+    // Returns whether a new stream to which the image is to be written
+    // should be BigTIFF: either this is requested or the uncompressed
+    // image data and its IFD would not fit in a classic TIFF stream.
+    private boolean isBigTIFFRequired(RenderedImage image,
+                                      ImageWriteParam p) {
+        if (p instanceof TIFFImageWriteParam &&
+            ((TIFFImageWriteParam)p).getForceToBigTIFF()) {
+            return true;
+        }
+
+        Rectangle region = new Rectangle(image.getMinX(), image.getMinY(),
+                                         image.getWidth(), image.getHeight());
+        int xPeriod = 1;
+        int yPeriod = 1;
+        int[] bands = null;
+        if (p != null) {
+            if (p.getSourceRegion() != null) {
+                region = region.intersection(p.getSourceRegion());
+            }
+            xPeriod = p.getSourceXSubsampling();
+            yPeriod = p.getSourceYSubsampling();
+            bands = p.getSourceBands();
+        }
+
+        int[] sampleSize = image.getSampleModel().getSampleSize();
+        long bitsPerPixel = 0;
+        if (bands == null) {
+            for (int i = 0; i < sampleSize.length; i++) {
+                bitsPerPixel += sampleSize[i];
+            }
+        } else {
+            for (int i = 0; i < bands.length; i++) {
+                bitsPerPixel += sampleSize[bands[i]];
+            }
+        }
+
+        long width = (Math.max(region.width, 0) + xPeriod - 1)/xPeriod;
+        long height = (Math.max(region.height, 0) + yPeriod - 1)/yPeriod;
+        long size = (width*bitsPerPixel + 7)/8*height;
+
+        return headerPosition + size + IFD_ALLOWANCE > MAX_CLASSIC_OFFSET;
+    }
+
+    // Writes an offset or byte count value of a strip or tile in the
+    // given data type at the current position.
+    private void writeStripOrTileValue(long value, int type)
+        throws IOException {
+        switch (type) {
+        case TIFFTag.TIFF_SHORT:
+            stream.writeShort((int)value);
+            break;
+        case TIFFTag.TIFF_LONG8:
+            stream.writeLong(value);
+            break;
+        default:
+            if (value > MAX_CLASSIC_OFFSET) {
+                throw new IIOException
+                    ("Value exceeds the 4 GB limit of TIFF; use BigTIFF!");
+            }
+            stream.writeInt((int)value);
+        }
+    }
+
+    // Registers a strip or tile offset or byte count to be written later.
+    private void deferStripOrTileValue(FileChannelImageOutputStream fcios,
+                                       long pos, long value, int type)
+        throws IOException {
+        switch (type) {
+        case TIFFTag.TIFF_SHORT:
+            fcios.deferWriteShort(pos, (int)value);
+            break;
+        case TIFFTag.TIFF_LONG8:
+            fcios.deferWriteLong(pos, value);
+            break;
+        default:
+            if (value > MAX_CLASSIC_OFFSET) {
+                throw new IIOException
+                    ("Value exceeds the 4 GB limit of TIFF; use BigTIFF!");
+            }
+            fcios.deferWriteInt(pos, (int)value);
+        }
+    }
+
+    // Writes an IFD offset at the current position.
+    private void writeIFDOffset(long offset) throws IOException {
+        if (isBigTIFF) {
+            stream.writeLong(offset);
+        } else {
+            if (offset > MAX_CLASSIC_OFFSET) {
+                throw new IIOException
+                    ("IFD offset exceeds the 4 GB limit of TIFF; use BigTIFF!");
+            }
+            stream.writeInt((int)offset);
+        }
     }
 
     private void write(IIOMetadata sm,
@@ -2443,6 +2629,20 @@ public class TIFFImageWriter extends ImageWriter {
                        ImageWriteParam p,
                        boolean writeHeader,
                        boolean writeData) throws IOException {
+        writeImage(sm, iioimage, p, writeHeader, writeData);
+
+        // Fill in the strip or tile entries deferred by
+        // updateStripOrTileEntry() before the image may be read back.
+        if (stream instanceof FileChannelImageOutputStream) {
+            ((FileChannelImageOutputStream)stream).applyDeferredWrites();
+        }
+    }
+
+    private void writeImage(IIOMetadata sm,
+                            IIOImage iioimage,
+                            ImageWriteParam p,
+                            boolean writeHeader,
+                            boolean writeData) throws IOException {
         if (stream == null) {
             throw new IllegalStateException("output == null!");
         }
@@ -2557,16 +2757,17 @@ public class TIFFImageWriter extends ImageWriter {
             }
 
             // Write the header.
+            this.isBigTIFF = isBigTIFFRequired(image, p);
 	    writeHeader();
 
             // Seek to the position of the IFD pointer in the header.
-            stream.seek(headerPosition + 4);
+            stream.seek(headerPosition + (isBigTIFF ? 8 : 4));
 
             // Ensure IFD is written on a word boundary
             nextSpace = (nextSpace + 3) & ~0x3;
 
             // Write the pointer to the first IFD after the header.
-            stream.writeInt((int)nextSpace);
+            writeIFDOffset(nextSpace);
 	}
 
         // Write out the IFD and any sub IFDs, followed by a zero
@@ -2639,10 +2840,10 @@ public class TIFFImageWriter extends ImageWriter {
 
         TIFFIFD rootIFD = imageMetadata.getRootIFD();
 
-        rootIFD.writeToStream(stream);
+        rootIFD.writeToStream(stream, isBigTIFF);
 
         this.nextIFDPointerPos = stream.getStreamPosition();
-        stream.writeInt(0);
+        writeIFDOffset(0L);
 
         // Seek to end of IFD data
         long lastIFDPosition = rootIFD.getLastPosition();
@@ -2663,11 +2864,34 @@ public class TIFFImageWriter extends ImageWriter {
             rootIFD.getStripOrTileByteCountsPosition();
         long stripOrTileOffsetsPosition =
             rootIFD.getStripOrTileOffsetsPosition();
+        int stripOrTileByteCountsType = rootIFD.getStripOrTileByteCountsType();
+        int stripOrTileOffsetsType = rootIFD.getStripOrTileOffsetsType();
 
         // Compute total number of pixels for progress notification
         this.totalPixels = tileWidth*tileLength*tilesDown*tilesAcross;
         this.pixelsDone = 0;
 
+        // Optionally compress the strips or tiles on several threads.
+        int numEncodingThreads = 1;
+        if (param instanceof TIFFImageWriteParam) {
+            numEncodingThreads =
+                ((TIFFImageWriteParam)param).getNumEncodingThreads();
+        }
+        if (numEncodingThreads > 1 && canEncodeInParallel()) {
+            boolean isAborted =
+                encodeTilesInParallel(numEncodingThreads,
+                                      stripOrTileOffsetsPosition,
+                                      stripOrTileOffsetsType,
+                                      stripOrTileByteCountsPosition,
+                                      stripOrTileByteCountsType);
+            if (isAborted) {
+                processWriteAborted();
+            } else {
+                processImageComplete();
+            }
+            return;
+        }
+
         // Write the image, a strip or tile at a time
         for (int tj = 0; tj < tilesDown; tj++) {
             for (int ti = 0; ti < tilesAcross; ti++) {
@@ -2675,11 +2899,7 @@ public class TIFFImageWriter extends ImageWriter {
 
                 // Write the (possibly compressed) tile data
 
-                Rectangle tileRect =
-                    new Rectangle(sourceXOffset + ti*tileWidth*periodX,
-                                  sourceYOffset + tj*tileLength*periodY,
-                                  tileWidth*periodX,
-                                  tileLength*periodY);
+                Rectangle tileRect = getTileRect(ti, tj);
                 // tileRect = tileRect.intersection(imageBounds); // XXX
 
                 try {
@@ -2693,15 +2913,15 @@ public class TIFFImageWriter extends ImageWriter {
                     processImageProgress(100.0F*pixelsDone/totalPixels);
         
                     // Fill in the offset and byte count for the file
-                    stream.mark();
-                    stream.seek(stripOrTileOffsetsPosition);
-                    stream.writeInt((int)pos);
-                    stripOrTileOffsetsPosition += 4;
-                    
-                    stream.seek(stripOrTileByteCountsPosition);
-                    stream.writeInt(byteCount);
-                    stripOrTileByteCountsPosition += 4;
-                    stream.reset();
+                    updateStripOrTileEntry(stripOrTileOffsetsPosition,
+                                           stripOrTileOffsetsType,
+                                           stripOrTileByteCountsPosition,
+                                           stripOrTileByteCountsType,
+                                           pos, byteCount);
+                    stripOrTileOffsetsPosition +=
+                        TIFFTag.getSizeOfType(stripOrTileOffsetsType);
+                    stripOrTileByteCountsPosition +=
+                        TIFFTag.getSizeOfType(stripOrTileByteCountsType);
                 } catch (IOException e) {
                     throw new IIOException("I/O error writing TIFF file!", e);
                 }
@@ -2716,6 +2936,330 @@ public class TIFFImageWriter extends ImageWriter {
         processImageComplete();
     }
 
+    /**
+     * Returns the source rectangle of strip or tile (ti, tj), which might
+     * extend beyond the image.
+     */
+    private Rectangle getTileRect(int ti, int tj) {
+        return new Rectangle(sourceXOffset + ti*tileWidth*periodX,
+                             sourceYOffset + tj*tileLength*periodY,
+                             tileWidth*periodX,
+                             tileLength*periodY);
+    }
+
+    /**
+     * Fills in the offset and byte count of a strip or tile at the given
+     * positions within the IFD, preserving the stream position.  If the
+     * stream supports it the values are written when the image is
+     * complete rather than by seeking back into the IFD.
+     */
+    private void updateStripOrTileEntry(long offsetsPosition,
+                                        int offsetsType,
+                                        long byteCountsPosition,
+                                        int byteCountsType,
+                                        long offset,
+                                        int byteCount) throws IOException {
+        if (stream instanceof FileChannelImageOutputStream) {
+            FileChannelImageOutputStream fcios =
+                (FileChannelImageOutputStream)stream;
+            deferStripOrTileValue(fcios, offsetsPosition,
+                                  offset, offsetsType);
+            deferStripOrTileValue(fcios, byteCountsPosition,
+                                  byteCount, byteCountsType);
+            return;
+        }
+
+        stream.mark();
+        stream.seek(offsetsPosition);
+        writeStripOrTileValue(offset, offsetsType);
+        stream.seek(byteCountsPosition);
+        writeStripOrTileValue(byteCount, byteCountsType);
+        stream.reset();
+    }
+
+    /**
+     * A strip or tile which is to be encoded by a worker thread into
+     * its own in-memory stream.
+     */
+    private static class EncodingJob {
+        Rectangle tileRect;
+        ByteArrayImageOutputStream output;
+        int byteCount;
+        Throwable error;
+        boolean isDone = false;
+    }
+
+    /**
+     * The queue of strips or tiles shared by the writing thread and the
+     * worker threads.
+     */
+    private static class EncodingJobQueue {
+        private LinkedList pending = new LinkedList();
+        private boolean isClosed = false;
+
+        synchronized void put(EncodingJob job) {
+            pending.addLast(job);
+            notifyAll();
+        }
+
+        // Returns the next job to encode or null if the queue is closed.
+        synchronized EncodingJob take() throws InterruptedException {
+            while (pending.isEmpty() && !isClosed) {
+                wait();
+            }
+            return isClosed ? null : (EncodingJob)pending.removeFirst();
+        }
+
+        synchronized void complete(EncodingJob job) {
+            job.isDone = true;
+            notifyAll();
+        }
+
+        synchronized void waitFor(EncodingJob job)
+            throws InterruptedException {
+            while (!job.isDone) {
+                wait();
+            }
+        }
+
+        synchronized void close() {
+            isClosed = true;
+            pending.clear();
+            notifyAll();
+        }
+    }
+
+    /**
+     * A worker thread which encodes strips or tiles using its own
+     * compressor.
+     */
+    private class TileEncodingThread extends Thread {
+        private EncodingJobQueue queue;
+        private TIFFCompressor compressor;
+
+        TileEncodingThread(EncodingJobQueue queue,
+                           TIFFCompressor compressor) {
+            super("TIFFImageWriter tile encoder");
+            setDaemon(true);
+            this.queue = queue;
+            this.compressor = compressor;
+        }
+
+        public void run() {
+            try {
+                EncodingJob job;
+                while ((job = queue.take()) != null) {
+                    try {
+                        job.output.clear();
+                        compressor.setStream(job.output);
+                        job.byteCount = writeTile(job.tileRect, compressor);
+                    } catch (Throwable t) {
+                        job.error = t;
+                    }
+                    queue.complete(job);
+                }
+            } catch (InterruptedException e) {
+                // Exit.
+            }
+        }
+    }
+
+    /**
+     * Whether the strips or tiles of the current image may be encoded
+     * concurrently. This requires that the writer be able to create
+     * a compressor for each worker and that the compressor neither
+     * modify the image metadata nor depend on the stream position.
+     */
+    private boolean canEncodeInParallel() {
+        if (param instanceof TIFFImageWriteParam &&
+            param.getCompressionMode() == ImageWriteParam.MODE_EXPLICIT &&
+            ((TIFFImageWriteParam)param).getTIFFCompressor() == compressor) {
+            // Supplied by the application.
+            return false;
+        }
+
+        switch (compression) {
+        case BaselineTIFFTagSet.COMPRESSION_NONE:
+            return compressor instanceof TIFFNullCompressor ||
+                compressor instanceof TIFFLSBCompressor;
+        case BaselineTIFFTagSet.COMPRESSION_LZW:
+        case BaselineTIFFTagSet.COMPRESSION_ZLIB:
+        case BaselineTIFFTagSet.COMPRESSION_PACKBITS:
+        case BaselineTIFFTagSet.COMPRESSION_DEFLATE:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Creates a compressor equivalent to the one chosen for the current
+     * image for use by an encoding thread.
+     */
+    private TIFFCompressor createEncodingCompressor() {
+        TIFFCompressor c;
+        switch (compression) {
+        case BaselineTIFFTagSet.COMPRESSION_LZW:
+            c = new TIFFLZWCompressor(predictor);
+            break;
+        case BaselineTIFFTagSet.COMPRESSION_ZLIB:
+            c = new TIFFZLibCompressor(param, predictor);
+            break;
+        case BaselineTIFFTagSet.COMPRESSION_PACKBITS:
+            c = new TIFFPackBitsCompressor();
+            break;
+        case BaselineTIFFTagSet.COMPRESSION_DEFLATE:
+            c = new TIFFDeflateCompressor(param, predictor);
+            break;
+        default:
+            if (compressor instanceof TIFFLSBCompressor) {
+                c = new TIFFLSBCompressor();
+            } else {
+                c = new TIFFNullCompressor();
+            }
+        }
+        c.setWriter(this);
+        c.setMetadata(imageMetadata);
+        return c;
+    }
+
+    /**
+     * Writes the data of an encoded strip or tile at the current stream
+     * position and fills in its offset and byte count.
+     */
+    private void commitEncodingJob(EncodingJob job,
+                                   long offsetsPosition,
+                                   int offsetsType,
+                                   long byteCountsPosition,
+                                   int byteCountsType) throws IOException {
+        if (job.error != null) {
+            if (job.error instanceof IOException) {
+                throw new IIOException("I/O error writing TIFF file!",
+                                       job.error);
+            } else if (job.error instanceof RuntimeException) {
+                throw (RuntimeException)job.error;
+            } else if (job.error instanceof Error) {
+                throw (Error)job.error;
+            }
+            throw new IIOException("Error encoding strip or tile!",
+                                   job.error);
+        }
+
+        try {
+            long pos = stream.getStreamPosition();
+            stream.write(job.output.getData(), 0, job.byteCount);
+
+            if(pos + job.byteCount > nextSpace) {
+                nextSpace = pos + job.byteCount;
+            }
+
+            pixelsDone += job.tileRect.width*job.tileRect.height;
+            processImageProgress(100.0F*pixelsDone/totalPixels);
+
+            updateStripOrTileEntry(offsetsPosition, offsetsType,
+                                   byteCountsPosition, byteCountsType,
+                                   pos, job.byteCount);
+        } catch (IOException e) {
+            throw new IIOException("I/O error writing TIFF file!", e);
+        }
+    }
+
+    /**
+     * Encodes the strips or tiles of the current image using
+     * <code>numThreads</code> worker threads. The compressed data are
+     * appended to the stream in order on the calling thread, which also
+     * fills in the offsets and byte counts and delivers all listener
+     * notifications. Returns whether the write was aborted.
+     */
+    private boolean encodeTilesInParallel(int numThreads,
+                                          long offsetsPosition,
+                                          int offsetsType,
+                                          long byteCountsPosition,
+                                          int byteCountsType)
+        throws IOException {
+        int offsetSize = TIFFTag.getSizeOfType(offsetsType);
+        int byteCountSize = TIFFTag.getSizeOfType(byteCountsType);
+
+        // Limit the strips or tiles held in memory at any one time.
+        int maxOutstanding = 2*numThreads;
+
+        // Jobs submitted but not yet written, in stream order, and
+        // output buffers available for reuse.
+        LinkedList outstanding = new LinkedList();
+        LinkedList freeOutputs = new LinkedList();
+
+        EncodingJobQueue queue = new EncodingJobQueue();
+        TileEncodingThread[] workers = new TileEncodingThread[numThreads];
+        boolean isAbortRequested = false;
+        try {
+            for (int i = 0; i < numThreads; i++) {
+                workers[i] =
+                    new TileEncodingThread(queue, createEncodingCompressor());
+                workers[i].start();
+            }
+
+            int numTiles = tilesAcross*tilesDown;
+            int tileIndex = 0;
+            while (tileIndex < numTiles || !outstanding.isEmpty()) {
+                // Submit strips or tiles until the limit is reached.
+                while (tileIndex < numTiles &&
+                       outstanding.size() < maxOutstanding) {
+                    EncodingJob job = new EncodingJob();
+                    job.tileRect = getTileRect(tileIndex % tilesAcross,
+                                               tileIndex / tilesAcross);
+                    job.output = freeOutputs.isEmpty() ?
+                        new ByteArrayImageOutputStream
+                            (DEFAULT_BYTES_PER_STRIP) :
+                        (ByteArrayImageOutputStream)freeOutputs.removeFirst();
+                    job.output.setByteOrder(stream.getByteOrder());
+                    outstanding.addLast(job);
+                    queue.put(job);
+                    tileIndex++;
+                }
+
+                // Write the earliest strip or tile once it is encoded.
+                EncodingJob job = (EncodingJob)outstanding.removeFirst();
+                queue.waitFor(job);
+                commitEncodingJob(job,
+                                  offsetsPosition, offsetsType,
+                                  byteCountsPosition, byteCountsType);
+                offsetsPosition += offsetSize;
+                byteCountsPosition += byteCountSize;
+                freeOutputs.addLast(job.output);
+
+                if (abortRequested()) {
+                    isAbortRequested = true;
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IIOException("Interrupted while encoding!", e);
+        } finally {
+            // Strips or tiles not yet started are dropped; those
+            // already being encoded are allowed to finish.
+            queue.close();
+            for (int i = 0; i < numThreads; i++) {
+                if (workers[i] == null) {
+                    continue;
+                }
+                boolean isInterrupted = false;
+                while (workers[i].isAlive()) {
+                    try {
+                        workers[i].join();
+                    } catch (InterruptedException e) {
+                        isInterrupted = true;
+                    }
+                }
+                if (isInterrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        return isAbortRequested;
+    }
+
     public boolean canWriteSequence() {
 	return true;
     }
@@ -2735,7 +3279,9 @@ public class TIFFImageWriter extends ImageWriter {
         }
         this.streamMetadata = (TIFFStreamMetadata)streamMetadata;
 
-        // Write the header.
+        // Write the header. It is rewritten as BigTIFF by the first call
+        // to writeToSequence() if necessary.
+        this.isBigTIFF = false;
 	writeHeader();
 
         // Set the sequence flag.
@@ -2812,13 +3358,19 @@ public class TIFFImageWriter extends ImageWriter {
             stream.seek(startPos);
 	    throw new IIOException("Illegal byte order");
 	}
-	if (stream.readUnsignedShort() != 42) {
+	int magic = stream.readUnsignedShort();
+	if (magic == 43) {
+            isBigTIFF = true;
+            stream.skipBytes(4); // Offset size and reserved field
+	} else if (magic == 42) {
+            isBigTIFF = false;
+	} else {
             stream.seek(startPos);
 	    throw new IIOException("Illegal magic number");
 	}
 
 	ifdpos[0] = stream.getStreamPosition();
-	ifd[0] = stream.readUnsignedInt();
+	ifd[0] = readIFDOffset();
         if (ifd[0] == 0) {
             // imageIndex has to be >= -1 due to check above.
             if(imageIndex > 0) {
@@ -2831,19 +3383,20 @@ public class TIFFImageWriter extends ImageWriter {
 	stream.seek(ifd[0]);
 
 	for (int i = 0; imageIndex == -1 || i < imageIndex; i++) {
-            int numFields;
+            long numFields;
             try {
-                numFields = stream.readShort();
+                numFields = isBigTIFF ? stream.readLong() : stream.readShort();
             } catch (EOFException eof) {
                 stream.seek(startPos);
                 ifd[0] = 0;
                 return;
             }
 
-            stream.skipBytes(12*numFields);
+            stream.seek(stream.getStreamPosition() +
+                        (isBigTIFF ? 20 : 12)*numFields);
 
 	    ifdpos[0] = stream.getStreamPosition();
-	    ifd[0] = stream.readUnsignedInt();
+	    ifd[0] = readIFDOffset();
 	    if (ifd[0] == 0) {
 		if (imageIndex != -1 && i < imageIndex - 1) {
                     stream.seek(startPos);
@@ -2856,6 +3409,11 @@ public class TIFFImageWriter extends ImageWriter {
 	}
     }
 
+    // Reads an IFD offset from the current position.
+    private long readIFDOffset() throws IOException {
+        return isBigTIFF ? stream.readLong() : stream.readUnsignedInt();
+    }
+
     public void writeInsert(int imageIndex,
                             IIOImage image,
                             ImageWriteParam param) throws IOException {
@@ -2882,19 +3440,31 @@ public class TIFFImageWriter extends ImageWriter {
         // imageIndex is < -1 or is too big thereby satisfying the spec.
         locateIFD(imageIndex, ifdpos, ifd);
 
+        // If the stream contains only a classic header, as written by
+        // prepareWriteSequence(), it may be rewritten as BigTIFF.
+        if(!isBigTIFF && ifd[0] == 0 && ifdpos[0] == headerPosition + 4 &&
+           nextSpace <= headerPosition + 8 &&
+           isBigTIFFRequired(image.getRenderedImage(), param)) {
+            stream.seek(headerPosition);
+            isBigTIFF = true;
+            writeHeader();
+            ifdpos[0] = headerPosition + 8;
+        }
+
         // Seek to the position containing the pointer to the old IFD.
 	stream.seek(ifdpos[0]);
 
         // Update next space pointer in anticipation of next write.
-        if(ifdpos[0] + 4 > nextSpace) {
-            nextSpace = ifdpos[0] + 4;
+        int pointerSize = isBigTIFF ? 8 : 4;
+        if(ifdpos[0] + pointerSize > nextSpace) {
+            nextSpace = ifdpos[0] + pointerSize;
         }
 
         // Ensure IFD is written on a word boundary
         nextSpace = (nextSpace + 3) & ~0x3;
 
         // Update the value to point to the next available space.
-	stream.writeInt((int)nextSpace);
+	writeIFDOffset(nextSpace);
 
         // Seek to the next available space.
 	stream.seek(nextSpace);
@@ -2906,7 +3476,7 @@ public class TIFFImageWriter extends ImageWriter {
 	stream.seek(nextIFDPointerPos);
 
         // Update the new IFD to point to the old IFD.
-	stream.writeInt((int)ifd[0]);
+	writeIFDOffset(ifd[0]);
         // Don't need to update nextSpace here as already done in write().
     }
 
@@ -3085,7 +3655,7 @@ public class TIFFImageWriter extends ImageWriter {
         TIFFIFD rootIFD = new TIFFIFD(tagSets);
         // XXX Ignore unknown fields in metadata presumably because
         // any fields needed to write pixels would be known?
-        rootIFD.initialize(stream, true);
+        rootIFD.initialize(stream, true, false, isBigTIFF);
         stream.reset();
 
         return rootIFD;
@@ -3111,6 +3681,8 @@ public class TIFFImageWriter extends ImageWriter {
     private long[] replacePixelsByteCounts = null;
     private long replacePixelsOffsetsPosition = 0L;
     private long replacePixelsByteCountsPosition = 0L;
+    private int replacePixelsOffsetsType = TIFFTag.TIFF_LONG;
+    private int replacePixelsByteCountsType = TIFFTag.TIFF_LONG;
     private Rectangle replacePixelsRegion = null;
     private boolean inReplacePixelsNest = false;
 
@@ -3196,6 +3768,10 @@ public class TIFFImageWriter extends ImageWriter {
                 replacePixelsIFD.getStripOrTileOffsetsPosition();
             replacePixelsByteCountsPosition =
                 replacePixelsIFD.getStripOrTileByteCountsPosition();
+            replacePixelsOffsetsType =
+                replacePixelsIFD.getStripOrTileOffsetsType();
+            replacePixelsByteCountsType =
+                replacePixelsIFD.getStripOrTileByteCountsType();
 
             // Get the image metadata.
             replacePixelsMetadata = new TIFFImageMetadata(replacePixelsIFD);
@@ -3601,11 +4177,15 @@ public class TIFFImageWriter extends ImageWriter {
                             // Strip/TileByteCounts fields.
                             stream.mark();
                             stream.seek(replacePixelsOffsetsPosition +
-                                        4*tileIndex);
-                            stream.writeInt((int)nextSpace);
+                                        (long)tileIndex*TIFFTag.getSizeOfType
+                                        (replacePixelsOffsetsType));
+                            writeStripOrTileValue(nextSpace,
+                                                  replacePixelsOffsetsType);
                             stream.seek(replacePixelsByteCountsPosition +
-                                        4*tileIndex);
-                            stream.writeInt(numBytes);
+                                        (long)tileIndex*TIFFTag.getSizeOfType
+                                        (replacePixelsByteCountsType));
+                            writeStripOrTileValue(numBytes,
+                                                  replacePixelsByteCountsType);
                             stream.reset();
 
                             // Increment location of next available space.
@@ -3668,6 +4248,7 @@ public class TIFFImageWriter extends ImageWriter {
         isWritingSequence = false;
         isWritingEmpty = false;
         isInsertingEmpty = false;
+        isBigTIFF = false;
 
         replacePixelsIndex = -1;
         replacePixelsMetadata = null;
@@ -45,16 +45,17 @@
 package com.sun.media.imageioimpl.plugins.tiff;
 
 import java.io.IOException;
-import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import javax.imageio.ImageIO;
 import javax.imageio.ImageReader;
 import javax.imageio.ImageReadParam;
-import javax.imageio.stream.MemoryCacheImageInputStream;
 import javax.imageio.stream.ImageInputStream;
 import com.sun.media.imageio.plugins.tiff.BaselineTIFFTagSet;
 import com.sun.media.imageio.plugins.tiff.TIFFDecompressor;
 import com.sun.media.imageio.plugins.tiff.TIFFField;
+import com.sun.media.imageioimpl.common.ByteArrayImageInputStream;
 
 public class TIFFJPEGDecompressor extends TIFFDecompressor {
     private static final boolean DEBUG = false; // XXX false for release.
@@ -75,6 +76,21 @@ public class TIFFJPEGDecompressor extends TIFFDecompressor {
 
     private byte[] data = new byte[0];
 
+    // The stream through which data assembled in 'data' are read.
+    private ByteArrayImageInputStream dataStream = null;
+
+    // The JPEGTables most recently given to JPEGReader as a tables-only
+    // stream, and whether the reader accepted them.  The JPEG reader
+    // retains such tables for subsequent abbreviated streams, so they
+    // need be parsed only once rather than for each strip or tile.
+    private byte[] tablesTried = null;
+    private boolean areTablesLoaded = false;
+
+    // JPEG readers no longer needed by a decompressor, kept for reuse
+    // as creating a reader is costly.
+    private static final int MAX_POOLED_READERS = 8;
+    private static final List readerPool = new ArrayList();
+
     /* XXX
     static {
         try {
@@ -134,16 +150,10 @@ public class TIFFJPEGDecompressor extends TIFFDecompressor {
             if(this.JPEGReader == null) {
             */
 
-            // Get all JPEG readers.
-            Iterator iter = ImageIO.getImageReadersByFormatName("jpeg");
-
-            if(!iter.hasNext()) {
-                // XXX The exception thrown should be an IIOException.
-                throw new IllegalStateException("No JPEG readers found!");
-            }
-
-            // Initialize reader to the first one.
-            this.JPEGReader = (ImageReader)iter.next();
+            // Take a reader from the pool or create one.
+            this.JPEGReader = getJPEGReader();
+            this.tablesTried = null;
+            this.areTablesLoaded = false;
 
             if(DEBUG) System.out.println("Using "+
                                          JPEGReader.getClass().getName());
@@ -164,6 +174,77 @@ public class TIFFJPEGDecompressor extends TIFFDecompressor {
         }
     }
 
+    /**
+     * Returns a JPEG reader from the pool or a new one if the pool is
+     * empty.
+     */
+    private static ImageReader getJPEGReader() {
+        synchronized(readerPool) {
+            if(!readerPool.isEmpty()) {
+                return (ImageReader)readerPool.remove(readerPool.size() - 1);
+            }
+        }
+
+        // Get all JPEG readers.
+        Iterator iter = ImageIO.getImageReadersByFormatName("jpeg");
+
+        if(!iter.hasNext()) {
+            // XXX The exception thrown should be an IIOException.
+            throw new IllegalStateException("No JPEG readers found!");
+        }
+
+        // Use the first one.
+        return (ImageReader)iter.next();
+    }
+
+    /**
+     * Returns the JPEG reader of this decompressor to the pool so that
+     * it may be used by another decompressor.  A new reader is obtained
+     * by the next invocation of <code>beginDecoding()</code>.
+     */
+    void releaseJPEGReader() {
+        if(JPEGReader == null) {
+            return;
+        }
+
+        JPEGReader.reset();
+        synchronized(readerPool) {
+            if(readerPool.size() < MAX_POOLED_READERS) {
+                readerPool.add(JPEGReader);
+                JPEGReader = null;
+            }
+        }
+        if(JPEGReader != null) {
+            JPEGReader.dispose();
+            JPEGReader = null;
+        }
+        JPEGParam = null;
+        tablesTried = null;
+        areTablesLoaded = false;
+    }
+
+    /**
+     * Gives the JPEGTables to the JPEG reader as a tables-only stream if
+     * they have not already been given, and returns whether the reader
+     * holds them.
+     */
+    private boolean loadTables() {
+        if(tables != tablesTried) {
+            tablesTried = tables;
+            areTablesLoaded = false;
+            try {
+                JPEGReader.setInput(new ByteArrayImageInputStream(tables));
+                JPEGReader.getStreamMetadata();
+                areTablesLoaded = true;
+            } catch(IOException e) {
+                // Tables will be prepended to each strip or tile.
+            } catch(RuntimeException e) {
+                // Likewise.
+            }
+        }
+        return areTablesLoaded;
+    }
+
     public void decodeRaw(byte[] b,
                           int dstOffset,
                           int bitsPerPixel,
@@ -171,9 +252,22 @@ public class TIFFJPEGDecompressor extends TIFFDecompressor {
         // Seek to the data position for this segment.
         stream.seek(offset);
 
+        // If the reader holds the tables and the strip or tile begins
+        // with SOI it may be read in place as an abbreviated stream.
+        boolean isAbbreviatedInPlace = false;
+        if(this.hasJPEGTables && loadTables()) {
+            int byte1 = stream.read();
+            int byte2 = stream.read();
+            stream.seek(offset);
+            isAbbreviatedInPlace = byte1 == 0xff && byte2 == SOI;
+        }
+
         // Set the stream variable depending on presence of JPEGTables.
         ImageInputStream is;
-        if(this.hasJPEGTables) {
+        if(isAbbreviatedInPlace) {
+            if(DEBUG) System.out.println("Reading abbreviated stream.");
+            is = stream;
+        } else if(this.hasJPEGTables) {
             if(DEBUG) System.out.println("Reading abbreviated stream.");
             // The current strip or tile is an abbreviated JPEG stream.
 
@@ -205,9 +299,12 @@ public class TIFFJPEGDecompressor extends TIFFDecompressor {
             // Read remaining data.
             stream.readFully(data, dataOffset, byteCount - 2);
 
-            // Create ImageInputStream.
-            ByteArrayInputStream bais = new ByteArrayInputStream(data);
-            is = new MemoryCacheImageInputStream(bais);
+            // Read the assembled data directly from the array.
+            if(dataStream == null) {
+                dataStream = new ByteArrayImageInputStream(data);
+            }
+            dataStream.setData(data, 0, dataOffset + byteCount - 2, 0L);
+            is = dataStream;
         } else {
             if(DEBUG) System.out.println("Reading complete stream.");
             // The current strip or tile is a complete JPEG stream.
@@ -226,6 +323,8 @@ public class TIFFJPEGDecompressor extends TIFFDecompressor {
 
     protected void finalize() throws Throwable {
         super.finalize();
-        JPEGReader.dispose();
+        if(JPEGReader != null) {
+            JPEGReader.dispose();
+        }
     }
 }
@@ -45,6 +45,7 @@
 package com.sun.media.imageioimpl.plugins.tiff;
 
 import java.io.IOException;
+import java.nio.ByteOrder;
 import javax.imageio.stream.ImageOutputStream;
 import com.sun.media.imageio.plugins.tiff.BaselineTIFFTagSet;
 import com.sun.media.imageio.plugins.tiff.TIFFCompressor;
@@ -57,6 +58,9 @@ public class TIFFLZWCompressor extends TIFFCompressor {
 
     int predictor;
 
+    // Buffer for the differenced bytes of a row, reused between calls.
+    private byte[] rowBuf = null;
+
     public TIFFLZWCompressor(int predictorValue) {
         super("LZW", BaselineTIFFTagSet.COMPRESSION_LZW, true);
 	this.predictor = predictorValue;
@@ -83,20 +87,28 @@ public class TIFFLZWCompressor extends TIFFCompressor {
         long initialStreamPosition = stream.getStreamPosition();
 
         boolean usePredictor =
-            predictor == BaselineTIFFTagSet.PREDICTOR_HORIZONTAL_DIFFERENCING;
+            predictor == BaselineTIFFTagSet.PREDICTOR_HORIZONTAL_DIFFERENCING ||
+            predictor == BaselineTIFFTagSet.PREDICTOR_FLOATING_POINT;
 
         if(bytesPerRow == scanlineStride && !usePredictor) {
             lzwCompressor.compress(b, off, bytesPerRow*height);
         } else {
-            byte[] rowBuf = usePredictor ? new byte[bytesPerRow] : null;
+            int bytesPerSample = bitsPerSample[0]/8;
+            boolean isBigEndian =
+                stream.getByteOrder() == ByteOrder.BIG_ENDIAN;
+            if(usePredictor &&
+               (rowBuf == null || rowBuf.length < bytesPerRow)) {
+                rowBuf = new byte[bytesPerRow];
+            }
             for(int i = 0; i < height; i++) {
                 if(usePredictor) {
                     // Cannot modify b[] in place as it might be a data
-                    // array from the image being written so make a copy.
-                    System.arraycopy(b, off, rowBuf, 0, bytesPerRow);
-                    for(int j = bytesPerRow - 1; j >= samplesPerPixel; j--) {
-                        rowBuf[j] -= rowBuf[j - samplesPerPixel];
-                    }
+                    // array from the image being written so difference
+                    // into a separate buffer.
+                    TIFFPredictor.encodeRow(predictor, b, off, rowBuf,
+                                            width*samplesPerPixel,
+                                            samplesPerPixel,
+                                            bytesPerSample, isBigEndian);
                     lzwCompressor.compress(rowBuf, 0, bytesPerRow);
                 } else {
                     lzwCompressor.compress(b, off, bytesPerRow);
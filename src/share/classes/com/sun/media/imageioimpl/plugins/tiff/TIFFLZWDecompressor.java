@@ -46,6 +46,8 @@ package com.sun.media.imageioimpl.plugins.tiff;
 
 import java.awt.Rectangle;
 import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.Arrays;
 import javax.imageio.IIOException;
 import javax.imageio.ImageReader;
 import com.sun.media.imageio.plugins.tiff.BaselineTIFFTagSet;
@@ -71,7 +73,16 @@ public class TIFFLZWDecompressor extends TIFFDecompressor {
     int srcIndex;
     int dstIndex;
 
-    byte stringTable[][];
+    int srcLimit;
+    int dstLimit;
+
+    // The string table. Entry i is the string for code i, stored as the
+    // code of its prefix, its final byte, its first byte and its length.
+    // The table is allocated once and reused for every strip or tile.
+    int[] prefix = new int[4096];
+    byte[] suffix = new byte[4096];
+    byte[] initial = new byte[4096];
+    int[] length = new int[4096];
     int tableIndex, bitsToGet = 9;
 
     int nextData = 0;
@@ -82,13 +93,14 @@ public class TIFFLZWDecompressor extends TIFFDecompressor {
 
         if (predictor != BaselineTIFFTagSet.PREDICTOR_NONE && 
             predictor != 
-            BaselineTIFFTagSet.PREDICTOR_HORIZONTAL_DIFFERENCING) {
+            BaselineTIFFTagSet.PREDICTOR_HORIZONTAL_DIFFERENCING &&
+            predictor != BaselineTIFFTagSet.PREDICTOR_FLOATING_POINT) {
             throw new IIOException("Illegal value for Predictor in " +
                                    "TIFF file");
         }
 
         if(DEBUG) {
-            System.out.println("Using horizontal differencing predictor");
+            System.out.println("Using predictor " + predictor);
         }
 
         this.predictor = predictor;
@@ -99,47 +111,83 @@ public class TIFFLZWDecompressor extends TIFFDecompressor {
                           int bitsPerPixel,
                           int scanlineStride) throws IOException {
 
-        // Check bitsPerSample.
-        if (predictor == 
-            BaselineTIFFTagSet.PREDICTOR_HORIZONTAL_DIFFERENCING) {
-            int len = bitsPerSample.length;
-            for(int i = 0; i < len; i++) {
-                if(bitsPerSample[i] != 8) {
-                    throw new IIOException
-                        (bitsPerSample[i] + "-bit samples "+
-                         "are not supported for Horizontal "+
-                         "differencing Predictor");
-                }
-            }
-        }
+        // Check bitsPerSample and sampleFormat.
+        TIFFPredictor.checkSupported(predictor, bitsPerSample,
+                                     sampleFormat[0]);
 
         stream.seek(offset);
 
-        byte[] sdata = new byte[byteCount];
-        stream.readFully(sdata);
-
         int bytesPerRow = (srcWidth*bitsPerPixel + 7)/8;
+        int numBytes = bytesPerRow*srcHeight;
         byte[] buf;
         int bufOffset;
         if(bytesPerRow == scanlineStride) {
             buf = b;
             bufOffset = dstOffset;
         } else {
-            buf = new byte[bytesPerRow*srcHeight];
+            buf = TIFFImageReader.getScratchBuffer(reader, numBytes);
             bufOffset = 0;
         }
 
-        int numBytesDecoded = decode(sdata, 0, buf, bufOffset);
+        try {
+            byte[] sdata = TIFFImageReader.getScratchBuffer(reader, byteCount);
+            try {
+                stream.readFully(sdata, 0, byteCount);
+
+                int numBytesDecoded;
+                if(buf == b) {
+                    numBytesDecoded = decode(sdata, 0, byteCount,
+                                             buf, bufOffset,
+                                             b.length - bufOffset);
+                } else {
+                    numBytesDecoded = decode(sdata, 0, byteCount,
+                                             buf, 0, numBytes);
+                    if(numBytesDecoded < numBytes) {
+                        // Short data: clear what a new array would have
+                        // held.
+                        Arrays.fill(buf, numBytesDecoded, numBytes,
+                                    (byte)0);
+                    }
+                }
+            } finally {
+                TIFFImageReader.releaseScratchBuffer(reader, sdata);
+            }
 
-        if(bytesPerRow != scanlineStride) {
-            if(DEBUG) {
-                System.out.println("bytesPerRow != scanlineStride");
+            if (predictor != BaselineTIFFTagSet.PREDICTOR_NONE) {
+                int bytesPerSample = bitsPerSample[0]/8;
+                byte[] tmp =
+                    predictor == BaselineTIFFTagSet.PREDICTOR_FLOATING_POINT ?
+                    TIFFImageReader.getScratchBuffer(reader, bytesPerRow) :
+                    null;
+                try {
+                    TIFFPredictor.decodeRows(predictor, buf, bufOffset,
+                                             srcHeight, bytesPerRow,
+                                             bitsPerPixel/bitsPerSample[0],
+                                             bytesPerSample,
+                                             stream.getByteOrder() ==
+                                             ByteOrder.BIG_ENDIAN,
+                                             tmp);
+                } finally {
+                    if(tmp != null) {
+                        TIFFImageReader.releaseScratchBuffer(reader, tmp);
+                    }
+                }
             }
-            int off = 0;
-            for (int y = 0; y < srcHeight; y++) {
-                System.arraycopy(buf, off, b, dstOffset, bytesPerRow);
-                off += bytesPerRow;
-                dstOffset += scanlineStride;
+
+            if(bytesPerRow != scanlineStride) {
+                if(DEBUG) {
+                    System.out.println("bytesPerRow != scanlineStride");
+                }
+                int off = 0;
+                for (int y = 0; y < srcHeight; y++) {
+                    System.arraycopy(buf, off, b, dstOffset, bytesPerRow);
+                    off += bytesPerRow;
+                    dstOffset += scanlineStride;
+                }
+            }
+        } finally {
+            if(buf != b) {
+                TIFFImageReader.releaseScratchBuffer(reader, buf);
             }
         }
     }
@@ -147,7 +195,21 @@ public class TIFFLZWDecompressor extends TIFFDecompressor {
     public int decode(byte[] sdata, int srcOffset,
                       byte[] ddata, int dstOffset)
         throws IOException {
-        if (sdata[0] == (byte)0x00 && sdata[1] == (byte)0x01) {
+        return decode(sdata, srcOffset, sdata.length - srcOffset,
+                      ddata, dstOffset, ddata.length - dstOffset);
+    }
+
+    /**
+     * Decodes at most <code>srcLength</code> bytes from
+     * <code>sdata</code> into at most <code>dstLength</code> bytes
+     * of <code>ddata</code>, returning the number of bytes written.
+     */
+    public int decode(byte[] sdata, int srcOffset, int srcLength,
+                      byte[] ddata, int dstOffset, int dstLength)
+        throws IOException {
+        if (srcLength >= 2 &&
+            sdata[srcOffset] == (byte)0x00 &&
+            sdata[srcOffset + 1] == (byte)0x01) {
             throw new IIOException
                 ("TIFF 5.0-style LZW compression is not supported!");
         }
@@ -158,13 +220,15 @@ public class TIFFLZWDecompressor extends TIFFDecompressor {
         this.srcIndex = srcOffset;
         this.dstIndex = dstOffset;
 
+        this.srcLimit = srcOffset + srcLength;
+        this.dstLimit = dstOffset + dstLength;
+
 	this.nextData = 0;
 	this.nextBits = 0;
 
         initializeStringTable();
 
 	int code, oldCode = 0;
-	byte[] string;
 
 	while ((code = getNextCode()) != 257) {
 	    if (code == 256) {
@@ -174,146 +238,131 @@ public class TIFFLZWDecompressor extends TIFFDecompressor {
 		    break;
 		}
 
-		writeString(stringTable[code]);
+		writeString(code);
 		oldCode = code;
 	    } else {
 		if (code < tableIndex) {
-		    string = stringTable[code];
-
-		    writeString(string);
-		    addStringToTable(stringTable[oldCode], string[0]); 
+		    writeString(code);
+		    addStringToTable(oldCode, initial[code]);
 		    oldCode = code;
 		} else {
-		    string = stringTable[oldCode];
-		    string = composeString(string, string[0]);
-		    writeString(string);
-		    addStringToTable(string);
+		    // The code is not yet in the table: its string is the
+		    // previous string followed by its own first byte.
+		    byte first = initial[oldCode];
+		    writeString(oldCode);
+		    writeByte(first);
+		    addStringToTable(oldCode, first);
 		    oldCode = code;
 		}
 	    }
 	}
 
-	if (predictor ==
-            BaselineTIFFTagSet.PREDICTOR_HORIZONTAL_DIFFERENCING) {
-
-	    for (int j = 0; j < srcHeight; j++) {
-		
-		int count = dstOffset + samplesPerPixel * (j * srcWidth + 1);
-		
-		for (int i = samplesPerPixel; i < srcWidth * samplesPerPixel; i++) {
-		    
-		    dstData[count] += dstData[count - samplesPerPixel];
-		    count++;
-		}
-	    }
-	}
-
-        return dstIndex - dstOffset;
+        return Math.min(dstIndex, dstLimit) - dstOffset;
     }
 
     /**
      * Initialize the string table.
      */
     public void initializeStringTable() {
-	stringTable = new byte[4096][];
-	
 	for (int i = 0; i < 256; i++) {
-	    stringTable[i] = new byte[1];
-	    stringTable[i][0] = (byte)i;
+	    prefix[i] = -1;
+	    suffix[i] = (byte)i;
+	    initial[i] = (byte)i;
+	    length[i] = 1;
 	}
-	
+
 	tableIndex = 258;
 	bitsToGet = 9;
     }
 
     /**
-     * Write out the string just uncompressed.
+     * Write out the string for <code>code</code>.  The string is
+     * emitted back to front by following the chain of prefixes; bytes
+     * falling beyond the end of the destination are dropped.
      */
-    public void writeString(byte string[]) {
-        if(dstIndex < dstData.length) {
-            int maxIndex = Math.min(string.length,
-				    dstData.length - dstIndex);
-
-            for (int i=0; i < maxIndex; i++) {
-                dstData[dstIndex++] = string[i];
+    public void writeString(int code) {
+        int len = length[code];
+        int end = dstIndex + len;
+        int limit = dstLimit;
+
+        if (dstIndex < limit) {
+            int i = end - 1;
+            while (i >= limit) {
+                code = prefix[code];
+                i--;
+            }
+            while (i >= dstIndex) {
+                dstData[i--] = suffix[code];
+                code = prefix[code];
             }
         }
+
+        dstIndex = end;
     }
-    
+
     /**
-     * Add a new string to the string table.
+     * Write out a single byte.
      */
-    public void addStringToTable(byte oldString[], byte newString) {
-	int length = oldString.length;
-	byte string[] = new byte[length + 1];
-	System.arraycopy(oldString, 0, string, 0, length);
-	string[length] = newString;
-	
-	// Add this new String to the table
-	stringTable[tableIndex++] = string;
-	
-	if (tableIndex == 511) {
-	    bitsToGet = 10;
-	} else if (tableIndex == 1023) {
-	    bitsToGet = 11;
-	} else if (tableIndex == 2047) {
-	    bitsToGet = 12;
-	} 
+    public void writeByte(byte b) {
+        if (dstIndex < dstLimit) {
+            dstData[dstIndex] = b;
+        }
+        dstIndex++;
     }
 
     /**
-     * Add a new string to the string table.
+     * Add to the string table the string for <code>oldCode</code>
+     * followed by <code>newByte</code>.
      */
-    public void addStringToTable(byte string[]) {
-	// Add this new String to the table
-	stringTable[tableIndex++] = string;
-	
+    public void addStringToTable(int oldCode, byte newByte) {
+        if (tableIndex >= 4096) {
+            // Table full without a ClearCode: ignore, as the encoder
+            // cannot reference the entry.
+            return;
+        }
+
+        prefix[tableIndex] = oldCode;
+        suffix[tableIndex] = newByte;
+        initial[tableIndex] = initial[oldCode];
+        length[tableIndex] = length[oldCode] + 1;
+        tableIndex++;
+
 	if (tableIndex == 511) {
 	    bitsToGet = 10;
 	} else if (tableIndex == 1023) {
 	    bitsToGet = 11;
 	} else if (tableIndex == 2047) {
 	    bitsToGet = 12;
-	} 
-    }
-
-    /**
-     * Append <code>newString</code> to the end of <code>oldString</code>.
-     */
-    public byte[] composeString(byte oldString[], byte newString) {
-	int length = oldString.length;
-	byte string[] = new byte[length + 1];
-	System.arraycopy(oldString, 0, string, 0, length);
-	string[length] = newString;
-
-	return string;
+	}
     }
 
     // Returns the next 9, 10, 11 or 12 bits
     public int getNextCode() {
-        // Attempt to get the next code. The exception is caught to make
-        // this robust to cases wherein the EndOfInformation code has been
-        // omitted from a strip. Examples of such cases have been observed
-        // in practice.
+        // Attempt to get the next code. The end of the data is checked to
+        // make this robust to cases wherein the EndOfInformation code has
+        // been omitted from a strip. Examples of such cases have been
+        // observed in practice.
 
-        try {
-            nextData = (nextData << 8) | (srcData[srcIndex++] & 0xff);
-            nextBits += 8;
+        if (srcIndex >= srcLimit) {
+            // Strip not terminated as expected: return EndOfInformation code.
+            return 257;
+        }
+        nextData = (nextData << 8) | (srcData[srcIndex++] & 0xff);
+        nextBits += 8;
 
-            if (nextBits < bitsToGet) {
-                nextData = (nextData << 8) | (srcData[srcIndex++] & 0xff);
-                nextBits += 8;
+        if (nextBits < bitsToGet) {
+            if (srcIndex >= srcLimit) {
+                return 257;
             }
+            nextData = (nextData << 8) | (srcData[srcIndex++] & 0xff);
+            nextBits += 8;
+        }
 
-            int code =
-                (nextData >> (nextBits - bitsToGet)) & andTable[bitsToGet - 9];
-            nextBits -= bitsToGet;
+        int code =
+            (nextData >> (nextBits - bitsToGet)) & andTable[bitsToGet - 9];
+        nextBits -= bitsToGet;
 
-            return code;
-        } catch (ArrayIndexOutOfBoundsException e) {
-            // Strip not terminated as expected: return EndOfInformation code.
-            return 257;
-        }
+        return code;
     }
 }
 
@@ -125,7 +125,7 @@ public class TIFFPackBitsCompressor extends TIFFCompressor {
         int bytesWritten = 0;
 
         for(int i = 0; i < height; i++) {
-            int bytes = packBits(b, off, scanlineStride, compData, 0);
+            int bytes = packBits(b, off, bytesPerRow, compData, 0);
             off += scanlineStride;
             bytesWritten += bytes;
             stream.write(compData, 0, bytes);
@@ -46,6 +46,7 @@ package com.sun.media.imageioimpl.plugins.tiff;
 
 import java.awt.Rectangle;
 import java.io.IOException;
+import java.util.Arrays;
 import javax.imageio.ImageReader;
 import com.sun.media.imageio.plugins.tiff.BaselineTIFFTagSet;
 import com.sun.media.imageio.plugins.tiff.TIFFDecompressor;
@@ -61,27 +62,54 @@ public class TIFFPackBitsDecompressor extends TIFFDecompressor {
     public int decode(byte[] srcData, int srcOffset,
                       byte[] dstData, int dstOffset)
         throws IOException {
+        return decode(srcData, srcOffset, srcData.length - srcOffset,
+                      dstData, dstOffset, dstData.length - dstOffset);
+    }
+
+    /**
+     * Decodes at most <code>srcLength</code> bytes from
+     * <code>srcData</code> into at most <code>dstLength</code> bytes
+     * of <code>dstData</code>, returning the number of bytes written.
+     */
+    public int decode(byte[] srcData, int srcOffset, int srcLength,
+                      byte[] dstData, int dstOffset, int dstLength)
+        throws IOException {
 
 	int srcIndex = srcOffset;
         int dstIndex = dstOffset;
 
-        int dstArraySize = dstData.length;
-        int srcArraySize = srcData.length;
+        int dstArraySize = dstOffset + dstLength;
+        int srcArraySize = srcOffset + srcLength;
         try {
             while (dstIndex < dstArraySize && srcIndex < srcArraySize) {
                 byte b = srcData[srcIndex++];
             
+                // A run which would pass either limit is copied as far
+                // as possible and then treated as an out of bounds access.
                 if (b >= 0 && b <= 127) { // second test not needed?
                     // Literal run packet
-                
-                    for (int i = 0; i < b + 1; i++) {
-                        dstData[dstIndex++] = srcData[srcIndex++];
+                    int count = b + 1;
+                    int n = Math.min(count,
+                                     Math.min(srcArraySize - srcIndex,
+                                              dstArraySize - dstIndex));
+                    System.arraycopy(srcData, srcIndex, dstData, dstIndex, n);
+                    srcIndex += n;
+                    dstIndex += n;
+                    if (n < count) {
+                        throw new ArrayIndexOutOfBoundsException();
                     }
                 } else if (b <= -1 && b >= -127) {
                     // 2-byte encoded run packet
+                    if (srcIndex >= srcArraySize) {
+                        throw new ArrayIndexOutOfBoundsException();
+                    }
                     byte repeat = srcData[srcIndex++];
-                    for (int i = 0; i < (-b + 1); i++) {
-                        dstData[dstIndex++] = repeat;
+                    int count = -b + 1;
+                    int n = Math.min(count, dstArraySize - dstIndex);
+                    Arrays.fill(dstData, dstIndex, dstIndex + n, repeat);
+                    dstIndex += n;
+                    if (n < count) {
+                        throw new ArrayIndexOutOfBoundsException();
                     }
                 } else {
                     // No-op packet, do nothing
@@ -103,34 +131,57 @@ public class TIFFPackBitsDecompressor extends TIFFDecompressor {
                           int bitsPerPixel,
                           int scanlineStride) throws IOException {
         stream.seek(offset);
-            
-        byte[] srcData = new byte[byteCount];
-        stream.readFully(srcData);
 
         int bytesPerRow = (srcWidth*bitsPerPixel + 7)/8;
+        int numBytes = bytesPerRow*srcHeight;
         byte[] buf;
         int bufOffset;
         if(bytesPerRow == scanlineStride) {
             buf = b;
             bufOffset = dstOffset;
         } else {
-            buf = new byte[bytesPerRow*srcHeight];
+            buf = TIFFImageReader.getScratchBuffer(reader, numBytes);
             bufOffset = 0;
         }
 
-        decode(srcData, 0, buf, bufOffset);
+        try {
+            byte[] srcData =
+                TIFFImageReader.getScratchBuffer(reader, byteCount);
+            try {
+                stream.readFully(srcData, 0, byteCount);
+
+                int numDecoded;
+                if(buf == b) {
+                    numDecoded = decode(srcData, 0, byteCount, buf, bufOffset,
+                                        b.length - bufOffset);
+                } else {
+                    numDecoded = decode(srcData, 0, byteCount,
+                                        buf, 0, numBytes);
+                    if(numDecoded < numBytes) {
+                        // Short data: clear what a new array would have
+                        // held.
+                        Arrays.fill(buf, numDecoded, numBytes, (byte)0);
+                    }
+                }
+            } finally {
+                TIFFImageReader.releaseScratchBuffer(reader, srcData);
+            }
 
-        if(bytesPerRow != scanlineStride) {
-            if(DEBUG) {
-                System.out.println("bytesPerRow != scanlineStride");
+            if(bytesPerRow != scanlineStride) {
+                if(DEBUG) {
+                    System.out.println("bytesPerRow != scanlineStride");
+                }
+                int off = 0;
+                for (int y = 0; y < srcHeight; y++) {
+                    System.arraycopy(buf, off, b, dstOffset, bytesPerRow);
+                    off += bytesPerRow;
+                    dstOffset += scanlineStride;
+                }
             }
-            int off = 0;
-            for (int y = 0; y < srcHeight; y++) {
-                System.arraycopy(buf, off, b, dstOffset, bytesPerRow);
-                off += bytesPerRow;
-                dstOffset += scanlineStride;
+        } finally {
+            if(buf != b) {
+                TIFFImageReader.releaseScratchBuffer(reader, buf);
             }
         }
     }
 }
-
@@ -0,0 +1,328 @@
+/*
+ * $RCSfile: TIFFPredictor.java,v $
+ *
+ * 
+ * Copyright (c) 2005 Sun Microsystems, Inc. All  Rights Reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met: 
+ * 
+ * - Redistribution of source code must retain the above copyright 
+ *   notice, this  list of conditions and the following disclaimer.
+ * 
+ * - Redistribution in binary form must reproduce the above copyright
+ *   notice, this list of conditions and the following disclaimer in 
+ *   the documentation and/or other materials provided with the
+ *   distribution.
+ * 
+ * Neither the name of Sun Microsystems, Inc. or the names of 
+ * contributors may be used to endorse or promote products derived 
+ * from this software without specific prior written permission.
+ * 
+ * This software is provided "AS IS," without a warranty of any 
+ * kind. ALL EXPRESS OR IMPLIED CONDITIONS, REPRESENTATIONS AND 
+ * WARRANTIES, INCLUDING ANY IMPLIED WARRANTY OF MERCHANTABILITY, 
+ * FITNESS FOR A PARTICULAR PURPOSE OR NON-INFRINGEMENT, ARE HEREBY
+ * EXCLUDED. SUN MIDROSYSTEMS, INC. ("SUN") AND ITS LICENSORS SHALL 
+ * NOT BE LIABLE FOR ANY DAMAGES SUFFERED BY LICENSEE AS A RESULT OF 
+ * USING, MODIFYING OR DISTRIBUTING THIS SOFTWARE OR ITS
+ * DERIVATIVES. IN NO EVENT WILL SUN OR ITS LICENSORS BE LIABLE FOR 
+ * ANY LOST REVENUE, PROFIT OR DATA, OR FOR DIRECT, INDIRECT, SPECIAL,
+ * CONSEQUENTIAL, INCIDENTAL OR PUNITIVE DAMAGES, HOWEVER CAUSED AND
+ * REGARDLESS OF THE THEORY OF LIABILITY, ARISING OUT OF THE USE OF OR
+ * INABILITY TO USE THIS SOFTWARE, EVEN IF SUN HAS BEEN ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGES. 
+ * 
+ * You acknowledge that this software is not designed or intended for 
+ * use in the design, construction, operation or maintenance of any 
+ * nuclear facility. 
+ *
+ * $Revision: 1.1 $
+ * $Date: 2026-10-18 00:00:00 $
+ * $State: Exp $
+ */
+package com.sun.media.imageioimpl.plugins.tiff;
+
+import javax.imageio.IIOException;
+import com.sun.media.imageio.plugins.tiff.BaselineTIFFTagSet;
+
+/**
+ * Applies and removes the horizontal differencing and floating point
+ * predictors of the Deflate/ZLib and LZW compression schemes.  Each
+ * method processes a single row of pixels in the byte order of the
+ * stream and allocates no storage.
+ *
+ * <p> The floating point predictor is that of Adobe Photoshop TIFF
+ * Technical Note 3: the bytes of the samples in each row are
+ * rearranged so that all most significant bytes come first followed
+ * by all next most significant bytes and so on, and horizontal
+ * differencing is then applied to the resulting bytes.
+ */
+final class TIFFPredictor {
+
+    private TIFFPredictor() {}
+
+    /**
+     * Returns whether the given predictor may be used with samples of
+     * the given size and format.  Horizontal differencing is supported
+     * for 8-, 16- and 32-bit samples and the floating point predictor for
+     * floating point samples of 16, 24, 32 or 64 bits.  All samples must
+     * have the same size.
+     */
+    static boolean isSupported(int predictor,
+                               int[] bitsPerSample,
+                               int sampleFormat) {
+        if (predictor == BaselineTIFFTagSet.PREDICTOR_NONE) {
+            return true;
+        }
+
+        int bits = bitsPerSample[0];
+        for (int i = 1; i < bitsPerSample.length; i++) {
+            if (bitsPerSample[i] != bits) {
+                return false;
+            }
+        }
+
+        if (predictor ==
+            BaselineTIFFTagSet.PREDICTOR_HORIZONTAL_DIFFERENCING) {
+            return bits == 8 || bits == 16 || bits == 32;
+        } else if (predictor ==
+                   BaselineTIFFTagSet.PREDICTOR_FLOATING_POINT) {
+            return sampleFormat ==
+                BaselineTIFFTagSet.SAMPLE_FORMAT_FLOATING_POINT &&
+                (bits == 16 || bits == 24 || bits == 32 || bits == 64);
+        }
+
+        return false;
+    }
+
+    /**
+     * Throws an <code>IIOException</code> if the given predictor may
+     * not be used with samples of the given size and format.
+     */
+    static void checkSupported(int predictor,
+                               int[] bitsPerSample,
+                               int sampleFormat) throws IIOException {
+        if (!isSupported(predictor, bitsPerSample, sampleFormat)) {
+            if (predictor == BaselineTIFFTagSet.PREDICTOR_FLOATING_POINT) {
+                throw new IIOException
+                    ("Floating point Predictor is supported for "+
+                     "floating point samples only");
+            }
+            throw new IIOException
+                (bitsPerSample[0] + "-bit samples "+
+                 "are not supported for Horizontal "+
+                 "differencing Predictor");
+        }
+    }
+
+    /**
+     * Removes the predictor from a decoded row in place.
+     *
+     * @param b the array containing the row.
+     * @param off the offset of the row in <code>b</code>.
+     * @param numSamples the number of samples in the row.
+     * @param samplesPerPixel the number of samples in each pixel.
+     * @param bytesPerSample the number of bytes in each sample.
+     * @param isBigEndian whether the samples are big-endian.
+     * @param tmp an array of at least <code>numSamples*bytesPerSample</code>
+     * bytes used by the floating point predictor.
+     */
+    static void decodeRow(int predictor, byte[] b, int off,
+                          int numSamples, int samplesPerPixel,
+                          int bytesPerSample, boolean isBigEndian,
+                          byte[] tmp) {
+        if (predictor == BaselineTIFFTagSet.PREDICTOR_FLOATING_POINT) {
+            int numBytes = numSamples*bytesPerSample;
+            int end = off + numBytes;
+            for (int i = off + samplesPerPixel; i < end; i++) {
+                b[i] += b[i - samplesPerPixel];
+            }
+
+            // Gather the bytes of each sample from the byte planes.
+            System.arraycopy(b, off, tmp, 0, numBytes);
+            for (int k = 0; k < bytesPerSample; k++) {
+                int plane = (isBigEndian ? k : bytesPerSample - 1 - k)*
+                    numSamples;
+                int dst = off + k;
+                for (int s = 0; s < numSamples; s++) {
+                    b[dst] = tmp[plane + s];
+                    dst += bytesPerSample;
+                }
+            }
+            return;
+        }
+
+        int stride = samplesPerPixel*bytesPerSample;
+        int end = off + numSamples*bytesPerSample;
+        switch (bytesPerSample) {
+        case 1:
+            for (int i = off + stride; i < end; i++) {
+                b[i] += b[i - stride];
+            }
+            break;
+        case 2:
+            if (isBigEndian) {
+                for (int i = off + stride; i < end; i += 2) {
+                    int j = i - stride;
+                    int v = (((b[i] & 0xff) << 8) | (b[i + 1] & 0xff)) +
+                        (((b[j] & 0xff) << 8) | (b[j + 1] & 0xff));
+                    b[i] = (byte)(v >> 8);
+                    b[i + 1] = (byte)v;
+                }
+            } else {
+                for (int i = off + stride; i < end; i += 2) {
+                    int j = i - stride;
+                    int v = (((b[i + 1] & 0xff) << 8) | (b[i] & 0xff)) +
+                        (((b[j + 1] & 0xff) << 8) | (b[j] & 0xff));
+                    b[i] = (byte)v;
+                    b[i + 1] = (byte)(v >> 8);
+                }
+            }
+            break;
+        case 4:
+            if (isBigEndian) {
+                for (int i = off + stride; i < end; i += 4) {
+                    int v = getIntBE(b, i) + getIntBE(b, i - stride);
+                    b[i] = (byte)(v >> 24);
+                    b[i + 1] = (byte)(v >> 16);
+                    b[i + 2] = (byte)(v >> 8);
+                    b[i + 3] = (byte)v;
+                }
+            } else {
+                for (int i = off + stride; i < end; i += 4) {
+                    int v = getIntLE(b, i) + getIntLE(b, i - stride);
+                    b[i] = (byte)v;
+                    b[i + 1] = (byte)(v >> 8);
+                    b[i + 2] = (byte)(v >> 16);
+                    b[i + 3] = (byte)(v >> 24);
+                }
+            }
+            break;
+        }
+    }
+
+    /**
+     * Removes the predictor from consecutive decoded rows in place.
+     *
+     * @param b the array containing the rows.
+     * @param off the offset of the first row in <code>b</code>.
+     * @param numRows the number of rows.
+     * @param bytesPerRow the number of bytes in each row.
+     * @param samplesPerPixel the number of samples in each pixel.
+     * @param bytesPerSample the number of bytes in each sample.
+     * @param isBigEndian whether the samples are big-endian.
+     * @param tmp an array of at least <code>bytesPerRow</code> bytes used
+     * by the floating point predictor.
+     */
+    static void decodeRows(int predictor, byte[] b, int off,
+                           int numRows, int bytesPerRow,
+                           int samplesPerPixel, int bytesPerSample,
+                           boolean isBigEndian, byte[] tmp) {
+        int numSamples = bytesPerRow/bytesPerSample;
+        for (int j = 0; j < numRows; j++) {
+            decodeRow(predictor, b, off, numSamples, samplesPerPixel,
+                      bytesPerSample, isBigEndian, tmp);
+            off += bytesPerRow;
+        }
+    }
+
+    /**
+     * Applies the predictor to a row which is to be encoded.  The source
+     * row is not modified.
+     *
+     * @param src the array containing the row.
+     * @param srcOff the offset of the row in <code>src</code>.
+     * @param dst an array of at least <code>numSamples*bytesPerSample</code>
+     * bytes to receive the differenced row.
+     * @param numSamples the number of samples in the row.
+     * @param samplesPerPixel the number of samples in each pixel.
+     * @param bytesPerSample the number of bytes in each sample.
+     * @param isBigEndian whether the samples are big-endian.
+     */
+    static void encodeRow(int predictor, byte[] src, int srcOff, byte[] dst,
+                          int numSamples, int samplesPerPixel,
+                          int bytesPerSample, boolean isBigEndian) {
+        int numBytes = numSamples*bytesPerSample;
+
+        if (predictor == BaselineTIFFTagSet.PREDICTOR_FLOATING_POINT) {
+            // Scatter the bytes of each sample into the byte planes.
+            for (int k = 0; k < bytesPerSample; k++) {
+                int plane = (isBigEndian ? k : bytesPerSample - 1 - k)*
+                    numSamples;
+                int s = srcOff + k;
+                for (int i = 0; i < numSamples; i++) {
+                    dst[plane + i] = src[s];
+                    s += bytesPerSample;
+                }
+            }
+            for (int i = numBytes - 1; i >= samplesPerPixel; i--) {
+                dst[i] -= dst[i - samplesPerPixel];
+            }
+            return;
+        }
+
+        int stride = samplesPerPixel*bytesPerSample;
+        System.arraycopy(src, srcOff, dst, 0, stride);
+        switch (bytesPerSample) {
+        case 1:
+            for (int i = stride; i < numBytes; i++) {
+                dst[i] = (byte)(src[srcOff + i] - src[srcOff + i - stride]);
+            }
+            break;
+        case 2:
+            if (isBigEndian) {
+                for (int i = stride; i < numBytes; i += 2) {
+                    int s = srcOff + i;
+                    int t = s - stride;
+                    int v = (((src[s] & 0xff) << 8) | (src[s + 1] & 0xff)) -
+                        (((src[t] & 0xff) << 8) | (src[t + 1] & 0xff));
+                    dst[i] = (byte)(v >> 8);
+                    dst[i + 1] = (byte)v;
+                }
+            } else {
+                for (int i = stride; i < numBytes; i += 2) {
+                    int s = srcOff + i;
+                    int t = s - stride;
+                    int v = (((src[s + 1] & 0xff) << 8) | (src[s] & 0xff)) -
+                        (((src[t + 1] & 0xff) << 8) | (src[t] & 0xff));
+                    dst[i] = (byte)v;
+                    dst[i + 1] = (byte)(v >> 8);
+                }
+            }
+            break;
+        case 4:
+            if (isBigEndian) {
+                for (int i = stride; i < numBytes; i += 4) {
+                    int s = srcOff + i;
+                    int v = getIntBE(src, s) - getIntBE(src, s - stride);
+                    dst[i] = (byte)(v >> 24);
+                    dst[i + 1] = (byte)(v >> 16);
+                    dst[i + 2] = (byte)(v >> 8);
+                    dst[i + 3] = (byte)v;
+                }
+            } else {
+                for (int i = stride; i < numBytes; i += 4) {
+                    int s = srcOff + i;
+                    int v = getIntLE(src, s) - getIntLE(src, s - stride);
+                    dst[i] = (byte)v;
+                    dst[i + 1] = (byte)(v >> 8);
+                    dst[i + 2] = (byte)(v >> 16);
+                    dst[i + 3] = (byte)(v >> 24);
+                }
+            }
+            break;
+        }
+    }
+
+    private static int getIntBE(byte[] b, int i) {
+        return (b[i] << 24) | ((b[i + 1] & 0xff) << 16) |
+            ((b[i + 2] & 0xff) << 8) | (b[i + 3] & 0xff);
+    }
+
+    private static int getIntLE(byte[] b, int i) {
+        return (b[i + 3] << 24) | ((b[i + 2] & 0xff) << 16) |
+            ((b[i + 1] & 0xff) << 8) | (b[i] & 0xff);
+    }
+}
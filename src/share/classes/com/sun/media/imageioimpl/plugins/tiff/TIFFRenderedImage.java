@@ -78,6 +78,9 @@ public class TIFFRenderedImage implements RenderedImage {
 
     ImageTypeSpecifier its;
 
+    private TIFFImageReader.ConcurrentTileDecoder decoder = null;
+    private boolean isDecoderInitialized = false;
+
     public TIFFRenderedImage(TIFFImageReader reader,
                              int imageIndex,
                              ImageReadParam readParam,
@@ -243,27 +246,84 @@ public class TIFFRenderedImage implements RenderedImage {
         return read(rect);
     }
 
-    // This method needs to be synchronized as it updates the instance
-    // variable 'tileParam'.
-    public synchronized WritableRaster read(Rectangle rect) {
-        // XXX Does this need to consider the subsampling offsets or is
-        // that handled implicitly by the reader?
-        tileParam.setSourceRegion(isSubsampling ?
-                                  new Rectangle(subsampleX*rect.x,
-                                                subsampleY*rect.y,
-                                                subsampleX*rect.width,
-                                                subsampleY*rect.height) :
-                                  rect);
-
-        try {
-            BufferedImage bi = reader.read(imageIndex, tileParam);
-            WritableRaster ras = bi.getRaster();
-            return ras.createWritableChild(0, 0,
-                                           ras.getWidth(), ras.getHeight(),
-                                           rect.x, rect.y,
-                                           null);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    public WritableRaster read(Rectangle rect) {
+        // Unless notifications must be delivered, decode the rectangle
+        // without changing the state of the reader so that the tiles
+        // may be computed by several threads at once.
+        TIFFImageReader.ConcurrentTileDecoder decoder = getDecoder();
+        if (decoder != null) {
+            try {
+                WritableRaster ras = decoder.decode(rect);
+                return ras.createWritableChild(0, 0,
+                                               ras.getWidth(),
+                                               ras.getHeight(),
+                                               rect.x, rect.y,
+                                               null);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        // The lock on the reader is held as 'tileParam' is updated
+        // and the state of the reader is changed by the read.
+        synchronized (reader) {
+            // XXX Does this need to consider the subsampling offsets or is
+            // that handled implicitly by the reader?
+            tileParam.setSourceRegion(isSubsampling ?
+                                      new Rectangle(subsampleX*rect.x,
+                                                    subsampleY*rect.y,
+                                                    subsampleX*rect.width,
+                                                    subsampleY*rect.height) :
+                                      rect);
+
+            try {
+                BufferedImage bi = reader.read(imageIndex, tileParam);
+                WritableRaster ras = bi.getRaster();
+                return ras.createWritableChild(0, 0,
+                                               ras.getWidth(),
+                                               ras.getHeight(),
+                                               rect.x, rect.y,
+                                               null);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Returns the decoder to be used to compute tiles concurrently, or
+     * <code>null</code> if the tiles must be read by the reader, which
+     * is the case if any listeners are registered with the reader, if
+     * the parameters do not permit concurrent decoding, or if the
+     * decoder could not be created.
+     */
+    private TIFFImageReader.ConcurrentTileDecoder getDecoder() {
+        synchronized (reader) {
+            if (reader.hasReadListeners()) {
+                return null;
+            }
+            if (decoder != null && !decoder.isValid()) {
+                decoder = null;
+                isDecoderInitialized = false;
+            }
+            if (!isDecoderInitialized) {
+                ImageReadParam decoderParam =
+                    cloneImageReadParam(tileParam, false);
+                decoderParam.setDestinationType(its);
+                try {
+                    decoder = reader.createConcurrentTileDecoder(imageIndex,
+                                                                 decoderParam);
+                    isDecoderInitialized = true;
+                } catch (IOException e) {
+                    // Read this tile serially, which reports the error if
+                    // it persists, and try again for the next one.
+                    reader.forwardWarningMessage
+                        ("Unable to decode tiles concurrently: "+
+                         e.getMessage());
+                    decoder = null;
+                }
+            }
+            return decoder;
         }
     }
 
@@ -48,12 +48,10 @@ import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.DataBufferByte;
-import java.io.ByteArrayInputStream;
-import java.io.EOFException;
 import java.io.IOException;
+import java.util.Arrays;
 import javax.imageio.ImageReader;
 import javax.imageio.metadata.IIOMetadata;
-import javax.imageio.stream.MemoryCacheImageInputStream;
 import javax.imageio.stream.ImageInputStream;
 import com.sun.media.imageio.plugins.tiff.BaselineTIFFTagSet;
 import com.sun.media.imageio.plugins.tiff.TIFFDecompressor;
@@ -369,7 +367,7 @@ public class TIFFYCbCrDecompressor extends TIFFDecompressor {
         super.setActiveSrcHeight(activeSrcHeight);
     }
 
-    private byte clamp(int f) {
+    private static byte clamp(int f) {
         if (f < 0) {
             return (byte)0;
         } else if (f > 255*65536) {
@@ -475,93 +473,97 @@ public class TIFFYCbCrDecompressor extends TIFFDecompressor {
                           int dstOffset,
                           int bitsPerPixel,
                           int scanlineStride) throws IOException {
-        byte[] rows = new byte[3*srcWidth*chromaSubsampleV];
-
         int elementsPerPacket = chromaSubsampleH*chromaSubsampleV + 2;
-        byte[] packet = new byte[elementsPerPacket];
-
-        if(decompressor != null) {
-            int bytesPerRow = 3*srcWidth;
-            byte[] tmpBuf = new byte[bytesPerRow*srcHeight];
-            decompressor.decodeRaw(tmpBuf, dstOffset, bitsPerPixel,
-                                   bytesPerRow);
-            ByteArrayInputStream byteStream =
-                new ByteArrayInputStream(tmpBuf);
-            stream = new MemoryCacheImageInputStream(byteStream);
-        } else {
-            stream.seek(offset);
-        }
-        
-        for (int y = srcMinY; y < srcMinY + srcHeight; y += chromaSubsampleV) {
-            // Decode chromaSubsampleV rows
-            for (int x = srcMinX; x < srcMinX + srcWidth;
-                 x += chromaSubsampleH) {
-                try {
-                    stream.readFully(packet);
-                } catch (EOFException e) {
-                    System.out.println("e = " + e);
-                    return;
-                }
-                
-                byte Cb = packet[elementsPerPacket - 2];
-                byte Cr = packet[elementsPerPacket - 1];
-
-                int iCb  = 0, iCr = 0, iGCb = 0, iGCr = 0;
-
-                if (colorConvert) {
-                    int Cbp = Cb & 0xff;
-                    int Crp = Cr & 0xff;
-
-                    iCb = iCbTab[Cbp];
-                    iCr = iCrTab[Crp];
-                    
-                    iGCb = iGCbTab[Cbp];
-                    iGCr = iGCrTab[Crp];
-                }
-
-                int yIndex = 0;
-                for (int v = 0; v < chromaSubsampleV; v++) {
-                    int idx = dstOffset + 3*(x - srcMinX) +
-                        scanlineStride*(y - srcMinY + v);
-
-                    // Check if we reached the last scanline
-                    if (y + v >= srcMinY + srcHeight) {
+        int packetsPerRow = (srcWidth + chromaSubsampleH - 1)/chromaSubsampleH;
+        int numPacketRows =
+            (srcHeight + chromaSubsampleV - 1)/chromaSubsampleV;
+        int packetBytes = numPacketRows*packetsPerRow*elementsPerPacket;
+
+        // Obtain all packets of the strip or tile at once so that they
+        // may be converted from memory a block at a time.
+        byte[] packets = null;
+        try {
+            int numBytes;
+            if(decompressor != null) {
+                int bytesPerRow = 3*srcWidth;
+                int length = Math.max(bytesPerRow*srcHeight, packetBytes);
+                packets = TIFFImageReader.getScratchBuffer(reader, length);
+                Arrays.fill(packets, 0, length, (byte)0);
+                decompressor.decodeRaw(packets, 0, bitsPerPixel, bytesPerRow);
+                numBytes = packetBytes;
+            } else {
+                packets = TIFFImageReader.getScratchBuffer(reader, packetBytes);
+                stream.seek(offset);
+                numBytes = 0;
+                while(numBytes < packetBytes) {
+                    int n = stream.read(packets, numBytes,
+                                        packetBytes - numBytes);
+                    if(n < 0) {
+                        if(debug) {
+                            System.out.println("EOF after " + numBytes +
+                                               " bytes");
+                        }
                         break;
                     }
+                    numBytes += n;
+                }
+            }
 
-                    for (int h = 0; h < chromaSubsampleH; h++) {
-                        if (x + h >= srcMinX + srcWidth) {
-                            break;
+            // Only complete packets are converted.
+            int numPackets = numBytes/elementsPerPacket;
+
+            int cbIndex = chromaSubsampleH*chromaSubsampleV;
+            int pos = 0;
+            for (int py = 0; py < numPacketRows && numPackets > 0; py++) {
+                int y = py*chromaSubsampleV;
+                int rows = Math.min(chromaSubsampleV, srcHeight - y);
+                int rowOffset = dstOffset + scanlineStride*y;
+
+                for (int px = 0; px < packetsPerRow && numPackets > 0; px++) {
+                    int x = px*chromaSubsampleH;
+                    int cols = Math.min(chromaSubsampleH, srcWidth - x);
+
+                    byte Cb = packets[pos + cbIndex];
+                    byte Cr = packets[pos + cbIndex + 1];
+
+                    if (colorConvert) {
+                        // The chroma terms are common to the block.
+                        int Cbp = Cb & 0xff;
+                        int Crp = Cr & 0xff;
+                        int iCb = iCbTab[Cbp];
+                        int iCr = iCrTab[Crp];
+                        int iGCbCr = iGCbTab[Cbp] + iGCrTab[Crp];
+
+                        for (int v = 0; v < rows; v++) {
+                            int idx = rowOffset + scanlineStride*v + 3*x;
+                            int yIndex = pos + chromaSubsampleH*v;
+                            for (int h = 0; h < cols; h++) {
+                                int Yp = packets[yIndex++] & 0xff;
+                                int iY = iYTab[Yp];
+
+                                buf[idx++] = clamp(iY + iCr);
+                                buf[idx++] = clamp(iGYTab[Yp] + iGCbCr);
+                                buf[idx++] = clamp(iY + iCb);
+                            }
                         }
-                        
-                        byte Y = packet[yIndex++];
-                        
-                        if (colorConvert) {
-                            int Yp = Y & 0xff;
-                            int iY = iYTab[Yp];
-                            int iGY = iGYTab[Yp];
-                            
-                            int iR = iY + iCr;
-                            int iG = iGY + iGCb + iGCr;
-                            int iB = iY + iCb;
-                            
-                            byte r = clamp(iR);
-                            byte g = clamp(iG);
-                            byte b = clamp(iB);
-
-                            buf[idx] = r;
-                            buf[idx + 1] = g;
-                            buf[idx + 2] = b;
-                        } else {
-                            buf[idx] = Y;
-                            buf[idx + 1] = Cb;
-                            buf[idx + 2] = Cr;
+                    } else {
+                        for (int v = 0; v < rows; v++) {
+                            int idx = rowOffset + scanlineStride*v + 3*x;
+                            int yIndex = pos + chromaSubsampleH*v;
+                            for (int h = 0; h < cols; h++) {
+                                buf[idx++] = packets[yIndex++];
+                                buf[idx++] = Cb;
+                                buf[idx++] = Cr;
+                            }
                         }
-
-                        idx += 3;
                     }
+
+                    pos += elementsPerPacket;
+                    numPackets--;
                 }
             }
+        } finally {
+            TIFFImageReader.releaseScratchBuffer(reader, packets);
         }
     }
 }
@@ -54,7 +54,7 @@ import java.util.Locale;
 import javax.imageio.spi.ImageInputStreamSpi;
 import javax.imageio.stream.FileCacheImageInputStream;
 import javax.imageio.stream.ImageInputStream;
-import javax.imageio.stream.MemoryCacheImageInputStream;
+import com.sun.media.imageio.stream.ChannelImageInputStream;
 import com.sun.media.imageio.stream.FileChannelImageInputStream;
 import com.sun.media.imageioimpl.common.PackageUtil;
 
@@ -80,10 +80,9 @@ public class ChannelImageInputStreamSpi extends ImageInputStreamSpi {
 	if(input instanceof FileChannel) {
 	    stream = new FileChannelImageInputStream((FileChannel)input);
 	} else {
-	    InputStream inStream =
-		Channels.newInputStream((ReadableByteChannel)input);
-
 	    if(useCache) {
+		InputStream inStream =
+		    Channels.newInputStream((ReadableByteChannel)input);
 		try {
 		    stream = new FileCacheImageInputStream(inStream,
 							   cacheDir);
@@ -93,7 +92,10 @@ public class ChannelImageInputStreamSpi extends ImageInputStreamSpi {
 	    }
 
 	    if(stream == null) {
-		stream = new MemoryCacheImageInputStream(inStream);
+		// Read from the channel directly, retaining the data in
+		// memory.
+		stream =
+		    new ChannelImageInputStream((ReadableByteChannel)input);
 	    }
 	}
 
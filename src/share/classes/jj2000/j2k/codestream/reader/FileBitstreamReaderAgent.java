@@ -259,8 +259,7 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
                             "the same time.");
         }
 
-//        lQuit = j2krparam.getLQuit();
-        lQuit = -1;
+        lQuit = j2krparam.getQualityLayers();
 
         // initializations
         nt = ntX * ntY;
@@ -1950,6 +1949,12 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
             for(int chg=0; chg<nChg; chg++) {
 
                 lye = change[chg][1];
+                // When the layers are the outermost progression of the whole
+                // tile the packets beyond the last decoded layer are not read
+                if(lQuit != -1 && lye > lQuit && nChg == 1 &&
+                   change[chg][0] == LY_RES_COMP_POS_PROG) {
+                    lye = lQuit;
+                }
                 ress = change[chg][2];
                 rese = change[chg][3];
                 comps = change[chg][4];
@@ -2318,8 +2323,8 @@ public class FileBitstreamReaderAgent extends BitstreamReaderAgent
 
         // If the l quit condition is used, Make sure that no layer
         // after lquit is returned
-        if(lQuit != -1 && fl+nl>lQuit){
-          nl = lQuit - fl;
+        if(lQuit != -1 && fl+nl-1>lQuit){
+          nl = lQuit - fl + 1;
         }
 
         // Check validity of resquested resolution level (according to the
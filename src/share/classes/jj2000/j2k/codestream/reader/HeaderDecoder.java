@@ -2393,7 +2393,8 @@ public class HeaderDecoder implements ProgressionType, Markers,
         // Get maximum number of bit planes from m quit condition
 //        int mMax = j2krparam.getMQuit();
         int mMax = -1;
-        return new StdEntropyDecoder(src,decSpec,doer,verber,mMax);
+        return new StdEntropyDecoder(src,decSpec,doer,verber,mMax,
+                                     j2krparam.getNumDecodingThreads());
     }
 
 
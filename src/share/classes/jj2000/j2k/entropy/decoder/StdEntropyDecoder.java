@@ -77,6 +77,15 @@ import jj2000.j2k.*;
  * places). When timing is disabled ('DO_TIMING' is false) there is no penalty
  * if the compiler performs some basic optimizations. Even if not the penalty
  * should be negligeable.
+ *
+ * <P>The code-blocks of a subband are independent of one another. If more
+ * than one decoding thread is requested, all the code-blocks of a row of
+ * code-blocks in a subband are decoded concurrently when the first of them
+ * is requested, using the threads of a 'ThreadPool' shared by all decoders
+ * as well as the calling thread, and are then returned from memory. Each
+ * thread uses its own decoding engine, so that the results are identical to
+ * those of the single threaded decoder. If a region of the tile is set only
+ * the code-blocks that the region depends on are decoded in advance.
  * */
 public class StdEntropyDecoder extends EntropyDecoder
     implements StdEntropyCoderOptions {
@@ -385,6 +394,121 @@ public class StdEntropyDecoder extends EntropyDecoder
     /** The maximum number of bit planes to decode for any code-block */
     private int mQuit;
 
+    /** The name of the thread pool shared by all decoders */
+    private static final String POOL_NAME = "StdEntropyDecoder";
+
+    /** The pool of threads used to decode code-blocks concurrently, shared
+     * by all decoders. It only grows, when a decoder requests more threads
+     * than it has. */
+    private static ThreadPool sharedPool;
+
+    /** The shared pool, as obtained when this decoder was created, or null
+     * if code-blocks are decoded one at a time in the calling thread. */
+    private ThreadPool tPool;
+
+    /** The decoding workers, the first of which runs in the calling thread
+     * and uses this decoder as its engine. It is null if code-blocks are
+     * decoded one at a time in the calling thread. */
+    private CBlkWorker workers[];
+
+    /** The lock used to coordinate the decoding workers */
+    private final Object workerLock = new Object();
+
+    /** The subband whose code-blocks are in 'decodedBlks', or null if none */
+    private SubbandSyn decodedSb;
+
+    /** The component of the subband whose code-blocks are in
+     * 'decodedBlks' */
+    private int decodedComp;
+
+    /** The tile of the subband whose code-blocks are in 'decodedBlks' */
+    private int decodedTile;
+
+    /** The index of the row of code-blocks in 'decodedBlks' */
+    private int decodedRow;
+
+    /** The coded code-blocks of the row being decoded. The objects are
+     * reused from one row to the next. */
+    private DecLyrdCBlk codedBlks[];
+
+    /** The decoded code-blocks of row 'decodedRow' of 'decodedSb'. An
+     * element is set to null once it has been returned. */
+    private DataBlkInt decodedBlks[];
+
+    /** The entropy coding options of the row being decoded */
+    private int decodedOpts;
+
+    /** The indexes in 'codedBlks' of the code-blocks to decode */
+    private int rowBlks[];
+
+    /** The number of code-blocks to decode in 'rowBlks' */
+    private int nRowBlks;
+
+    /** The index in 'rowBlks' of the next code-block to decode */
+    private int nextBlk;
+
+    /** The region of the current tile that is reconstructed, or null if the
+     * whole tile is */
+    private InvWTRegion region;
+
+    /** The number of decoding workers that have not finished yet */
+    private int runningWorkers;
+
+    /** The first exception or error thrown by a decoding worker, if any */
+    private Throwable workerError;
+
+    /**
+     * Decodes code-blocks of the row being decoded, taking the next
+     * undecoded one until none remains. Each worker has its own decoding
+     * engine, which is a decoder with no workers.
+     * */
+    private class CBlkWorker implements Runnable {
+
+        /** The decoder whose state is used to decode the code-blocks */
+        private StdEntropyDecoder engine;
+
+        /**
+         * Creates a worker which decodes code-blocks using the given engine.
+         *
+         * @param engine The decoder to use as the decoding engine.
+         * */
+        CBlkWorker(StdEntropyDecoder engine) {
+            this.engine = engine;
+        }
+
+        /**
+         * Decodes code-blocks until none remains or another worker has
+         * failed, and then signals its termination.
+         * */
+        public void run() {
+            int i;
+            try {
+                while (true) {
+                    synchronized (workerLock) {
+                        if (workerError != null || nextBlk >= nRowBlks) {
+                            break;
+                        }
+                        i = rowBlks[nextBlk++];
+                    }
+                    decodedBlks[i] = (DataBlkInt)engine.
+                        decodeCodeBlock(codedBlks[i],decodedOpts,
+                                        decodedRow,i,decodedSb,null);
+                }
+            } catch (Throwable t) {
+                synchronized (workerLock) {
+                    if (workerError == null) {
+                        workerError = t;
+                    }
+                }
+            } finally {
+                synchronized (workerLock) {
+                    runningWorkers--;
+                    workerLock.notifyAll();
+                }
+            }
+        }
+    }
+
     /** Static initializer: initializes all the lookup tables. */
     static {
         int i,j;
@@ -612,6 +736,29 @@ public class StdEntropyDecoder extends EntropyDecoder
      * */
     public StdEntropyDecoder(CodedCBlkDataSrcDec src, DecoderSpecs decSpec,
 			     boolean doer, boolean verber, int mQuit) {
+        this(src,decSpec,doer,verber,mQuit,0);
+    }
+
+    /**
+     * Instantiates a new entropy decoder engine, with the specified source of
+     * data, nominal block width and height, which decodes the code-blocks
+     * of a row of code-blocks using the specified number of threads.
+     *
+     * @param src The source of data
+     *
+     * @param doer If true error detection will be performed, if any error
+     * detection features have been enabled.
+     *
+     * @param verber This flag indicates if the entropy decoder should be
+     * verbose about bit stream errors that are detected and concealed.
+     *
+     * @param numThreads The number of threads to use to decode the
+     * code-blocks of a row, including the calling thread. If 0 or 1
+     * code-blocks are decoded one at a time as they are requested.
+     * */
+    public StdEntropyDecoder(CodedCBlkDataSrcDec src, DecoderSpecs decSpec,
+			     boolean doer, boolean verber, int mQuit,
+                             int numThreads) {
         super(src);
 
         this.decSpec = decSpec;
@@ -629,6 +776,27 @@ public class StdEntropyDecoder extends EntropyDecoder
         // Initialize internal variables
         state = new int[(decSpec.cblks.getMaxCBlkWidth()+2) *
                        ((decSpec.cblks.getMaxCBlkHeight()+1)/2+2)];
+
+        // Create the workers and make sure that the pool is large enough
+        if (numThreads > 1) {
+            workers = new CBlkWorker[numThreads];
+            workers[0] = new CBlkWorker(this);
+            for (int i=1; i<numThreads; i++) {
+                workers[i] =
+                    new CBlkWorker(new StdEntropyDecoder(src,decSpec,doer,
+                                                         verber,mQuit));
+            }
+            synchronized (StdEntropyDecoder.class) {
+                if (sharedPool == null) {
+                    sharedPool = new ThreadPool(numThreads-1,
+                                                Thread.currentThread().
+                                                getPriority(),POOL_NAME);
+                } else {
+                    sharedPool.ensureSize(numThreads-1);
+                }
+                tPool = sharedPool;
+            }
+        }
     }
 
     /**
@@ -701,6 +869,166 @@ public class StdEntropyDecoder extends EntropyDecoder
     public DataBlk getCodeBlock(int c, int m, int n, SubbandSyn sb,
                                 DataBlk cblk) {
         long stime = 0L;  // Start time for timed sections
+
+        // Decode all the code-blocks of the row at once if several threads
+        // are used
+        if (workers != null && sb.numCb.x > 1) {
+            if (sb != decodedSb || c != decodedComp || tIdx != decodedTile ||
+                m != decodedRow) {
+                decodeRow(c,m,sb);
+            }
+            DataBlkInt dblk = decodedBlks[n];
+            if (dblk != null) {
+                // Hand over the decoded data, which is not kept
+                decodedBlks[n] = null;
+                if (cblk == null) {
+                    return dblk;
+                }
+                cblk.progressive = dblk.progressive;
+                cblk.ulx = dblk.ulx;
+                cblk.uly = dblk.uly;
+                cblk.w = dblk.w;
+                cblk.h = dblk.h;
+                cblk.offset = 0;
+                cblk.scanw = cblk.w;
+                cblk.setData(dblk.getData());
+                return cblk;
+            }
+            // Requested again: decode it below
+        }
+
+        // Get the code-block to decode
+        srcblk = src.getCodeBlock(c,m,n,sb,1,-1,srcblk);
+        if (DO_TIMING) stime = System.currentTimeMillis();
+
+        // Retrieve options from decSpec
+        int opts = ((Integer)decSpec.ecopts.getTileCompVal(tIdx,c)).intValue();
+
+        cblk = decodeCodeBlock(srcblk,opts,m,n,sb,cblk);
+
+        if (DO_TIMING) time[c] += System.currentTimeMillis()-stime;
+
+        return cblk;
+    }
+
+    /**
+     * Decodes all the code-blocks of the specified row of code-blocks, using
+     * the decoding workers, and keeps them in 'decodedBlks'. The coded
+     * code-blocks are first all obtained from the source in the calling
+     * thread.
+     *
+     * @param c The component of the subband.
+     *
+     * @param m The vertical index of the row of code-blocks.
+     *
+     * @param sb The subband of the code-blocks.
+     * */
+    private void decodeRow(int c, int m, SubbandSyn sb) {
+        int i;
+        int ncb = sb.numCb.x;
+        int nw;
+
+        decodedSb = null;
+        decodedBlks = null;
+
+        // Get the coded code-blocks
+        if (codedBlks == null || codedBlks.length < ncb) {
+            DecLyrdCBlk tmp[] = new DecLyrdCBlk[ncb];
+            if (codedBlks != null) {
+                System.arraycopy(codedBlks,0,tmp,0,codedBlks.length);
+            }
+            codedBlks = tmp;
+        }
+        if (rowBlks == null || rowBlks.length < ncb) {
+            rowBlks = new int[ncb];
+        }
+        nRowBlks = 0;
+        for (i=0; i<ncb; i++) {
+            // Skip the code-blocks the region does not depend on
+            if (region != null &&
+                !region.isCBlkNeeded(sb,m,i,getCbULX(),getCbULY())) {
+                continue;
+            }
+            codedBlks[i] = src.getCodeBlock(c,m,i,sb,1,-1,codedBlks[i]);
+            rowBlks[nRowBlks++] = i;
+        }
+
+        // Decode them
+        decodedSb = sb;
+        decodedRow = m;
+        decodedBlks = new DataBlkInt[ncb];
+        decodedOpts = ((Integer)decSpec.ecopts.
+                       getTileCompVal(tIdx,c)).intValue();
+        nw = Math.max(Math.min(workers.length,nRowBlks),1);
+        synchronized (workerLock) {
+            nextBlk = 0;
+            workerError = null;
+            runningWorkers = nw;
+        }
+        for (i=1; i<nw; i++) {
+            // Let the calling thread do the work if no thread is idle
+            if (!tPool.runTarget(workers[i],null,true)) {
+                synchronized (workerLock) {
+                    runningWorkers--;
+                }
+            }
+        }
+        workers[0].run();
+        // The workers use the state of this decoder, so wait for them
+        // even if interrupted and restore the interrupt afterwards.
+        boolean interrupted = false;
+        synchronized (workerLock) {
+            while (runningWorkers > 0) {
+                try {
+                    workerLock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (workerError != null) {
+            Throwable t = workerError;
+            workerError = null;
+            decodedSb = null;
+            decodedBlks = null;
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException)t;
+            }
+            if (t instanceof Error) {
+                throw (Error)t;
+            }
+            RuntimeException e = new RuntimeException(t.toString());
+            e.initCause(t);
+            throw e;
+        }
+        decodedComp = c;
+        decodedTile = tIdx;
+    }
+
+    /**
+     * Decodes the specified coded code-block into the specified block.
+     *
+     * @param srcblk The coded code-block to decode.
+     *
+     * @param opts The entropy coding options of the code-block.
+     *
+     * @param m The vertical index of the code-block in the subband.
+     *
+     * @param n The horizontal index of the code-block in the subband.
+     *
+     * @param sb The subband in which the code-block is.
+     *
+     * @param cblk If non-null this object will be used to return the
+     * decoded code-block, as in 'getCodeBlock()'.
+     *
+     * @return The decoded code-block.
+     * */
+    private DataBlk decodeCodeBlock(DecLyrdCBlk srcblk, int opts, int m,
+                                    int n, SubbandSyn sb, DataBlk cblk) {
         int zc_lut[];     // The ZC lookup table to use
         int out_data[];   // The outupt data buffer
         int npasses;      // The number of coding passes to perform
@@ -712,13 +1040,7 @@ public class StdEntropyDecoder extends EntropyDecoder
 
         boolean isterm;
 
-        // Get the code-block to decode
-        srcblk = src.getCodeBlock(c,m,n,sb,1,-1,srcblk);
-        if (DO_TIMING) stime = System.currentTimeMillis();
-
-        // Retrieve options from decSpec
-        options = ((Integer)decSpec.ecopts.
-                   getTileCompVal(tIdx,c)).intValue();
+        options = opts;
 
         // Reset state
         ArrayUtil.intArraySet(state,0);
@@ -895,12 +1217,53 @@ public class StdEntropyDecoder extends EntropyDecoder
             conceal(cblk,curbp);
         }
 
-        if (DO_TIMING) time[c] += System.currentTimeMillis()-stime;
-
         // Return decoded block
         return cblk;
     }
 
+    /**
+     * Sets the region of the current tile that is reconstructed, so that
+     * only the code-blocks it depends on are decoded in advance when several
+     * threads are used. Any code-blocks decoded in advance are discarded. The
+     * region applies until the current tile is changed.
+     *
+     * @param region The region, or null if the whole tile is reconstructed.
+     *
+     * @see InverseWT#setRegion
+     * */
+    public void setRegion(InvWTRegion region) {
+        this.region = region;
+        decodedSb = null;
+        decodedBlks = null;
+    }
+
+    /**
+     * Changes the current tile, given the new indexes, and discards any
+     * code-blocks decoded in advance and the region.
+     *
+     * @param x The horizontal index of the tile.
+     *
+     * @param y The vertical index of the new tile.
+     * */
+    public void setTile(int x,int y) {
+        super.setTile(x,y);
+        region = null;
+        decodedSb = null;
+        decodedBlks = null;
+    }
+
+    /**
+     * Advances to the next tile, in standard scan-line order (by rows then
+     * columns), and discards any code-blocks decoded in advance and the
+     * region.
+     * */
+    public void nextTile() {
+        super.nextTile();
+        region = null;
+        decodedSb = null;
+        decodedBlks = null;
+    }
+
     /**
      * Returns the specified code-block in the current tile for the specified
      * component (as a reference or copy).
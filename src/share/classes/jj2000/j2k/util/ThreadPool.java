@@ -130,10 +130,13 @@ public class ThreadPool {
     public final static String CONCURRENCY_PROP_NAME =
         "jj2000.j2k.util.ThreadPool.concurrency";
 
-    /** The array of idle threads and the lock for the manipulation of the
-     * idle thread list. */
+    /** The array of idle threads, which has one element per thread of the
+     * pool. */
     private ThreadPoolThread idle[];
 
+    /** The lock for the manipulation of the idle thread list */
+    private final Object idleLock = new Object();
+
     /** The number of idle threads */
     private int nidle;
 
@@ -387,7 +390,30 @@ public class ThreadPool {
      *
      * */
     public int getSize() {
-        return idle.length;
+        synchronized (idleLock) {
+            return idle.length;
+        }
+    }
+
+    /**
+     * Makes the pool contain at least the given number of threads, starting
+     * new idle threads if it has fewer.
+     *
+     * @param size The minimum size of the pool.
+     * */
+    public void ensureSize(int size) {
+        int n;
+
+        synchronized (idleLock) {
+            n = idle.length;
+            if (size <= n) return;
+            ThreadPoolThread newIdle[] = new ThreadPoolThread[size];
+            System.arraycopy(idle,0,newIdle,0,nidle);
+            idle = newIdle;
+        }
+        for (int i=n; i<size; i++) {
+            new ThreadPoolThread(i,poolName+"-"+i).start();
+        }
     }
 
     /**
@@ -529,8 +555,8 @@ public class ThreadPool {
      * to the list before it is removed. For efficiency reasons there is no
      * check to see if the thread is already in the list of idle threads.
      *
-     * <P> If the idle list was empty 'notify()' will be called on the 'idle'
-     * array, to wake up a thread that might be waiting (within the
+     * <P> If the idle list was empty 'notify()' will be called on the idle
+     * list lock, to wake up a thread that might be waiting (within the
      * 'getIdle()' method) on an idle thread to become available.
      *
      * @param t The thread to put in the idle list.
@@ -538,12 +564,12 @@ public class ThreadPool {
     private void putInIdleList(ThreadPoolThread t) {
         // NOTE: if already in idle => catastrophe! (should be OK since //
         // this is private method)
-        // Lock the idle array to avoid races with 'getIdle()'
-        synchronized (idle) {
+        // Lock the idle list to avoid races with 'getIdle()'
+        synchronized (idleLock) {
             idle[nidle] = t;
             nidle++;
             // If idle array was empty wakeup any waiting threads.
-            if (nidle == 1) idle.notify();
+            if (nidle == 1) idleLock.notify();
         }
     }
 
@@ -555,7 +581,7 @@ public class ThreadPool {
      * interrupted.
      *
      * <P>If in non-asynchronous mode and there are currently no idle threads
-     * available the calling thread will wait on the 'idle' array lock, until
+     * available the calling thread will wait on the idle list lock, until
      * notified by 'putInIdleList()' that an idle thread might have become
      * available.
      *
@@ -565,8 +591,8 @@ public class ThreadPool {
      * list, or null if none is available.
      * */
     private ThreadPoolThread getIdle(boolean async) {
-        // Lock the idle array to avoid races with 'putInIdleList()'
-        synchronized (idle) {
+        // Lock the idle list to avoid races with 'putInIdleList()'
+        synchronized (idleLock) {
             if (async) {
                 // In asynchronous mode just return null if no idle thread
                 if (nidle == 0) return null;
@@ -575,7 +601,7 @@ public class ThreadPool {
                 // In synchronous mode wait until a thread becomes idle
                 while (nidle == 0) {
                     try {
-                        idle.wait();
+                        idleLock.wait();
                     } catch (InterruptedException e) {
                         // If we were interrupted just return null
                         return null;
@@ -513,12 +513,18 @@ public class InvWTFull extends InverseWT {
             dst_data = img.getData();
             for (m=0; m<ncblks.y; m++) {
                 for (n=0; n<ncblks.x; n++) {
-                    subbData = src.getInternCodeBlock(c,m,n,sb,subbData);
-                    src_data = subbData.getData();
                     if(pw!=null) {
                         nDecCblk++;
                         pw.updateProgressWatch(nDecCblk,null);
                     }
+                    // Skip the code-blocks the region does not depend on
+                    if(region!=null &&
+                       !region.isCBlkNeeded(sb,m,n,src.getCbULX(),
+                                            src.getCbULY())) {
+                        continue;
+                    }
+                    subbData = src.getInternCodeBlock(c,m,n,sb,subbData);
+                    src_data = subbData.getData();
                     // Copy the data line by line
                     for (i=subbData.h-1; i>=0; i--) {
                         System.arraycopy(src_data,
@@ -562,6 +568,24 @@ public class InvWTFull extends InverseWT {
         return WaveletTransform.WT_IMPL_FULL;
     }
 
+    /**
+     * Restricts the reconstruction of the current tile to the specified
+     * region. The tile-components already reconstructed are discarded.
+     *
+     * @param region The region to reconstruct, or null to reconstruct the
+     * whole tile.
+     * */
+    public void setRegion(InvWTRegion region) {
+        super.setRegion(region);
+
+        // Reset the decomposed component buffers.
+        if (reconstructedComps != null) {
+            for (int i=reconstructedComps.length-1; i>=0; i--) {
+                reconstructedComps[i] = null;
+            }
+        }
+    }
+
     /**
      * Changes the current tile, given the new indexes. An
      * IllegalArgumentException is thrown if the indexes do not correspond to
@@ -583,7 +607,8 @@ public class InvWTFull extends InverseWT {
             ndl[c] = src.getSynSubbandTree(tIdx,c).resLvl;
         }
 
-        // Reset the decomposed component buffers.
+        // Reset the region and the decomposed component buffers.
+        region = null;
         if (reconstructedComps != null) {
             for (i=reconstructedComps.length-1; i>=0; i--) {
                 reconstructedComps[i] = null;
@@ -632,7 +657,8 @@ public class InvWTFull extends InverseWT {
             ndl[c] = src.getSynSubbandTree(tIdx,c).resLvl;
         }
 
-        // Reset the decomposed component buffers.
+        // Reset the region and the decomposed component buffers.
+        region = null;
         if (reconstructedComps != null) {
             for (i=reconstructedComps.length-1; i>=0; i--) {
                 reconstructedComps[i] = null;
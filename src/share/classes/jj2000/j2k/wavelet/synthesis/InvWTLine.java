@@ -0,0 +1,953 @@
+/*
+ * $RCSfile: InvWTLine.java,v $
+ * $Revision: 1.1 $
+ * $Date: 2005-02-11 05:02:32 $
+ * $State: Exp $
+ *
+ * Class:                   InvWTLine
+ *
+ * Description:             This class implements a line based inverse DWT
+ *                          for int and float data.
+ *
+ *
+ * COPYRIGHT:
+ *
+ * This software module was originally developed by Raphal Grosbois and
+ * Diego Santa Cruz (Swiss Federal Institute of Technology-EPFL); Joel
+ * Askelf (Ericsson Radio Systems AB); and Bertrand Berthelot, David
+ * Bouchard, Flix Henry, Gerard Mozelle and Patrice Onno (Canon Research
+ * Centre France S.A) in the course of development of the JPEG2000
+ * standard as specified by ISO/IEC 15444 (JPEG 2000 Standard). This
+ * software module is an implementation of a part of the JPEG 2000
+ * Standard. Swiss Federal Institute of Technology-EPFL, Ericsson Radio
+ * Systems AB and Canon Research Centre France S.A (collectively JJ2000
+ * Partners) agree not to assert against ISO/IEC and users of the JPEG
+ * 2000 Standard (Users) any of their rights under the copyright, not
+ * including other intellectual property rights, for this software module
+ * with respect to the usage by ISO/IEC and Users of this software module
+ * or modifications thereof for use in hardware or software products
+ * claiming conformance to the JPEG 2000 Standard. Those intending to use
+ * this software module in hardware or software products are advised that
+ * their use may infringe existing patents. The original developers of
+ * this software module, JJ2000 Partners and ISO/IEC assume no liability
+ * for use of this software module or modifications thereof. No license
+ * or right to this software module is granted for non JPEG 2000 Standard
+ * conforming products. JJ2000 Partners have full right to use this
+ * software module for his/her own purpose, assign or donate this
+ * software module to any third party and to inhibit third parties from
+ * using this software module for non JPEG 2000 Standard conforming
+ * products. This copyright notice must be included in all copies or
+ * derivative works of this software module.
+ *
+ * Copyright (c) 1999/2000 JJ2000 Partners.
+ * */
+package jj2000.j2k.wavelet.synthesis;
+import java.util.Arrays;
+
+import jj2000.j2k.wavelet.*;
+import jj2000.j2k.decoder.*;
+import jj2000.j2k.image.*;
+import jj2000.j2k.util.*;
+
+/**
+ * This class implements the InverseWT with a line-based approach for int and
+ * float data.
+ *
+ * <P>Unlike the full-page approach of 'InvWTFull', the tile-components are
+ * never reconstructed as a whole. Each subband of the subband tree is
+ * reconstructed a strip of lines at a time, as its lines are requested, from
+ * the lines of its four child subbands. The code-blocks of the leaf subbands
+ * are obtained from the source one row of code-blocks at a time. The memory
+ * used is thus proportional to the tile width times the height of the
+ * code-blocks and of the strips, rather than to the tile area. The
+ * reconstructed data are exactly the same as with 'InvWTFull'.
+ *
+ * <P>Lines are best requested in increasing order, which is what the decoder
+ * does. If a line above the current strip of a component is requested the
+ * reconstruction of the tile-component starts over, which requires its
+ * code-blocks to be decoded again.
+ *
+ * <P>The image can be reconstructed at different (image) resolution levels
+ * indexed from the lowest resolution available for each tile-component. This
+ * is controlled by the setImgResLevel() method.
+ *
+ * <P>This implementation does not support progressive data, all data is
+ * considered to be non-progressive (i.e. "final" data) and the 'progressive'
+ * attribute of the 'DataBlk' class is always set to false, see the 'DataBlk'
+ * class.
+ *
+ * @see InvWTFull
+ *
+ * @see DataBlk
+ * */
+public class InvWTLine extends InverseWT {
+
+    /** The number of lines of a subband that are reconstructed at a time */
+    private static final int STRIP_HEIGHT = 64;
+
+    /** Reference to the ProgressWatch instance if any */
+    private ProgressWatch pw = null;
+
+    /** The total number of code-blocks to decode */
+    private int cblkToDecode = 0;
+
+    /** The number of already decoded code-blocks */
+    private int nDecCblk = 0;
+
+    /** the code-block buffer's source i.e. the quantizer */
+    private CBlkWTDataSrcDec src;
+
+    /** Number of decomposition levels in each component */
+    private int[] ndl;
+
+    /**
+     * The reversible flag for each component in each tile. The first index is
+     * the tile index, the second one is the component index. The
+     * reversibility of the components for each tile are calculated on a as
+     * needed basis.
+     * */
+    private boolean reversible[][];
+
+    /**
+     * The source of the reconstructed lines of each component in the current
+     * tile. An element is null until the component is first requested.
+     * */
+    private LineSource lineSrcs[];
+
+    /**
+     * The buffer of each component used to return blocks whose lines are
+     * not all available at once.
+     * */
+    private Object blkBufs[];
+
+    /**
+     * Provides the lines of a subband, as reconstructed (for a node) or
+     * decoded (for a leaf). The available lines are stored in 'data' with a
+     * scan-width equal to the subband width.
+     * */
+    private abstract class LineSource {
+
+        /** The subband whose lines are provided */
+        SubbandSyn sb;
+
+        /** The component of the subband */
+        int c;
+
+        /** The data type of the subband data, as defined in 'DataBlk' */
+        int dtype;
+
+        /** The width of the subband */
+        int w;
+
+        /** The height of the subband */
+        int h;
+
+        /** The buffer holding the available lines */
+        Object data;
+
+        /** The index of the line at the start of 'data' */
+        int dataUly;
+
+        /** The index of the first line that can be obtained from 'data' */
+        int availStart;
+
+        /** The index following the last line that can be obtained from
+         * 'data' */
+        int availEnd;
+
+        /**
+         * Initializes the source for the given subband.
+         *
+         * @param sb The subband.
+         *
+         * @param c The component of the subband.
+         *
+         * @param dtype The data type of the subband data.
+         * */
+        LineSource(SubbandSyn sb, int c, int dtype) {
+            this.sb = sb;
+            this.c = c;
+            this.dtype = dtype;
+            w = sb.w;
+            h = sb.h;
+        }
+
+        /**
+         * Makes the specified line available in 'data' and returns its
+         * index. Lines must be requested in increasing order, except for the
+         * lines which are still available.
+         *
+         * @param y The index of the line in the subband.
+         *
+         * @return The index of the first sample of the line in 'data'.
+         * */
+        final int getLine(int y) {
+            if (y < availStart || y >= h) {
+                throw new IllegalArgumentException("Line "+y+" of subband "+
+                                                   "is not available");
+            }
+            if (y >= availEnd) {
+                load(y);
+            }
+            return (y-dataUly)*w;
+        }
+
+        /**
+         * Loads the lines that follow the available ones until the specified
+         * line is available.
+         *
+         * @param y The index of the line to make available.
+         * */
+        abstract void load(int y);
+    }
+
+    /**
+     * Provides the lines of a leaf subband, obtained from the source one row
+     * of code-blocks at a time.
+     * */
+    private class SubbandLines extends LineSource {
+
+        /** The index of the next row of code-blocks to get */
+        private int nextRow;
+
+        /** The vertical position of the subband with respect to the
+         * code-block partition */
+        private int cby;
+
+        /** The code-block used to get the data from the source */
+        private DataBlk cblk;
+
+        /**
+         * Creates a source for the lines of the given leaf subband.
+         *
+         * @param sb The leaf subband.
+         *
+         * @param c The component of the subband.
+         *
+         * @param dtype The data type of the subband data.
+         * */
+        SubbandLines(SubbandSyn sb, int c, int dtype) {
+            super(sb,c,dtype);
+
+            // Projects the code-block partition origin to the subband, as
+            // is done by the bit stream reader
+            if (sb.sbandIdx == Subband.WT_ORIENT_LH ||
+                sb.sbandIdx == Subband.WT_ORIENT_HH) {
+                cby = sb.ulcy;
+            } else {
+                cby = sb.ulcy-src.getCbULY();
+            }
+
+            int n = Math.min(sb.nomCBlkH,h)*w;
+            if (dtype == DataBlk.TYPE_INT) {
+                data = new int[n];
+                cblk = new DataBlkInt();
+            } else {
+                data = new float[n];
+                cblk = new DataBlkFloat();
+            }
+        }
+
+        /**
+         * Gets the rows of code-blocks until the specified line is
+         * available.
+         *
+         * @param y The index of the line to make available.
+         * */
+        void load(int y) {
+            int i,n,start,end;
+            int cbh = sb.nomCBlkH;
+
+            while (y >= availEnd) {
+                // Lines of the next row of code-blocks in the subband
+                start = (cby/cbh+nextRow)*cbh-cby;
+                end = start+cbh;
+                if (start < 0) start = 0;
+                if (end > h) end = h;
+
+                if (dtype == DataBlk.TYPE_INT) {
+                    ArrayUtil.intArraySet((int[])data,0);
+                } else {
+                    Arrays.fill((float[])data,0f);
+                }
+
+                // Copy the code-blocks, which have no data if skipped
+                for (n=0; n<sb.numCb.x; n++) {
+                    if (pw != null) {
+                        nDecCblk++;
+                        pw.updateProgressWatch(nDecCblk,null);
+                        if (nDecCblk == cblkToDecode) {
+                            pw.terminateProgressWatch();
+                        }
+                    }
+                    // Skip the code-blocks the region does not depend on
+                    if (region != null &&
+                        !region.isCBlkNeeded(sb,nextRow,n,src.getCbULX(),
+                                             src.getCbULY())) {
+                        continue;
+                    }
+                    cblk = src.getInternCodeBlock(c,nextRow,n,sb,cblk);
+                    Object cbdata = cblk.getData();
+                    for (i=cblk.h-1; i>=0; i--) {
+                        System.arraycopy(cbdata,cblk.offset+i*cblk.scanw,
+                                         data,
+                                         (cblk.uly-sb.uly-start+i)*w+
+                                         cblk.ulx-sb.ulx,
+                                         cblk.w);
+                    }
+                }
+                nextRow++;
+
+                dataUly = availStart = start;
+                availEnd = end;
+            }
+        }
+    }
+
+    /**
+     * Provides the lines of a node subband, reconstructed a strip of lines
+     * at a time. The lines of the four child subbands are first combined by
+     * the horizontal synthesis filter into the low-pass and high-pass lines
+     * of the vertical synthesis, which are kept while they are needed. The
+     * vertical synthesis is then performed on a window of these lines that
+     * extends beyond the strip by 'margin' lines on each side, so that the
+     * lines of the strip do not depend on how the window is extended at its
+     * borders.
+     * */
+    private class NodeLines extends LineSource {
+
+        /** The sources of the lines of the LL, HL, LH and HH children. An
+         * element is null if the subband is empty. */
+        private LineSource ll, hl, lh, hh;
+
+        /** The width of the horizontal low-pass and high-pass subbands */
+        private int lowW, highW;
+
+        /** The number of lines outside of the strip used for the vertical
+         * synthesis, on each side */
+        private int margin;
+
+        /** The low-pass and high-pass lines of the vertical synthesis */
+        private Object lowLines, highLines;
+
+        /** The index of the first line in 'lowLines' and 'highLines' */
+        private int lowFirst, highFirst;
+
+        /** The number of lines in 'lowLines' and 'highLines' */
+        private int lowNum, highNum;
+
+        /** The buffer used for the horizontal and vertical synthesis */
+        private Object buf;
+
+        /**
+         * Creates a source for the lines of the given node subband.
+         *
+         * @param sb The node subband.
+         *
+         * @param c The component of the subband.
+         *
+         * @param dtype The data type of the subband data.
+         * */
+        NodeLines(SubbandSyn sb, int c, int dtype) {
+            super(sb,c,dtype);
+
+            ll = createLineSource((SubbandSyn)sb.getLL(),c,dtype);
+            hl = createLineSource((SubbandSyn)sb.getHL(),c,dtype);
+            lh = createLineSource((SubbandSyn)sb.getLH(),c,dtype);
+            hh = createLineSource((SubbandSyn)sb.getHH(),c,dtype);
+
+            lowW = (sb.ulcx%2 == 0) ? (w+1)/2 : w/2;
+            highW = w-lowW;
+
+            // The margin exceeds twice the largest support of the vertical
+            // synthesis filter
+            WaveletFilter vf = sb.vFilter;
+            margin = Math.max(Math.max(vf.getSynLowNegSupport(),
+                                       vf.getSynLowPosSupport()),
+                              Math.max(vf.getSynHighNegSupport(),
+                                       vf.getSynHighPosSupport()));
+            margin = 2*margin+2;
+
+            int nwin = Math.min(h,STRIP_HEIGHT+2*margin+1);
+            int nlines = Math.min((h+1)/2,(nwin+1)/2+1);
+            if (dtype == DataBlk.TYPE_INT) {
+                data = new int[nwin*w];
+                lowLines = new int[nlines*w];
+                highLines = new int[nlines*w];
+                buf = new int[Math.max(w,nwin)];
+            } else {
+                data = new float[nwin*w];
+                lowLines = new float[nlines*w];
+                highLines = new float[nlines*w];
+                buf = new float[Math.max(w,nwin)];
+            }
+        }
+
+        /**
+         * Reconstructs the strips of lines that follow the available ones
+         * until the specified line is available.
+         *
+         * @param y The index of the line to make available.
+         * */
+        void load(int y) {
+            int s,e,ws,we,lo0,lo1,hi0,hi1,lowLen,highLen,j,k,t;
+            boolean vlpf = (sb.ulcy%2 == 0);
+
+            while (y >= availEnd) {
+                // The strip and the window of the vertical synthesis. The
+                // window starts at an even line so that it starts with the
+                // same kind of sample as the subband.
+                s = availEnd;
+                e = Math.min(h,s+STRIP_HEIGHT);
+                ws = Math.max(0,s-margin) & ~1;
+                we = Math.min(h,e+margin);
+
+                // The low-pass and high-pass lines of the window
+                lo0 = hi0 = ws/2;
+                if (vlpf) {
+                    lo1 = (we+1)/2;
+                    hi1 = we/2;
+                } else {
+                    lo1 = we/2;
+                    hi1 = (we+1)/2;
+                }
+                lowLen = lo1-lo0;
+                highLen = hi1-hi0;
+                if (lowLen > 0) {
+                    lowFirst = getLines(lowLines,lowFirst,lowNum,lo0,lo1,
+                                        ll,hl);
+                    lowNum = lo1-lo0;
+                }
+                if (highLen > 0) {
+                    highFirst = getLines(highLines,highFirst,highNum,hi0,hi1,
+                                         lh,hh);
+                    highNum = hi1-hi0;
+                }
+
+                // Perform the vertical reconstruction of the window
+                switch (dtype) {
+                case DataBlk.TYPE_INT:
+                    int low_int[] = (int[])lowLines;
+                    int high_int[] = (int[])highLines;
+                    int buf_int[] = (int[])buf;
+                    for (j=0; j<w; j++) {
+                        for (t=0, k=j; t<lowLen; t++, k+=w) {
+                            buf_int[t] = low_int[k];
+                        }
+                        for (t=0, k=j; t<highLen; t++, k+=w) {
+                            buf_int[lowLen+t] = high_int[k];
+                        }
+                        synthetize(vlpf,buf,lowLen,highLen,j);
+                    }
+                    break;
+                case DataBlk.TYPE_FLOAT:
+                    float low_float[] = (float[])lowLines;
+                    float high_float[] = (float[])highLines;
+                    float buf_float[] = (float[])buf;
+                    for (j=0; j<w; j++) {
+                        for (t=0, k=j; t<lowLen; t++, k+=w) {
+                            buf_float[t] = low_float[k];
+                        }
+                        for (t=0, k=j; t<highLen; t++, k+=w) {
+                            buf_float[lowLen+t] = high_float[k];
+                        }
+                        synthetize(vlpf,buf,lowLen,highLen,j);
+                    }
+                    break;
+                }
+
+                dataUly = ws;
+                availStart = s;
+                availEnd = e;
+            }
+        }
+
+        /**
+         * Applies the vertical synthesis filter to one column of the window.
+         *
+         * @param lpf Whether the window starts with a low-pass sample.
+         *
+         * @param sig The low-pass samples followed by the high-pass ones.
+         *
+         * @param lowLen The number of low-pass samples.
+         *
+         * @param highLen The number of high-pass samples.
+         *
+         * @param j The index of the column.
+         * */
+        private void synthetize(boolean lpf, Object sig, int lowLen,
+                                int highLen, int j) {
+            if (lpf) {
+                sb.vFilter.synthetize_lpf(sig,0,lowLen,1,sig,lowLen,highLen,1,
+                                          data,j,w);
+            } else {
+                sb.vFilter.synthetize_hpf(sig,0,lowLen,1,sig,lowLen,highLen,1,
+                                          data,j,w);
+            }
+        }
+
+        /**
+         * Updates a buffer of low-pass or high-pass lines so that it holds
+         * the lines in the given range. The lines which are not needed any
+         * more are discarded and the missing ones are computed by the
+         * horizontal synthesis of the lines of the child subbands.
+         *
+         * @param lines The buffer of lines.
+         *
+         * @param first The index of the first line in the buffer.
+         *
+         * @param num The number of lines in the buffer.
+         *
+         * @param start The index of the first line to hold.
+         *
+         * @param end The index following the last line to hold.
+         *
+         * @param lsrc The source of the lines of the horizontal low-pass
+         * child, null if empty.
+         *
+         * @param hsrc The source of the lines of the horizontal high-pass
+         * child, null if empty.
+         *
+         * @return The index of the first line in the buffer.
+         * */
+        private int getLines(Object lines, int first, int num, int start,
+                             int end, LineSource lsrc, LineSource hsrc) {
+            int i,off;
+
+            // Discard the lines before 'start'
+            if (start-first >= num) {
+                num = 0;
+            } else if (start > first) {
+                num -= start-first;
+                System.arraycopy(lines,(start-first)*w,lines,0,num*w);
+            }
+            first = start;
+
+            // Perform the horizontal reconstruction of the missing lines
+            for (i=first+num; i<end; i++) {
+                if (lowW > 0) {
+                    off = lsrc.getLine(i);
+                    System.arraycopy(lsrc.data,off,buf,0,lowW);
+                }
+                if (highW > 0) {
+                    off = hsrc.getLine(i);
+                    System.arraycopy(hsrc.data,off,buf,lowW,highW);
+                }
+                if (sb.ulcx%2 == 0) { // start index is even => use LPF
+                    sb.hFilter.synthetize_lpf(buf,0,lowW,1,buf,lowW,highW,1,
+                                              lines,(i-first)*w,1);
+                } else { // start index is odd => use HPF
+                    sb.hFilter.synthetize_hpf(buf,0,lowW,1,buf,lowW,highW,1,
+                                              lines,(i-first)*w,1);
+                }
+            }
+            return first;
+        }
+    }
+
+    /**
+     * Initializes this object with the given source of wavelet
+     * coefficients. It initializes the resolution level for full resolutioin
+     * reconstruction.
+     *
+     * @param src from where the wavelet coefficinets should be
+     * obtained.
+     *
+     * @param decSpec The decoder specifications
+     * */
+    public InvWTLine(CBlkWTDataSrcDec src, DecoderSpecs decSpec){
+        super(src,decSpec);
+        this.src = src;
+
+        int nc = src.getNumComps();
+        lineSrcs = new LineSource[nc];
+        blkBufs = new Object[nc];
+        ndl = new int[nc];
+        reversible = new boolean[src.getNumTiles()][];
+        pw = FacilityManager.getProgressWatch();
+    }
+
+    /**
+     * Creates the source of the lines of the given subband, as they are
+     * reconstructed at the current resolution level. If the subband is a
+     * node which is not reconstructed at this level, the lines are those of
+     * its LL subband.
+     *
+     * @param sb The subband.
+     *
+     * @param c The component of the subband.
+     *
+     * @param dtype The data type of the subband data.
+     *
+     * @return The source of the lines, or null if the subband is empty.
+     * */
+    private LineSource createLineSource(SubbandSyn sb, int c, int dtype) {
+        if (sb.isNode && sb.resLvl > reslvl-maxImgRes+ndl[c]) {
+            return createLineSource((SubbandSyn)sb.getLL(),c,dtype);
+        }
+        if (sb.w == 0 || sb.h == 0) {
+            return null;
+        }
+        if (sb.isNode) {
+            return new NodeLines(sb,c,dtype);
+        } else {
+            return new SubbandLines(sb,c,dtype);
+        }
+    }
+
+   /**
+     * Returns the reversibility of the current subband. It computes
+     * iteratively the reversibility of the child subbands. For each subband
+     * it tests the reversibility of the horizontal and vertical synthesis
+     * filters used to reconstruct this subband.
+     *
+     * @param subband The current subband.
+     *
+     * @return true if all the  filters used to reconstruct the current
+     * subband are reversible
+     * */
+    private boolean isSubbandReversible(Subband subband) {
+        if(subband.isNode) {
+            // It's reversible if the filters to obtain the 4 subbands are
+            // reversible and the ones for this one are reversible too.
+            return
+                isSubbandReversible(subband.getLL()) &&
+                isSubbandReversible(subband.getHL()) &&
+                isSubbandReversible(subband.getLH()) &&
+                isSubbandReversible(subband.getHH()) &&
+                ((SubbandSyn)subband).hFilter.isReversible() &&
+                ((SubbandSyn)subband).vFilter.isReversible();
+        } else {
+            // Leaf subband. Reversibility of data depends on source, so say
+            // it's true
+            return true;
+        }
+    }
+
+    /**
+     * Returns the reversibility of the wavelet transform for the specified
+     * component, in the current tile. A wavelet transform is reversible when
+     * it is suitable for lossless and lossy-to-lossless compression.
+     *
+     * @param t The index of the tile.
+     *
+     * @param c The index of the component.
+     *
+     * @return true is the wavelet transform is reversible, false if not.
+     * */
+    public boolean isReversible(int t,int c) {
+        if (reversible[t] == null) {
+            // Reversibility not yet calculated for this tile
+            reversible[t] = new boolean[getNumComps()];
+            for (int i=reversible[t].length-1; i>=0 ; i--) {
+                reversible[t][i] =
+                    isSubbandReversible(src.getSynSubbandTree(t,i));
+            }
+        }
+        return reversible[t][c];
+    }
+
+    /**
+     * Returns the number of bits, referred to as the "range bits",
+     * corresponding to the nominal range of the data in the specified
+     * component.
+     *
+     * @param c The index of the component.
+     *
+     * @return The number of bits corresponding to the nominal range of the
+     * data.
+     * */
+    public int getNomRangeBits(int c) {
+        return src.getNomRangeBits(c);
+    }
+
+    /**
+     * Returns the position of the fixed point in the specified
+     * component. This is the position of the least significant integral
+     * (i.e. non-fractional) bit, which is equivalent to the number of
+     * fractional bits. For floating-point data 0 is returned.
+     *
+     * @param c The index of the component.
+     *
+     * @return The position of the fixed-point, which is the same as the
+     * number of fractional bits. For floating-point data 0 is returned.
+     * */
+    public int getFixedPoint(int c) {
+        return src.getFixedPoint(c);
+    }
+
+    /**
+     * Returns a block of image data containing the specifed rectangular area,
+     * in the specified component, as a reference to the internal buffer (see
+     * below). The rectangular area is specified by the coordinates and
+     * dimensions of the 'blk' object.
+     *
+     * <p>The area to return is specified by the 'ulx', 'uly', 'w' and 'h'
+     * members of the 'blk' argument. These members are not modified by this
+     * method.</p>
+     *
+     * <p>The data returned by this method can be the data in the internal
+     * buffer of this object, if any, and thus can not be modified by the
+     * caller. It is only valid until the next request for the same
+     * component. The 'offset' and 'scanw' of the returned data can be
+     * arbitrary. See the 'DataBlk' class.</p>
+     *
+     * <p>The returned data has its 'progressive' attribute unset
+     * (i.e. false).</p>
+     *
+     * @param blk Its coordinates and dimensions specify the area to return.
+     *
+     * @param c The index of the component from which to get the data.
+     *
+     * @return The requested DataBlk
+     *
+     * @see #getInternCompData
+     * */
+    public final DataBlk getInternCompData(DataBlk blk, int c) {
+        int tIdx = getTileIdx();
+        int dtype;
+        SubbandSyn root = src.getSynSubbandTree(tIdx,c);
+        if(root.getHorWFilter()==null) {
+            dtype = DataBlk.TYPE_INT;
+        } else {
+            dtype = root.getHorWFilter().getDataType();
+        }
+
+        // Start the reconstruction, or start it over if the lines are
+        // before the available ones
+        LineSource ls = lineSrcs[c];
+        if (ls == null || (blk.uly < ls.availStart && blk.uly < ls.h)) {
+            ls = lineSrcs[c] = createLineSource(root,c,dtype);
+        }
+
+        if(blk.getDataType()!=dtype) {
+            if(dtype==DataBlk.TYPE_INT) {
+                blk = new DataBlkInt(blk.ulx,blk.uly,blk.w,blk.h);
+            } else {
+                blk = new DataBlkFloat(blk.ulx,blk.uly,blk.w,blk.h);
+            }
+        }
+
+        if (ls != null && blk.ulx+blk.w <= ls.w && blk.uly+blk.h <= ls.h) {
+            int off = ls.getLine(blk.uly);
+            if (blk.uly+blk.h <= ls.availEnd) {
+                // Set the reference to the internal buffer
+                blk.setData(ls.data);
+                blk.offset = off+blk.ulx;
+                blk.scanw = ls.w;
+                blk.progressive = false;
+                return blk;
+            }
+        }
+
+        // The lines are not all available at once, or the area extends
+        // beyond the reconstructed resolution level (as the full page
+        // transform does, samples outside of it are 0): copy them
+        Object buf = blkBufs[c];
+        int n = blk.w*blk.h;
+        if (dtype == DataBlk.TYPE_INT) {
+            if (!(buf instanceof int[]) || ((int[])buf).length < n) {
+                buf = blkBufs[c] = new int[n];
+            }
+        } else {
+            if (!(buf instanceof float[]) || ((float[])buf).length < n) {
+                buf = blkBufs[c] = new float[n];
+            }
+        }
+        int cw = (ls == null) ? 0 : Math.min(blk.w,ls.w-blk.ulx);
+        for (int i=0; i<blk.h; i++) {
+            int y = blk.uly+i;
+            int k = 0;
+            if (cw > 0 && y < ls.h) {
+                int off = ls.getLine(y);
+                System.arraycopy(ls.data,off+blk.ulx,buf,i*blk.w,cw);
+                k = cw;
+            }
+            if (k < blk.w) {
+                if (dtype == DataBlk.TYPE_INT) {
+                    Arrays.fill((int[])buf,i*blk.w+k,(i+1)*blk.w,0);
+                } else {
+                    Arrays.fill((float[])buf,i*blk.w+k,(i+1)*blk.w,0f);
+                }
+            }
+        }
+        blk.setData(buf);
+        blk.offset = 0;
+        blk.scanw = blk.w;
+        blk.progressive = false;
+        return blk;
+    }
+
+    /**
+     * Returns a block of image data containing the specifed rectangular area,
+     * in the specified component, as a copy (see below). The rectangular area
+     * is specified by the coordinates and dimensions of the 'blk' object.
+     *
+     * <P>The area to return is specified by the 'ulx', 'uly', 'w' and 'h'
+     * members of the 'blk' argument. These members are not modified by this
+     * method.
+     *
+     * <P>The data returned by this method is always a copy of the internal
+     * data of this object, if any, and it can be modified "in place" without
+     * any problems after being returned. The 'offset' of the returned data is
+     * 0, and the 'scanw' is the same as the block's width. See the 'DataBlk'
+     * class.
+     *
+     * <P>If the data array in 'blk' is <tt>null</tt>, then a new one is
+     * created. If the data array is not <tt>null</tt> then it must be big
+     * enough to contain the requested area.
+     *
+     * <P>The returned data always has its 'progressive' attribute unset (i.e
+     * false)
+     *
+     * @param blk Its coordinates and dimensions specify the area to
+     * return. If it contains a non-null data array, then it must be large
+     * enough. If it contains a null data array a new one is created. The
+     * fields in this object are modified to return the data.
+     *
+     * @param c The index of the component from which to get the data.
+     *
+     * @return The requested DataBlk
+     *
+     * @see #getCompData
+     * */
+    public DataBlk getCompData(DataBlk blk, int c) {
+        Object dst_data = null;
+
+        // Ensure output buffer
+        switch (blk.getDataType()) {
+        case DataBlk.TYPE_INT:
+            int dst_data_int[] = (int[]) blk.getData();
+            if (dst_data_int == null || dst_data_int.length < blk.w*blk.h) {
+                dst_data_int = new int[blk.w*blk.h];
+            }
+            dst_data = dst_data_int;
+            break;
+        case DataBlk.TYPE_FLOAT:
+            float dst_data_float[] = (float[]) blk.getData();
+            if (dst_data_float == null ||
+                dst_data_float.length < blk.w*blk.h) {
+                dst_data_float = new float[blk.w*blk.h];
+            }
+            dst_data = dst_data_float;
+            break;
+        }
+
+        // Use getInternCompData() to get the data, since getInternCompData()
+        // returns reference to internal buffer, we must copy it.
+        blk = getInternCompData(blk,c);
+
+        // A new block is returned if the data type is not the requested one
+        if (blk.getDataType() == DataBlk.TYPE_INT) {
+            if (!(dst_data instanceof int[])) {
+                dst_data = new int[blk.w*blk.h];
+            }
+        } else if (!(dst_data instanceof float[])) {
+            dst_data = new float[blk.w*blk.h];
+        }
+
+        // Copy the data
+        Object src_data = blk.getData();
+        for (int i=blk.h-1; i>=0; i--) {
+            System.arraycopy(src_data,blk.offset+i*blk.scanw,
+                             dst_data,i*blk.w,blk.w);
+        }
+        blk.setData(dst_data);
+        blk.offset = 0;
+        blk.scanw = blk.w;
+        return blk;
+    }
+
+    /**
+     * Returns the implementation type of this wavelet transform, WT_IMPL_LINE
+     * (line-based transform). All components return the same.
+     *
+     * @param c The index of the component.
+     *
+     * @return WT_IMPL_LINE
+     *
+     * @see WaveletTransform#WT_IMPL_LINE
+     * */
+    public int getImplementationType(int c) {
+        return WaveletTransform.WT_IMPL_LINE;
+    }
+
+    /**
+     * Restricts the reconstruction of the current tile to the specified
+     * region. The reconstruction of the tile-components starts over.
+     *
+     * @param region The region to reconstruct, or null to reconstruct the
+     * whole tile.
+     * */
+    public void setRegion(InvWTRegion region) {
+        super.setRegion(region);
+        for (int c=lineSrcs.length-1; c>=0; c--) {
+            lineSrcs[c] = null;
+        }
+    }
+
+    /**
+     * Changes the current tile, given the new indexes. An
+     * IllegalArgumentException is thrown if the indexes do not correspond to
+     * a valid tile.
+     *
+     * @param x The horizontal index of the tile.
+     *
+     * @param y The vertical index of the new tile.
+     * */
+    public void setTile(int x,int y) {
+        // Change tile
+        super.setTile(x,y);
+        initTile();
+
+        if(pw!=null) {
+            int nc = src.getNumComps();
+            int tIdx = src.getTileIdx();
+            cblkToDecode = 0;
+            SubbandSyn root,sb;
+            for(int c=0; c<nc; c++) {
+                root = src.getSynSubbandTree(tIdx,c);
+                for(int r=0; r<=reslvl-maxImgRes+root.resLvl; r++) {
+                    if(r==0) {
+                        sb = (SubbandSyn)root.getSubbandByIdx(0,0);
+                        if(sb!=null) cblkToDecode += sb.numCb.x*sb.numCb.y;
+                    } else {
+                        sb = (SubbandSyn)root.getSubbandByIdx(r,1);
+                        if(sb!=null) cblkToDecode += sb.numCb.x*sb.numCb.y;
+                        sb = (SubbandSyn)root.getSubbandByIdx(r,2);
+                        if(sb!=null) cblkToDecode += sb.numCb.x*sb.numCb.y;
+                        sb = (SubbandSyn)root.getSubbandByIdx(r,3);
+                        if(sb!=null) cblkToDecode += sb.numCb.x*sb.numCb.y;
+                    }
+                } // Loop on resolution levels
+            } // Loop on components
+            nDecCblk = 0;
+            pw.initProgressWatch(0,cblkToDecode,"Decoding tile "+tIdx+"...");
+        }
+    }
+
+    /**
+     * Advances to the next tile, in standard scan-line order (by rows then
+     * columns). An 'NoNextElementException' is thrown if the current tile is
+     * the last one (i.e. there is no next tile).
+     * */
+    public void nextTile() {
+        // Change tile
+        super.nextTile();
+        initTile();
+    }
+
+    /**
+     * Initializes the number of decomposition levels of the components and
+     * discards the region and the reconstruction of the previous tile.
+     * */
+    private void initTile() {
+        region = null;
+        int nc = src.getNumComps();
+        int tIdx = src.getTileIdx();
+        for(int c=0; c<nc; c++) {
+            ndl[c] = src.getSynSubbandTree(tIdx,c).resLvl;
+            lineSrcs[c] = null;
+        }
+    }
+}
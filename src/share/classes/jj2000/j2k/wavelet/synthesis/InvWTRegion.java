@@ -0,0 +1,240 @@
+/*
+ * $RCSfile: InvWTRegion.java,v $
+ * $Revision: 1.1 $
+ * $Date: 2005-02-11 05:02:32 $
+ * $State: Exp $
+ *
+ * Class:                   InvWTRegion
+ *
+ * Description:             The area of the tile-components to be
+ *                          reconstructed by the inverse wavelet transform.
+ *
+ *
+ * COPYRIGHT:
+ *
+ * This software module was originally developed by Raphal Grosbois and
+ * Diego Santa Cruz (Swiss Federal Institute of Technology-EPFL); Joel
+ * Askelf (Ericsson Radio Systems AB); and Bertrand Berthelot, David
+ * Bouchard, Flix Henry, Gerard Mozelle and Patrice Onno (Canon Research
+ * Centre France S.A) in the course of development of the JPEG2000
+ * standard as specified by ISO/IEC 15444 (JPEG 2000 Standard). This
+ * software module is an implementation of a part of the JPEG 2000
+ * Standard. Swiss Federal Institute of Technology-EPFL, Ericsson Radio
+ * Systems AB and Canon Research Centre France S.A (collectively JJ2000
+ * Partners) agree not to assert against ISO/IEC and users of the JPEG
+ * 2000 Standard (Users) any of their rights under the copyright, not
+ * including other intellectual property rights, for this software module
+ * with respect to the usage by ISO/IEC and Users of this software module
+ * or modifications thereof for use in hardware or software products
+ * claiming conformance to the JPEG 2000 Standard. Those intending to use
+ * this software module in hardware or software products are advised that
+ * their use may infringe existing patents. The original developers of
+ * this software module, JJ2000 Partners and ISO/IEC assume no liability
+ * for use of this software module or modifications thereof. No license
+ * or right to this software module is granted for non JPEG 2000 Standard
+ * conforming products. JJ2000 Partners have full right to use this
+ * software module for his/her own purpose, assign or donate this
+ * software module to any third party and to inhibit third parties from
+ * using this software module for non JPEG 2000 Standard conforming
+ * products. This copyright notice must be included in all copies or
+ * derivative works of this software module.
+ *
+ * Copyright (c) 1999/2000 JJ2000 Partners.
+ * */
+package jj2000.j2k.wavelet.synthesis;
+
+import jj2000.j2k.wavelet.*;
+
+/**
+ * This class describes the area of the tile-components of the current tile
+ * that is to be reconstructed by the inverse wavelet transform, when only a
+ * region of the image is decoded. It finds the part of each subband, and the
+ * code-blocks, that this area depends on. The other code-blocks need neither
+ * be read from the bit stream nor be entropy decoded.
+ *
+ * <P>The area is specified in the coordinates of the tile-components at the
+ * reconstructed resolution level, which are those of the blocks requested
+ * to the inverse wavelet transform, and is the same for all the
+ * components. It is projected onto the subbands of the reconstructed
+ * subband tree through the synthesis filters, extended on each side by a
+ * margin that exceeds twice their largest support. The part of each subband
+ * found this way includes all the coefficients that the samples of the area
+ * depend on, so that these samples are exactly the same as if the whole
+ * tile-component was reconstructed. The samples outside of the area are
+ * undefined.
+ *
+ * @see InverseWT#setRegion
+ * */
+public class InvWTRegion {
+
+    /** The horizontal coordinate of the upper-left corner of the area */
+    private int ulx;
+
+    /** The vertical coordinate of the upper-left corner of the area */
+    private int uly;
+
+    /** The width of the area */
+    private int w;
+
+    /** The height of the area */
+    private int h;
+
+    /** The number of resolution levels that are not reconstructed, from the
+     * highest one of each tile-component */
+    private int nDiscLvl;
+
+    /**
+     * Creates a new region of the tile-components.
+     *
+     * @param ulx The horizontal coordinate of the upper-left corner of the
+     * area, in the reconstructed tile-components.
+     *
+     * @param uly The vertical coordinate of the upper-left corner of the
+     * area, in the reconstructed tile-components.
+     *
+     * @param w The width of the area.
+     *
+     * @param h The height of the area.
+     *
+     * @param nDiscLvl The number of resolution levels that are not
+     * reconstructed, i.e. the highest resolution level of the image minus
+     * the reconstructed one.
+     * */
+    public InvWTRegion(int ulx,int uly,int w,int h,int nDiscLvl) {
+        if (w < 0 || h < 0 || nDiscLvl < 0) {
+            throw new IllegalArgumentException();
+        }
+        this.ulx = ulx;
+        this.uly = uly;
+        this.w = w;
+        this.h = h;
+        this.nDiscLvl = nDiscLvl;
+    }
+
+    /**
+     * Returns the part of the specified subband that the area depends on.
+     *
+     * @param sb The subband, which must belong to the reconstructed subband
+     * tree of its tile-component.
+     *
+     * @param area If not null this array, of length 4 at least, is used to
+     * return the part of the subband.
+     *
+     * @return The part of the subband as the coordinates of its upper-left
+     * corner and of its lower-right corner (exclusive), relative to the
+     * upper-left corner of the subband: {x0,y0,x1,y1}. The part is empty if
+     * x1<=x0 or y1<=y0.
+     * */
+    public int[] getSubbandArea(SubbandSyn sb,int[] area) {
+        if (area == null) {
+            area = new int[4];
+        }
+
+        // Find the resolution level of the reconstructed subband
+        Subband root = sb;
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        projectArea(sb,root.resLvl-nDiscLvl,area);
+        return area;
+    }
+
+    /**
+     * Returns true if the area depends on the specified code-block, false
+     * otherwise.
+     *
+     * @param sb The subband of the code-block, which must belong to the
+     * reconstructed subband tree of its tile-component.
+     *
+     * @param m The vertical index of the code-block, in the subband.
+     *
+     * @param n The horizontal index of the code-block, in the subband.
+     *
+     * @param cb0x The horizontal coordinate of the code-block partition
+     * origin.
+     *
+     * @param cb0y The vertical coordinate of the code-block partition
+     * origin.
+     *
+     * @return True if the code-block is needed to reconstruct the area.
+     * */
+    public boolean isCBlkNeeded(SubbandSyn sb,int m,int n,int cb0x,
+                                int cb0y) {
+        int[] area = getSubbandArea(sb,null);
+        if (area[2] <= area[0] || area[3] <= area[1]) {
+            return false;
+        }
+
+        // Projects the code-block partition origin to the subband, as is
+        // done by the bit stream reader
+        int cbx = sb.ulcx;
+        if (sb.orientation == Subband.WT_ORIENT_LL ||
+            sb.orientation == Subband.WT_ORIENT_LH) {
+            cbx -= cb0x;
+        }
+        int cby = sb.ulcy;
+        if (sb.orientation == Subband.WT_ORIENT_LL ||
+            sb.orientation == Subband.WT_ORIENT_HL) {
+            cby -= cb0y;
+        }
+
+        int cw = sb.nomCBlkW;
+        int ch = sb.nomCBlkH;
+        return m >= (cby+area[1])/ch-cby/ch &&
+            m <= (cby+area[3]-1)/ch-cby/ch &&
+            n >= (cbx+area[0])/cw-cbx/cw &&
+            n <= (cbx+area[2]-1)/cw-cbx/cw;
+    }
+
+    /**
+     * Projects the area onto the specified subband, recursively from the
+     * reconstructed subband.
+     *
+     * @param sb The subband.
+     *
+     * @param rl The resolution level of the reconstructed subband.
+     *
+     * @param area Where to return the part of the subband, as in
+     * getSubbandArea().
+     * */
+    private void projectArea(SubbandSyn sb,int rl,int[] area) {
+        SubbandSyn p = (SubbandSyn)sb.getParent();
+        if (p == null || p.resLvl > rl) {
+            // The reconstructed subband
+            area[0] = Math.max(ulx,0);
+            area[1] = Math.max(uly,0);
+            area[2] = Math.min(ulx+w,sb.w);
+            area[3] = Math.min(uly+h,sb.h);
+            return;
+        }
+        projectArea(p,rl,area);
+
+        // Extend the part of the parent by the margin of the synthesis
+        // filters and keep the samples of the same phase as the subband
+        int mx = getMargin(p.hFilter);
+        int my = getMargin(p.vFilter);
+        area[0] = Math.max(area[0]-mx,0)/2;
+        area[1] = Math.max(area[1]-my,0)/2;
+        area[2] = (Math.min(area[2]+mx,p.w)+1)/2;
+        area[3] = (Math.min(area[3]+my,p.h)+1)/2;
+        if (area[2] > sb.w) area[2] = sb.w;
+        if (area[3] > sb.h) area[3] = sb.h;
+    }
+
+    /**
+     * Returns the number of samples by which the part of a subband is
+     * extended on each side, in the direction of the specified synthesis
+     * filter.
+     *
+     * @param wf The synthesis filter.
+     *
+     * @return Twice the largest support of the filter, plus two.
+     * */
+    private static int getMargin(WaveletFilter wf) {
+        int sup = Math.max(Math.max(wf.getSynLowNegSupport(),
+                                    wf.getSynLowPosSupport()),
+                           Math.max(wf.getSynHighNegSupport(),
+                                    wf.getSynHighPosSupport()));
+        return 2*sup+2;
+    }
+}
@@ -75,6 +75,10 @@ import jj2000.j2k.*;
 public abstract class InverseWT extends InvWTAdapter
     implements BlkImgDataSrc {
 
+    /** The region of the current tile to reconstruct, or null if the whole
+     * tile is reconstructed */
+    protected InvWTRegion region;
+
     /**
      * Initializes this object with the given source of wavelet
      * coefficients. It initializes the resolution level for full resolutioin
@@ -93,6 +97,31 @@ public abstract class InverseWT extends InvWTAdapter
         super(src,decSpec);
     }
 
+    /**
+     * Restricts the reconstruction of the current tile to the specified
+     * region. Only the code-blocks that the region depends on are requested
+     * to the source, and the samples outside of the region are undefined.
+     * The region applies until another one is set or the current tile is
+     * changed, after which the whole tile is reconstructed again.
+     *
+     * @param region The region to reconstruct, or null to reconstruct the
+     * whole tile.
+     *
+     * @see InvWTRegion
+     * */
+    public void setRegion(InvWTRegion region) {
+        this.region = region;
+    }
+
+    /**
+     * Returns the region of the current tile that is reconstructed.
+     *
+     * @return The region, or null if the whole tile is reconstructed.
+     * */
+    public InvWTRegion getRegion() {
+        return region;
+    }
+
     /**
      * Creates an InverseWT object that works on the data type of the source,
      * with the special additional parameters from the parameter
@@ -111,4 +140,33 @@ public abstract class InverseWT extends InvWTAdapter
         // full page wavelet transform
         return new InvWTFull(src,decSpec);
     }
+
+    /**
+     * Creates an InverseWT object of the specified implementation type that
+     * works on the data type of the source.
+     *
+     * @param src The source of data for the inverse wavelet
+     * transform.
+     *
+     * @param decSpec The decoder specifications
+     *
+     * @param implType The implementation type, WT_IMPL_LINE or WT_IMPL_FULL.
+     *
+     * @see WaveletTransform#WT_IMPL_LINE
+     *
+     * @see WaveletTransform#WT_IMPL_FULL
+     * */
+    public static InverseWT createInstance(CBlkWTDataSrcDec src,
+                                           DecoderSpecs decSpec,
+                                           int implType) {
+        switch (implType) {
+        case WaveletTransform.WT_IMPL_LINE:
+            return new InvWTLine(src,decSpec);
+        case WaveletTransform.WT_IMPL_FULL:
+            return new InvWTFull(src,decSpec);
+        default:
+            throw new IllegalArgumentException("Unknown implementation "+
+                                               "type "+implType);
+        }
+    }
 }